@@ -50,6 +50,10 @@ import org.glassfish.internal.api.DelegatingClassLoader;
  */
 public class ConnectorClassFinder extends ASURLClassLoader implements DelegatingClassLoader.ClassFinder {
 
+        static {
+            registerAsParallelCapable();
+        }
+
         private final DelegatingClassLoader.ClassFinder librariesClassFinder;
         private volatile String raName;
 
@@ -94,6 +94,9 @@ public class ConnectorConnectionPool implements Serializable {
 
     private long dynamicReconfigWaitTimeout = 0;
 
+    //period (in ms) at which free connections are validated in the background, 0 when disabled
+    private long backgroundValidationPeriod = 0;
+
     private ConnectorSecurityMap[] securityMaps = null;
     private boolean isAuthCredentialsDefinedInPool_ = false;
 
@@ -240,6 +243,7 @@ public class ConnectorConnectionPool implements Serializable {
         clone.setDataStructureParameters(getDataStructureParameters());
         clone.setPoolDataStructureType(getPoolDataStructureType());
         clone.setPoolWaitQueue(getPoolWaitQueue());
+        clone.setBackgroundValidationPeriod(getBackgroundValidationPeriod());
         clone.setLazyConnectionEnlist(isLazyConnectionEnlist());
 
         clone.setMaxConnectionUsage(getMaxConnectionUsage());
@@ -773,6 +777,8 @@ public class ConnectorConnectionPool implements Serializable {
 
             sb.append("\nvalidateAtmostOncePeriod_ ");
             sb.append(validateAtmostOncePeriod_);
+            sb.append("\nbackgroundValidationPeriod ");
+            sb.append(backgroundValidationPeriod);
 
             sb.append("\nconnectionLeakTracingTimeout_");
             sb.append(connectionLeakTracingTimeout_);
@@ -881,6 +887,14 @@ public class ConnectorConnectionPool implements Serializable {
         preferValidateOverRecreate_ = preferValidateOverRecreate;
     }
 
+    public long getBackgroundValidationPeriod() {
+        return backgroundValidationPeriod;
+    }
+
+    public void setBackgroundValidationPeriod(long backgroundValidationPeriod) {
+        this.backgroundValidationPeriod = backgroundValidationPeriod;
+    }
+
     public long getDynamicReconfigWaitTimeout() {
         return dynamicReconfigWaitTimeout;
     }
@@ -49,6 +49,8 @@ import java.net.MalformedURLException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -63,15 +65,20 @@ import java.util.logging.Logger;
 public class ConnectorClassLoader extends ASURLClassLoader
 {
 
+    static {
+        registerAsParallelCapable();
+    }
+
     private static final Logger _logger = LogDomains.getLogger(ConnectorClassLoader.class, LogDomains.RSR_LOGGER);
 
     private volatile static ConnectorClassLoader classLoader = null;
 
     /**
-     * A linked list of URL classloaders representing each deployed connector
-     * module
+     * A list of URL classloaders representing each deployed connector
+     * module. Class loading walks it without holding a lock, while connector
+     * modules are added and removed.
      */
-    private final List classLoaderChain = new LinkedList();
+    private final List classLoaderChain = new CopyOnWriteArrayList();
 
     /**
      * The parent class loader for the connector Class Loader [ie the common
@@ -83,7 +90,7 @@ public class ConnectorClassLoader extends ASURLClassLoader
      * Maintains a mapping between rar name and a classloader that has services
      * that RAR module.
      */
-    private final Map rarModuleClassLoaders = new HashMap();
+    private final Map rarModuleClassLoaders = new ConcurrentHashMap();
 
     public static synchronized ConnectorClassLoader getInstance() {
         if (classLoader == null) {
@@ -196,7 +203,14 @@ public class ConnectorClassLoader extends ASURLClassLoader
       *
       * @see java.lang.ClassLoader#loadClass(java.lang.String, boolean)
       */
-    public synchronized Class loadClass(String name, boolean resolve)
+    public Class loadClass(String name, boolean resolve)
+            throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            return loadClassFromChain(name, resolve);
+        }
+    }
+
+    private Class loadClassFromChain(String name, boolean resolve)
             throws ClassNotFoundException {
         Class clz = null;
         //Use the delegation model to service class requests that could be
@@ -256,13 +270,15 @@ public class ConnectorClassLoader extends ASURLClassLoader
 
     public String getClasspath() {
         StringBuffer strBuf = new StringBuffer();
-        for (int i = 0; i < classLoaderChain.size(); i++) {
-            ASURLClassLoader ecl = (ASURLClassLoader) classLoaderChain.get(i);
+        boolean first = true;
+        for (Object cl : classLoaderChain) {
+            ASURLClassLoader ecl = (ASURLClassLoader) cl;
             String eclClasspath = ecl.getClasspath();
             if (eclClasspath != null) {
-                if (i > 0) strBuf.append(File.pathSeparator);
+                if (!first) strBuf.append(File.pathSeparator);
                 strBuf.append(eclClasspath);
             }
+            first = false;
         }
         return strBuf.toString();
     }
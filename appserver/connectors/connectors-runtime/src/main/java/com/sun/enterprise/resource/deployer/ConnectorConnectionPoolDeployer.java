@@ -538,6 +538,16 @@ public class ConnectorConnectionPoolDeployer extends AbstractConnectorResourceDe
                     if(_logger.isLoggable(Level.FINE)) {
                         _logger.fine("DATASTRUCTUREPARAMETERS");
                     }
+                } else if ("BACKGROUND-VALIDATION-PERIOD".equals(ep.getName().toUpperCase(locale))) {
+                    try {
+                        ccp.setBackgroundValidationPeriod(Long.parseLong(ep.getValue()) * 1000L);
+                        if(_logger.isLoggable(Level.FINE)) {
+                            _logger.fine("BACKGROUND-VALIDATION-PERIOD");
+                        }
+                    } catch (NumberFormatException nfe) {
+                        _logger.log(Level.WARNING, "Invalid value for 'background-validation-period' : "
+                                + ep.getValue());
+                    }
                 } else if ("PREFER-VALIDATE-OVER-RECREATE".equals(ep.getName().toUpperCase(locale))) {
                     String value = ep.getValue();
                     if (_logger.isLoggable(Level.FINE)) {
@@ -78,6 +78,18 @@ public class AssocWithThreadResourcePool extends ConnectionPool {
     }
 
 
+    /**
+     * Resources are associated with the thread getting them from the pool, which
+     * a resource handed over by the releasing thread would bypass. Waiting requests
+     * always get their resource through prefetch or getUnenlistedResource.
+     * @param tran Transaction
+     * @return false
+     */
+    @Override
+    protected boolean acceptsHandOff(Transaction tran) {
+        return false;
+    }
+
     /**
      * Prefetch is called to check whether there there is a free resource is already associated with the thread
      * Only when prefetch is unable to find a resource, normal routine (getUnenlistedResource) will happen.
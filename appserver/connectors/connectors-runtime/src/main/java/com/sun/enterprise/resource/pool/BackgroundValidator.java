@@ -0,0 +1,302 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool;
+
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.allocator.ResourceAllocator;
+import com.sun.enterprise.resource.pool.datastructure.DataStructure;
+import com.sun.logging.LogDomains;
+import org.glassfish.resourcebase.resources.api.PoolInfo;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Validates the free connections of a pool off the request path.<br>
+ * Every run goes through the resources of the pool and validates the free ones
+ * that were not validated within the last period, marking them verified with a
+ * timestamp (<code>ResourceHandle.setLastValidated</code>) so that a request
+ * getting one of them can skip the validation. Resources are taken out of the
+ * pool one at a time and given back as soon as they are validated, so that
+ * requests are not left without free connections while the pool is validated.
+ * Invalid ones are removed from the pool. Custom datastructures which do not
+ * support <code>acquireResource</code> have their free resources taken out all
+ * at once instead.<br>
+ * The run stops validating as soon as requests are waiting for a connection.
+ * Tasks run on a timer of their own, so that validation does not delay the
+ * other connector timer tasks (resizer, leak detection). The timer is created
+ * with the first scheduled task, and stopped when the last one is canceled.
+ */
+public class BackgroundValidator extends TimerTask {
+
+    private static Timer timer;
+
+    //number of scheduled tasks, guarded by the class
+    private static int scheduledTasks;
+
+    protected PoolInfo poolInfo;
+    protected DataStructure ds;
+    protected ConnectionPool pool;
+    protected long validationPeriod;
+
+    private boolean scheduled;
+
+    //false for datastructures that cannot take out a given resource
+    private boolean acquireSupported = true;
+
+    protected final static Logger _logger = LogDomains.getLogger(BackgroundValidator.class, LogDomains.RSR_LOGGER);
+
+    public BackgroundValidator(PoolInfo poolInfo, DataStructure ds, ConnectionPool pool,
+                               long validationPeriod) {
+        this.poolInfo = poolInfo;
+        this.ds = ds;
+        this.pool = pool;
+        this.validationPeriod = validationPeriod;
+    }
+
+    /**
+     * Schedules this task to run every validation period, on the timer shared
+     * by the background validators of all pools.
+     */
+    public void schedule() {
+        synchronized (BackgroundValidator.class) {
+            if (timer == null) {
+                timer = new Timer("connection-pool-background-validator", true);
+            }
+            timer.scheduleAtFixedRate(this, validationPeriod, validationPeriod);
+            scheduled = true;
+            scheduledTasks++;
+        }
+    }
+
+    /**
+     * Cancels this task, and stops the timer when no other task is scheduled.
+     */
+    @Override
+    public boolean cancel() {
+        synchronized (BackgroundValidator.class) {
+            boolean canceled = super.cancel();
+            if (scheduled) {
+                scheduled = false;
+                if (--scheduledTasks == 0) {
+                    timer.cancel();
+                    timer = null;
+                } else {
+                    timer.purge();
+                }
+            }
+            return canceled;
+        }
+    }
+
+    static synchronized boolean isTimerRunning() {
+        return timer != null;
+    }
+
+    public void run() {
+        try {
+            validateFreeResources();
+        } catch (Exception ex) {
+            Object[] params = new Object[]{poolInfo, ex.getMessage()};
+            _logger.log(Level.WARNING, "resource_pool.background_validation_error", params);
+        }
+    }
+
+    /**
+     * Validates the free resources that were not validated within the
+     * validation period.
+     *
+     * @return number of invalid resources removed from the pool
+     */
+    public int validateFreeResources() {
+        if (acquireSupported) {
+            try {
+                return validateFreeResourcesInPlace();
+            } catch (UnsupportedOperationException e) {
+                //custom datastructure, nothing was taken out of it
+                acquireSupported = false;
+                if (_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE, "Datastructure of pool [ " + poolInfo + " ] cannot acquire "
+                            + "a given resource, free resources are taken out of the pool to be validated");
+                }
+            }
+        }
+        return validateFreeResourcesTakenOut();
+    }
+
+    /**
+     * Takes out and validates the free resources one at a time.
+     */
+    private int validateFreeResourcesInPlace() {
+        int validated = 0;
+        int removed = 0;
+        long currentTime = System.currentTimeMillis();
+
+        for (ResourceHandle h : ds.getAllResources()) {
+            if (getWaitQueueLength() > 0) {
+                //not validated in this run as requests are waiting
+                break;
+            }
+            if (currentTime - h.getLastValidated() < validationPeriod) {
+                //verified recently, by a request or by the previous run
+                continue;
+            }
+            if (!ds.acquireResource(h)) {
+                //in use, or removed from the pool
+                continue;
+            }
+            if (validate(h)) {
+                validated++;
+            } else {
+                removed++;
+            }
+        }
+        logValidation(validated, removed);
+        return removed;
+    }
+
+    /**
+     * For datastructures that cannot take out a given resource: takes all the
+     * free resources out of the pool, gives back at once those validated within
+     * the last period and validates the others.
+     */
+    private int validateFreeResourcesTakenOut() {
+        int validated = 0;
+        int removed = 0;
+        List<ResourceHandle> toValidate = new ArrayList<ResourceHandle>();
+        List<ResourceHandle> verified = new ArrayList<ResourceHandle>();
+        long currentTime = System.currentTimeMillis();
+
+        ResourceHandle h;
+        int toVisit = ds.getFreeListSize();
+        while (toVisit-- > 0 && (h = ds.getResource()) != null) {
+            if (currentTime - h.getLastValidated() < validationPeriod) {
+                //verified recently, by a request or by the previous run
+                verified.add(h);
+            } else {
+                toValidate.add(h);
+            }
+        }
+        for (ResourceHandle resource : verified) {
+            returnResource(resource);
+        }
+
+        Iterator<ResourceHandle> it = toValidate.iterator();
+        try {
+            while (it.hasNext() && getWaitQueueLength() == 0) {
+                h = it.next();
+                it.remove();
+                if (validate(h)) {
+                    validated++;
+                } else {
+                    removed++;
+                }
+            }
+        } finally {
+            //not validated in this run as requests are waiting
+            while (it.hasNext()) {
+                returnResource(it.next());
+            }
+        }
+        logValidation(validated, removed);
+        return removed;
+    }
+
+    /**
+     * Validates a resource taken out of the pool, and gives it back or removes
+     * it from the pool.
+     *
+     * @return true if the resource is valid
+     */
+    private boolean validate(ResourceHandle h) {
+        if (isConnectionValid(h)) {
+            h.setLastValidated(System.currentTimeMillis());
+            returnResource(h);
+            return true;
+        }
+        ds.removeResource(h);
+        invalidConnectionDetected(h);
+        return false;
+    }
+
+    private void logValidation(int validated, int removed) {
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "Background validation of pool [ " + poolInfo + " ] : "
+                    + validated + " resource(s) validated, " + removed + " invalid resource(s) removed");
+        }
+    }
+
+    private boolean isConnectionValid(ResourceHandle h) {
+        ResourceAllocator alloc = h.getResourceAllocator();
+        try {
+            return alloc.isConnectionValid(h);
+        } catch (RuntimeException e) {
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "Exception while validating resource " + h, e);
+            }
+            return false;
+        }
+    }
+
+    private void returnResource(ResourceHandle h) {
+        ds.returnResource(h);
+        if (getWaitQueueLength() > 0) {
+            notifyWaitingThreads();
+        }
+    }
+
+    protected int getWaitQueueLength() {
+        return pool.getWaitQueueLength();
+    }
+
+    protected void notifyWaitingThreads() {
+        pool.notifyWaitingThreads();
+    }
+
+    protected void invalidConnectionDetected(ResourceHandle h) {
+        pool.invalidConnectionDetected(h);
+    }
+}
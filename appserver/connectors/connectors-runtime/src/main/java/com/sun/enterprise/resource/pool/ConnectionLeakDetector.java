@@ -46,9 +46,11 @@ import com.sun.enterprise.util.i18n.StringManager;
 import com.sun.logging.LogDomains;
 import org.glassfish.resourcebase.resources.api.PoolInfo;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.logging.Level;
@@ -58,17 +60,29 @@ import java.util.logging.Logger;
  * Connection leak detector, book keeps the caller stack-trace during getConnection()<br>
  * Once the leak-timeout expires, assumes a connection leak and prints the caller stack-trace<br>
  * Also, reclaims the connection if connection-leak-reclaim in ON<br>
+ * <p>
+ * Traced connections are kept in a timing wheel : a ring of buckets of which
+ * one is checked at every tick, by a single timer task per pool. Starting and
+ * stopping the tracing of a connection only adds it to / removes it from a
+ * bucket, instead of scheduling and canceling a timer task for every
+ * connection. A leak is detected at most two ticks (about 1/30th of the leak
+ * timeout) after the timeout expired.
  *
  * @author Kshitiz Saxena, Jagadish Ramu
  */
 public class ConnectionLeakDetector {
-    private HashMap<ResourceHandle, StackTraceElement[]> connectionLeakThreadStackHashMap;
-    private HashMap<ResourceHandle, ConnectionLeakTask> connectionLeakTimerTaskHashMap;
+    private static final int WHEEL_SIZE = 64;
+    private static final long MIN_TICK_IN_MILLIS = 100;
+
+    private HashMap<ResourceHandle, LeakEntry> connectionLeakEntries;
+    private final List<Set<ResourceHandle>> wheel;
+    private int cursor;
+    private long tickInMillis;
+    private WheelTask wheelTask;
     private boolean connectionLeakTracing;
     private long connectionLeakTimeoutInMillis;
     private boolean connectionLeakReclaim;
     private PoolInfo connectionPoolInfo;
-    private Map<ResourceHandle, ConnectionLeakListener> listeners;
 
     //Lock on HashMap to trace connection leaks
     private final Object connectionLeakLock;
@@ -80,30 +94,40 @@ public class ConnectionLeakDetector {
 
     public ConnectionLeakDetector(PoolInfo poolInfo, boolean leakTracing, long leakTimeoutInMillis, boolean leakReclaim) {
         connectionPoolInfo = poolInfo;
-        connectionLeakThreadStackHashMap = new HashMap<ResourceHandle, StackTraceElement[]>();
-        connectionLeakTimerTaskHashMap = new HashMap<ResourceHandle, ConnectionLeakTask>();
-        listeners = new HashMap<ResourceHandle, ConnectionLeakListener>();
+        connectionLeakEntries = new HashMap<ResourceHandle, LeakEntry>();
+        wheel = new ArrayList<Set<ResourceHandle>>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new HashSet<ResourceHandle>());
+        }
         connectionLeakLock = new Object();
         connectionLeakTracing = leakTracing;
         connectionLeakTimeoutInMillis = leakTimeoutInMillis;
         connectionLeakReclaim = leakReclaim;
+        tickInMillis = computeTick(leakTimeoutInMillis);
     }
 
     public void reset(boolean leakTracing, long leakTimeoutInMillis, boolean leakReclaim) {
         if (!connectionLeakTracing && leakTracing) {
             clearAllConnectionLeakTasks();
         }
-        connectionLeakTracing = leakTracing;
-        connectionLeakTimeoutInMillis = leakTimeoutInMillis;
-        connectionLeakReclaim = leakReclaim;
-    }
-
-    private void registerListener(ResourceHandle handle, ConnectionLeakListener listener) {
-        listeners.put(handle, listener);
+        synchronized (connectionLeakLock) {
+            connectionLeakTracing = leakTracing;
+            connectionLeakTimeoutInMillis = leakTimeoutInMillis;
+            connectionLeakReclaim = leakReclaim;
+            long tick = computeTick(leakTimeoutInMillis);
+            if (tick != tickInMillis || !leakTracing) {
+                tickInMillis = tick;
+                cancelWheelTask();
+                if (leakTracing && !connectionLeakEntries.isEmpty()) {
+                    scheduleWheelTask();
+                }
+            }
+        }
     }
 
-    private void unRegisterListener(ResourceHandle handle) {
-        listeners.remove(handle);
+    private static long computeTick(long leakTimeoutInMillis) {
+        //leaves room in the wheel for the partial tick in progress
+        return Math.max(MIN_TICK_IN_MILLIS, leakTimeoutInMillis / (WHEEL_SIZE - 4));
     }
 
     /**
@@ -115,13 +139,20 @@ public class ConnectionLeakDetector {
     public void startConnectionLeakTracing(ResourceHandle resourceHandle, ConnectionLeakListener listener) {
         if (connectionLeakTracing) {
             synchronized (connectionLeakLock) {
-                if (!connectionLeakThreadStackHashMap.containsKey(resourceHandle)) {
-                    connectionLeakThreadStackHashMap.put(resourceHandle, Thread.currentThread().getStackTrace());
-                    ConnectionLeakTask connectionLeakTask = new ConnectionLeakTask(resourceHandle);
-                    connectionLeakTimerTaskHashMap.put(resourceHandle, connectionLeakTask);
-                    registerListener(resourceHandle, listener);
-                    if (getTimer() != null)
-                        getTimer().schedule(connectionLeakTask, connectionLeakTimeoutInMillis);
+                if (!connectionLeakEntries.containsKey(resourceHandle)) {
+                    if (wheelTask == null && !scheduleWheelTask()) {
+                        return;
+                    }
+                    LeakEntry entry = new LeakEntry(Thread.currentThread().getStackTrace(), listener,
+                            System.currentTimeMillis() + connectionLeakTimeoutInMillis);
+                    //one more tick as the current one is partly elapsed. An entry
+                    //that is not due when its bucket is checked waits for the next
+                    //revolution, which only happens if the timeout was changed.
+                    long ticks = Math.min(WHEEL_SIZE - 1,
+                            (connectionLeakTimeoutInMillis + tickInMillis - 1) / tickInMillis + 1);
+                    entry.bucket = (int) ((cursor + ticks) % WHEEL_SIZE);
+                    wheel.get(entry.bucket).add(resourceHandle);
+                    connectionLeakEntries.put(resourceHandle, entry);
                 }
             }
         }
@@ -136,14 +167,35 @@ public class ConnectionLeakDetector {
     public void stopConnectionLeakTracing(ResourceHandle resourceHandle, ConnectionLeakListener listener) {
         if (connectionLeakTracing) {
             synchronized (connectionLeakLock) {
-                if (connectionLeakThreadStackHashMap.containsKey(resourceHandle)) {
-                    connectionLeakThreadStackHashMap.remove(resourceHandle);
-                    ConnectionLeakTask connectionLeakTask = connectionLeakTimerTaskHashMap.remove(resourceHandle);
-                    connectionLeakTask.cancel();
-                    getTimer().purge();
-                    unRegisterListener(resourceHandle);
+                LeakEntry entry = connectionLeakEntries.remove(resourceHandle);
+                if (entry != null) {
+                    wheel.get(entry.bucket).remove(resourceHandle);
+                }
+            }
+        }
+    }
+
+    /**
+     * Advances the wheel by one bucket and reports the connections of this
+     * bucket whose leak timeout expired.
+     */
+    private void tick() {
+        synchronized (connectionLeakLock) {
+            cursor = (cursor + 1) % WHEEL_SIZE;
+            Set<ResourceHandle> bucket = wheel.get(cursor);
+            if (bucket.isEmpty()) {
+                return;
+            }
+            long currentTime = System.currentTimeMillis();
+            List<ResourceHandle> expired = new ArrayList<ResourceHandle>();
+            for (ResourceHandle resourceHandle : bucket) {
+                if (connectionLeakEntries.get(resourceHandle).deadline <= currentTime) {
+                    expired.add(resourceHandle);
                 }
             }
+            for (ResourceHandle resourceHandle : expired) {
+                potentialConnectionLeakFound(resourceHandle);
+            }
         }
     }
 
@@ -154,18 +206,16 @@ public class ConnectionLeakDetector {
      */
     private void potentialConnectionLeakFound(ResourceHandle resourceHandle) {
         synchronized (connectionLeakLock) {
-            if (connectionLeakThreadStackHashMap.containsKey(resourceHandle)) {
-                StackTraceElement[] threadStack = connectionLeakThreadStackHashMap.remove(resourceHandle);
-                ConnectionLeakListener connLeakListener = listeners.get(resourceHandle);
+            LeakEntry entry = connectionLeakEntries.remove(resourceHandle);
+            if (entry != null) {
+                wheel.get(entry.bucket).remove(resourceHandle);
+                ConnectionLeakListener connLeakListener = entry.listener;
                 connLeakListener.potentialConnectionLeakFound();
-                printConnectionLeakTrace(threadStack, connLeakListener);
-                connectionLeakTimerTaskHashMap.remove(resourceHandle);
+                printConnectionLeakTrace(entry.threadStack, connLeakListener);
                 if (connectionLeakReclaim) {
                     resourceHandle.markForReclaim(true);
                     connLeakListener.reclaimConnection(resourceHandle);
                 }
-                //Unregister here as the listeners would still be present in the map.
-                unRegisterListener(resourceHandle);
             }
         }
     }
@@ -199,33 +249,65 @@ public class ConnectionLeakDetector {
      */
     private void clearAllConnectionLeakTasks() {
         synchronized (connectionLeakLock) {
-            Iterator<Map.Entry<ResourceHandle, ConnectionLeakTask>> entries =
-                    connectionLeakTimerTaskHashMap.entrySet().iterator();
-            while (entries.hasNext()) {
-                Map.Entry<ResourceHandle, ConnectionLeakTask> connectionLeakTaskEntry = entries.next();
-                connectionLeakTaskEntry.getValue().cancel();
+            cancelWheelTask();
+            for (Set<ResourceHandle> bucket : wheel) {
+                bucket.clear();
             }
-            if (getTimer() != null)
-                getTimer().purge();
-            connectionLeakThreadStackHashMap.clear();
-            connectionLeakTimerTaskHashMap.clear();
+            connectionLeakEntries.clear();
         }
     }
 
-    private Timer getTimer() {
-        return ConnectorRuntime.getRuntime().getTimer();
+    /**
+     * Schedules the task that advances the wheel. Must be called with the
+     * connectionLeakLock held.
+     *
+     * @return false when no timer is available
+     */
+    private boolean scheduleWheelTask() {
+        Timer timer = getTimer();
+        if (timer == null) {
+            return false;
+        }
+        wheelTask = new WheelTask();
+        timer.scheduleAtFixedRate(wheelTask, tickInMillis, tickInMillis);
+        return true;
+    }
+
+    /**
+     * Must be called with the connectionLeakLock held.
+     */
+    private void cancelWheelTask() {
+        if (wheelTask != null) {
+            wheelTask.cancel();
+            wheelTask = null;
+            Timer timer = getTimer();
+            if (timer != null) {
+                timer.purge();
+            }
+        }
     }
 
-    private class ConnectionLeakTask extends TimerTask {
+    protected Timer getTimer() {
+        return ConnectorRuntime.getRuntime().getTimer();
+    }
 
-        private ResourceHandle resourceHandle;
+    private static class LeakEntry {
+        private final StackTraceElement[] threadStack;
+        private final ConnectionLeakListener listener;
+        private final long deadline;
+        private int bucket;
 
-        ConnectionLeakTask(ResourceHandle resourceHandle) {
-            this.resourceHandle = resourceHandle;
+        LeakEntry(StackTraceElement[] threadStack, ConnectionLeakListener listener, long deadline) {
+            this.threadStack = threadStack;
+            this.listener = listener;
+            this.deadline = deadline;
         }
+    }
+
+    private class WheelTask extends TimerTask {
 
         public void run() {
-            potentialConnectionLeakFound(resourceHandle);
+            tick();
         }
     }
 }
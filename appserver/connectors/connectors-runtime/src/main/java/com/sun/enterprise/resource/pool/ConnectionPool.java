@@ -96,6 +96,8 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
     protected boolean preferValidateOverRecreate = false;
     // hold on to the resizer task so we can cancel/reschedule it.
     protected Resizer resizerTask;
+    // validates free connections off the request path, when enabled
+    protected BackgroundValidator validatorTask;
 
 
     protected volatile boolean poolInitialized = false;
@@ -106,6 +108,7 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
     protected int connectionCreationRetryAttempts_;
     protected long conCreationRetryInterval_;
     protected long validateAtmostPeriodInMilliSeconds_;
+    protected long backgroundValidationPeriod_;
     protected int maxConnectionUsage_;
     //To validate a Sun RA Pool Connection if it hasnot been validated
     //  in the past x sec. (x=idle-timeout)
@@ -232,6 +235,8 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
         // if the idle time out is 0, then don't schedule the resizer task
         if (idletime > 0) {
             scheduleResizerTask();
+        } else {
+            scheduleValidatorTask();
         }
 
         //Need to set the numConnFree of monitoring statistics to the steadyPoolSize
@@ -266,6 +271,27 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
         if (_logger.isLoggable(Level.FINEST)) {
             _logger.finest("scheduled resizer task");
         }
+        scheduleValidatorTask();
+    }
+
+    /**
+     * Schedules the background validation of free connections if connection
+     * validation and background-validation-period are set. A scheduled task
+     * is canceled and replaced.
+     */
+    private void scheduleValidatorTask() {
+        if (validatorTask != null) {
+            validatorTask.cancel();
+            validatorTask = null;
+        }
+        if (!validation || backgroundValidationPeriod_ <= 0) {
+            return;
+        }
+        validatorTask = new BackgroundValidator(poolInfo, ds, this, backgroundValidationPeriod_);
+        validatorTask.schedule();
+        if (_logger.isLoggable(Level.FINEST)) {
+            _logger.finest("scheduled background validator task");
+        }
     }
 
     protected Resizer initializeResizer() {
@@ -361,13 +387,19 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
            //matching
         */
         ResourceHandle result = null;
+        //resource handed over by a releasing thread, when the wait queue supports it
+        ResourceHandle handedOff = null;
 
         long startTime = System.currentTimeMillis();
         long elapsedWaitTime;
         long remainingWaitTime = 0;
 
         while (true) {
-            if (gateway.allowed()) {
+            if (handedOff != null) {
+                result = acceptHandedOffResource(handedOff, alloc);
+                handedOff = null;
+            }
+            if (result == null && gateway.allowed()) {
                 //See comment #1 above
                 JavaEETransaction jtx = ((JavaEETransaction) txn);
                 Set resourcesSet = null;
@@ -422,32 +454,19 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
 
                 if (!blocked) {
                     //add to wait-queue
-                    Object waitMonitor = new Object();
                     if (poolLifeCycleListener != null) {
                         poolLifeCycleListener.connectionRequestQueued();
                     }
-                    synchronized (waitMonitor) {
-                        waitQueue.addToQueue(waitMonitor);
-
-                        try {
-                            logFine("Resource Pool: getting on wait queue");
-                            waitMonitor.wait(remainingWaitTime);
-
-                        } catch (InterruptedException ex) {
-                            //Could be system shutdown.
-                            break;
-                        }
-
-                        //try to remove in case that the monitor has timed
-                        // out.  We dont expect the queue to grow to great numbers
-                        // so the overhead for removing inexistant objects is low.
-                        if (_logger.isLoggable(Level.FINE)) {
-                            _logger.log(Level.FINE, "removing wait monitor from queue: " + waitMonitor);
-                        }
-                        if (waitQueue.removeFromQueue(waitMonitor)) {
-                            if (poolLifeCycleListener != null) {
-                                poolLifeCycleListener.connectionRequestDequeued();
-                            }
+                    try {
+                        logFine("Resource Pool: getting on wait queue");
+                        handedOff = waitQueue.waitForResource(acceptsHandOff(txn), remainingWaitTime);
+                    } catch (InterruptedException ex) {
+                        //Could be system shutdown.
+                        break;
+                    } finally {
+                        //the request is no longer queued, whether it was woken up or timed out
+                        if (poolLifeCycleListener != null) {
+                            poolLifeCycleListener.connectionRequestDequeued();
                         }
                     }
                 } else {
@@ -492,6 +511,61 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
         return result;
     }
 
+    /**
+     * Whether a resource freed by another thread can be handed directly to a
+     * request of the given transaction. A handed over resource skips
+     * getResourceFromTransaction and prefetch, so it is only accepted by requests
+     * for which both would find nothing: the transaction, if any, has no resource
+     * of this pool yet, and a non-XA transaction cannot be given a second one.
+     *
+     * @param tran Transaction of the request
+     * @return boolean indicating whether the request accepts a handed over resource
+     */
+    protected boolean acceptsHandOff(Transaction tran) {
+        if (tran == null) {
+            return true;
+        }
+        Set set = ((JavaEETransaction) tran).getResources(poolInfo);
+        return set == null || set.isEmpty();
+    }
+
+    /**
+     * A resource handed over by a releasing thread never went back to the datastructure,
+     * it still has to be matched and validated for this request.<br>
+     * When the resource cannot be used, it is returned to the datastructure (or removed
+     * when invalid) and the request goes through the regular path again.
+     *
+     * @param h     resource handed over
+     * @param alloc ResourceAllocator of the request
+     * @return the resource, marked busy, or null if it cannot serve the request
+     */
+    private ResourceHandle acceptHandedOffResource(ResourceHandle h, ResourceAllocator alloc) {
+        if (!h.hasConnectionErrorOccurred() && matchConnection(h, alloc)) {
+            boolean isValid = isConnectionValid(h, alloc);
+            if (h.hasConnectionErrorOccurred() || !isValid) {
+                //the resource is still free, so deleting it decrements NumConnFree that
+                //freeResource incremented, as for an invalid resource found in the datastructure
+                ds.removeResource(h);
+                return null;
+            }
+            if (h.isShareable() == alloc.shareableWithinComponent()) {
+                setResourceStateToBusy(h);
+                if (maxConnectionUsage_ > 0) {
+                    h.incrementUsageCount();
+                }
+                if (poolLifeCycleListener != null) {
+                    poolLifeCycleListener.connectionUsed(h.getId());
+                    poolLifeCycleListener.decrementNumConnFree();
+                }
+                return h;
+            }
+        }
+        ds.returnResource(h);
+        //some other waiting request may be able to use it.
+        notifyWaitingThreads();
+        return null;
+    }
+
     /**
      * Overridden in AssocWithThreadResourcePool to fetch the resource
      * cached in the ThreadLocal
@@ -649,9 +723,14 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
             long validationPeriod;
             //validation period is idle timeout if validateAtmostEveryIdleSecs is set to true
             //else it is validateAtmostPeriodInMilliSeconds_
-            if (validation)
+            if (validation) {
                 validationPeriod = validateAtmostPeriodInMilliSeconds_;
-            else
+                //connections are verified by the background validator, trust
+                //those verified by one of its last two runs
+                if (validationPeriod == 0 && backgroundValidationPeriod_ > 0) {
+                    validationPeriod = 2 * backgroundValidationPeriod_;
+                }
+            } else
                 validationPeriod = idletime;
             boolean validationRequired = true;
             long currentTime = h.getLastValidated();
@@ -1059,13 +1138,17 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
                     resourceHandle.getUsageCount() >= maxConnectionUsage_) {
                  performMaxConnectionUsageOperation(resourceHandle);
             } else {
-                // Put it back to the free collection.
-                ds.returnResource(resourceHandle);
                 //update the monitoring data
                 if (poolLifeCycleListener != null && !resourceHandle.getDestroyByLeakTimeOut()) {
                     poolLifeCycleListener.decrementConnectionUsed(resourceHandle.getId());
                     poolLifeCycleListener.incrementNumConnFree(false, steadyPoolSize);
                 }
+                //Give it straight to the longest waiting request, if any.
+                if (waitQueue.handOff(resourceHandle)) {
+                    return;
+                }
+                // Put it back to the free collection.
+                ds.returnResource(resourceHandle);
             }
             //for both the cases of free.add and maxConUsageOperation, a free resource is added.
             // Hence notify waiting threads
@@ -1216,25 +1299,9 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
 
 
     protected void notifyWaitingThreads() {
-        // notify the first thread in the waitqueue
-        Object waitMonitor = null;
-        synchronized (waitQueue) {
-            if (waitQueue.getQueueLength() > 0) {
-                waitMonitor = waitQueue.remove();
-                if(poolLifeCycleListener != null) {
-                    poolLifeCycleListener.connectionRequestDequeued();
-                }
-            }
-        }
-        if (waitMonitor != null) {
-            synchronized (waitMonitor) {
-                if (_logger.isLoggable(Level.FINE)) {
-                    _logger.log(Level.FINE, "Notifying wait monitor : " + waitMonitor.toString());
-                }
-                waitMonitor.notifyAll();
-            }
-        } else {
-            logFine(" Wait monitor is null");
+        // notify the first thread in the waitqueue, waiters account for their own dequeue
+        if (!waitQueue.wakeUp()) {
+            logFine(" No waiter to wake up");
         }
     }
 
@@ -1383,6 +1450,9 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
         validation = poolResource.isIsConnectionValidationRequired();
         failAllConnections = poolResource.isFailAllConnections();
         setAdvancedPoolConfiguration(poolResource);
+        if (poolInitialized) {
+            scheduleValidatorTask();
+        }
 
         //Self managed quantities. These are ignored if self management
         //is on
@@ -1461,6 +1531,7 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
 
         validateAtmostPeriodInMilliSeconds_ =
                 Integer.parseInt(poolResource.getValidateAtmostOncePeriod()) * 1000L;
+        backgroundValidationPeriod_ = poolResource.getBackgroundValidationPeriod();
         boolean connectionLeakReclaim_ = poolResource.isConnectionReclaim();
         long connectionLeakTimeoutInMilliSeconds_ = Integer.parseInt(
                 poolResource.getConnectionLeakTracingTimeout()) * 1000L;
@@ -1535,6 +1606,11 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
         }
         resizerTask = null;
 
+        if (validatorTask != null) {
+            validatorTask.cancel();
+        }
+        validatorTask = null;
+
         if (timer != null) {
             timer.purge();
         }
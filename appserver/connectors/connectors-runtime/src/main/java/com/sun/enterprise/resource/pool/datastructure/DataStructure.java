@@ -82,6 +82,19 @@ public interface DataStructure {
      */
     ResourceHandle getResource();
 
+    /**
+     * get the specified resource from the datastructure, if it is free<br>
+     * Not supported by default, so that custom datastructures written before
+     * this method need not implement it.
+     *
+     * @param resource ResourceHandle
+     * @return true if the resource was free and is now in use
+     * @throws UnsupportedOperationException if the datastructure cannot take out a given resource
+     */
+    default boolean acquireResource(ResourceHandle resource) {
+        throw new UnsupportedOperationException("acquireResource");
+    }
+
     /**
      * remove the specified resource from the datastructure
      *
@@ -161,6 +161,15 @@ public class ListDataStructure implements DataStructure {
         return resource;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public boolean acquireResource(ResourceHandle resource) {
+        synchronized (free) {
+            return free.remove(resource);
+        }
+    }
+
     /**
      * remove the specified resource from the datastructure
      *
@@ -232,7 +241,9 @@ public class ListDataStructure implements DataStructure {
      */
     @Override
     public ArrayList<ResourceHandle> getAllResources() {
-        return this.resources;
+        synchronized (resources) {
+            return new ArrayList<ResourceHandle>(resources);
+        }
     }
 
     /**
@@ -0,0 +1,287 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool.datastructure;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.allocator.ResourceAllocator;
+import com.sun.enterprise.resource.pool.ResourceHandler;
+import com.sun.logging.LogDomains;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lock free datastructure that can be used by connection pool.<br>
+ * Every resource is tracked by a slot whose state (free, in-use, removed) is
+ * changed by compare-and-set, so checkout and return never take a pool wide lock.
+ * A thread first tries to re-acquire the resource it used last (thread-local
+ * fast path) and otherwise polls a deque of free slots. Returned resources are
+ * pushed to the head of the deque so that recently used connections are reused
+ * first and idle ones are left for the resizer.<br>
+ * The order in which free resources are handed out is part of the design, a
+ * resource selection strategy is not supported.
+ */
+public class LockFreeDataStructure implements DataStructure {
+
+    private static final int STATE_FREE = 0;
+    private static final int STATE_IN_USE = 1;
+    private static final int STATE_REMOVED = 2;
+
+    private final ConcurrentHashMap<ResourceHandle, Slot> slots;
+    private final ConcurrentLinkedDeque<Slot> free = new ConcurrentLinkedDeque<Slot>();
+    private final ThreadLocal<WeakReference<Slot>> lastUsed = new ThreadLocal<WeakReference<Slot>>();
+
+    //number of resources created or being created, used to honour maxSize
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final AtomicInteger freeCount = new AtomicInteger();
+    private volatile int maxSize;
+
+    private ResourceHandler handler;
+
+    protected final static Logger _logger =
+            LogDomains.getLogger(LockFreeDataStructure.class, LogDomains.RSR_LOGGER);
+
+    public LockFreeDataStructure(String parameters, int maxSize,
+                                 ResourceHandler handler, String strategyClass) throws PoolingException {
+        if (strategyClass != null) {
+            throw new PoolingException("Resource selection strategy " + strategyClass
+                    + " is not supported by " + LockFreeDataStructure.class.getName());
+        }
+        slots = new ConcurrentHashMap<ResourceHandle, Slot>((maxSize > 1000) ? 1000 : Math.max(maxSize, 16));
+        this.maxSize = maxSize;
+        this.handler = handler;
+        if (_logger.isLoggable(Level.FINEST)) {
+            _logger.log(Level.FINEST, "pool.datastructure.lockfreeds.init");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int addResource(ResourceAllocator allocator, int count) throws PoolingException {
+        int numResAdded = 0;
+        for (int i = 0; i < count && reserve(); i++) {
+            ResourceHandle handle;
+            try {
+                handle = handler.createResource(allocator);
+            } catch (Exception e) {
+                reserved.decrementAndGet();
+                PoolingException pe = new PoolingException(e.getMessage());
+                pe.initCause(e);
+                throw pe;
+            }
+            Slot slot = new Slot(handle);
+            slots.put(handle, slot);
+            freeCount.incrementAndGet();
+            slot.queued.set(true);
+            free.offerLast(slot);
+            numResAdded++;
+        }
+        return numResAdded;
+    }
+
+    /**
+     * Reserves capacity for one more resource, if maxSize permits.
+     * @return true when a resource may be created
+     */
+    private boolean reserve() {
+        while (true) {
+            int current = reserved.get();
+            if (current >= maxSize) {
+                return false;
+            }
+            if (reserved.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ResourceHandle getResource() {
+        WeakReference<Slot> ref = lastUsed.get();
+        if (ref != null) {
+            Slot slot = ref.get();
+            if (slot != null && acquire(slot)) {
+                return slot.handle;
+            }
+        }
+
+        Slot slot;
+        while ((slot = free.pollFirst()) != null) {
+            //the slot must be marked as dequeued before trying to acquire it, so that
+            //a concurrent return of the same slot re-queues it when we lose the race.
+            slot.queued.set(false);
+            if (acquire(slot)) {
+                lastUsed.set(slot.self);
+                return slot.handle;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The slot stays in the deque of free slots, getResource() skips it.
+     */
+    public boolean acquireResource(ResourceHandle resource) {
+        Slot slot = slots.get(resource);
+        return slot != null && acquire(slot);
+    }
+
+    private boolean acquire(Slot slot) {
+        if (slot.state.compareAndSet(STATE_FREE, STATE_IN_USE)) {
+            freeCount.decrementAndGet();
+            slot.handle.setBusy(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeResource(ResourceHandle resource) {
+        Slot slot = slots.remove(resource);
+        if (slot != null) {
+            discard(slot);
+            handler.deleteResource(resource);
+        }
+    }
+
+    private void discard(Slot slot) {
+        if (slot.state.getAndSet(STATE_REMOVED) == STATE_FREE) {
+            freeCount.decrementAndGet();
+        }
+        reserved.decrementAndGet();
+        //a queued slot is dropped lazily by getResource(), its state being REMOVED.
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void returnResource(ResourceHandle resource) {
+        Slot slot = slots.get(resource);
+        if (slot == null) {
+            return;
+        }
+        resource.setBusy(false);
+        if (slot.state.compareAndSet(STATE_IN_USE, STATE_FREE)) {
+            freeCount.incrementAndGet();
+            if (slot.queued.compareAndSet(false, true)) {
+                free.offerFirst(slot);
+            }
+            lastUsed.set(slot.self);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getFreeListSize() {
+        return freeCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeAll() {
+        Iterator<Slot> it = slots.values().iterator();
+        while (it.hasNext()) {
+            Slot slot = it.next();
+            it.remove();
+            discard(slot);
+            handler.deleteResource(slot.handle);
+        }
+        free.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getResourcesSize() {
+        return slots.size();
+    }
+
+    /**
+     * Set maxSize based on the new max pool size set on the connection pool
+     * during a reconfiguration. Resources above the new limit are not destroyed
+     * here, the pool removes them via removeResource().
+     *
+     * @param maxSize
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ArrayList<ResourceHandle> getAllResources() {
+        return new ArrayList<ResourceHandle>(slots.keySet());
+    }
+
+    /**
+     * Holder of the per-resource state.
+     */
+    private static final class Slot {
+        private final ResourceHandle handle;
+        private final AtomicInteger state = new AtomicInteger(STATE_FREE);
+        //whether the slot is currently present in the free deque
+        private final AtomicBoolean queued = new AtomicBoolean(false);
+        //cached to avoid allocating a reference for every checkout
+        private final WeakReference<Slot> self = new WeakReference<Slot>(this);
+
+        Slot(ResourceHandle handle) {
+            this.handle = handle;
+        }
+    }
+}
@@ -161,6 +161,22 @@ public class RWLockDataStructure implements DataStructure {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public boolean acquireResource(ResourceHandle resource) {
+        writeLock.lock();
+        try {
+            if (!resource.isBusy() && resources.contains(resource)) {
+                resource.setBusy(true);
+                return true;
+            }
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -230,6 +246,11 @@ public class RWLockDataStructure implements DataStructure {
 
     @Override
     public ArrayList<ResourceHandle> getAllResources() {
-        throw new UnsupportedOperationException("Not supported yet.");
+        readLock.lock();
+        try {
+            return new ArrayList<ResourceHandle>(resources);
+        } finally {
+            readLock.unlock();
+        }
     }
 }
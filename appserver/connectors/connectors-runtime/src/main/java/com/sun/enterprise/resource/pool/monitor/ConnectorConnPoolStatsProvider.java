@@ -139,6 +139,26 @@ public class ConnectorConnPoolStatsProvider {
     private CountStatisticImpl waitQueueLength = new CountStatisticImpl(
             "WaitQueueLength", StatisticImpl.UNIT_COUNT, 
             "Number of connection requests in the queue waiting to be serviced.");    
+
+    //Histogram of the wait times of served connection requests
+    private CountStatisticImpl connRequestWaitTimeUpTo1ms = new CountStatisticImpl(
+            "ConnRequestWaitTimeUpTo1ms", StatisticImpl.UNIT_COUNT,
+            "Number of connection requests served within 1 millisecond");
+    private CountStatisticImpl connRequestWaitTimeUpTo10ms = new CountStatisticImpl(
+            "ConnRequestWaitTimeUpTo10ms", StatisticImpl.UNIT_COUNT,
+            "Number of connection requests served in more than 1 and up to 10 milliseconds");
+    private CountStatisticImpl connRequestWaitTimeUpTo100ms = new CountStatisticImpl(
+            "ConnRequestWaitTimeUpTo100ms", StatisticImpl.UNIT_COUNT,
+            "Number of connection requests served in more than 10 and up to 100 milliseconds");
+    private CountStatisticImpl connRequestWaitTimeUpTo1s = new CountStatisticImpl(
+            "ConnRequestWaitTimeUpTo1s", StatisticImpl.UNIT_COUNT,
+            "Number of connection requests served in more than 100 milliseconds and up to 1 second");
+    private CountStatisticImpl connRequestWaitTimeUpTo10s = new CountStatisticImpl(
+            "ConnRequestWaitTimeUpTo10s", StatisticImpl.UNIT_COUNT,
+            "Number of connection requests served in more than 1 and up to 10 seconds");
+    private CountStatisticImpl connRequestWaitTimeOver10s = new CountStatisticImpl(
+            "ConnRequestWaitTimeOver10s", StatisticImpl.UNIT_COUNT,
+            "Number of connection requests served in more than 10 seconds");
     private static final String JCA_PROBE_LISTENER = "glassfish:jca:connection-pool:";
 
     public ConnectorConnPoolStatsProvider(PoolInfo poolInfo, Logger logger) {
@@ -370,8 +390,29 @@ public class ConnectorConnPoolStatsProvider {
             }
             connRequestWaitTime.setCurrent(timeTakenInMillis);
             totalConnRequestWaitTime.increment(timeTakenInMillis);
+            recordConnRequestWaitTime(timeTakenInMillis);
         }        
     }  
+
+    /**
+     * Add the wait time of a served connection request to the wait time histogram.
+     * @param timeTakenInMillis
+     */
+    private void recordConnRequestWaitTime(long timeTakenInMillis) {
+        if (timeTakenInMillis <= 1) {
+            connRequestWaitTimeUpTo1ms.increment();
+        } else if (timeTakenInMillis <= 10) {
+            connRequestWaitTimeUpTo10ms.increment();
+        } else if (timeTakenInMillis <= 100) {
+            connRequestWaitTimeUpTo100ms.increment();
+        } else if (timeTakenInMillis <= 1000) {
+            connRequestWaitTimeUpTo1s.increment();
+        } else if (timeTakenInMillis <= 10000) {
+            connRequestWaitTimeUpTo10s.increment();
+        } else {
+            connRequestWaitTimeOver10s.increment();
+        }
+    }
     
     /**
      * When connection destroyed event is got increment numConnDestroyed.
@@ -480,6 +521,12 @@ public class ConnectorConnPoolStatsProvider {
         averageConnWaitTime.reset();
         totalConnRequestWaitTime.reset();
         waitQueueLength.reset();        
+        connRequestWaitTimeUpTo1ms.reset();
+        connRequestWaitTimeUpTo10ms.reset();
+        connRequestWaitTimeUpTo100ms.reset();
+        connRequestWaitTimeUpTo1s.reset();
+        connRequestWaitTimeUpTo10s.reset();
+        connRequestWaitTimeOver10s.reset();
     }
     
     /**
@@ -707,4 +754,34 @@ public class ConnectorConnPoolStatsProvider {
     public CountStatistic getWaitQueueLength() {
         return waitQueueLength;
     }    
+
+    @ManagedAttribute(id="connrequestwaittimeupto1ms")
+    public CountStatistic getConnRequestWaitTimeUpTo1ms() {
+        return connRequestWaitTimeUpTo1ms;
+    }
+
+    @ManagedAttribute(id="connrequestwaittimeupto10ms")
+    public CountStatistic getConnRequestWaitTimeUpTo10ms() {
+        return connRequestWaitTimeUpTo10ms;
+    }
+
+    @ManagedAttribute(id="connrequestwaittimeupto100ms")
+    public CountStatistic getConnRequestWaitTimeUpTo100ms() {
+        return connRequestWaitTimeUpTo100ms;
+    }
+
+    @ManagedAttribute(id="connrequestwaittimeupto1s")
+    public CountStatistic getConnRequestWaitTimeUpTo1s() {
+        return connRequestWaitTimeUpTo1s;
+    }
+
+    @ManagedAttribute(id="connrequestwaittimeupto10s")
+    public CountStatistic getConnRequestWaitTimeUpTo10s() {
+        return connRequestWaitTimeUpTo10s;
+    }
+
+    @ManagedAttribute(id="connrequestwaittimeover10s")
+    public CountStatistic getConnRequestWaitTimeOver10s() {
+        return connRequestWaitTimeOver10s;
+    }
 }
@@ -0,0 +1,269 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool.waitqueue;
+
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.logging.LogDomains;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fair (FIFO) pool wait queue whose waiting threads are parked with
+ * <code>LockSupport</code> instead of waiting on a monitor.<br>
+ * A resource that is freed while threads are waiting can be handed directly
+ * to the longest waiting thread via {@link #handOff(ResourceHandle)}, without
+ * going through the pool datastructure, if that thread accepts hand-offs.
+ * Only that one thread is woken up.
+ * <p>
+ * Objects other than {@link Waiter} (eg: plain wait monitors) can still be
+ * queued and are then notified the same way as in {@link DefaultPoolWaitQueue}.
+ *
+ * @see com.sun.enterprise.resource.pool.ConnectionPool
+ */
+public class HandOffPoolWaitQueue implements PoolWaitQueue {
+
+    //outcome of a waiter that was woken up without a resource
+    private static final Object SIGNALLED = new Object();
+    //outcome of a waiter that gave up (timed out or interrupted)
+    private static final Object CANCELLED = new Object();
+
+    private final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<Object>();
+    private final AtomicInteger length = new AtomicInteger();
+
+    protected final static Logger _logger = LogDomains.getLogger(HandOffPoolWaitQueue.class, LogDomains.RSR_LOGGER);
+
+    public HandOffPoolWaitQueue() {
+        debug("Initializing hand-off Pool Wait Queue");
+    }
+
+    public int getQueueLength() {
+        return length.get();
+    }
+
+    public void addToQueue(Object o) {
+        queue.offer(o);
+        length.incrementAndGet();
+    }
+
+    public boolean removeFromQueue(Object o) {
+        if (queue.remove(o)) {
+            length.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public Object remove() {
+        Object o = queue.poll();
+        if (o == null) {
+            throw new NoSuchElementException();
+        }
+        length.decrementAndGet();
+        return o;
+    }
+
+    public Object peek() {
+        return queue.peek();
+    }
+
+    public Collection getQueueContents() {
+        return Collections.unmodifiableList(new ArrayList<Object>(queue));
+    }
+
+    /**
+     * Hands the resource over to the longest waiting thread, provided that its
+     * request accepts hand-offs. Otherwise that thread has to get the resource
+     * through the pool, in FIFO order.
+     *
+     * @param resource free resource
+     * @return true if a waiting thread took the resource, false if there was no
+     * waiting thread accepting it and the resource has to be returned to the pool.
+     */
+    public boolean handOff(ResourceHandle resource) {
+        Object o;
+        while ((o = queue.peek()) != null) {
+            if (!(o instanceof Waiter) || !((Waiter) o).acceptsHandOff) {
+                return false;
+            }
+            if (removeFromQueue(o) && ((Waiter) o).complete(resource)) {
+                return true;
+            }
+            //waiter has given up or was completed concurrently, try the next one.
+        }
+        return false;
+    }
+
+    /**
+     * Wakes up the longest waiting thread without giving it a resource so that
+     * it retries to get one from the pool.
+     *
+     * @return true if a waiting thread was woken up
+     */
+    public boolean wakeUp() {
+        return complete(SIGNALLED);
+    }
+
+    private boolean complete(Object outcome) {
+        Object o;
+        while ((o = queue.poll()) != null) {
+            length.decrementAndGet();
+            if (o instanceof Waiter) {
+                if (((Waiter) o).complete(outcome)) {
+                    return true;
+                }
+                //waiter has given up already, try the next one.
+            } else {
+                synchronized (o) {
+                    o.notifyAll();
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parks the calling thread in this queue, see {@link #await(Waiter, long)}.
+     */
+    public ResourceHandle waitForResource(boolean acceptsHandOff, long waitTime)
+            throws InterruptedException {
+        Waiter waiter = new Waiter(acceptsHandOff);
+        addToQueue(waiter);
+        return await(waiter, waitTime);
+    }
+
+    /**
+     * Parks the calling thread until it is handed a resource, woken up, or
+     * the wait time expires. The waiter must have been added to this queue
+     * by the calling thread.
+     *
+     * @param waiter   waiter of the calling thread
+     * @param waitTime time to wait in milliseconds, 0 to wait indefinitely
+     * @return resource handed over or null when woken up without one or timed out
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public ResourceHandle await(Waiter waiter, long waitTime) throws InterruptedException {
+        long deadline = (waitTime > 0) ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTime) : 0;
+        while (true) {
+            Object outcome = waiter.outcome.get();
+            if (outcome != null) {
+                return (outcome instanceof ResourceHandle) ? (ResourceHandle) outcome : null;
+            }
+            if (Thread.interrupted()) {
+                if (cancel(waiter)) {
+                    throw new InterruptedException();
+                }
+                //completed concurrently, do not lose the resource.
+                Thread.currentThread().interrupt();
+                continue;
+            }
+            if (waitTime > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    if (cancel(waiter)) {
+                        return null;
+                    }
+                    continue;
+                }
+                LockSupport.parkNanos(this, remaining);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private boolean cancel(Waiter waiter) {
+        if (waiter.outcome.compareAndSet(null, CANCELLED)) {
+            removeFromQueue(waiter);
+            return true;
+        }
+        return false;
+    }
+
+    protected void debug(String debugStatement) {
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, debugStatement);
+        }
+    }
+
+    /**
+     * Queue entry of a waiting thread. Must be created by the thread that waits.
+     */
+    public static final class Waiter {
+        private final Thread thread = Thread.currentThread();
+        private final AtomicReference<Object> outcome = new AtomicReference<Object>();
+        private final boolean acceptsHandOff;
+
+        public Waiter() {
+            this(true);
+        }
+
+        /**
+         * @param acceptsHandOff whether the waiting thread can be handed a resource
+         * directly, or has to get it through the pool once woken up
+         */
+        public Waiter(boolean acceptsHandOff) {
+            this.acceptsHandOff = acceptsHandOff;
+        }
+
+        private boolean complete(Object value) {
+            if (outcome.compareAndSet(null, value)) {
+                LockSupport.unpark(thread);
+                return true;
+            }
+            return false;
+        }
+
+        public String toString() {
+            return "Waiter[" + thread.getName() + "]";
+        }
+    }
+}
@@ -40,6 +40,8 @@
 
 package com.sun.enterprise.resource.pool.waitqueue;
 
+import com.sun.enterprise.resource.ResourceHandle;
+
 import java.util.Collection;
 
 /**
@@ -98,4 +100,60 @@ public interface PoolWaitQueue {
      * @return Collection
      */
     Collection getQueueContents();
+
+    /**
+     * Makes the calling thread wait in the queue until it is notified, handed
+     * a resource or the wait time expires. The request is no longer queued when
+     * this method returns.<br>
+     * By default, the request waits on a monitor that is notified by
+     * {@link #wakeUp()} and is never handed a resource.
+     * @param acceptsHandOff whether a freed resource can be handed directly to the request
+     * @param waitTime time to wait in milliseconds, 0 to wait indefinitely
+     * @return resource handed over, or null when notified or timed out
+     * @throws InterruptedException when interrupted while waiting
+     */
+    default ResourceHandle waitForResource(boolean acceptsHandOff, long waitTime)
+            throws InterruptedException {
+        Object waitMonitor = new Object();
+        synchronized (waitMonitor) {
+            addToQueue(waitMonitor);
+            try {
+                waitMonitor.wait(waitTime);
+            } finally {
+                //still queued when timed out or interrupted
+                removeFromQueue(waitMonitor);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wakes up the longest waiting request, which then retries to get a resource
+     * from the pool.
+     * @return boolean indicating whether a request was woken up
+     */
+    default boolean wakeUp() {
+        Object waitMonitor;
+        synchronized (this) {
+            if (getQueueLength() == 0) {
+                return false;
+            }
+            waitMonitor = remove();
+        }
+        synchronized (waitMonitor) {
+            waitMonitor.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Hands a freed resource directly to the longest waiting request, when that
+     * request accepts hand-offs. Not supported by default.
+     * @param resource free resource
+     * @return boolean indicating whether a waiting request took the resource,
+     * otherwise the resource has to be returned to the pool.
+     */
+    default boolean handOff(ResourceHandle resource) {
+        return false;
+    }
 }
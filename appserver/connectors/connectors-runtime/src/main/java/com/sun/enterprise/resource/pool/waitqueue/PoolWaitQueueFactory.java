@@ -61,7 +61,11 @@ public class PoolWaitQueueFactory {
         PoolWaitQueue waitQueue;
 
         if (className != null) {
-            waitQueue = initializeCustomWaitQueueInPrivilegedMode(className);
+            if (className.equals(HandOffPoolWaitQueue.class.getName())) {
+                waitQueue = new HandOffPoolWaitQueue();
+            } else {
+                waitQueue = initializeCustomWaitQueueInPrivilegedMode(className);
+            }
         } else {
             waitQueue = new DefaultPoolWaitQueue();
             debug("Initializing Default Pool Wait Queue");
@@ -0,0 +1,291 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.allocator.ResourceAllocator;
+import com.sun.enterprise.resource.pool.datastructure.DataStructure;
+import com.sun.enterprise.resource.pool.datastructure.ListDataStructure;
+import com.sun.enterprise.resource.pool.datastructure.LockFreeDataStructure;
+import com.sun.enterprise.resource.pool.datastructure.RWLockDataStructure;
+
+import javax.resource.ResourceException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BackgroundValidatorTest {
+
+    private static final long PERIOD = 60000;
+
+    private final Set<ResourceHandle> invalid = new HashSet<ResourceHandle>();
+    private final List<ResourceHandle> validatedResources = new ArrayList<ResourceHandle>();
+    private int inUseWhileValidating;
+    private int waitQueueLength;
+    private DataStructure ds;
+
+    @Test
+    public void validatesAndRemovesFreeResources() throws Exception {
+        for (DataStructure dataStructure : dataStructures()) {
+            reset(dataStructure);
+            ds.addResource(allocator(), 4);
+            List<ResourceHandle> resources = ds.getAllResources();
+            invalid.add(resources.get(1));
+            ResourceHandle inUse = ds.getResource();
+
+            BackgroundValidator validator = new TestValidator(ds);
+            assertEquals(1, validator.validateFreeResources());
+            assertEquals(3, validatedResources.size());
+            assertFalse(validatedResources.contains(inUse));
+            //only the resource being validated is taken out of the pool
+            assertEquals(dataStructure.getClass().getName(), 2, inUseWhileValidating);
+            assertEquals(3, ds.getResourcesSize());
+            assertFalse(ds.getAllResources().contains(resources.get(1)));
+            assertEquals(2, ds.getFreeListSize());
+            for (ResourceHandle h : validatedResources) {
+                if (!invalid.contains(h)) {
+                    assertTrue(h.getLastValidated() > 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void skipsRecentlyValidatedResources() throws Exception {
+        for (DataStructure dataStructure : dataStructures()) {
+            reset(dataStructure);
+            ds.addResource(allocator(), 3);
+            ds.getAllResources().get(0).setLastValidated(System.currentTimeMillis());
+
+            new TestValidator(ds).validateFreeResources();
+            assertEquals(2, validatedResources.size());
+            new TestValidator(ds).validateFreeResources();
+            assertEquals(2, validatedResources.size());
+            assertEquals(3, ds.getFreeListSize());
+        }
+    }
+
+    @Test
+    public void stopsWhenRequestsAreWaiting() throws Exception {
+        for (DataStructure dataStructure : dataStructures()) {
+            reset(dataStructure);
+            ds.addResource(allocator(), 3);
+            waitQueueLength = 1;
+
+            new TestValidator(ds).validateFreeResources();
+            assertTrue(validatedResources.isEmpty());
+            assertEquals(3, ds.getFreeListSize());
+        }
+    }
+
+    @Test
+    public void validatesCustomDataStructureWithoutAcquireResource() throws Exception {
+        reset(new CustomDataStructure(new ListDataStructure(null, 10, new TestResourceHandler(), null)));
+        ds.addResource(allocator(), 3);
+        List<ResourceHandle> resources = ds.getAllResources();
+        invalid.add(resources.get(0));
+        resources.get(2).setLastValidated(System.currentTimeMillis());
+
+        BackgroundValidator validator = new TestValidator(ds);
+        assertEquals(1, validator.validateFreeResources());
+        assertEquals(2, validatedResources.size());
+        assertEquals(2, ds.getResourcesSize());
+        assertEquals(2, ds.getFreeListSize());
+        //next runs do not try acquireResource again
+        assertEquals(0, validator.validateFreeResources());
+        assertEquals(2, validatedResources.size());
+    }
+
+    @Test
+    public void timerStopsWithTheLastTask() throws Exception {
+        BackgroundValidator first = new TestValidator(ds);
+        BackgroundValidator second = new TestValidator(ds);
+        assertFalse(BackgroundValidator.isTimerRunning());
+        first.schedule();
+        second.schedule();
+        assertTrue(BackgroundValidator.isTimerRunning());
+        assertTrue(first.cancel());
+        assertFalse(first.cancel());
+        assertTrue(BackgroundValidator.isTimerRunning());
+        assertTrue(second.cancel());
+        assertFalse(BackgroundValidator.isTimerRunning());
+
+        //a new task starts a new timer
+        BackgroundValidator third = new TestValidator(ds);
+        third.schedule();
+        assertTrue(BackgroundValidator.isTimerRunning());
+        third.cancel();
+        assertFalse(BackgroundValidator.isTimerRunning());
+    }
+
+    private void reset(DataStructure dataStructure) {
+        ds = dataStructure;
+        invalid.clear();
+        validatedResources.clear();
+        inUseWhileValidating = 0;
+        waitQueueLength = 0;
+    }
+
+    private List<DataStructure> dataStructures() throws PoolingException {
+        ResourceHandler handler = new TestResourceHandler();
+        List<DataStructure> list = new ArrayList<DataStructure>();
+        list.add(new RWLockDataStructure(null, 10, handler, null));
+        list.add(new ListDataStructure(null, 10, handler, null));
+        list.add(new LockFreeDataStructure(null, 10, handler, null));
+        return list;
+    }
+
+    private ResourceAllocator allocator() {
+        return (ResourceAllocator) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ResourceAllocator.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("isConnectionValid")) {
+                            ResourceHandle h = (ResourceHandle) args[0];
+                            validatedResources.add(h);
+                            inUseWhileValidating = Math.max(inUseWhileValidating,
+                                    ds.getResourcesSize() - ds.getFreeListSize());
+                            return !invalid.contains(h);
+                        } else if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        } else if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private class TestValidator extends BackgroundValidator {
+
+        TestValidator(DataStructure ds) {
+            super(null, ds, null, PERIOD);
+        }
+
+        @Override
+        protected int getWaitQueueLength() {
+            return waitQueueLength;
+        }
+
+        @Override
+        protected void notifyWaitingThreads() {
+        }
+
+        @Override
+        protected void invalidConnectionDetected(ResourceHandle h) {
+        }
+    }
+
+    /**
+     * Datastructure written before <code>acquireResource</code> was added.
+     */
+    private static class CustomDataStructure implements DataStructure {
+        private final DataStructure delegate;
+
+        CustomDataStructure(DataStructure delegate) {
+            this.delegate = delegate;
+        }
+
+        public void setMaxSize(int maxSize) {
+            delegate.setMaxSize(maxSize);
+        }
+
+        public int addResource(ResourceAllocator allocator, int count) throws PoolingException {
+            return delegate.addResource(allocator, count);
+        }
+
+        public ResourceHandle getResource() {
+            return delegate.getResource();
+        }
+
+        public void removeResource(ResourceHandle resource) {
+            delegate.removeResource(resource);
+        }
+
+        public void returnResource(ResourceHandle resource) {
+            delegate.returnResource(resource);
+        }
+
+        public int getFreeListSize() {
+            return delegate.getFreeListSize();
+        }
+
+        public void removeAll() {
+            delegate.removeAll();
+        }
+
+        public int getResourcesSize() {
+            return delegate.getResourcesSize();
+        }
+
+        public ArrayList<ResourceHandle> getAllResources() {
+            return delegate.getAllResources();
+        }
+    }
+
+    private static class TestResourceHandler implements ResourceHandler {
+
+        public void deleteResource(ResourceHandle resourceHandle) {
+        }
+
+        public ResourceHandle createResource(ResourceAllocator allocator) throws PoolingException {
+            return new ResourceHandle(new Object(), null, allocator, null);
+        }
+
+        public void createResourceAndAddToPool() throws PoolingException {
+            throw new UnsupportedOperationException();
+        }
+
+        public Set getInvalidConnections(Set connections) throws ResourceException {
+            throw new UnsupportedOperationException();
+        }
+
+        public void invalidConnectionDetected(ResourceHandle h) {
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool;
+
+import com.sun.enterprise.resource.ResourceHandle;
+
+import java.util.Timer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.resourcebase.resources.api.PoolInfo;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConnectionLeakDetectorTest {
+
+    private static final long LEAK_TIMEOUT = 300;
+
+    private final Timer timer = new Timer("leak-detector-test", true);
+
+    @After
+    public void cancelTimer() {
+        timer.cancel();
+    }
+
+    @Test
+    public void leakIsReportedAfterTheTimeout() throws Exception {
+        ConnectionLeakDetector detector = new TestDetector(false);
+        TestListener listener = new TestListener();
+        ResourceHandle h = handle();
+        long start = System.currentTimeMillis();
+        detector.startConnectionLeakTracing(h, listener);
+
+        assertTrue(listener.leaked.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= LEAK_TIMEOUT);
+        assertEquals(0, listener.reclaimed.get());
+        assertFalse(h.isMarkedForReclaim());
+    }
+
+    @Test
+    public void leakedConnectionIsReclaimed() throws Exception {
+        ConnectionLeakDetector detector = new TestDetector(true);
+        TestListener listener = new TestListener();
+        ResourceHandle h = handle();
+        detector.startConnectionLeakTracing(h, listener);
+
+        assertTrue(listener.reclaim.await(5, TimeUnit.SECONDS));
+        assertEquals(1, listener.reclaimed.get());
+        assertTrue(h.isMarkedForReclaim());
+    }
+
+    @Test
+    public void returnedConnectionIsNotReported() throws Exception {
+        ConnectionLeakDetector detector = new TestDetector(false);
+        TestListener listener = new TestListener();
+        ResourceHandle returned = handle();
+        ResourceHandle leaked = handle();
+        detector.startConnectionLeakTracing(returned, listener);
+        detector.startConnectionLeakTracing(leaked, listener);
+        detector.stopConnectionLeakTracing(returned, listener);
+
+        assertTrue(listener.leaked.await(5, TimeUnit.SECONDS));
+        Thread.sleep(LEAK_TIMEOUT);
+        assertEquals(1, listener.leaks.get());
+    }
+
+    @Test
+    public void disablingTracingDropsTheTracedConnections() throws Exception {
+        ConnectionLeakDetector detector = new TestDetector(false);
+        TestListener listener = new TestListener();
+        detector.startConnectionLeakTracing(handle(), listener);
+        detector.reset(false, LEAK_TIMEOUT, false);
+        detector.reset(true, LEAK_TIMEOUT, false);
+
+        Thread.sleep(3 * LEAK_TIMEOUT);
+        assertEquals(0, listener.leaks.get());
+    }
+
+    private static ResourceHandle handle() {
+        return new ResourceHandle(new Object(), null, null, null);
+    }
+
+    private class TestDetector extends ConnectionLeakDetector {
+
+        TestDetector(boolean reclaim) {
+            super(new PoolInfo("test-pool"), true, LEAK_TIMEOUT, reclaim);
+        }
+
+        @Override
+        protected Timer getTimer() {
+            return timer;
+        }
+    }
+
+    private static class TestListener implements ConnectionLeakListener {
+
+        private final CountDownLatch leaked = new CountDownLatch(1);
+        private final AtomicInteger leaks = new AtomicInteger();
+        private final AtomicInteger reclaimed = new AtomicInteger();
+        private final CountDownLatch reclaim = new CountDownLatch(1);
+
+        public void potentialConnectionLeakFound() {
+            leaks.incrementAndGet();
+            leaked.countDown();
+        }
+
+        public void printConnectionLeakTrace(StringBuffer stackTrace) {
+        }
+
+        public void reclaimConnection(ResourceHandle handle) {
+            reclaimed.incrementAndGet();
+            reclaim.countDown();
+        }
+    }
+}
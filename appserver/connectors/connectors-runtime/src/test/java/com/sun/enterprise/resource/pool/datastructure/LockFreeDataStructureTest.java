@@ -0,0 +1,183 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool.datastructure;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.resource.ResourceHandle;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LockFreeDataStructureTest {
+
+    private TestResourceHandler handler;
+    private LockFreeDataStructure ds;
+
+    @Before
+    public void setUp() throws Exception {
+        handler = new TestResourceHandler();
+        ds = new LockFreeDataStructure(null, 4, handler, null);
+    }
+
+    @Test
+    public void addResourceHonoursMaxSize() throws Exception {
+        assertEquals(3, ds.addResource(null, 3));
+        assertEquals(1, ds.addResource(null, 3));
+        assertEquals(0, ds.addResource(null, 1));
+        assertEquals(4, ds.getResourcesSize());
+        assertEquals(4, ds.getFreeListSize());
+
+        ds.setMaxSize(6);
+        assertEquals(2, ds.addResource(null, 5));
+        assertEquals(6, handler.created.get());
+    }
+
+    @Test
+    public void getAndReturnResource() throws Exception {
+        ds.addResource(null, 4);
+        Set<ResourceHandle> checkedOut = new HashSet<ResourceHandle>();
+        ResourceHandle h;
+        while ((h = ds.getResource()) != null) {
+            assertTrue(h.isBusy());
+            assertTrue("handle returned twice", checkedOut.add(h));
+        }
+        assertEquals(4, checkedOut.size());
+        assertEquals(0, ds.getFreeListSize());
+
+        for (ResourceHandle handle : checkedOut) {
+            ds.returnResource(handle);
+            assertFalse(handle.isBusy());
+        }
+        assertEquals(4, ds.getFreeListSize());
+    }
+
+    @Test
+    public void lastUsedResourceIsReused() throws Exception {
+        ds.addResource(null, 4);
+        ResourceHandle first = ds.getResource();
+        ds.returnResource(first);
+        assertSame(first, ds.getResource());
+    }
+
+    @Test
+    public void removeResource() throws Exception {
+        ds.addResource(null, 2);
+        ResourceHandle h = ds.getResource();
+        ds.removeResource(h);
+        assertEquals(1, handler.deleted.get());
+        assertEquals(1, ds.getResourcesSize());
+        assertFalse(ds.getAllResources().contains(h));
+
+        //a removed resource must never be handed out again
+        ds.returnResource(h);
+        ResourceHandle other = ds.getResource();
+        assertNotSame(h, other);
+        assertNull(ds.getResource());
+
+        //capacity of the removed resource is available again
+        assertEquals(3, ds.addResource(null, 4));
+    }
+
+    @Test
+    public void removeAll() throws Exception {
+        ds.addResource(null, 4);
+        ds.getResource();
+        ds.removeAll();
+        assertEquals(4, handler.deleted.get());
+        assertEquals(0, ds.getResourcesSize());
+        assertEquals(0, ds.getFreeListSize());
+        assertNull(ds.getResource());
+    }
+
+    @Test(expected = PoolingException.class)
+    public void resourceSelectionStrategyIsRejected() throws Exception {
+        new LockFreeDataStructure(null, 4, handler, "com.example.Strategy");
+    }
+
+    @Test
+    public void concurrentCheckoutNeverSharesAHandle() throws Exception {
+        ds = new LockFreeDataStructure(null, 8, handler, null);
+        ds.addResource(null, 8);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final Set<ResourceHandle> inUse = ConcurrentHashMap.newKeySet();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 16; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 10000; j++) {
+                        ResourceHandle h = ds.getResource();
+                        if (h == null) {
+                            continue;
+                        }
+                        if (!inUse.add(h)) {
+                            failed.set(true);
+                        }
+                        inUse.remove(h);
+                        ds.returnResource(h);
+                    }
+                }
+            };
+            threads.add(t);
+            t.start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertFalse("a handle was checked out by two threads", failed.get());
+        assertEquals(8, ds.getFreeListSize());
+    }
+}
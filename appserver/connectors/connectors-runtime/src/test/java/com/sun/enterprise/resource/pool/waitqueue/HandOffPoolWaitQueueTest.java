@@ -0,0 +1,178 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool.waitqueue;
+
+import com.sun.enterprise.resource.ResourceHandle;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class HandOffPoolWaitQueueTest {
+
+    private HandOffPoolWaitQueue queue;
+
+    @Before
+    public void setUp() {
+        queue = new HandOffPoolWaitQueue();
+    }
+
+    @Test
+    public void handOffWithoutWaiter() {
+        assertFalse(queue.handOff(newHandle()));
+        assertFalse(queue.wakeUp());
+    }
+
+    @Test
+    public void waiterTimesOut() throws Exception {
+        HandOffPoolWaitQueue.Waiter waiter = new HandOffPoolWaitQueue.Waiter();
+        queue.addToQueue(waiter);
+        long start = System.currentTimeMillis();
+        assertNull(queue.await(waiter, 50));
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        assertEquals(0, queue.getQueueLength());
+        assertFalse(queue.handOff(newHandle()));
+    }
+
+    @Test
+    public void handOffToLongestWaiter() throws Exception {
+        BlockingQueue<Object> results = new ArrayBlockingQueue<Object>(2);
+        Thread first = startWaiter("first", results);
+        awaitQueueLength(1);
+        Thread second = startWaiter("second", results);
+        awaitQueueLength(2);
+
+        ResourceHandle h = newHandle();
+        assertTrue(queue.handOff(h));
+        assertEquals("first", results.poll(10, TimeUnit.SECONDS));
+        assertSame(h, results.poll(10, TimeUnit.SECONDS));
+        first.join();
+
+        assertTrue(queue.wakeUp());
+        assertEquals("second", results.poll(10, TimeUnit.SECONDS));
+        assertEquals("none", results.poll(10, TimeUnit.SECONDS));
+        second.join();
+        assertEquals(0, queue.getQueueLength());
+    }
+
+    @Test
+    public void noHandOffToWaiterThatDoesNotAcceptIt() throws Exception {
+        BlockingQueue<Object> results = new ArrayBlockingQueue<Object>(4);
+        Thread first = startWaiter("first", false, queue, results);
+        awaitQueueLength(queue, 1);
+        Thread second = startWaiter("second", true, queue, results);
+        awaitQueueLength(queue, 2);
+
+        //the longest waiting thread gets its resource through the pool
+        assertFalse(queue.handOff(newHandle()));
+        assertEquals(2, queue.getQueueLength());
+
+        assertTrue(queue.wakeUp());
+        assertEquals("first", results.poll(10, TimeUnit.SECONDS));
+        assertEquals("none", results.poll(10, TimeUnit.SECONDS));
+        first.join();
+
+        ResourceHandle h = newHandle();
+        assertTrue(queue.handOff(h));
+        assertEquals("second", results.poll(10, TimeUnit.SECONDS));
+        assertSame(h, results.poll(10, TimeUnit.SECONDS));
+        second.join();
+        assertEquals(0, queue.getQueueLength());
+    }
+
+    @Test
+    public void defaultQueueWaitsOnMonitor() throws Exception {
+        PoolWaitQueue defaultQueue = new DefaultPoolWaitQueue();
+        assertFalse(defaultQueue.wakeUp());
+        assertNull(defaultQueue.waitForResource(true, 20));
+        assertEquals(0, defaultQueue.getQueueLength());
+
+        BlockingQueue<Object> results = new ArrayBlockingQueue<Object>(2);
+        Thread waiting = startWaiter("waiting", true, defaultQueue, results);
+        awaitQueueLength(defaultQueue, 1);
+        assertFalse(defaultQueue.handOff(newHandle()));
+        assertTrue(defaultQueue.wakeUp());
+        assertEquals("waiting", results.poll(10, TimeUnit.SECONDS));
+        assertEquals("none", results.poll(10, TimeUnit.SECONDS));
+        waiting.join();
+        assertEquals(0, defaultQueue.getQueueLength());
+    }
+
+    private Thread startWaiter(String name, BlockingQueue<Object> results) {
+        return startWaiter(name, true, queue, results);
+    }
+
+    private Thread startWaiter(final String name, final boolean acceptsHandOff,
+            final PoolWaitQueue waitQueue, final BlockingQueue<Object> results) {
+        Thread t = new Thread(name) {
+            public void run() {
+                try {
+                    ResourceHandle h = waitQueue.waitForResource(acceptsHandOff, 0);
+                    results.add(name);
+                    results.add(h == null ? "none" : h);
+                } catch (InterruptedException e) {
+                    results.add(e);
+                }
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    private void awaitQueueLength(int length) throws InterruptedException {
+        awaitQueueLength(queue, length);
+    }
+
+    private static void awaitQueueLength(PoolWaitQueue waitQueue, int length)
+            throws InterruptedException {
+        while (waitQueue.getQueueLength() < length) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static ResourceHandle newHandle() {
+        return new ResourceHandle(new Object(), null, null, null);
+    }
+}
@@ -55,6 +55,10 @@ import org.glassfish.hk2.api.PreDestroy;
 public class EarClassLoader extends ASURLClassLoader
 {
 
+    static {
+        registerAsParallelCapable();
+    }
+
     private List<ClassLoaderHolder> moduleClassLoaders = new LinkedList<ClassLoaderHolder>();
     boolean isPreDestroyCalled = false;
 
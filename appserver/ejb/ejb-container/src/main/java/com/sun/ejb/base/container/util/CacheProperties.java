@@ -66,6 +66,13 @@ import org.jvnet.hk2.annotations.Service;
 @Service
 public class CacheProperties implements PostConstruct {
 
+    /**
+     * Name of the ejb-container property with the highest number of tasks
+     * passivating the victims of a stateful session bean cache at the same
+     * time, by default half the processors, at least 2.
+     */
+    public static final String MAX_PASSIVATION_TASK_COUNT = "max-passivation-task-count";
+
     protected static final Logger _logger =
             LogDomains.getLogger(CacheProperties.class, LogDomains.EJB_LOGGER);
 
@@ -73,6 +80,7 @@ public class CacheProperties implements PostConstruct {
     private int numberOfVictimsToSelect;
     private int cacheIdleTimeoutInSeconds;
     private int removalTimeoutInSeconds;
+    private int maxPassivationTaskCount;
 
     private String victimSelectionPolicy;
 
@@ -118,6 +126,13 @@ public class CacheProperties implements PostConstruct {
         return this.removalTimeoutInSeconds;
     }
 
+    /**
+     * @return the highest number of passivation tasks, -1 if not set
+     */
+    public int getMaxPassivationTaskCount() {
+        return this.maxPassivationTaskCount;
+    }
+
     public String getVictimSelectionPolicy() {
         return this.victimSelectionPolicy;
     }
@@ -132,6 +147,7 @@ public class CacheProperties implements PostConstruct {
                 .append("; victims: ").append(numberOfVictimsToSelect)
                 .append("; idleTimeout: ").append(cacheIdleTimeoutInSeconds)
                 .append("; removalTimeout: ").append(removalTimeoutInSeconds)
+                .append("; maxPassivationTasks: ").append(maxPassivationTaskCount)
                 .append("; policy: ").append(victimSelectionPolicy);
 
         return sbuf.toString();
@@ -154,6 +170,9 @@ public class CacheProperties implements PostConstruct {
 
         victimSelectionPolicy = ejbContainer.getVictimSelectionPolicy();
 
+        String val = ejbContainer.getPropertyValue(MAX_PASSIVATION_TASK_COUNT);
+        maxPassivationTaskCount = val != null ? Integer.parseInt(val.trim()) : -1;
+
         // If portable @StatefulTimeout is specified, it takes precedence over
         // any default value in domain.xml.  However, if a removal timeout is
         // specified in sun-ejb-jar.xml, that has highest precedence. 
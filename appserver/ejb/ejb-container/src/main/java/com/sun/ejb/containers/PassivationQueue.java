@@ -0,0 +1,201 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache victims of a stateful session container waiting to be passivated,
+ * together with the accounting of the background tasks passivating them.
+ * <p>
+ * A task takes up to <code>batchCount</code> victims at a time, the most
+ * recently trimmed first, and keeps taking batches until the queue is empty.
+ * One task is started per (partial) batch queued, but never more than
+ * <code>maxTaskCount</code> tasks run at the same time. A task stops being
+ * counted as running when it finds the queue empty, under the same lock as
+ * the additions, so that a victim is never queued without a task to take it.
+ */
+class PassivationQueue {
+
+    private final ArrayList<Object> candidates = new ArrayList<Object>();
+
+    private int batchCount;
+    private int maxTaskCount;
+
+    private int taskCount = 0;
+    private int cumulativeTaskCount = 0;
+    private int trimCount = 0;
+
+    private long batches = 0;
+    private long batchTotalTime = 0;
+    private long batchMaxTime = 0;
+    private long batchLastTime = 0;
+
+    PassivationQueue(int batchCount, int maxTaskCount) {
+        this.batchCount = Math.max(1, batchCount);
+        this.maxTaskCount = Math.max(1, maxTaskCount);
+    }
+
+    synchronized int getBatchCount() {
+        return batchCount;
+    }
+
+    synchronized void setBatchCount(int batchCount) {
+        this.batchCount = Math.max(1, batchCount);
+    }
+
+    synchronized int getMaxTaskCount() {
+        return maxTaskCount;
+    }
+
+    synchronized void setMaxTaskCount(int maxTaskCount) {
+        this.maxTaskCount = Math.max(1, maxTaskCount);
+    }
+
+    /**
+     * Queues a victim.
+     *
+     * @return true if a new task has to be started, it is then counted as
+     *         running until it finds the queue empty
+     */
+    synchronized boolean add(Object context) {
+        trimCount++;
+        candidates.add(context);
+        int requiredTaskCount = Math.min(maxTaskCount,
+                (candidates.size() + batchCount - 1) / batchCount);
+        if (taskCount < requiredTaskCount) {
+            taskCount++;
+            cumulativeTaskCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Undoes the counting of a task that {@link #add} required but which
+     * could not be started.
+     */
+    synchronized void taskNotStarted() {
+        taskCount--;
+    }
+
+    /**
+     * Takes the next batch for a running task. When the queue is empty the
+     * task is no longer counted as running, and has to stop.
+     *
+     * @return the victims to passivate, empty if the task has to stop
+     */
+    synchronized List<Object> nextBatch() {
+        int sz = candidates.size();
+        if (sz == 0) {
+            taskCount--;
+            return new ArrayList<Object>(0);
+        }
+        int end = Math.max(0, sz - batchCount);
+        List<Object> batch = new ArrayList<Object>(sz - end);
+        for (int i = sz - 1; i >= end; i--) {
+            batch.add(candidates.remove(i));
+        }
+        return batch;
+    }
+
+    /**
+     * Ends a running task which failed before finding the queue empty.
+     */
+    synchronized void taskFailed() {
+        taskCount--;
+    }
+
+    /**
+     * Records the time spent passivating a batch taken by {@link #nextBatch}.
+     */
+    synchronized void batchDone(long timeSpent) {
+        batches++;
+        batchTotalTime += timeSpent;
+        batchLastTime = timeSpent;
+        if (timeSpent > batchMaxTime) {
+            batchMaxTime = timeSpent;
+        }
+    }
+
+    /**
+     * Takes a single victim, outside of the passivation tasks.
+     *
+     * @return the most recently queued victim, null if the queue is empty
+     */
+    synchronized Object poll() {
+        int sz = candidates.size();
+        return (sz > 0) ? candidates.remove(sz - 1) : null;
+    }
+
+    synchronized int size() {
+        return candidates.size();
+    }
+
+    synchronized int getTaskCount() {
+        return taskCount;
+    }
+
+    synchronized int getCumulativeTaskCount() {
+        return cumulativeTaskCount;
+    }
+
+    synchronized int getTrimCount() {
+        return trimCount;
+    }
+
+    synchronized long getBatches() {
+        return batches;
+    }
+
+    synchronized long getBatchLastTime() {
+        return batchLastTime;
+    }
+
+    synchronized long getBatchMaxTime() {
+        return batchMaxTime;
+    }
+
+    synchronized long getBatchAverageTime() {
+        return (batches == 0) ? 0 : batchTotalTime / batches;
+    }
+}
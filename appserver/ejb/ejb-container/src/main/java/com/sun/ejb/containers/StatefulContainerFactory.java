@@ -419,6 +419,10 @@ public class StatefulContainerFactory extends BaseContainerFactory
             sfsbContainer.setPassivationBatchCount(
                     cacheProps.getNumberOfVictimsToSelect());
         }
+        if (cacheProps.getMaxPassivationTaskCount() > 0) {
+            sfsbContainer.setMaxPassivationTaskCount(
+                    cacheProps.getMaxPassivationTaskCount());
+        }
 
         if (_logger.isLoggable(TRACE_LEVEL)) {
             _logger.log(TRACE_LEVEL,
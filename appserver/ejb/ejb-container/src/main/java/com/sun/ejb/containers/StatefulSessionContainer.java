@@ -55,6 +55,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimerTask;
@@ -282,20 +283,15 @@ public final class StatefulSessionContainer
     // We do not want too many ORB task for passivation
     public static final int MIN_PASSIVATION_BATCH_COUNT = 8;
 
+    // Upper bound of the passivation tasks running at the same time
+    public static final int DEFAULT_MAX_PASSIVATION_TASK_COUNT =
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
     private final static long CONCURRENCY_NOT_ALLOWED = 0;
     private final static long BLOCK_INDEFINITELY = -1;
 
-    private ArrayList passivationCandidates = new ArrayList();
-    private Object asyncTaskSemaphore = new Object();
-
-
-    private int asyncTaskCount = 0;
-    private int asyncCummTaskCount = 0;
-
-    private int passivationBatchCount
-            = MIN_PASSIVATION_BATCH_COUNT;
-
-    private int containerTrimCount = 0;
+    private final PassivationQueue passivationQueue = new PassivationQueue(
+            MIN_PASSIVATION_BATCH_COUNT, DEFAULT_MAX_PASSIVATION_TASK_COUNT);
 
     private LruSessionCache sessionBeanCache;
     private BackingStore<Serializable, SimpleMetadata> backingStore;
@@ -565,11 +561,16 @@ public final class StatefulSessionContainer
     public String getMonitorAttributeValues() {
         StringBuffer sbuf = new StringBuffer();
         //sbuf.append(storeHelper.getMonitorAttributeValues());
-        sbuf.append(" { asyncTaskCount=").append(asyncTaskCount)
-                .append("; asyncCummTaskCount=").append(asyncCummTaskCount)
-                .append("; passivationBatchCount=").append(passivationBatchCount)
-                .append("; passivationQSz=").append(passivationCandidates.size())
-                .append("; trimEventCount=").append(containerTrimCount)
+        sbuf.append(" { asyncTaskCount=").append(passivationQueue.getTaskCount())
+                .append("; asyncCummTaskCount=").append(passivationQueue.getCumulativeTaskCount())
+                .append("; passivationBatchCount=").append(getPassivationBatchCount())
+                .append("; maxPassivationTaskCount=").append(getMaxPassivationTaskCount())
+                .append("; passivationQSz=").append(getPassivationQueueSize())
+                .append("; passivationBatches=").append(getPassivationBatches())
+                .append("; passivationBatchLastTime=").append(getPassivationBatchLastTime())
+                .append("; passivationBatchMaxTime=").append(getPassivationBatchMaxTime())
+                .append("; passivationBatchAvgTime=").append(getPassivationBatchAverageTime())
+                .append("; trimEventCount=").append(passivationQueue.getTrimCount())
                 .append(" }");
         return sbuf.toString();
     }
@@ -603,6 +604,8 @@ public final class StatefulSessionContainer
     private static final String convertCtxStateToString(
             SessionContextImpl sc) {
         switch (sc.getState()) {
+            case IN_PASSIVATE:
+                return "PASSIVATING";
             case PASSIVATED:
                 return "PASSIVE";
             case READY:
@@ -2325,8 +2328,9 @@ public final class StatefulSessionContainer
                                 preDestroyInvInfo, CallbackType.PRE_DESTROY);
                         sessionBeanCache.remove(instanceKey, sc.existsInStore());
                     } else {
-                        // passivate the EJB
-                        sc.setState(BeanState.PASSIVATED);
+                        // passivate the EJB. The bean stays in IN_PASSIVATE
+                        // until the backing store acknowledged the write
+                        sc.setState(BeanState.IN_PASSIVATE);
                         decrementMethodReadyStat();
                         needToDoPostInvokeTx = callLifecycleCallbackInTxIfUsed(ejbInv, sc, 
                                 prePassivateInvInfo, CallbackType.PRE_PASSIVATE);
@@ -2350,6 +2354,7 @@ public final class StatefulSessionContainer
                             incrementMethodReadyStat();
                             return false;
                         }
+                        sc.setState(BeanState.PASSIVATED);
                     }
                     
                     // V2: sfsbStoreMonitor.incrementPassivationCount(true);
@@ -2465,11 +2470,48 @@ public final class StatefulSessionContainer
     }
 
     public final int getPassivationBatchCount() {
-        return this.passivationBatchCount;
+        return passivationQueue.getBatchCount();
     }
 
     public final void setPassivationBatchCount(int count) {
-        this.passivationBatchCount = count;
+        passivationQueue.setBatchCount(count);
+    }
+
+    public final int getMaxPassivationTaskCount() {
+        return passivationQueue.getMaxTaskCount();
+    }
+
+    public final void setMaxPassivationTaskCount(int count) {
+        passivationQueue.setMaxTaskCount(count);
+    }
+
+    public int getPassivationQueueSize() {
+        return passivationQueue.size();
+    }
+
+    public long getPassivationBatches() {
+        return passivationQueue.getBatches();
+    }
+
+    /**
+     * @return time spent passivating the last batch, in milliseconds
+     */
+    public long getPassivationBatchLastTime() {
+        return passivationQueue.getBatchLastTime();
+    }
+
+    /**
+     * @return longest time spent passivating a batch, in milliseconds
+     */
+    public long getPassivationBatchMaxTime() {
+        return passivationQueue.getBatchMaxTime();
+    }
+
+    /**
+     * @return average time spent passivating a batch, in milliseconds
+     */
+    public long getPassivationBatchAverageTime() {
+        return passivationQueue.getBatchAverageTime();
     }
 
     // called asynchronously from the Recycler
@@ -2916,17 +2958,8 @@ public final class StatefulSessionContainer
             
             sessionBeanCache.shutdown();
 
-            while (true) {
-                ComponentContext ctx = null;
-                synchronized (asyncTaskSemaphore) {
-                    int sz = passivationCandidates.size();
-                    if (sz > 0) {
-                        ctx = (ComponentContext)
-                                passivationCandidates.remove(sz - 1);
-                    } else {
-                        break;
-                    }
-                }
+            ComponentContext ctx;
+            while ((ctx = (ComponentContext) passivationQueue.poll()) != null) {
                 passivateEJB(ctx);
             }
 
@@ -2971,18 +3004,9 @@ public final class StatefulSessionContainer
                 invokePreDestroyAndUndeploy(ctx);
             }
 
-            while (true) {
-                SessionContextImpl ctx = null;
-                synchronized (asyncTaskSemaphore) {
-                    int sz = passivationCandidates.size();
-                    if (sz > 0) {
-                        ctx = (SessionContextImpl) passivationCandidates
-                                .remove(sz - 1);
-                        invokePreDestroyAndUndeploy(ctx);
-                    } else {
-                        break;
-                    }
-                }
+            SessionContextImpl candidate;
+            while ((candidate = (SessionContextImpl) passivationQueue.poll()) != null) {
+                invokePreDestroyAndUndeploy(candidate);
             }
 
             sessionBeanCache.destroy();
@@ -3132,37 +3156,24 @@ public final class StatefulSessionContainer
 
     // CacheListener interface
     public void trimEvent(Object primaryKey, Object context) {
-        boolean addTask = false;
-        synchronized (asyncTaskSemaphore) {
-            containerTrimCount++;
-            passivationCandidates.add(context);
-            int requiredTaskCount =
-                    (passivationCandidates.size() / passivationBatchCount);
-            addTask = (asyncTaskCount < requiredTaskCount);
-
-            if (_logger.isLoggable(Level.FINE)) {
-                _logger.log(Level.FINE, "qSize: " + passivationCandidates.size()
-                        + "; batchCount: " + passivationBatchCount
-                        + "; asyncTaskCount: " + asyncTaskCount
-                        + "; requiredTaskCount: " + requiredTaskCount
-                        + "; ADDED TASK ==> " + addTask);
-            }
+        boolean addTask = passivationQueue.add(context);
 
-            if (addTask == false) {
-                return;
-            }
-            asyncTaskCount++;
-            asyncCummTaskCount++;
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "qSize: " + passivationQueue.size()
+                    + "; batchCount: " + passivationQueue.getBatchCount()
+                    + "; asyncTaskCount: " + passivationQueue.getTaskCount()
+                    + "; ADDED TASK ==> " + addTask);
         }
 
+        if (addTask == false) {
+            return;
+        }
 
         try {
             ASyncPassivator work = new ASyncPassivator();
             ejbContainerUtilImpl.addWork(work);
         } catch (Exception ex) {
-            synchronized (asyncTaskSemaphore) {
-                asyncTaskCount--;
-            }
+            passivationQueue.taskNotStarted();
             _logger.log(Level.WARNING, ADD_CLEANUP_TASK_ERROR, ex);
         }
 
@@ -3191,28 +3202,26 @@ public final class StatefulSessionContainer
                                 }
                             });
                 }
-                ComponentContext ctx = null;
 
                 do {
-                    synchronized (asyncTaskSemaphore) {
-                        int sz = passivationCandidates.size();
-                        if (sz > 0) {
-                            ctx = (ComponentContext)
-                                    passivationCandidates.remove(sz - 1);
-                        } else {
-                            return;
-                        }
+                    List<Object> batch = passivationQueue.nextBatch();
+                    if (batch.isEmpty()) {
+                        decrementedTaskCount = true;
+                        return;
                     }
-                    passivateEJB(ctx);
+
+                    long startTime = System.currentTimeMillis();
+                    for (Object ctx : batch) {
+                        passivateEJB((ComponentContext) ctx);
+                    }
+                    passivationQueue.batchDone(System.currentTimeMillis() - startTime);
                 } while (true);
 
             } catch (Throwable th) {
                 th.printStackTrace();
             } finally {
                 if (!decrementedTaskCount) {
-                    synchronized (asyncTaskSemaphore) {
-                        asyncTaskCount--;
-                    }
+                    passivationQueue.taskFailed();
                 }
 
                 if (System.getSecurityManager() == null) {
@@ -65,6 +65,7 @@ import com.sun.ejb.EjbInvocation;
 import com.sun.ejb.containers.util.pool.AbstractPool;
 import com.sun.ejb.containers.util.pool.NonBlockingPool;
 import com.sun.ejb.containers.util.pool.ObjectFactory;
+import com.sun.ejb.containers.util.pool.StripedNonBlockingPool;
 import com.sun.ejb.monitoring.stats.EjbMonitoringStatsProvider;
 import com.sun.ejb.monitoring.stats.EjbPoolStatsProvider;
 import com.sun.ejb.monitoring.stats.StatelessSessionBeanStatsProvider;
@@ -255,10 +256,18 @@ public class StatelessSessionContainer
 
         poolProp = new PoolProperties(ejbContainer, beanPoolDes);
         String val = ejbDescriptor.getEjbBundleDescriptor().getEnterpriseBeansProperty(SINGLETON_BEAN_POOL_PROP);
-        pool= new NonBlockingPool(getContainerId(), ejbDescriptor.getName(),
-           sessionCtxFactory, poolProp.steadyPoolSize,
-           poolProp.poolResizeQuantity, poolProp.maxPoolSize,
-           poolProp.poolIdleTimeoutInSeconds, loader, Boolean.parseBoolean(val));
+        String striped = ejbDescriptor.getEjbBundleDescriptor().getEnterpriseBeansProperty(STRIPED_BEAN_POOL_PROP);
+        if (Boolean.parseBoolean(striped) && !Boolean.parseBoolean(val)) {
+            pool= new StripedNonBlockingPool(getContainerId(), ejbDescriptor.getName(),
+               sessionCtxFactory, poolProp.steadyPoolSize,
+               poolProp.poolResizeQuantity, poolProp.maxPoolSize,
+               poolProp.poolIdleTimeoutInSeconds, loader);
+        } else {
+            pool= new NonBlockingPool(getContainerId(), ejbDescriptor.getName(),
+               sessionCtxFactory, poolProp.steadyPoolSize,
+               poolProp.poolResizeQuantity, poolProp.maxPoolSize,
+               poolProp.poolIdleTimeoutInSeconds, loader, Boolean.parseBoolean(val));
+        }
     }
 
     protected void registerMonitorableComponents() {
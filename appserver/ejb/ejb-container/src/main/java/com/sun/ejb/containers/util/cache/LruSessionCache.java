@@ -203,23 +203,16 @@ public class LruSessionCache
     }
     
     /**
-     * trim the item from the cache and notify listeners
+     * Hands the victim over to the listeners (the container), which
+     * passivate it in the background. This may be called with the cache or
+     * bucket lock held, so the bean is never serialized nor written here:
+     * an idle bean past its removal timeout is removed instead of passivated
+     * by the container itself.
      * @param item to be trimmed
      */
     protected void trimItem(CacheItem item) {
         LruCacheItem removed = (LruCacheItem) item;
 
-        if (removeIfIdle) {
-            StatefulEJBContext ctx = (StatefulEJBContext) item.getValue();
-            
-            long idleThreshold = 
-                System.currentTimeMillis() - removalTimeoutInSeconds*1000L;
-            if (ctx.getLastAccessTime() <= idleThreshold) {
-                container.passivateEJB(ctx);
-                return;
-            }
-        }
-
         for (int i = 0; i < listeners.size(); i++) {
             CacheListener listener = (CacheListener) listeners.get(i);
             listener.trimEvent(removed.getKey(), removed.getValue());
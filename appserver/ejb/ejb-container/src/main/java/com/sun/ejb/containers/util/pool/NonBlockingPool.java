@@ -253,6 +253,37 @@ public class NonBlockingPool
             }
         }
     }
+
+    /**
+     * Takes an object as getObject does when the pool is not empty, the
+     * resize task included, but never creates one.
+     * @return the object, or null if the pool is empty
+     */
+    Object pollObject() {
+        ArrayList objects = list;
+        if (objects == null) {
+            return null;
+        }
+        boolean toAddResizeTask = false;
+        Object obj;
+        synchronized (objects) {
+            int size = objects.size();
+            if (size == 0) {
+                return null;
+            }
+            poolSuccess++;
+            obj = objects.remove(size-1);
+            if ((size <= steadyPoolSize) && (maintainSteadySize)
+                    && (addedResizeTask == false)) {
+                toAddResizeTask = addedResizeTask = true;
+            }
+        }
+
+        if (toAddResizeTask) {
+            addResizeTaskForImmediateExecution();
+        }
+        return obj;
+    }
     
     private void addResizeTaskForImmediateExecution() {
         try {
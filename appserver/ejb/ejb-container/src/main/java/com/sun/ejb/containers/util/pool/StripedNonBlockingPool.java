@@ -0,0 +1,501 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers.util.pool;
+
+import com.sun.ejb.containers.EjbContainerUtilImpl;
+
+import java.util.ArrayList;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * <p>StripedNonBlockingPool has the same behaviour as NonBlockingPool : an
+ * object is created when the pool is empty, objects returned to a full pool
+ * are destroyed, the pool is refilled up to steady-pool-size by an asynchronous
+ * resize task and objects idle for more than idle-timeout are trimmed by the
+ * pool timer task.
+ * <p>Instead of one list guarded by a single lock, the pooled objects are
+ * spread over stripes (about one per processor), each of them a
+ * NonBlockingPool holding its share of max-pool-size and steady-pool-size. A
+ * thread uses the stripe picked by its id, so concurrent invocations of the
+ * same bean do not contend on one monitor. A thread whose stripe is empty
+ * steals an object from the other stripes before creating a new one, and an
+ * object returned to a full stripe goes to another stripe, and is destroyed
+ * only when all of them are full.
+ * <p>The singleton bean pool is not supported, NonBlockingPool must be used
+ * for it.
+ */
+public class StripedNonBlockingPool
+    extends AbstractPool
+{
+
+    private static final int MAX_STRIPES = 64;
+
+    private Stripe[]	  stripes;
+    private int		  stripeMask;
+    private TimerTask	  poolTimerTask;
+
+    private final AtomicBoolean addedIdleBeanWork = new AtomicBoolean();
+
+    // Set to true after close().  Objects returned afterwards are destroyed.
+    private volatile boolean poolClosed = false;
+
+    public StripedNonBlockingPool(long beanId, String poolName,
+        ObjectFactory factory, int steadyPoolSize, int resizeQuantity,
+        int maxPoolSize, int idleTimeoutInSeconds, ClassLoader loader)
+    {
+        this.poolName = poolName;
+        this.beanId = beanId;
+        initializePool(factory, steadyPoolSize, resizeQuantity, maxPoolSize,
+                       idleTimeoutInSeconds, loader);
+    }
+
+    protected void initializePool(ObjectFactory factory, int steadyPoolSize,
+        int resizeQuantity, int maxPoolSize, int idleTimeoutInSeconds,
+        ClassLoader loader)
+    {
+        this.factory = factory;
+        this.steadyPoolSize = (steadyPoolSize <= 0) ? 0 : steadyPoolSize;
+        this.resizeQuantity = (resizeQuantity <= 0) ? 0 : resizeQuantity;
+        this.maxPoolSize = (maxPoolSize <= 0)
+            ? Integer.MAX_VALUE : maxPoolSize;
+        this.steadyPoolSize = (this.steadyPoolSize > this.maxPoolSize)
+            ? this.maxPoolSize : this.steadyPoolSize;
+        this.idleTimeoutInSeconds =
+            (idleTimeoutInSeconds <= 0) ? 0 : idleTimeoutInSeconds;
+
+        this.containerClassLoader = loader;
+
+        createStripes(Runtime.getRuntime().availableProcessors());
+
+        // one timer task trims all the stripes, they do not schedule their own
+        if ((this.idleTimeoutInSeconds > 0) && (this.resizeQuantity > 0)) {
+            try {
+                this.poolTimerTask =  new PoolResizeTimerTask();
+                EjbContainerUtilImpl.getInstance().getTimer().scheduleAtFixedRate
+                    (poolTimerTask, idleTimeoutInSeconds*1000L,
+                     idleTimeoutInSeconds*1000L);
+                if(_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE,
+                      "[Pool-" + poolName + "]: Added PoolResizeTimerTask...");
+                }
+            } catch (Throwable th) {
+                _logger.log(Level.WARNING,"[Pool-" +
+                            poolName + "]: Could not add"
+                            + " PoolTimerTask. Continuing anyway...", th);
+            }
+        }
+    }
+
+    /**
+     * Creates a power of two number of stripes, at least the number of
+     * processors (up to MAX_STRIPES) but no more than maxPoolSize, and divides
+     * maxPoolSize, steadyPoolSize and resizeQuantity between them.
+     */
+    private void createStripes(int processors) {
+        int count = 1;
+        while (count < processors && count < MAX_STRIPES) {
+            count <<= 1;
+        }
+        while (count > 1 && count > maxPoolSize) {
+            count >>= 1;
+        }
+        stripes = new Stripe[count];
+        stripeMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            int capacity = (maxPoolSize == Integer.MAX_VALUE)
+                ? 0 : share(maxPoolSize, count, i);
+            int quantity = (resizeQuantity <= 0)
+                ? 0 : Math.max(1, share(resizeQuantity, count, i));
+            stripes[i] = new Stripe(beanId, poolName, factory,
+                share(steadyPoolSize, count, i), quantity, capacity,
+                idleTimeoutInSeconds, containerClassLoader);
+        }
+    }
+
+    private static int share(int total, int count, int index) {
+        return total / count + ((index < total % count) ? 1 : 0);
+    }
+
+    private int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        // spread sequential thread ids
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & stripeMask;
+    }
+
+    public void setContainerClassLoader(ClassLoader loader) {
+        super.setContainerClassLoader(loader);
+        for (Stripe stripe : stripes) {
+            stripe.setContainerClassLoader(loader);
+        }
+    }
+
+    public void setInfo(String appName, String modName, String ejbName) {
+        super.setInfo(appName, modName, ejbName);
+        // the stripes report to the probe provider of this pool
+        for (Stripe stripe : stripes) {
+            stripe.appName = appName;
+            stripe.modName = modName;
+            stripe.ejbName = ejbName;
+            stripe.poolProbeNotifier = poolProbeNotifier;
+        }
+    }
+
+    public Object getObject(boolean canWait, Object param)
+        throws PoolException
+    {
+        return getObject(param);
+    }
+
+    public Object getObject(long maxWaitTime, Object param)
+        throws PoolException
+    {
+        return getObject(param);
+    }
+
+    public Object getObject(Object param)
+    {
+        int index = stripeIndex();
+        Stripe local = stripes[index];
+        if (local.getSize() == 0) {
+            Object obj = steal(index);
+            if (obj != null) {
+                return obj;
+            }
+        }
+        // creates the object if the stripe is still empty
+        return local.getObject(param);
+    }
+
+    /**
+     * Takes an object from the first non empty stripe after the given one.
+     */
+    private Object steal(int index) {
+        for (int i = 1; i < stripes.length; i++) {
+            Stripe victim = stripes[(index + i) & stripeMask];
+            if (victim.getSize() > 0) {
+                Object obj = victim.pollObject();
+                if (obj != null) {
+                    return obj;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return an object back to the pool. An object that is obtained through
+     *	getObject() must always be returned back to the pool using either
+     *	returnObject(obj) or through destroyObject(obj).
+     */
+    public void returnObject(Object object) {
+        if (poolClosed) {
+            try {
+                factory.destroy(object);
+            } catch (Exception ex) {
+                _logger.log(Level.FINE, "exception in returnObj", ex);
+            }
+            return;
+        }
+        int index = stripeIndex();
+        for (int i = 0; i < stripes.length; i++) {
+            if (stripes[(index + i) & stripeMask].offer(object)) {
+                return;
+            }
+        }
+        // all the stripes are full, the stripe of the calling thread
+        // destroys the object
+        stripes[index].returnObject(object);
+    }
+
+    /**
+     * Destroys an Object. Note that applications should not ignore
+     * the reference to the object that they got from getObject(). An object
+     * that is obtained through getObject() must always be returned back to
+     * the pool using either returnObject(obj) or through destroyObject(obj).
+     * This method tells that the object should be destroyed and cannot
+     * be reused.
+     */
+    public void destroyObject(Object object) {
+        stripes[stripeIndex()].destroyObject(object);
+    }
+
+    /**
+    * Preload the pool with objects.
+    * @param count the number of objects to be added.
+    */
+    protected void preload(int count) {
+        for (int i = 0; i < stripes.length; i++) {
+            int stripeCount = share(count, stripes.length, i);
+            if (stripeCount > 0) {
+                stripes[i].preload(stripeCount);
+            }
+        }
+    }
+
+    /**
+    * Prepopulate the pool with objects.
+    * @param count the number of objects to be added.
+    */
+    public void prepopulate(int count) {
+        this.steadyPoolSize = (count <= 0) ? 0 : count;
+        this.steadyPoolSize = (this.steadyPoolSize > this.maxPoolSize)
+            ? this.maxPoolSize : this.steadyPoolSize;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i].prepopulate(share(steadyPoolSize, stripes.length, i));
+        }
+    }
+
+    /**
+    * Close the pool
+    */
+    public void close() {
+        poolClosed = true;
+        if (poolTimerTask != null) {
+            try {
+                poolTimerTask.cancel();
+                if(_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE,
+                        "[Pool-"+poolName+"]: Cancelled pool timer task "
+                                + " at: " + (new java.util.Date()));
+                }
+            } catch (Throwable th) {
+                //Can safely ignore this!!
+            }
+        }
+
+        for (Stripe stripe : stripes) {
+            stripe.close();
+        }
+        unregisterProbeProvider();
+
+        this.poolTimerTask         = null;
+        this.containerClassLoader  = null;
+    }
+
+    protected void remove(int count) {
+        for (int i = 0; i < stripes.length; i++) {
+            int stripeCount = share(count, stripes.length, i);
+            if (stripeCount > 0) {
+                stripes[i].remove(stripeCount);
+            }
+        }
+    }
+
+    /**
+     * Trims the objects idle for more than idle-timeout from every stripe, or
+     * refills the stripes below their share of steady-pool-size.
+     */
+    protected void removeIdleObjects() {
+        for (Stripe stripe : stripes) {
+            if (poolClosed) {
+                return;
+            }
+            stripe.doResize();
+        }
+    }
+
+    /**************** For Monitoring ***********************/
+    /*******************************************************/
+
+    public int getCreatedCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.getCreatedCount();
+        }
+        return count;
+    }
+
+    public int getDestroyedCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.getDestroyedCount();
+        }
+        return count;
+    }
+
+    public int getPoolSuccess() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.getPoolSuccess();
+        }
+        return count;
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.getSize();
+        }
+        return size;
+    }
+
+    public int getNumBeansInPool() {
+        return getSize();
+    }
+
+    public int getTotalBeansCreated() {
+        return getCreatedCount();
+    }
+
+    public int getTotalBeansDestroyed() {
+        return getDestroyedCount();
+    }
+
+    public void appendStats(StringBuffer sbuf) {
+	sbuf.append("[Pool: ")
+	    .append("SZ=").append(getSize()).append("; ")
+	    .append("CC=").append(getCreatedCount()).append("; ")
+	    .append("DC=").append(getDestroyedCount()).append("; ")
+	    .append("WC=").append(waitCount).append("; ")
+	    .append("MSG=0");
+	if (configData != null) {
+	    sbuf.append(configData);
+	}
+	sbuf.append("]");
+    }
+
+    public String getAllMonitoredAttrbuteValues() {
+        StringBuffer sbuf = new StringBuffer();
+        sbuf.append("createdCount=").append(getCreatedCount()).append(";")
+            .append("destroyedCount=").append(getDestroyedCount()).append(";")
+            .append("waitCount=").append(waitCount).append(";")
+            .append("size=").append(getSize()).append(";");
+        sbuf.append("maxPoolSize=").append(maxPoolSize).append(";");
+        return sbuf.toString();
+    }
+
+    public String getAllAttrValues() {
+        StringBuffer sbuf = new StringBuffer("[Pool-"+poolName+"] ");
+        sbuf.append("CC=").append(getCreatedCount()).append("; ")
+            .append("DC=").append(getDestroyedCount()).append("; ")
+            .append("CS=").append(getSize()).append("; ")
+            .append("SS=").append(steadyPoolSize).append("; ")
+            .append("MS=").append(maxPoolSize).append("; ")
+            .append("ST=").append(stripes.length).append(";");
+        return sbuf.toString();
+    }
+
+    /**
+     * A NonBlockingPool holding a share of the objects. Its idle objects are
+     * trimmed by the timer task of the striped pool.
+     */
+    private static final class Stripe
+        extends NonBlockingPool
+    {
+        Stripe(long beanId, String poolName, ObjectFactory factory,
+            int steadyPoolSize, int resizeQuantity, int maxPoolSize,
+            int idleTimeoutInSeconds, ClassLoader loader)
+        {
+            // a zero idle timeout keeps NonBlockingPool from scheduling a
+            // timer task per stripe, doResize still uses the real one
+            super(beanId, poolName, factory, steadyPoolSize, resizeQuantity,
+                  maxPoolSize, 0, loader);
+            this.idleTimeoutInSeconds = idleTimeoutInSeconds;
+        }
+
+        /**
+         * Adds the object unless the stripe is full, as returnObject does
+         * (which fires no event then), but leaves a full stripe alone.
+         */
+        boolean offer(Object object) {
+            ArrayList objects = list;
+            if (objects == null) {
+                return false;
+            }
+            synchronized (objects) {
+                if (objects.size() >= maxPoolSize) {
+                    return false;
+                }
+                objects.add(object);
+                return true;
+            }
+        }
+
+        public int getSize() {
+            ArrayList objects = list;
+            return (objects == null) ? 0 : objects.size();
+        }
+
+        // the probe provider is shared, the striped pool unregisters it
+        protected void unregisterProbeProvider() {
+        }
+    }
+
+    private class IdleBeanWork
+        implements Runnable
+    {
+        public void run() {
+            try {
+                removeIdleObjects();
+            } catch (Exception ex) {
+            } finally {
+                addedIdleBeanWork.set(false);
+            }
+        }
+    }
+
+    private class PoolResizeTimerTask
+        extends java.util.TimerTask
+    {
+        PoolResizeTimerTask() {}
+
+        public void run() {
+
+            try {
+                if (!addedIdleBeanWork.compareAndSet(false, true)) {
+                    return;
+                }
+                IdleBeanWork work = new IdleBeanWork();
+                EjbContainerUtilImpl.getInstance().addWork(work);
+            } catch (Exception ex) {
+                addedIdleBeanWork.set(false);
+                _logger.log(Level.WARNING,
+                            "[Pool-"+poolName+"]: Cannot perform "
+                            + " pool idle bean cleanup", ex);
+            }
+
+        }
+    } // End of class PoolResizeTimerTask
+
+}
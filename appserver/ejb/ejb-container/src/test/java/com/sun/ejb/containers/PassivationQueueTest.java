@@ -0,0 +1,196 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PassivationQueueTest {
+
+    @Test
+    public void oneTaskPerPartialBatch() {
+        PassivationQueue queue = new PassivationQueue(4, 8);
+        assertTrue(queue.add("v1"));
+        for (int i = 2; i <= 4; i++) {
+            assertFalse(queue.add("v" + i));
+        }
+        // fifth victim starts a second batch
+        assertTrue(queue.add("v5"));
+        assertEquals(2, queue.getTaskCount());
+        assertEquals(5, queue.size());
+        assertEquals(5, queue.getTrimCount());
+    }
+
+    @Test
+    public void taskCountIsBounded() {
+        PassivationQueue queue = new PassivationQueue(1, 3);
+        int started = 0;
+        for (int i = 0; i < 10; i++) {
+            if (queue.add("v" + i)) {
+                started++;
+            }
+        }
+        assertEquals(3, started);
+        assertEquals(3, queue.getTaskCount());
+        assertEquals(3, queue.getCumulativeTaskCount());
+    }
+
+    @Test
+    public void batchesAreTakenMostRecentFirst() {
+        PassivationQueue queue = new PassivationQueue(3, 1);
+        for (int i = 1; i <= 5; i++) {
+            queue.add("v" + i);
+        }
+        assertEquals(Arrays.<Object>asList("v5", "v4", "v3"), queue.nextBatch());
+        assertEquals(Arrays.<Object>asList("v2", "v1"), queue.nextBatch());
+        assertEquals(1, queue.getTaskCount());
+        assertTrue(queue.nextBatch().isEmpty());
+        assertEquals(0, queue.getTaskCount());
+    }
+
+    @Test
+    public void taskIsStartedAgainOnceTheQueueWasFoundEmpty() {
+        PassivationQueue queue = new PassivationQueue(8, 1);
+        assertTrue(queue.add("v1"));
+        assertEquals(1, queue.nextBatch().size());
+        assertFalse(queue.add("v2"));
+        // the running task takes v2 instead of stopping
+        assertEquals(Collections.<Object>singletonList("v2"), queue.nextBatch());
+        assertTrue(queue.nextBatch().isEmpty());
+        assertTrue(queue.add("v3"));
+    }
+
+    @Test
+    public void taskNotStartedIsNotCounted() {
+        PassivationQueue queue = new PassivationQueue(1, 2);
+        assertTrue(queue.add("v1"));
+        queue.taskNotStarted();
+        assertEquals(0, queue.getTaskCount());
+        // the next victim starts a task for both
+        assertTrue(queue.add("v2"));
+        assertTrue(queue.add("v3"));
+        assertEquals(2, queue.getTaskCount());
+    }
+
+    @Test
+    public void batchStatistics() {
+        PassivationQueue queue = new PassivationQueue(2, 1);
+        assertEquals(0, queue.getBatchAverageTime());
+        queue.batchDone(10);
+        queue.batchDone(30);
+        queue.batchDone(20);
+        assertEquals(3, queue.getBatches());
+        assertEquals(20, queue.getBatchLastTime());
+        assertEquals(30, queue.getBatchMaxTime());
+        assertEquals(20, queue.getBatchAverageTime());
+    }
+
+    @Test
+    public void pollTakesSingleVictims() {
+        PassivationQueue queue = new PassivationQueue(8, 1);
+        queue.add("v1");
+        queue.add("v2");
+        assertEquals("v2", queue.poll());
+        assertEquals("v1", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void everyVictimIsPassivatedByConcurrentTasks() throws Exception {
+        final PassivationQueue queue = new PassivationQueue(4, 3);
+        final AtomicInteger passivated = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final ExecutorService tasks = Executors.newCachedThreadPool();
+        final int victims = 2000;
+        final CountDownLatch done = new CountDownLatch(victims);
+        try {
+            List<Thread> trimmers = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                Thread trimmer = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < victims / 4; i++) {
+                            if (queue.add(new Object())) {
+                                tasks.execute(new Runnable() {
+                                    public void run() {
+                                        synchronized (maxRunning) {
+                                            maxRunning.set(Math.max(maxRunning.get(),
+                                                    queue.getTaskCount()));
+                                        }
+                                        List<Object> batch;
+                                        while (!(batch = queue.nextBatch()).isEmpty()) {
+                                            assertTrue(batch.size() <= 4);
+                                            passivated.addAndGet(batch.size());
+                                            for (int j = 0; j < batch.size(); j++) {
+                                                done.countDown();
+                                            }
+                                        }
+                                    }
+                                });
+                            }
+                        }
+                    }
+                };
+                trimmers.add(trimmer);
+                trimmer.start();
+            }
+            for (Thread trimmer : trimmers) {
+                trimmer.join();
+            }
+            assertTrue("left " + queue.size(), done.await(10, TimeUnit.SECONDS));
+            assertEquals(victims, passivated.get());
+            assertEquals(0, queue.size());
+            assertTrue(maxRunning.get() <= 3);
+        } finally {
+            tasks.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers.util.cache;
+
+import com.sun.appserv.util.cache.CacheListener;
+import com.sun.ejb.spi.container.SFSBContainerCallback;
+import com.sun.ejb.spi.container.StatefulEJBContext;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.glassfish.ha.store.api.BackingStore;
+import org.glassfish.ha.store.api.BackingStoreException;
+import org.glassfish.ha.store.api.BackingStoreFactory;
+import org.glassfish.ha.store.util.SimpleMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the hand over of the victims of {@link LruSessionCache} to the
+ * container, and of their removal once passivated.
+ */
+public class LruSessionCacheTest {
+
+    private final AtomicInteger containerPassivations = new AtomicInteger();
+    private final List<Object> trimmed = new ArrayList<Object>();
+    private RecordingStore store;
+    private LruSessionCache cache;
+
+    @Before
+    public void setUp() {
+        store = new RecordingStore();
+        cache = new LruSessionCache("test", container(), 0, 0);
+        cache.init(8, 0.75f, null);
+        cache.setBackingStore(store);
+        cache.addCacheListener(new CacheListener() {
+            public void trimEvent(Object key, Object value) {
+                trimmed.add(value);
+            }
+        });
+    }
+
+    @Test
+    public void victimsAreHandedOverWithoutBeingPassivated() {
+        fill(20);
+        assertFalse(trimmed.isEmpty());
+        assertEquals(0, containerPassivations.get());
+        assertEquals(0, store.saved.size());
+    }
+
+    @Test
+    public void victimIsRemovedOnlyOnceSaved() throws Exception {
+        fill(20);
+        StatefulEJBContext victim = (StatefulEJBContext) trimmed.get(0);
+        Serializable victimKey = keyOf(victim);
+        int entries = cache.getEntryCount();
+
+        store.failing = true;
+        assertFalse(cache.passivateEJB(victim, victimKey));
+        assertEquals(entries, cache.getEntryCount());
+        assertSame(victim, cache.get(victimKey));
+
+        // accessed again: no longer a victim
+        store.failing = false;
+        assertFalse(cache.passivateEJB(victim, victimKey));
+    }
+
+    @Test
+    public void savedVictimIsRemoved() throws Exception {
+        fill(20);
+        StatefulEJBContext victim = (StatefulEJBContext) trimmed.get(0);
+        Serializable victimKey = keyOf(victim);
+        int entries = cache.getEntryCount();
+
+        assertTrue(cache.passivateEJB(victim, victimKey));
+        assertEquals(entries - 1, cache.getEntryCount());
+        assertTrue(store.saved.containsKey(victimKey));
+    }
+
+    private final Map<StatefulEJBContext, Serializable> keys =
+            new HashMap<StatefulEJBContext, Serializable>();
+
+    private void fill(int count) {
+        for (int i = 0; i < count; i++) {
+            Serializable key = "key-" + i;
+            StatefulEJBContext context = context();
+            keys.put(context, key);
+            cache.put(key, context);
+        }
+    }
+
+    private Serializable keyOf(StatefulEJBContext context) {
+        return keys.get(context);
+    }
+
+    private StatefulEJBContext context() {
+        final long lastAccess = System.currentTimeMillis();
+        return (StatefulEJBContext) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] {StatefulEJBContext.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getLastAccessTime")) {
+                            return lastAccess;
+                        } else if (name.equals("getVersion")) {
+                            return 0L;
+                        } else if (name.equals("existsInStore")
+                                || name.equals("canBePassivated")) {
+                            return Boolean.FALSE;
+                        } else if (name.equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        } else if (name.equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private SFSBContainerCallback container() {
+        return (SFSBContainerCallback) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] {SFSBContainerCallback.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("passivateEJB")) {
+                            containerPassivations.incrementAndGet();
+                            return Boolean.TRUE;
+                        } else if (name.equals("isPassivationCapable")) {
+                            return Boolean.TRUE;
+                        } else if (name.equals("serializeContext")) {
+                            return new byte[] {1, 2, 3};
+                        } else if (name.equals("getPassivationBatchCount")) {
+                            return 2;
+                        } else if (name.equals("getClassLoader")) {
+                            return getClass().getClassLoader();
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static class RecordingStore extends BackingStore<Serializable, SimpleMetadata> {
+        final Map<Serializable, SimpleMetadata> saved = new HashMap<Serializable, SimpleMetadata>();
+        volatile boolean failing;
+
+        @Override
+        public BackingStoreFactory getBackingStoreFactory() {
+            return null;
+        }
+
+        @Override
+        public SimpleMetadata load(Serializable key, String version) {
+            return saved.get(key);
+        }
+
+        @Override
+        public String save(Serializable key, SimpleMetadata value, boolean isNew)
+                throws BackingStoreException {
+            if (failing) {
+                throw new BackingStoreException("store unavailable");
+            }
+            saved.put(key, value);
+            return null;
+        }
+
+        @Override
+        public void remove(Serializable key) {
+            saved.remove(key);
+        }
+
+        @Override
+        public int size() {
+            return saved.size();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers.util.pool;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StripedNonBlockingPoolTest {
+
+    private CountingFactory factory;
+
+    @Before
+    public void setUp() {
+        factory = new CountingFactory();
+    }
+
+    private StripedNonBlockingPool createPool(int steadyPoolSize, int maxPoolSize) {
+        StripedNonBlockingPool pool = new StripedNonBlockingPool(1L, "test",
+                factory, steadyPoolSize, 0, maxPoolSize, 0, null);
+        pool.setInfo("app", "module", "bean");
+        return pool;
+    }
+
+    @Test
+    public void returnedObjectIsReused() {
+        StripedNonBlockingPool pool = createPool(0, 32);
+        Object obj = pool.getObject(null);
+        pool.returnObject(obj);
+        assertEquals(1, pool.getSize());
+        assertSame(obj, pool.getObject(null));
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getPoolSuccess());
+    }
+
+    @Test
+    public void objectsAboveMaxPoolSizeAreDestroyed() {
+        StripedNonBlockingPool pool = createPool(0, 4);
+        Object[] objs = new Object[10];
+        for (int i = 0; i < objs.length; i++) {
+            objs[i] = pool.getObject(null);
+        }
+        for (Object obj : objs) {
+            pool.returnObject(obj);
+        }
+        assertEquals(4, pool.getSize());
+        assertEquals(10, pool.getCreatedCount());
+        assertEquals(6, pool.getDestroyedCount());
+        assertEquals(6, factory.destroyed.get());
+    }
+
+    @Test
+    public void emptyStripeStealsFromOthers() throws Exception {
+        final StripedNonBlockingPool pool = createPool(0, 64);
+        pool.prepopulate(8);
+        assertEquals(8, pool.getSize());
+        final Object[] taken = new Object[1];
+        Thread t = new Thread() {
+            public void run() {
+                for (int i = 0; i < 8; i++) {
+                    taken[0] = pool.getObject(null);
+                }
+            }
+        };
+        t.start();
+        t.join();
+        assertEquals(0, pool.getSize());
+        assertEquals(8, pool.getCreatedCount());
+    }
+
+    @Test
+    public void removeIdleObjectsRefillsEveryStripe() throws Exception {
+        final StripedNonBlockingPool pool = createPool(8, 64);
+        assertEquals(0, pool.getSize());
+        pool.removeIdleObjects();
+        assertEquals(8, pool.getSize());
+        assertEquals(8, pool.getCreatedCount());
+        pool.removeIdleObjects();
+        assertEquals(8, pool.getSize());
+        pool.close();
+        assertEquals(0, pool.getSize());
+        assertEquals(8, factory.destroyed.get());
+    }
+
+    @Test
+    public void concurrentGetAndReturnKeepCountsConsistent() throws Exception {
+        final StripedNonBlockingPool pool = createPool(0, 16);
+        int threads = 8;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 10000; j++) {
+                            pool.returnObject(pool.getObject(null));
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        assertTrue(pool.getSize() <= 16);
+        assertEquals(pool.getCreatedCount() - pool.getDestroyedCount(), pool.getSize());
+        assertEquals(factory.created.get() - factory.destroyed.get(), pool.getSize());
+        pool.close();
+        assertEquals(factory.created.get(), factory.destroyed.get());
+    }
+
+    static class CountingFactory implements ObjectFactory {
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger destroyed = new AtomicInteger();
+
+        public Object create(Object param) {
+            created.incrementAndGet();
+            return new Object();
+        }
+
+        public void destroy(Object obj) {
+            destroyed.incrementAndGet();
+        }
+    }
+}
@@ -55,11 +55,11 @@ public class FileBackingStoreFactory
 
     private static ThreadLocal<FileStoreTransaction> _current = new ThreadLocal<FileStoreTransaction>();
 
-    private static ConcurrentHashMap<String, FileBackingStore> _stores
-            = new ConcurrentHashMap<String, FileBackingStore>();
+    private static ConcurrentHashMap<String, BackingStore> _stores
+            = new ConcurrentHashMap<String, BackingStore>();
 
 
-    static FileBackingStore getFileBackingStore(String storeName) {
+    static BackingStore getFileBackingStore(String storeName) {
         return _stores.get(storeName);
     }
 
@@ -71,6 +71,13 @@ public class FileBackingStoreFactory
     public <K extends Serializable, V extends Serializable> BackingStore<K, V> createBackingStore(
             BackingStoreConfiguration<K, V> conf)
                 throws BackingStoreException {
+        if (LogStructuredBackingStore.isEnabled(conf)) {
+            LogStructuredBackingStore<K, V> ls = new LogStructuredBackingStore<K, V>();
+            ls.initialize(conf);
+            ls.setFileBackingStoreFactory(this);
+            _stores.put(conf.getStoreName(), ls);
+            return ls;
+        }
         FileBackingStore<K, V> fs = new FileBackingStore<K, V>();
         fs.initialize(conf);
         fs.setFileBackingStoreFactory(this);
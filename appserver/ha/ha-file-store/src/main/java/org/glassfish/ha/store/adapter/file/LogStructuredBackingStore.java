@@ -0,0 +1,926 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.ha.store.adapter.file;
+
+import org.glassfish.ha.store.api.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.*;
+import java.util.zip.CRC32;
+
+/**
+ * An implementation of BackingStore that appends the saved data to rolling
+ * segment files instead of writing one file per key.
+ * <p>
+ * Every save, remove and timestamp update appends a record to the current
+ * segment. The location of the latest data of every key and its timestamp
+ * are kept in memory, the timestamps being also ordered so that expired
+ * entries are found without looking at the file system. The index is rebuilt
+ * from the segments when the store is created. Segments whose data is mostly
+ * stale are compacted in the background: their live records are copied to the
+ * current segment and they are deleted.
+ * <p>
+ * Appends and index updates are serialized by a lock. Loads do not take it:
+ * they look the key up in the concurrent index and read the data with a
+ * positional read, so they are not held up by the appends. A load racing
+ * with the compaction of the segment it reads from finds the segment closed,
+ * and reads again from where the index then points to. A segment whose
+ * channel was closed by the interrupt of a thread using it is reopened.
+ * <p>
+ * Enabled by setting the <code>log.structured</code> vendor specific setting
+ * of the store, or the <code>org.glassfish.ha.store.file.logStructured</code>
+ * system property, to true.
+ *
+ * @see FileBackingStoreFactory
+ */
+public class LogStructuredBackingStore<K extends Serializable, V extends Serializable>
+        extends BackingStore<K, V> {
+
+    public static final String LOG_STRUCTURED_PROPERTY = "org.glassfish.ha.store.file.logStructured";
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte SAVE = 1;
+
+    private static final byte REMOVE = 2;
+
+    private static final byte TOUCH = 3;
+
+    //record length, type, timestamp and crc
+    private static final int RECORD_OVERHEAD = 4 + 1 + 8 + 4;
+
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "file-backing-store-compactor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    protected Logger logger =
+            Logger.getLogger(LogStructuredBackingStore.class.getName());
+
+    protected File baseDir;
+
+    private volatile boolean shutdown;
+
+    private static Level TRACE_LEVEL = Level.FINE;
+
+    private String debugStr;
+
+    private FileBackingStoreFactory factory;
+
+    private long defaultMaxIdleTimeoutInSeconds = 10L * 60L;
+
+    private long maxSegmentSize = 64L * 1024L * 1024L;
+
+    private double compactionThreshold = 0.5;
+
+    //serializes the appends and the updates of the index, not taken by loads
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final ConcurrentHashMap<String, Entry> index = new ConcurrentHashMap<String, Entry>();
+
+    //entries ordered by timestamp, guarded by the lock
+    private final TreeSet<Entry> byTimestamp = new TreeSet<Entry>();
+
+    //segments by id, guarded by the lock
+    private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+
+    private Segment current;
+
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    //segments are only deleted by one compaction at a time
+    private final Object compactionLock = new Object();
+
+    /**
+     * No arg constructor
+     */
+    public LogStructuredBackingStore() {
+    }
+
+    static boolean isEnabled(BackingStoreConfiguration<?, ?> conf) {
+        Object value = conf.getVendorSpecificSettings().get("log.structured");
+        if (value == null) {
+            value = System.getProperty(LOG_STRUCTURED_PROPERTY);
+        }
+        return value != null && Boolean.parseBoolean(value.toString());
+    }
+
+    @Override
+    protected void initialize(BackingStoreConfiguration<K, V> conf)
+        throws BackingStoreException {
+
+        if (conf.getLogger() != null) {
+            logger = conf.getLogger();
+        }
+
+        super.initialize(conf);
+        debugStr = "[LogStructuredBackingStore - " + conf.getStoreName() + "] ";
+
+        baseDir = conf.getBaseDirectory();
+        if ((baseDir.mkdirs() == false) && (! baseDir.isDirectory())) {
+            throw new BackingStoreException("[LogStructuredBackingStore::initialize] Create base directory ("
+                    + baseDir.getAbsolutePath() + ") failed");
+        }
+
+        Map<String, Object> vendorMap = conf.getVendorSpecificSettings();
+        try {
+            defaultMaxIdleTimeoutInSeconds = Long.parseLong(
+                    (String) vendorMap.get("max.idle.timeout.in.seconds"));
+        } catch (Exception ex) {
+            //Ignore. Use default
+        }
+        try {
+            maxSegmentSize = Long.parseLong((String) vendorMap.get("max.segment.size.in.bytes"));
+        } catch (Exception ex) {
+            //Ignore. Use default
+        }
+
+        lock.lock();
+        try {
+            recover();
+            logger.log(Level.INFO, "[LogStructuredBackingStore::initialize] Successfully Created and initialized store. "
+                    + "Working dir: " + baseDir + "; Entries: " + index.size() + "; Configuration: " + conf);
+        } catch (IOException ex) {
+            closeSegments();
+            throw new BackingStoreException(debugStr + "Could not read the segments in " + baseDir, ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*package*/ void setFileBackingStoreFactory(FileBackingStoreFactory factory) {
+        this.factory = factory;
+    }
+
+    public BackingStoreFactory getBackingStoreFactory() {
+        return factory;
+    }
+
+    @Override
+    public V load(K key, String version) throws BackingStoreException {
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered load(" + key + ", " + version + ")");
+        }
+
+        byte[] data = null;
+        Entry entry = index.get(key.toString());
+        while (data == null) {
+            if (entry == null) {
+                return null;
+            }
+            try {
+                data = entry.segment.read(entry.valueOffset, entry.valueLength);
+            } catch (ClosedChannelException ex) {
+                //the segment was compacted, unless the store was closed
+                Entry moved = index.get(key.toString());
+                if (moved == entry) {
+                    logger.log(Level.WARNING, debugStr + "Failed to load(" + key + ", " + version + ")", ex);
+                    return null;
+                }
+                entry = moved;
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, debugStr + "Failed to load(" + key + ", " + version + ")", ex);
+                return null;
+            }
+        }
+
+        V value = null;
+        try {
+            ObjectInputStream ois = super.createObjectInputStream(new ByteArrayInputStream(data));
+            value = (V) ois.readObject();
+
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Done load(" + key + ", " + version + ")");
+            }
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, debugStr + "Failed to load(" + key + ", " + version + ")", ex);
+        }
+        return value;
+    }
+
+    @Override
+    public String save(K sessionKey, V value, boolean isNew)
+            throws BackingStoreException {
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered save(" + sessionKey + ")");
+        }
+        byte[] data = getSerializedState(value);
+        String key = sessionKey.toString();
+        long now = System.currentTimeMillis();
+        byte[] record;
+        try {
+            record = encode(SAVE, key, now, data);
+        } catch (IOException ex) {
+            throw new BackingStoreException("Could not save session: " + sessionKey, ex);
+        }
+        if (record.length > maxSegmentSize) {
+            throw new BackingStoreException("Could not save session: " + sessionKey
+                    + "; its record of " + record.length + " bytes is larger than the maximum segment size of "
+                    + maxSegmentSize + " bytes");
+        }
+        lock.lock();
+        try {
+            checkOpen();
+            append(record, SAVE, key, now, data.length);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, debugStr + "save(" + sessionKey + ") failed", ex);
+            throw new BackingStoreException("Could not save session: " + sessionKey, ex);
+        } finally {
+            lock.unlock();
+        }
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Done save(" + sessionKey + ")");
+        }
+        return getBackingStoreConfiguration().getInstanceName();
+    }
+
+    public void remove(K sessionKey) {
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered remove(" + sessionKey + ")");
+        }
+        String key = sessionKey.toString();
+        lock.lock();
+        try {
+            if (index.containsKey(key)) {
+                checkOpen();
+                append(REMOVE, key, System.currentTimeMillis());
+            }
+        } catch (Exception ex) {
+            logger.log(TRACE_LEVEL, debugStr + "Failed to remove(" + sessionKey + ")", ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void updateTimeStamp(K k, String version, long timeStamp)
+            throws BackingStoreException {
+        updateTimestamp(k, timeStamp);
+    }
+
+    public void updateTimestamp(K sessionKey, long time)
+            throws BackingStoreException {
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered updateTimestamp(" + sessionKey + ", " + time + ")");
+        }
+        String key = sessionKey.toString();
+        lock.lock();
+        try {
+            if (!index.containsKey(key)) {
+                logger.log(Level.WARNING, debugStr
+                        + ": Cannot update timsestamp for: " + sessionKey
+                        + "; Entry does not exist");
+                return;
+            }
+            checkOpen();
+            append(TOUCH, key, time);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, debugStr
+                    + ": Exception while updating timestamp", ex);
+            throw new BackingStoreException(
+                    "Cannot update timsestamp for: " + sessionKey
+                            + "; Got exception: " + ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int removeExpired() {
+        return removeExpired(defaultMaxIdleTimeoutInSeconds * 1000L);
+    }
+
+    public int removeExpired(long idleForMillis) {
+        long threshold = System.currentTimeMillis() - idleForMillis;
+        int expiredSessions = 0;
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered removeExpired()");
+        }
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            while (!shutdown && !byTimestamp.isEmpty()
+                    && byTimestamp.first().timestamp < threshold) {
+                append(REMOVE, byTimestamp.first().key, now);
+                expiredSessions++;
+            }
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Done removeExpired()");
+            }
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, debugStr + " Exception while removing "
+                    + "expired entries", ex);
+        } finally {
+            lock.unlock();
+        }
+        scheduleCompaction();
+        return expiredSessions;
+    }
+
+    @Override
+    public int size() throws BackingStoreException {
+        return index.size();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        //DO NOT DELETE THE WORKING DIRECTORY
+        lock.lock();
+        try {
+            closeSegments();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws BackingStoreException {
+        shutdown();
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Entered destroy()");
+            }
+            shutdown = true;
+            lock.lock();
+            try {
+                closeSegments();
+                for (Segment segment : segments.values()) {
+                    if (!segment.file.delete() && segment.file.exists()) {
+                        logger.log(Level.WARNING, debugStr + " destroy() failed to remove: " + segment.file);
+                    }
+                }
+                segments.clear();
+                index.clear();
+                byTimestamp.clear();
+            } finally {
+                lock.unlock();
+            }
+
+            if (baseDir.delete() == false) {
+                if (baseDir.exists()) {
+                    logger.log(Level.WARNING, debugStr + " destroy() failed to remove dir: " + baseDir.getAbsolutePath());
+                }
+            }
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Done destroy()");
+            }
+        } catch (Throwable th) {
+            logger.log(Level.WARNING, debugStr + " destroy() failed ", th);
+        } finally {
+            FileBackingStoreFactory.removemapping(getBackingStoreConfiguration().getStoreName());
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (current == null) {
+            throw new IOException(debugStr + "The store is closed");
+        }
+    }
+
+    /**
+     * Appends a record without data. Must be called with the lock held.
+     */
+    private void append(byte type, String key, long timestamp) throws IOException {
+        append(encode(type, key, timestamp, null), type, key, timestamp, 0);
+    }
+
+    /**
+     * Appends a record to the current segment, rolling it if it is full, and
+     * updates the index. Must be called with the lock held.
+     */
+    private void append(byte[] record, byte type, String key, long timestamp, int valueLength)
+            throws IOException {
+        if (current.size > 0 && current.size + record.length > maxSegmentSize) {
+            roll();
+        }
+        long position = current.append(ByteBuffer.wrap(record));
+        //the data is at the end of the record, before the crc
+        apply(current, position, record.length, type, key, timestamp,
+                position + record.length - 4 - valueLength, valueLength);
+    }
+
+    /**
+     * Encodes a record: its length, type, timestamp, key, the length and
+     * bytes of the data of a save, and the crc of all but the length.
+     */
+    private static byte[] encode(byte type, String key, long timestamp, byte[] data) throws IOException {
+        int len = data == null ? 0 : data.length;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(RECORD_OVERHEAD + 2 + key.length() + 4 + len);
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeInt(0);
+        dos.writeByte(type);
+        dos.writeLong(timestamp);
+        dos.writeUTF(key);
+        if (type == SAVE) {
+            dos.writeInt(len);
+            dos.write(data, 0, len);
+        }
+        dos.writeInt(0);
+        dos.flush();
+        byte[] record = bos.toByteArray();
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putInt(0, record.length - 4);
+        CRC32 crc = new CRC32();
+        crc.update(record, 4, record.length - 8);
+        buffer.putInt(record.length - 4, (int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * Updates the index with a record. Must be called with the lock held.
+     */
+    private void apply(Segment segment, long position, int recordLength, byte type,
+            String key, long timestamp, long valueOffset, int valueLength) {
+        Entry old = index.get(key);
+        segment.size = Math.max(segment.size, position + recordLength);
+        switch (type) {
+            case SAVE:
+                Entry entry = new Entry(key, segment, position, recordLength, valueOffset, valueLength, timestamp);
+                if (old != null) {
+                    byTimestamp.remove(old);
+                    old.segment.liveBytes -= old.recordLength;
+                }
+                index.put(key, entry);
+                byTimestamp.add(entry);
+                segment.liveBytes += recordLength;
+                break;
+            case TOUCH:
+                if (old != null) {
+                    //the record itself is garbage as soon as it is written,
+                    //the timestamp is copied with the data on compaction
+                    byTimestamp.remove(old);
+                    old.timestamp = timestamp;
+                    byTimestamp.add(old);
+                }
+                break;
+            case REMOVE:
+                if (old != null) {
+                    index.remove(key);
+                    byTimestamp.remove(old);
+                    old.segment.liveBytes -= old.recordLength;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void roll() throws IOException {
+        current.sealed = true;
+        long id = segments.lastKey() + 1;
+        current = openSegment(id);
+        scheduleCompaction();
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        Segment segment = new Segment(id, new File(baseDir, SEGMENT_PREFIX + id + SEGMENT_SUFFIX));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Rebuilds the index from the segments. An incomplete or corrupted record
+     * at the end of the last segment was being written when the server
+     * stopped, and is truncated. Sealed segments were complete when they were
+     * rolled: a corrupted record there is reported and the segment is left as
+     * it is, and out of the compaction, rather than losing what follows it.
+     */
+    private void recover() throws IOException {
+        String[] fileNames = baseDir.list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        openSegment(Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(),
+                                fileName.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException ex) {
+                        //not a segment
+                    }
+                }
+            }
+        }
+        Segment last = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        for (Segment segment : segments.values()) {
+            long end = scan(segment);
+            long length = segment.channel.size();
+            if (end < length) {
+                if (segment == last) {
+                    logger.log(Level.WARNING, debugStr + "Ignoring the incomplete end of " + segment.file
+                            + " after " + end + " bytes");
+                    segment.channel.truncate(end);
+                } else {
+                    logger.log(Level.WARNING, debugStr + "Ignoring the records of " + segment.file
+                            + " after the corrupted record at " + end + " bytes");
+                    segment.damaged = true;
+                    end = length;
+                }
+            }
+            segment.size = end;
+            segment.sealed = true;
+        }
+        if (segments.isEmpty()) {
+            current = openSegment(0);
+        } else {
+            current = segments.lastEntry().getValue();
+            current.sealed = false;
+        }
+    }
+
+    /**
+     * Applies the records of a segment to the index.
+     *
+     * @return the end of the last valid record
+     */
+    private long scan(Segment segment) throws IOException {
+        List<Record> records = new ArrayList<Record>();
+        long end = readRecords(segment.file, records);
+        for (Record r : records) {
+            apply(segment, r.position, r.length, r.type, r.key, r.timestamp, r.valueOffset, r.valueLength);
+        }
+        return end;
+    }
+
+    private long readRecords(File file, List<Record> records) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), 64 * 1024));
+        long fileLength = file.length();
+        long position = 0;
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException eof) {
+                    return position;
+                }
+                if (length < RECORD_OVERHEAD - 4 || length > fileLength - position - 4) {
+                    return position;
+                }
+                byte[] record = new byte[length];
+                try {
+                    in.readFully(record);
+                } catch (EOFException eof) {
+                    return position;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(record, 0, length - 4);
+                if ((int) crc.getValue() != ByteBuffer.wrap(record).getInt(length - 4)) {
+                    return position;
+                }
+                DataInputStream rec = new DataInputStream(new ByteArrayInputStream(record, 0, length - 4));
+                Record r = new Record();
+                r.position = position;
+                r.length = length + 4;
+                r.type = rec.readByte();
+                r.timestamp = rec.readLong();
+                r.key = rec.readUTF();
+                if (r.type == SAVE) {
+                    r.valueLength = rec.readInt();
+                    r.valueOffset = position + length - r.valueLength;
+                }
+                records.add(r);
+                position += r.length;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void scheduleCompaction() {
+        if (shutdown || !compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        compactor.execute(new Runnable() {
+            public void run() {
+                compactionScheduled.set(false);
+                try {
+                    compact();
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, debugStr + "Compaction failed", ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies the live records of the sealed segments that are mostly stale to
+     * the current segment, and deletes these segments.
+     */
+    /*package*/ void compact() throws IOException {
+        synchronized (compactionLock) {
+            doCompact();
+        }
+    }
+
+    private void doCompact() throws IOException {
+        List<Segment> candidates = new ArrayList<Segment>();
+        lock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                if (segment.sealed && !segment.damaged && segment.liveBytes < segment.size * compactionThreshold) {
+                    candidates.add(segment);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (Segment segment : candidates) {
+            List<Record> records = new ArrayList<Record>();
+            readRecords(segment.file, records);
+            //one record at a time, so that saves are not held up
+            for (Record r : records) {
+                if (shutdown) {
+                    return;
+                }
+                lock.lock();
+                try {
+                    if (current != null) {
+                        copy(segment, r);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            lock.lock();
+            try {
+                if (segment.liveBytes == 0 && !shutdown) {
+                    segments.remove(segment.id);
+                    segment.close();
+                    if (!segment.file.delete() && segment.file.exists()) {
+                        logger.log(Level.WARNING, debugStr + "Could not delete " + segment.file);
+                    }
+                    if (logger.isLoggable(TRACE_LEVEL)) {
+                        logger.log(TRACE_LEVEL, debugStr + "Compacted " + segment.file);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Copies a record of a segment being compacted to the current segment if
+     * it is still needed. Must be called with the lock held.
+     */
+    private void copy(Segment segment, Record r) throws IOException {
+        Entry entry = index.get(r.key);
+        switch (r.type) {
+            case SAVE:
+                if (entry != null && entry.segment == segment && entry.position == r.position) {
+                    byte[] data = segment.read(entry.valueOffset, entry.valueLength);
+                    append(encode(SAVE, entry.key, entry.timestamp, data), SAVE, entry.key, entry.timestamp, data.length);
+                }
+                break;
+            case TOUCH:
+                //the timestamp of data that stays in an older segment
+                if (entry != null && entry.segment.id < segment.id) {
+                    append(TOUCH, entry.key, entry.timestamp);
+                }
+                break;
+            case REMOVE:
+                //the data it removes may still be in an older segment
+                if (entry == null && segments.firstKey() < segment.id) {
+                    append(REMOVE, r.key, r.timestamp);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private void closeSegments() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        current = null;
+    }
+
+    private byte[] getSerializedState(V value)
+            throws BackingStoreException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.close();
+        } catch (IOException ioEx) {
+            throw new BackingStoreException("Error during getSerializedState", ioEx);
+        }
+        return bos.toByteArray();
+    }
+
+    private static final class Record {
+
+        private long position;
+        private int length;
+        private byte type;
+        private long timestamp;
+        private String key;
+        private long valueOffset;
+        private int valueLength;
+    }
+
+    /**
+     * Location and timestamp of the latest data of a key.
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        private final String key;
+        private final Segment segment;
+        private final long position;
+        private final int recordLength;
+        private final long valueOffset;
+        private final int valueLength;
+        private long timestamp;
+
+        Entry(String key, Segment segment, long position, int recordLength,
+                long valueOffset, int valueLength, long timestamp) {
+            this.key = key;
+            this.segment = segment;
+            this.position = position;
+            this.recordLength = recordLength;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.timestamp = timestamp;
+        }
+
+        public int compareTo(Entry other) {
+            if (timestamp != other.timestamp) {
+                return timestamp < other.timestamp ? -1 : 1;
+            }
+            return key.compareTo(other.key);
+        }
+    }
+
+    private static final class Segment {
+
+        private final long id;
+        private final File file;
+        //replaced when closed by the interrupt of a thread using it, guarded by the segment
+        private RandomAccessFile raf;
+        private volatile FileChannel channel;
+        private volatile boolean closed;
+        //size, liveBytes and damaged are guarded by the lock
+        private long size;
+        private long liveBytes;
+        private boolean damaged;
+        private volatile boolean sealed;
+
+        Segment(long id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+        }
+
+        long append(ByteBuffer buffer) throws IOException {
+            long position = size;
+            boolean interrupted = false;
+            try {
+                while (buffer.hasRemaining()) {
+                    FileChannel ch = channel;
+                    try {
+                        position += ch.write(buffer, position);
+                    } catch (ClosedChannelException ex) {
+                        interrupted |= reopen(ch, ex);
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            long start = size;
+            size = position;
+            return start;
+        }
+
+        byte[] read(long offset, int length) throws IOException {
+            byte[] data = new byte[length];
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            boolean interrupted = false;
+            try {
+                while (buffer.hasRemaining()) {
+                    FileChannel ch = channel;
+                    try {
+                        if (ch.read(buffer, offset + buffer.position()) < 0) {
+                            throw new EOFException(file + " is truncated");
+                        }
+                    } catch (ClosedChannelException ex) {
+                        interrupted |= reopen(ch, ex);
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return data;
+        }
+
+        /**
+         * File channels are closed when a thread using them is interrupted,
+         * which must not fail the other loads and saves of the segment: the
+         * channel is reopened unless the segment itself was closed. The
+         * interrupt status of the calling thread is cleared, so that it can
+         * retry, and has to be restored once it is done with the segment.
+         *
+         * @return true if the calling thread was interrupted
+         * @throws ClosedChannelException if the segment was closed, because it
+         *         was compacted or the store was closed
+         */
+        private synchronized boolean reopen(FileChannel stale, ClosedChannelException ex)
+                throws IOException {
+            boolean interrupted = Thread.interrupted();
+            if (closed) {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                throw ex;
+            }
+            if (channel == stale) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                    //Ignore
+                }
+                raf = new RandomAccessFile(file, "rw");
+                channel = raf.getChannel();
+            }
+            return interrupted;
+        }
+
+        synchronized void close() {
+            closed = true;
+            try {
+                raf.close();
+            } catch (IOException ex) {
+                //Ignore
+            }
+        }
+    }
+}
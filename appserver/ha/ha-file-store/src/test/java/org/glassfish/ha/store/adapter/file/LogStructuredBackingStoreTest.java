@@ -0,0 +1,367 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.ha.store.adapter.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.glassfish.ha.store.api.BackingStoreConfiguration;
+import org.glassfish.ha.store.api.BackingStoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LogStructuredBackingStoreTest {
+
+    private File dir;
+
+    private LogStructuredBackingStore<String, Value> store;
+
+    @Before
+    public void createDirectory() throws IOException {
+        dir = File.createTempFile("ls-store", "");
+        assertTrue(dir.delete());
+    }
+
+    @After
+    public void destroyStore() {
+        if (store != null) {
+            store.destroy();
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void savedDataIsLoaded() throws Exception {
+        store = open(1024 * 1024);
+        store.save("a", new Value("value-a"), true);
+        store.save("b", new Value("value-b"), true);
+        store.save("a", new Value("value-a2"), false);
+        assertEquals(new Value("value-a2"), store.load("a", null));
+        assertEquals(new Value("value-b"), store.load("b", null));
+        assertEquals(2, store.size());
+
+        store.remove("b");
+        assertNull(store.load("b", null));
+        assertNull(store.load("c", null));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void interruptedLoaderDoesNotBreakTheSegment() throws Exception {
+        store = open(1024 * 1024);
+        store.save("a", new Value("value-a"), true);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertEquals(new Value("value-a"), store.load("a", null));
+        } finally {
+            //the interrupt status is kept
+            assertTrue(Thread.interrupted());
+        }
+
+        //other threads still load from and save to the segment
+        final AtomicReference<Object> loaded = new AtomicReference<Object>();
+        Thread loader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    loaded.set(store.load("a", null));
+                } catch (BackingStoreException ex) {
+                    loaded.set(ex);
+                }
+            }
+        };
+        loader.start();
+        loader.join();
+        assertEquals(new Value("value-a"), loaded.get());
+        store.save("b", new Value("value-b"), true);
+        assertEquals(new Value("value-b"), store.load("b", null));
+    }
+
+    @Test
+    public void interruptedSaverDoesNotBreakTheSegment() throws Exception {
+        store = open(1024 * 1024);
+        store.save("a", new Value("value-a"), true);
+
+        Thread.currentThread().interrupt();
+        try {
+            store.save("b", new Value("value-b"), true);
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(new Value("value-a"), store.load("a", null));
+        assertEquals(new Value("value-b"), store.load("b", null));
+        store.shutdown();
+
+        store = open(1024 * 1024);
+        assertEquals(new Value("value-b"), store.load("b", null));
+    }
+
+    @Test
+    public void indexIsRebuiltAfterRestart() throws Exception {
+        store = open(1024 * 1024);
+        store.save("a", new Value("value-a"), true);
+        store.save("b", new Value("value-b"), true);
+        store.updateTimestamp("a", 42L);
+        store.remove("b");
+        store.shutdown();
+
+        store = open(1024 * 1024);
+        assertEquals(1, store.size());
+        assertEquals(new Value("value-a"), store.load("a", null));
+        assertNull(store.load("b", null));
+        //the timestamp update survived the restart
+        assertEquals(1, store.removeExpired(1000L));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void tornRecordAtTheEndIsTruncated() throws Exception {
+        store = open(1024 * 1024);
+        store.save("a", new Value("value-a"), true);
+        store.save("b", new Value("value-b"), true);
+        store.shutdown();
+
+        File segment = segments().get(0L);
+        long length = segment.length();
+        //the beginning of a record whose write did not complete
+        FileOutputStream out = new FileOutputStream(segment, true);
+        try {
+            out.write(new byte[] {0, 0, 0, 100, 1, 2, 3});
+        } finally {
+            out.close();
+        }
+
+        store = open(1024 * 1024);
+        assertEquals(length, segment.length());
+        assertEquals(new Value("value-a"), store.load("a", null));
+        assertEquals(new Value("value-b"), store.load("b", null));
+        store.save("c", new Value("value-c"), true);
+        store.shutdown();
+
+        store = open(1024 * 1024);
+        assertEquals(3, store.size());
+        assertEquals(new Value("value-c"), store.load("c", null));
+    }
+
+    @Test
+    public void corruptedSealedSegmentIsNotTruncated() throws Exception {
+        store = open(256);
+        for (int i = 0; i < 10; i++) {
+            store.save("key-" + i, new Value("value-" + i), true);
+        }
+        store.shutdown();
+
+        Map<Long, File> segments = segments();
+        assertTrue(segments.size() > 2);
+        File first = segments.get(0L);
+        long length = first.length();
+        corrupt(first, length - 10);
+
+        store = open(256);
+        assertEquals(length, first.length());
+        //the records of the other segments are still there
+        assertEquals(new Value("value-9"), store.load("key-9", null));
+        assertEquals(segments.keySet(), segments().keySet());
+    }
+
+    @Test
+    public void compactionDeletesStaleSegments() throws Exception {
+        store = open(512);
+        long first = segments().firstKey();
+        for (int i = 0; i < 50; i++) {
+            store.save("a", new Value("value-" + i), i == 0);
+            store.save("b", new Value("value-" + i), i == 0);
+        }
+
+        //segments may already have been compacted in the background
+        store.compact();
+        TreeMap<Long, File> after = segments();
+        long created = after.lastKey() - first + 1;
+        assertTrue(created > 5);
+        assertTrue(after.size() < created);
+        assertEquals(new Value("value-49"), store.load("a", null));
+        assertEquals(new Value("value-49"), store.load("b", null));
+
+        store.remove("b");
+        store.compact();
+        store.shutdown();
+
+        store = open(512);
+        assertEquals(1, store.size());
+        assertEquals(new Value("value-49"), store.load("a", null));
+        assertNull(store.load("b", null));
+    }
+
+    @Test
+    public void loadsFindTheDataMovedByCompaction() throws Exception {
+        store = open(512);
+        for (int i = 0; i < 20; i++) {
+            store.save("key-" + i, new Value("value-" + i), true);
+        }
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread loader = new Thread() {
+            public void run() {
+                try {
+                    while (!done.get()) {
+                        for (int i = 0; i < 20; i++) {
+                            assertEquals(new Value("value-" + i), store.load("key-" + i, null));
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        loader.start();
+        try {
+            for (int round = 0; round < 20; round++) {
+                //stale copies of half of the keys make the older segments compactable
+                for (int i = 0; i < 20; i += 2) {
+                    store.save("key-" + i, new Value("value-" + i), false);
+                }
+                store.compact();
+            }
+        } finally {
+            done.set(true);
+            loader.join();
+        }
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void oversizeRecordIsRejected() throws Exception {
+        store = open(1024);
+        char[] chars = new char[2048];
+        Arrays.fill(chars, 'x');
+        try {
+            store.save("big", new Value(new String(chars)), true);
+            fail("A record larger than a segment was saved");
+        } catch (BackingStoreException ex) {
+            //expected
+        }
+        assertNull(store.load("big", null));
+        store.save("small", new Value("value"), true);
+        store.shutdown();
+
+        store = open(1024);
+        assertEquals(1, store.size());
+        assertEquals(new Value("value"), store.load("small", null));
+    }
+
+    private LogStructuredBackingStore<String, Value> open(long maxSegmentSize)
+            throws BackingStoreException {
+        BackingStoreConfiguration<String, Value> conf = new BackingStoreConfiguration<String, Value>();
+        conf.setStoreName("test").setInstanceName("instance").setBaseDirectory(dir)
+                .setKeyClazz(String.class).setValueClazz(Value.class)
+                .setClassLoader(getClass().getClassLoader());
+        conf.getVendorSpecificSettings().put("max.segment.size.in.bytes", String.valueOf(maxSegmentSize));
+        LogStructuredBackingStore<String, Value> ls = new LogStructuredBackingStore<String, Value>();
+        ls.initialize(conf);
+        return ls;
+    }
+
+    private TreeMap<Long, File> segments() {
+        TreeMap<Long, File> segments = new TreeMap<Long, File>();
+        for (File file : dir.listFiles()) {
+            String name = file.getName();
+            if (name.startsWith("segment-") && name.endsWith(".log")) {
+                segments.put(Long.valueOf(name.substring(8, name.length() - 4)), file);
+            }
+        }
+        return segments;
+    }
+
+    private static void corrupt(File file, long position) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+    }
+
+    //the values are deserialized with the class loader of their class
+    static final class Value implements Serializable {
+
+        private final String text;
+
+        Value(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Value && text.equals(((Value) o).text);
+        }
+
+        @Override
+        public int hashCode() {
+            return text.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
@@ -45,6 +45,8 @@ import com.sun.enterprise.util.i18n.StringManager;
 import com.sun.gjc.common.DataSourceObjectBuilder;
 import com.sun.gjc.common.DataSourceSpec;
 import com.sun.gjc.monitoring.JdbcStatsProvider;
+import com.sun.gjc.spi.base.CacheObjectKey;
+import com.sun.gjc.util.SQLFingerprintRegistry;
 import com.sun.gjc.util.SQLTraceDelegator;
 import com.sun.gjc.util.SecurityUtils;
 import com.sun.logging.LogDomains;
@@ -69,6 +71,13 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -102,16 +111,25 @@ public abstract class ManagedConnectionFactoryImpl implements javax.resource.spi
         _logger = LogDomains.getLogger(ManagedConnectionFactoryImpl.class, LogDomains.RSR_LOGGER);
     }
 
+    //Warms up the statement cache of new connections, shared by all the pools.
+    //A single thread, released when idle, so that preparing statements never
+    //delays the resource adapter's timer tasks (leak detection, sql tracing)
+    private static final ExecutorService statementCacheWarmUpExecutor = createWarmUpExecutor();
+
     protected javax.resource.spi.LazyEnlistableConnectionManager cm_;
     protected boolean isLazyCm_;
     private int statementCacheSize = 0;
     private String statementCacheType = null;
+    private int statementCacheWarmUpSize = 0;
     private long statementLeakTimeout = 0;
     private boolean statementLeakReclaim = false;
 
     //Jdbc Stats provider that is created
     private JdbcStatsProvider jdbcStatsProvider = null;
 
+    //Statements used across the pool, used to warm up new connections
+    private volatile SQLFingerprintRegistry sqlFingerprintRegistry = null;
+
     protected static final StringManager localStrings =
             StringManager.getManager(DataSourceObjectBuilder.class);
 
@@ -630,6 +648,7 @@ public abstract class ManagedConnectionFactoryImpl implements javax.resource.spi
         try {
             isValid(mc);
             setIsolation(mc);
+            scheduleStatementCacheWarmUp(mc);
         } catch (ResourceException e) {
             if (mc != null) {
                 try {
@@ -645,6 +664,61 @@ public abstract class ManagedConnectionFactoryImpl implements javax.resource.spi
         }
     }
 
+    /**
+     * Schedules the warm up of the statement cache of a newly created
+     * connection with the statements most used across the pool, in the
+     * background so that the connection creation is not delayed.
+     */
+    private void scheduleStatementCacheWarmUp(final ManagedConnectionImpl mc) {
+        SQLFingerprintRegistry registry = sqlFingerprintRegistry;
+        if (registry == null) {
+            return;
+        }
+        final List<CacheObjectKey> keys = registry.getHottest(
+                Math.min(statementCacheWarmUpSize, statementCacheSize));
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            statementCacheWarmUpExecutor.execute(new Runnable() {
+                public void run() {
+                    mc.warmUpStatementCache(keys);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //connection is used without warm up
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "Unable to schedule statement cache warm up", e);
+            }
+        }
+    }
+
+    private static ExecutorService createWarmUpExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r,
+                                "jdbc-statement-cache-warmup-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Pool wide statement fingerprints, null unless both statement caching
+     * and statement cache warm up are enabled.
+     *
+     * @return SQLFingerprintRegistry
+     */
+    public SQLFingerprintRegistry getSQLFingerprintRegistry() {
+        return sqlFingerprintRegistry;
+    }
+
     private void detectStatementCachingSupport() {
         String cacheSize = getStatementCacheSize();
         if(cacheSize != null){
@@ -1014,6 +1088,30 @@ public abstract class ManagedConnectionFactoryImpl implements javax.resource.spi
         return spec.getDetail(DataSourceSpec.STATEMENTCACHESIZE);
     }
 
+    /**
+     * Sets the number of the most used statements of the pool that are
+     * prepared in the statement cache of every new connection.
+     *
+     * @param value number of statements, 0 to disable the warm up
+     */
+    public void setStatementCacheWarmUpSize(String value){
+        spec.setDetail(DataSourceSpec.STATEMENTCACHEWARMUPSIZE, value);
+        if (value != null) {
+            try {
+                statementCacheWarmUpSize = Integer.parseInt(value);
+            } catch (NumberFormatException nfe) {
+                if(_logger.isLoggable(Level.FINE)) {
+                    _logger.fine("Exception while setting StatementCacheWarmUpSize : " +
+                        nfe.getMessage());
+                }
+            }
+        }
+    }
+
+    public String getStatementCacheWarmUpSize(){
+        return spec.getDetail(DataSourceSpec.STATEMENTCACHEWARMUPSIZE);
+    }
+
     public void setStatementLeakTimeoutInSeconds(String value){
         spec.setDetail(DataSourceSpec.STATEMENTLEAKTIMEOUTINSECONDS, value);
         detectStatementLeakSupport();
@@ -1404,6 +1502,9 @@ public abstract class ManagedConnectionFactoryImpl implements javax.resource.spi
         if(_logger.isLoggable(Level.FINEST)) {
             _logger.finest("MCF Created");
         }
+        if (statementCacheSize > 0 && statementCacheWarmUpSize > 0) {
+            sqlFingerprintRegistry = new SQLFingerprintRegistry(statementCacheSize);
+        }
         if (statementCacheSize > 0 ||
                 (sqlTraceListeners != null && !sqlTraceListeners.equals("null")) ||
                 statementLeakTimeout > 0) {
@@ -1432,6 +1533,10 @@ public abstract class ManagedConnectionFactoryImpl implements javax.resource.spi
         if(_logger.isLoggable(Level.FINEST)) {
             _logger.finest("MCF Destroyed");
         }
+        if (sqlFingerprintRegistry != null) {
+            sqlFingerprintRegistry.clear();
+            sqlFingerprintRegistry = null;
+        }
         if(jdbcStatsProvider != null) {
             if(jdbcStatsProvider.getSqlTraceCache() != null) {
                 if(_logger.isLoggable(Level.FINEST)) {
@@ -46,6 +46,8 @@ import com.sun.gjc.common.DataSourceObjectBuilder;
 import com.sun.gjc.spi.base.*;
 import com.sun.gjc.spi.base.datastructure.Cache;
 import com.sun.gjc.spi.base.datastructure.CacheFactory;
+import com.sun.gjc.util.SQLFingerprintRegistry;
+import com.sun.gjc.util.StatementCacheWarmUp;
 import com.sun.gjc.util.SQLTraceDelegator;
 import com.sun.gjc.util.StatementLeakDetector;
 import com.sun.logging.LogDomains;
@@ -67,6 +69,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -123,6 +126,8 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
     private int cacheSize;
     private String cacheType;
     private boolean statementCaching;
+    private SQLFingerprintRegistry sqlFingerprints;
+    private final StatementCacheWarmUp statementCacheWarmUp = new StatementCacheWarmUp();
     private long stmtLeakTimeout;
     private boolean stmtLeakReclaim;
     private boolean statementLeakTracing;
@@ -250,6 +255,9 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
             try {
                 statementCache = CacheFactory.getDataStructure(poolInfo, cacheType, cacheSize);
                 statementCaching = true;
+                if (mcf instanceof ManagedConnectionFactoryImpl) {
+                    sqlFingerprints = ((ManagedConnectionFactoryImpl) mcf).getSQLFingerprintRegistry();
+                }
             } catch (ResourceException ex) {
                 _logger.severe(ex.getMessage());
             }
@@ -390,6 +398,7 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
         if (isDestroyed) {
             return;
         }
+        cancelStatementCacheWarmUp();
         clearStatementCache();
         //Connection could be closed even before statement is closed. Connection
         //close need not call statement close() method.
@@ -441,6 +450,7 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
             throws ResourceException {
         logFine("In getConnection");
         checkIfValid();
+        cancelStatementCacheWarmUp();
         /** Appserver any way doesnt bother about re-authentication today. So commenting this out now.
          com.sun.gjc.spi.ConnectionRequestInfo cxRequestInfo = (com.sun.gjc.spi.ConnectionRequestInfo) cxReqInfo;
          PasswordCredential passwdCred = SecurityUtils.getPasswordCredential(this.mcf, sub, cxRequestInfo);
@@ -453,15 +463,8 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
         //GJCINT
         getActualConnection();
         ManagedConnectionFactoryImpl spiMCF = (ManagedConnectionFactoryImpl) mcf;
+        tuneStatementTimeout(spiMCF);
 
-        String statementTimeoutString = spiMCF.getStatementTimeout();
-        if (statementTimeoutString != null) {
-            int timeoutValue = Integer.parseInt(statementTimeoutString);
-            if (timeoutValue >= 0) {
-                statementTimeout = timeoutValue;
-            }
-        }
-        
         myLogicalConnection = spiMCF.getJdbcObjectsFactory().getConnection(
                 actualConnection, this, cxReqInfo, spiMCF.isStatementWrappingEnabled(),
                 sqlTraceDelegator);
@@ -480,6 +483,142 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
         return myLogicalConnection;
     }
 
+    private void tuneStatementTimeout(ManagedConnectionFactoryImpl spiMCF) {
+        String statementTimeoutString = spiMCF.getStatementTimeout();
+        if (statementTimeoutString != null) {
+            int timeoutValue = Integer.parseInt(statementTimeoutString);
+            if (timeoutValue >= 0) {
+                statementTimeout = timeoutValue;
+            }
+        }
+    }
+
+    /**
+     * Pre-populates the statement cache of this newly created connection with
+     * the given statements, most requested first. Meant to be run in the
+     * background: it stops as soon as a connection handle is requested or the
+     * connection is destroyed, and failures only leave the cache less
+     * populated. As JDBC connections need not be thread safe, the physical
+     * connection is only used by the warm up until then, and the handle
+     * request or destroy waits for the statement being prepared, if any.
+     *
+     * @param keys statements to be prepared
+     */
+    public void warmUpStatementCache(List<CacheObjectKey> keys) {
+        if (!statementCaching || isDestroyed || keys.isEmpty()) {
+            statementCacheWarmUp.cancel();
+            return;
+        }
+        try {
+            int warmed = statementCacheWarmUp.run(keys, new StatementCacheWarmUpTarget());
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "Statement cache warmed up with " + warmed
+                        + " statement(s) for pool : " + getManagedConnectionFactory().getPoolInfo());
+            }
+        } catch (Exception e) {
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "Exception while warming up statement cache", e);
+            }
+        }
+    }
+
+    /**
+     * Prepares the statements of a warm up through a connection handle which
+     * is never handed out.
+     */
+    private class StatementCacheWarmUpTarget implements StatementCacheWarmUp.Target {
+        private ConnectionHolder holder;
+
+        public boolean open() throws SQLException {
+            ManagedConnectionFactoryImpl spiMCF = (ManagedConnectionFactoryImpl) mcf;
+            try {
+                getActualConnection();
+                tuneStatementTimeout(spiMCF);
+                holder = spiMCF.getJdbcObjectsFactory().getConnection(
+                        actualConnection, ManagedConnectionImpl.this, null,
+                        spiMCF.isStatementWrappingEnabled(), sqlTraceDelegator);
+            } catch (ResourceException e) {
+                throw new SQLException(e);
+            }
+            return holder instanceof ConnectionWrapper;
+        }
+
+        public Object prepare(CacheObjectKey key) throws SQLException {
+            return prepareForWarmUp((ConnectionWrapper) holder, key);
+        }
+
+        public void addToCache(CacheObjectKey key, Object statement) {
+            statementCache.addToCache(key, statement, false);
+        }
+
+        public void discard(Object statement) {
+            PreparedStatementWrapper ps = (PreparedStatementWrapper) statement;
+            try {
+                ps.setCached(false);
+                ps.close();
+            } catch (SQLException e) {
+                //ignore
+            }
+        }
+
+        public void close() {
+            if (holder != null) {
+                //close the handle without notifying the pool, which never handed it out;
+                //cached statements outlive the handle that prepared them
+                holder.setClosed(true);
+                holder.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Prepares a cacheable statement matching the key, using the same
+     * <code>ConnectionWrapper</code> method the application call would have used.
+     */
+    private PreparedStatementWrapper prepareForWarmUp(ConnectionWrapper conWrapper,
+            CacheObjectKey key) throws SQLException {
+        String sql = key.getSql();
+        if (CacheObjectKey.CALLABLE_STATEMENT.equals(key.getStatementType())) {
+            if (key.getResultSetHoldability() != 0) {
+                return conWrapper.callableCachedStatement(sql, key.getResultSetType(),
+                        key.getResultSetConcurrency(), key.getResultSetHoldability(), true);
+            }
+            return conWrapper.callableCachedStatement(sql, key.getResultSetType(),
+                    key.getResultSetConcurrency(), true);
+        }
+        if (key.getColumnIndexes() != null) {
+            return conWrapper.prepareCachedStatement(sql, key.getColumnIndexes(), true);
+        } else if (key.getColumnNames() != null) {
+            return conWrapper.prepareCachedStatement(sql, key.getColumnNames(), true);
+        } else if (key.getAutoGeneratedKeys() != 0) {
+            return conWrapper.prepareCachedStatement(sql, key.getAutoGeneratedKeys(), true);
+        } else if (key.getResultSetHoldability() != 0) {
+            return conWrapper.prepareCachedStatement(sql, key.getResultSetType(),
+                    key.getResultSetConcurrency(), key.getResultSetHoldability(), true);
+        }
+        return conWrapper.prepareCachedStatement(sql, key.getResultSetType(),
+                key.getResultSetConcurrency(), true);
+    }
+
+    /**
+     * Stops a background warm up of the statement cache, or prevents it from
+     * starting, and waits until it no longer uses the physical connection.
+     */
+    private void cancelStatementCacheWarmUp() {
+        statementCacheWarmUp.cancel();
+    }
+
+    /**
+     * Looks up the statement cache and records the request in the pool wide
+     * statement fingerprints, if enabled.
+     */
+    private Object checkAndUpdateCache(CacheObjectKey key) {
+        if (sqlFingerprints != null) {
+            sqlFingerprints.record(key);
+        }
+        return statementCache.checkAndUpdateCache(key);
+    }
+
     /**
      * Resett connection properties as connections are pooled by application server<br>
      *
@@ -959,7 +1098,7 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
             //TODO-SC refactor this method.
             PreparedStatementWrapper ps = 
                     (PreparedStatementWrapper) 
-                    statementCache.checkAndUpdateCache(key);
+                    checkAndUpdateCache(key);
             //TODO-SC-DEFER can the usability (isFree()) check be done by the cache itself and make sure that only a free stmt is returned
             if (ps != null) {
                 if (isFree(ps)) {
@@ -1003,7 +1142,7 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
             //TODO-SC should a null check be done for statementCache?
             PreparedStatementWrapper ps = 
                     (PreparedStatementWrapper) 
-                    statementCache.checkAndUpdateCache(key);
+                    checkAndUpdateCache(key);
             //TODO-SC-DEFER can the usability (isFree()) check be done by the cache itself and make sure that only a free stmt is returned
             if (ps != null) {
                 if (isFree(ps)) {
@@ -1046,7 +1185,7 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
             //TODO-SC should a null check be done for statementCache?
             PreparedStatementWrapper ps = 
                     (PreparedStatementWrapper) 
-                    statementCache.checkAndUpdateCache(key);
+                    checkAndUpdateCache(key);
             //TODO-SC-DEFER can the usability (isFree()) check be done by the cache itself and make sure that only a free stmt is returned
             if (ps != null) {
                 if (isFree(ps)) {
@@ -1086,7 +1225,7 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
             //TODO-SC should a null check be done for statementCache?
             PreparedStatementWrapper ps = 
                     (PreparedStatementWrapper) 
-                    statementCache.checkAndUpdateCache(key);
+                    checkAndUpdateCache(key);
             //TODO-SC-DEFER can the usability (isFree()) check be done by the cache itself and make sure that only a free stmt is returned
             if (ps != null) {
                 if (isFree(ps)) {
@@ -1126,7 +1265,7 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
             //TODO-SC should a null check be done for statementCache?
             PreparedStatementWrapper ps = 
                     (PreparedStatementWrapper) 
-                    statementCache.checkAndUpdateCache(key);
+                    checkAndUpdateCache(key);
             //TODO-SC-DEFER can the usability (isFree()) check be done by the cache itself and make sure that only a free stmt is returned
             if (ps != null) {
                 if (isFree(ps)) {
@@ -1166,7 +1305,7 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
                     CacheObjectKey.CALLABLE_STATEMENT, resultSetType, resultSetConcurrency);
             CallableStatementWrapper cs = 
                     (CallableStatementWrapper) 
-                    statementCache.checkAndUpdateCache(key);
+                    checkAndUpdateCache(key);
             //TODO-SC-DEFER can the usability (isFree()) check be done by the cache 
             //itself and make sure that only a free stmt is returned
             if (cs != null) {
@@ -1211,7 +1350,7 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
                     resultSetConcurrency, resultSetHoldability);
             CallableStatementWrapper cs = 
                     (CallableStatementWrapper) 
-                    statementCache.checkAndUpdateCache(key);
+                    checkAndUpdateCache(key);
             //TODO-SC-DEFER can the usability (isFree()) check be done by the cache 
             //itself and make sure that only a free stmt is returned
             if (cs != null) {
@@ -0,0 +1,160 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.gjc.spi.base.datastructure;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate access frequency of statement cache keys, used by
+ * <code>TinyLFUCacheImpl</code> to decide whether a new statement is worth
+ * caching in place of an existing one.<br>
+ * This is a count-min sketch with four hash functions over a single table of
+ * 4-bit counters (saturating at 15) packed sixteen to a long, sixteen counters
+ * per cached statement. All counters are halved once the number of recorded
+ * accesses reaches ten times the cache size, so that the history ages.
+ * <p>
+ * Thread safe : counters are updated by compare-and-set on their word, so
+ * concurrent increments are not lost. A halving may overlap increments made
+ * while it walks the table.
+ */
+class FrequencySketch {
+
+    private static final int MAX_COUNT = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = {0x97cb3127, 0xb3ab0d4f, 0x5ee6f1b3, 0x2545f491};
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    FrequencySketch(int maxSize) {
+        int size = Math.max(16, maxSize);
+        int words = Integer.highestOneBit(size - 1) << 1;
+        table = new AtomicLongArray(words);
+        mask = words * 16 - 1;
+        sampleSize = 10 * size;
+    }
+
+    /**
+     * Record an access to the key.
+     * @param key accessed key
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            added |= incrementAt(indexOf(hash, i));
+        }
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Estimated number of accesses to the key, between 0 and 15.
+     * @param key key to be checked
+     * @return int estimated frequency
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, countAt(indexOf(hash, i)));
+        }
+        return frequency;
+    }
+
+    private int countAt(int index) {
+        return (int) (table.get(index >>> 4) >>> shift(index)) & MAX_COUNT;
+    }
+
+    private boolean incrementAt(int index) {
+        int word = index >>> 4;
+        int shift = shift(index);
+        for (;;) {
+            long value = table.get(word);
+            if (((value >>> shift) & MAX_COUNT) == MAX_COUNT) {
+                return false;
+            }
+            if (table.compareAndSet(word, value, value + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Halves all the counters. Only the thread that halves the number of
+     * additions walks the table.
+     */
+    private void reset() {
+        int count = additions.get();
+        if (count < sampleSize || !additions.compareAndSet(count, count >>> 1)) {
+            return;
+        }
+        for (int i = 0; i < table.length(); i++) {
+            long value;
+            do {
+                value = table.get(i);
+            } while (!table.compareAndSet(i, value, (value >>> 1) & RESET_MASK));
+        }
+    }
+
+    private static int shift(int index) {
+        return (index & 15) << 2;
+    }
+
+    private int indexOf(int hash, int i) {
+        int h = (hash + SEEDS[i]) * SEEDS[i];
+        h ^= h >>> 15;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h & mask;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        return h;
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.gjc.spi.base.datastructure;
+
+import com.sun.gjc.monitoring.StatementCacheProbeProvider;
+import com.sun.gjc.spi.base.CacheObjectKey;
+import com.sun.gjc.spi.base.PreparedStatementWrapper;
+import com.sun.logging.LogDomains;
+import org.glassfish.resourcebase.resources.api.PoolInfo;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Thread safe statement cache with a W-TinyLFU style admission policy.<br>
+ * Lookups are lock free : they only read a concurrent map and update the
+ * per-entry hit counter and the access frequency sketch. Additions and
+ * evictions are serialized by a lock.
+ * <p>
+ * New statements enter a small admission window (1% of the cache). When the
+ * window overflows, its oldest statement is admitted to the main region only if
+ * it has been requested more often than the statement the main region would
+ * evict, so that one-off statements do not push out the frequently used ones.
+ * The main region picks its victim in insertion order, giving a second chance
+ * to statements that were hit since they were last considered (CLOCK).
+ * <p>
+ * Like the LRU cache, it is bounded by a number of statements (the statement
+ * cache size of the pool), not by their memory footprint: the memory held by a
+ * prepared statement lives in the JDBC driver and cannot be measured from the
+ * wrapper, and the pool has no setting expressed in bytes.
+ * <p>
+ * Selected by setting the statement cache type of the pool to "TINYLFU".
+ */
+public class TinyLFUCacheImpl implements Cache {
+
+    private final ConcurrentHashMap<CacheObjectKey, CacheEntry> entries;
+    //window and main region in eviction order, guarded by evictionLock
+    private final LinkedHashMap<CacheObjectKey, CacheEntry> window;
+    private final LinkedHashMap<CacheObjectKey, CacheEntry> main;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+
+    private final int maxSize;
+    private final int maxWindowSize;
+    private final int maxMainSize;
+
+    protected final static Logger _logger =
+            LogDomains.getLogger(TinyLFUCacheImpl.class, LogDomains.RSR_LOGGER);
+
+    private StatementCacheProbeProvider probeProvider = null;
+    private PoolInfo poolInfo;
+
+    public TinyLFUCacheImpl(PoolInfo poolInfo, int maxSize) {
+        this.poolInfo = poolInfo;
+        this.maxSize = maxSize;
+        maxWindowSize = Math.max(1, maxSize / 100);
+        maxMainSize = Math.max(0, maxSize - maxWindowSize);
+        entries = new ConcurrentHashMap<CacheObjectKey, CacheEntry>(maxSize);
+        window = new LinkedHashMap<CacheObjectKey, CacheEntry>();
+        main = new LinkedHashMap<CacheObjectKey, CacheEntry>();
+        sketch = new FrequencySketch(maxSize);
+        try {
+            probeProvider = new StatementCacheProbeProvider();
+        } catch (Exception ex) {
+            _logger.log(Level.FINE, "Unable to create statement cache probe provider", ex);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object checkAndUpdateCache(CacheObjectKey key) {
+        sketch.increment(key);
+        CacheEntry entry = entries.get(key);
+        if (entry != null) {
+            entry.hits.incrementAndGet();
+            if (_logger.isLoggable(Level.FINEST)) {
+                _logger.finest("Cache Hit");
+            }
+            if (probeProvider != null) {
+                probeProvider.statementCacheHitEvent(poolInfo.getName(),
+                        poolInfo.getApplicationName(), poolInfo.getModuleName());
+            }
+            return entry.entryObj;
+        }
+        if (_logger.isLoggable(Level.FINEST)) {
+            _logger.finest("Cache Miss");
+        }
+        if (probeProvider != null) {
+            probeProvider.statementCacheMissEvent(poolInfo.getName(),
+                    poolInfo.getApplicationName(), poolInfo.getModuleName());
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addToCache(CacheObjectKey key, Object o, boolean force) {
+        evictionLock.lock();
+        try {
+            CacheEntry existing = entries.get(key);
+            if (existing != null) {
+                if (!force) {
+                    return;
+                }
+                window.remove(key);
+                main.remove(key);
+            }
+            CacheEntry entry = new CacheEntry(key, o);
+            entries.put(key, entry);
+            window.put(key, entry);
+            if (window.size() > maxWindowSize) {
+                admit(removeFirst(window));
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Moves a statement evicted from the window to the main region, if it is
+     * used more frequently than the statement the main region would evict.
+     * Must be called with the eviction lock held.
+     */
+    private void admit(CacheEntry candidate) {
+        if (main.size() < maxMainSize) {
+            main.put(candidate.key, candidate);
+            return;
+        }
+        CacheEntry victim = selectVictim();
+        if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+            main.remove(victim.key);
+            evict(victim);
+            main.put(candidate.key, candidate);
+        } else {
+            evict(candidate);
+        }
+    }
+
+    /**
+     * Oldest statement of the main region that was not hit since it was last
+     * considered. Must be called with the eviction lock held.
+     * @return victim entry, null when the main region is empty
+     */
+    private CacheEntry selectVictim() {
+        for (int i = 0; i < main.size(); i++) {
+            CacheEntry entry = main.values().iterator().next();
+            if (entry.hits.getAndSet(0) == 0) {
+                return entry;
+            }
+            //second chance
+            main.remove(entry.key);
+            main.put(entry.key, entry);
+        }
+        return main.isEmpty() ? null : main.values().iterator().next();
+    }
+
+    private static CacheEntry removeFirst(Map<CacheObjectKey, CacheEntry> region) {
+        Iterator<CacheEntry> it = region.values().iterator();
+        CacheEntry entry = it.next();
+        it.remove();
+        return entry;
+    }
+
+    /**
+     * Removes the entry from the cache and closes its statement, unless the
+     * statement is in use in which case it is closed by its user.
+     */
+    private void evict(CacheEntry entry) {
+        entries.remove(entry.key, entry);
+        if (entry.entryObj instanceof PreparedStatementWrapper) {
+            PreparedStatementWrapper ps = (PreparedStatementWrapper) entry.entryObj;
+            ps.setCached(false);
+            if (!ps.isBusy()) {
+                try {
+                    ps.close();
+                } catch (SQLException e) {
+                    //ignore
+                }
+            }
+        }
+        if (probeProvider != null) {
+            probeProvider.statementCacheEvictionEvent(poolInfo.getName(),
+                    poolInfo.getApplicationName(), poolInfo.getModuleName());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void clearCache() {
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.fine("clearing objects in cache");
+        }
+        evictionLock.lock();
+        try {
+            window.clear();
+            main.clear();
+            entries.clear();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void flushCache() {
+        evictionLock.lock();
+        try {
+            while (!entries.isEmpty() && purgeOne()) {
+                //continue
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void purge() {
+        evictionLock.lock();
+        try {
+            purgeOne();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean purgeOne() {
+        Map<CacheObjectKey, CacheEntry> region = window.isEmpty() ? main : window;
+        if (region.isEmpty()) {
+            return false;
+        }
+        CacheEntry entry = removeFirst(region);
+        entries.remove(entry.key, entry);
+        closeStatement(entry);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void purge(Object obj) {
+        evictionLock.lock();
+        try {
+            for (CacheEntry entry : entries.values()) {
+                if (entry.entryObj == obj) {
+                    if (_logger.isLoggable(Level.FINEST)) {
+                        _logger.log(Level.FINEST, "Purging an entry from cache");
+                    }
+                    window.remove(entry.key);
+                    main.remove(entry.key);
+                    entries.remove(entry.key, entry);
+                    closeStatement(entry);
+                    break;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void closeStatement(CacheEntry entry) {
+        if (entry.entryObj instanceof PreparedStatementWrapper) {
+            PreparedStatementWrapper ps = (PreparedStatementWrapper) entry.entryObj;
+            try {
+                ps.setCached(false);
+                ps.close();
+            } catch (SQLException e) {
+                //ignore
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Number of times the cached statement for this key was hit since it was
+     * added to the cache or last considered for eviction.
+     * @param key statement key
+     * @return hit count, -1 if the statement is not cached
+     */
+    public int getHitCount(CacheObjectKey key) {
+        CacheEntry entry = entries.get(key);
+        return (entry == null) ? -1 : entry.hits.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isSynchronized() {
+        return true;
+    }
+
+    /**
+     * Cache object that has an entry along with its hit counter.
+     */
+    private static class CacheEntry {
+        private final CacheObjectKey key;
+        private final Object entryObj;
+        private final AtomicInteger hits = new AtomicInteger();
+
+        CacheEntry(CacheObjectKey key, Object o) {
+            this.key = key;
+            this.entryObj = o;
+        }
+    }
+}
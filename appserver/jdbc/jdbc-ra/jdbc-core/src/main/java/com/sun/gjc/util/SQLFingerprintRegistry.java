@@ -0,0 +1,171 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.gjc.util;
+
+import com.sun.gjc.spi.base.CacheObjectKey;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool wide record of the statements that are prepared through the statement
+ * caches of the pool's connections. The most frequently requested statements
+ * are used to pre-populate the statement cache of a newly created connection,
+ * so that a flushed or resized pool does not have every connection parse the
+ * same statements on first use.
+ * <p>
+ * The registry tracks at most twice <code>maxSize</code> statements. When full,
+ * it keeps the <code>maxSize</code> most requested statements. Counts are
+ * halved every ten times <code>maxSize</code> requests, so that statements no
+ * longer in use are forgotten over time.
+ *
+ * @see com.sun.gjc.spi.ManagedConnectionImpl#warmUpStatementCache
+ */
+public class SQLFingerprintRegistry {
+
+    private final ConcurrentHashMap<CacheObjectKey, LongAdder> fingerprints;
+    private final int maxSize;
+    //requests recorded since the counts were last halved
+    private final LongAdder requests = new LongAdder();
+    private final ReentrantLock trimLock = new ReentrantLock();
+
+    public SQLFingerprintRegistry(int maxSize) {
+        this.maxSize = maxSize;
+        fingerprints = new ConcurrentHashMap<CacheObjectKey, LongAdder>(maxSize * 2);
+    }
+
+    /**
+     * Records a request for the statement identified by this key.
+     *
+     * @param key statement cache key
+     */
+    public void record(CacheObjectKey key) {
+        LongAdder count = fingerprints.get(key);
+        if (count == null) {
+            if (fingerprints.size() >= maxSize * 2) {
+                trim();
+            }
+            count = new LongAdder();
+            LongAdder existing = fingerprints.putIfAbsent(key, count);
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        count.increment();
+        requests.increment();
+    }
+
+    /**
+     * Drops the least requested statements, ageing the others when due. Only one
+     * thread trims at a time, others keep on recording.
+     */
+    private void trim() {
+        if (!trimLock.tryLock()) {
+            return;
+        }
+        try {
+            boolean age = requests.sum() >= 10L * maxSize;
+            if (age) {
+                requests.reset();
+            }
+            List<Map.Entry<CacheObjectKey, Long>> sorted = snapshot();
+            for (int i = 0; i < sorted.size(); i++) {
+                Map.Entry<CacheObjectKey, Long> entry = sorted.get(i);
+                if (i >= maxSize) {
+                    fingerprints.remove(entry.getKey());
+                } else if (age) {
+                    LongAdder count = fingerprints.get(entry.getKey());
+                    if (count != null) {
+                        count.add(-(entry.getValue() / 2));
+                    }
+                }
+            }
+        } finally {
+            trimLock.unlock();
+        }
+    }
+
+    /**
+     * Statements of the pool ordered from the most to the least requested.
+     *
+     * @param max maximum number of statements to be returned
+     * @return list of statement cache keys
+     */
+    public List<CacheObjectKey> getHottest(int max) {
+        List<Map.Entry<CacheObjectKey, Long>> sorted = snapshot();
+        int size = Math.min(max, sorted.size());
+        List<CacheObjectKey> keys = new ArrayList<CacheObjectKey>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(sorted.get(i).getKey());
+        }
+        return keys;
+    }
+
+    private List<Map.Entry<CacheObjectKey, Long>> snapshot() {
+        List<Map.Entry<CacheObjectKey, Long>> entries =
+                new ArrayList<Map.Entry<CacheObjectKey, Long>>(fingerprints.size());
+        for (Map.Entry<CacheObjectKey, LongAdder> entry : fingerprints.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<CacheObjectKey, Long>(
+                    entry.getKey(), entry.getValue().sum()));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<CacheObjectKey, Long>>() {
+            public int compare(Map.Entry<CacheObjectKey, Long> e1, Map.Entry<CacheObjectKey, Long> e2) {
+                return e2.getValue().compareTo(e1.getValue());
+            }
+        });
+        return entries;
+    }
+
+    public int getSize() {
+        return fingerprints.size();
+    }
+
+    public void clear() {
+        fingerprints.clear();
+    }
+}
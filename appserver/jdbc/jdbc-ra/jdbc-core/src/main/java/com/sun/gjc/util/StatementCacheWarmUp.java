@@ -0,0 +1,196 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.gjc.util;
+
+import com.sun.gjc.spi.base.CacheObjectKey;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Background pre-population of the statement cache of one connection.
+ * <p>
+ * JDBC connections are not required to be thread safe, so the warm up and the
+ * application never use the connection at the same time: a connection handle
+ * request cancels the warm up and waits until it no longer uses the
+ * connection. The warm up stops before preparing its next statement, so the
+ * wait is at most for the statement being prepared, which is then closed
+ * instead of being cached.
+ *
+ * @see SQLFingerprintRegistry
+ */
+public class StatementCacheWarmUp {
+
+    /**
+     * Access to the connection being warmed up. All methods are called by the
+     * thread running the warm up, while it has exclusive use of the connection.
+     */
+    public interface Target {
+
+        /**
+         * Gets the connection ready for preparing statements.
+         *
+         * @return false if the statement cache of the connection cannot be
+         *         warmed up
+         */
+        boolean open() throws SQLException;
+
+        /**
+         * Prepares a cacheable statement matching the key.
+         */
+        Object prepare(CacheObjectKey key) throws SQLException;
+
+        /**
+         * Adds a statement prepared by the warm up to the cache.
+         */
+        void addToCache(CacheObjectKey key, Object statement);
+
+        /**
+         * Closes a statement prepared by the warm up that is not cached.
+         */
+        void discard(Object statement);
+
+        /**
+         * Releases what {@link #open()} acquired, called once the warm up no
+         * longer uses the connection, even if opening it failed.
+         */
+        void close();
+    }
+
+    private static final int PENDING = 0;
+    private static final int RUNNING = 1;
+    private static final int CANCELLING = 2;
+    private static final int DONE = 3;
+
+    private int state = PENDING;
+
+    private Thread runner;
+
+    /**
+     * Prepares the statements, most requested first, and adds them to the
+     * cache until all are cached or the warm up is cancelled. Does nothing if
+     * the warm up already ran or was cancelled.
+     *
+     * @param keys statements to be prepared
+     * @param target connection being warmed up
+     * @return number of statements added to the cache
+     * @throws SQLException if a statement could not be prepared, the statements
+     *         prepared so far remain cached
+     */
+    public int run(List<CacheObjectKey> keys, Target target) throws SQLException {
+        synchronized (this) {
+            if (state != PENDING) {
+                return 0;
+            }
+            state = RUNNING;
+            runner = Thread.currentThread();
+        }
+        int warmed = 0;
+        try {
+            if (target.open()) {
+                for (CacheObjectKey key : keys) {
+                    if (!isRunning()) {
+                        break;
+                    }
+                    Object statement = target.prepare(key);
+                    if (!isRunning()) {
+                        target.discard(statement);
+                        break;
+                    }
+                    target.addToCache(key, statement);
+                    warmed++;
+                }
+            }
+        } finally {
+            try {
+                target.close();
+            } finally {
+                synchronized (this) {
+                    state = DONE;
+                    runner = null;
+                    notifyAll();
+                }
+            }
+        }
+        return warmed;
+    }
+
+    private synchronized boolean isRunning() {
+        return state == RUNNING;
+    }
+
+    /**
+     * Cancels the warm up, or prevents it from starting, and waits until the
+     * warm up no longer uses the connection: at most for the statement being
+     * prepared to be closed. Does not wait when called by the warm up itself,
+     * for instance when a failure destroys the connection.
+     */
+    public synchronized void cancel() {
+        if (state == PENDING) {
+            state = DONE;
+            return;
+        }
+        if (state == RUNNING) {
+            state = CANCELLING;
+        }
+        if (runner == Thread.currentThread()) {
+            return;
+        }
+        boolean interrupted = false;
+        while (state != DONE) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true once the warm up completed or was cancelled
+     */
+    public synchronized boolean isDone() {
+        return state == DONE;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.gjc.spi.base.datastructure;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void countsSaturate() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        assertEquals(0, sketch.frequency("select 1"));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("select 1");
+        }
+        assertEquals(5, sketch.frequency("select 1"));
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("select 1");
+        }
+        assertEquals(15, sketch.frequency("select 1"));
+    }
+
+    @Test
+    public void countsAreHalvedAfterSample() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("select 0");
+        }
+        assertEquals(15, sketch.frequency("select 0"));
+        //the sample is ten times the size, the other keys push it over
+        for (int k = 1; k <= 10; k++) {
+            for (int i = 0; i < 15; i++) {
+                sketch.increment("select " + k);
+            }
+        }
+        int frequency = sketch.frequency("select 0");
+        assertTrue(String.valueOf(frequency), frequency >= 7 && frequency < 15);
+    }
+
+    @Test
+    public void concurrentIncrementsAreNotLost() throws Exception {
+        final FrequencySketch sketch = new FrequencySketch(1000);
+        final int threads = 5;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 3; j++) {
+                        for (int k = 0; k < 100; k++) {
+                            sketch.increment("select " + k);
+                        }
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        for (int k = 0; k < 100; k++) {
+            assertEquals("select " + k, 15, sketch.frequency("select " + k));
+        }
+    }
+}
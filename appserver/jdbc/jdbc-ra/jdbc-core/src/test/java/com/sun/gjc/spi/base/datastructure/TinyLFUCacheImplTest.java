@@ -0,0 +1,134 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.gjc.spi.base.datastructure;
+
+import com.sun.gjc.spi.base.CacheObjectKey;
+import org.glassfish.resourcebase.resources.api.PoolInfo;
+
+import java.sql.ResultSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TinyLFUCacheImplTest {
+
+    private TinyLFUCacheImpl cache;
+
+    @Before
+    public void setUp() {
+        cache = new TinyLFUCacheImpl(new PoolInfo("pool"), 10);
+    }
+
+    @Test
+    public void hitAndMiss() {
+        CacheObjectKey key = key("select 1");
+        assertNull(cache.checkAndUpdateCache(key));
+        Object stmt = new Object();
+        cache.addToCache(key, stmt, false);
+        assertSame(stmt, cache.checkAndUpdateCache(key("select 1")));
+        assertEquals(1, cache.getHitCount(key));
+        assertEquals(1, cache.getSize());
+        assertTrue(cache.isSynchronized());
+    }
+
+    @Test
+    public void addWithoutForceKeepsExistingEntry() {
+        Object first = new Object();
+        cache.addToCache(key("select 1"), first, false);
+        cache.addToCache(key("select 1"), new Object(), false);
+        assertSame(first, cache.checkAndUpdateCache(key("select 1")));
+
+        Object second = new Object();
+        cache.addToCache(key("select 1"), second, true);
+        assertSame(second, cache.checkAndUpdateCache(key("select 1")));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        for (int i = 0; i < 100; i++) {
+            cache.addToCache(key("select " + i), new Object(), false);
+        }
+        assertTrue(cache.getSize() <= 10);
+    }
+
+    @Test
+    public void frequentlyUsedStatementsSurviveScan() {
+        for (int i = 0; i < 9; i++) {
+            CacheObjectKey key = key("hot " + i);
+            cache.checkAndUpdateCache(key);
+            cache.addToCache(key, new Object(), false);
+            for (int j = 0; j < 5; j++) {
+                cache.checkAndUpdateCache(key);
+            }
+        }
+        //one-off statements must not push out the hot ones that are still in use
+        for (int i = 0; i < 1000; i++) {
+            CacheObjectKey key = key("cold " + i);
+            if (cache.checkAndUpdateCache(key) == null) {
+                cache.addToCache(key, new Object(), false);
+            }
+            assertNotNull(cache.checkAndUpdateCache(key("hot " + (i % 9))));
+        }
+        for (int i = 0; i < 9; i++) {
+            assertNotNull("hot " + i, cache.checkAndUpdateCache(key("hot " + i)));
+        }
+    }
+
+    @Test
+    public void purgeAndFlush() {
+        Object stmt = new Object();
+        cache.addToCache(key("select 1"), stmt, false);
+        cache.addToCache(key("select 2"), new Object(), false);
+        cache.purge(stmt);
+        assertNull(cache.checkAndUpdateCache(key("select 1")));
+        assertEquals(1, cache.getSize());
+
+        cache.flushCache();
+        assertEquals(0, cache.getSize());
+    }
+
+    private static CacheObjectKey key(String sql) {
+        return new CacheObjectKey(sql, CacheObjectKey.PREPARED_STATEMENT,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.gjc.util;
+
+import com.sun.gjc.spi.base.CacheObjectKey;
+import java.sql.ResultSet;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SQLFingerprintRegistryTest {
+
+    private static CacheObjectKey key(String sql) {
+        return new CacheObjectKey(sql, CacheObjectKey.PREPARED_STATEMENT,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    @Test
+    public void hottestStatementsFirst() {
+        SQLFingerprintRegistry registry = new SQLFingerprintRegistry(10);
+        for (int i = 1; i <= 5; i++) {
+            for (int j = 0; j < i; j++) {
+                registry.record(key("select " + i));
+            }
+        }
+        List<CacheObjectKey> hottest = registry.getHottest(3);
+        assertEquals(3, hottest.size());
+        assertEquals(key("select 5"), hottest.get(0));
+        assertEquals(key("select 4"), hottest.get(1));
+        assertEquals(key("select 3"), hottest.get(2));
+        assertEquals(5, registry.getHottest(20).size());
+    }
+
+    @Test
+    public void sizeIsBoundedAndHotStatementsAreKept() {
+        SQLFingerprintRegistry registry = new SQLFingerprintRegistry(4);
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 10; j++) {
+                registry.record(key("hot " + i));
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            registry.record(key("cold " + i));
+        }
+        assertTrue(registry.getSize() <= 8);
+        List<CacheObjectKey> hottest = registry.getHottest(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(hottest.contains(key("hot " + i)));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.gjc.util;
+
+import com.sun.gjc.spi.base.CacheObjectKey;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StatementCacheWarmUpTest {
+
+    private static CacheObjectKey key(String sql) {
+        return new CacheObjectKey(sql, CacheObjectKey.PREPARED_STATEMENT,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    private static class RecordingTarget implements StatementCacheWarmUp.Target {
+        final Map<CacheObjectKey, Object> cache = new ConcurrentHashMap<CacheObjectKey, Object>();
+        final List<Object> discarded = new ArrayList<Object>();
+        final AtomicInteger prepared = new AtomicInteger();
+        final AtomicInteger opened = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+
+        public boolean open() throws SQLException {
+            opened.incrementAndGet();
+            return true;
+        }
+
+        public Object prepare(CacheObjectKey key) throws SQLException {
+            prepared.incrementAndGet();
+            return "statement:" + key.getSql();
+        }
+
+        public void addToCache(CacheObjectKey key, Object statement) {
+            cache.put(key, statement);
+        }
+
+        public void discard(Object statement) {
+            discarded.add(statement);
+        }
+
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void allStatementsAreCached() throws Exception {
+        StatementCacheWarmUp warmUp = new StatementCacheWarmUp();
+        RecordingTarget target = new RecordingTarget();
+        List<CacheObjectKey> keys = Arrays.asList(key("select 1"), key("select 2"), key("select 3"));
+
+        assertEquals(3, warmUp.run(keys, target));
+        assertEquals(3, target.cache.size());
+        assertEquals("statement:select 2", target.cache.get(key("select 2")));
+        assertTrue(warmUp.isDone());
+        //runs once only
+        assertEquals(0, warmUp.run(keys, target));
+        assertEquals(3, target.prepared.get());
+        assertEquals(1, target.opened.get());
+        assertEquals(1, target.closed.get());
+    }
+
+    @Test
+    public void cancelledBeforeStartDoesNothing() throws Exception {
+        StatementCacheWarmUp warmUp = new StatementCacheWarmUp();
+        RecordingTarget target = new RecordingTarget();
+        warmUp.cancel();
+
+        assertEquals(0, warmUp.run(Arrays.asList(key("select 1")), target));
+        assertEquals(0, target.prepared.get());
+        assertEquals(0, target.opened.get());
+        assertTrue(target.cache.isEmpty());
+    }
+
+    @Test
+    public void unsupportedConnectionIsNotWarmedUp() throws Exception {
+        StatementCacheWarmUp warmUp = new StatementCacheWarmUp();
+        RecordingTarget target = new RecordingTarget() {
+            @Override
+            public boolean open() throws SQLException {
+                super.open();
+                return false;
+            }
+        };
+
+        assertEquals(0, warmUp.run(Arrays.asList(key("select 1")), target));
+        assertEquals(0, target.prepared.get());
+        assertEquals(1, target.closed.get());
+        assertTrue(warmUp.isDone());
+    }
+
+    @Test
+    public void cancelWaitsForThePreparedStatement() throws Exception {
+        final StatementCacheWarmUp warmUp = new StatementCacheWarmUp();
+        final CountDownLatch preparing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingTarget target = new RecordingTarget() {
+            @Override
+            public Object prepare(CacheObjectKey key) throws SQLException {
+                Object statement = super.prepare(key);
+                if (prepared.get() == 2) {
+                    preparing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new SQLException(e);
+                    }
+                }
+                return statement;
+            }
+        };
+        final AtomicInteger warmed = new AtomicInteger(-1);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    warmed.set(warmUp.run(Arrays.asList(
+                            key("select 1"), key("select 2"), key("select 3")), target));
+                } catch (SQLException e) {
+                    //fails the test below
+                }
+            }
+        };
+        thread.start();
+        assertTrue(preparing.await(10, TimeUnit.SECONDS));
+
+        Thread canceller = new Thread() {
+            @Override
+            public void run() {
+                warmUp.cancel();
+            }
+        };
+        canceller.start();
+        //waits while the second statement is being prepared
+        canceller.join(200);
+        assertTrue(canceller.isAlive());
+        assertFalse(warmUp.isDone());
+
+        release.countDown();
+        canceller.join(10000);
+        assertFalse(canceller.isAlive());
+        //the connection is no longer used once cancel returned
+        assertTrue(warmUp.isDone());
+        assertEquals(1, target.cache.size());
+        assertTrue(target.cache.containsKey(key("select 1")));
+        assertEquals(Arrays.<Object>asList("statement:select 2"), target.discarded);
+        assertEquals(2, target.prepared.get());
+        assertEquals(1, target.closed.get());
+        thread.join(10000);
+        assertEquals(1, warmed.get());
+    }
+
+    @Test
+    public void cancelByTheWarmUpItselfDoesNotWait() throws Exception {
+        final StatementCacheWarmUp warmUp = new StatementCacheWarmUp();
+        RecordingTarget target = new RecordingTarget() {
+            @Override
+            public Object prepare(CacheObjectKey key) throws SQLException {
+                //e.g. the connection is destroyed after a fatal error
+                warmUp.cancel();
+                return super.prepare(key);
+            }
+        };
+
+        assertEquals(0, warmUp.run(Arrays.asList(key("select 1"), key("select 2")), target));
+        assertEquals(1, target.prepared.get());
+        assertEquals(Arrays.<Object>asList("statement:select 1"), target.discarded);
+        assertTrue(warmUp.isDone());
+    }
+
+    @Test
+    public void failureKeepsStatementsCachedSoFar() throws Exception {
+        StatementCacheWarmUp warmUp = new StatementCacheWarmUp();
+        RecordingTarget target = new RecordingTarget() {
+            @Override
+            public Object prepare(CacheObjectKey key) throws SQLException {
+                if (key.getSql().equals("broken")) {
+                    throw new SQLException("syntax error");
+                }
+                return super.prepare(key);
+            }
+        };
+        try {
+            warmUp.run(Arrays.asList(key("select 1"), key("broken"), key("select 3")), target);
+            fail("expected SQLException");
+        } catch (SQLException expected) {
+        }
+        assertEquals(1, target.cache.size());
+        assertEquals(1, target.closed.get());
+        assertTrue(warmUp.isDone());
+    }
+}
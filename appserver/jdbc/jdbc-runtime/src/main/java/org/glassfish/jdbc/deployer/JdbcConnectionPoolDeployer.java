@@ -470,6 +470,15 @@ public class JdbcConnectionPoolDeployer implements ResourceDeployer {
                     conConnPool.setDataStructureParameters(rp.getValue());
                     logFine("DATASTRUCTUREPARAMETERS");
 
+                } else if ("BACKGROUND-VALIDATION-PERIOD".equals(name.toUpperCase(locale))) {
+                    String value = rp.getValue();
+                    try {
+                        conConnPool.setBackgroundValidationPeriod(Long.parseLong(value) * 1000L);
+                        logFine("BACKGROUND-VALIDATION-PERIOD");
+                    } catch (NumberFormatException nfe) {
+                        _logger.log(Level.WARNING, "Invalid value for 'background-validation-period' : " + value);
+                    }
+
                 } else if ("USERNAME".equals(name.toUpperCase(Locale.getDefault()))
                         || "USER".equals(name.toUpperCase(locale))) {
 
@@ -498,6 +507,11 @@ public class JdbcConnectionPoolDeployer implements ResourceDeployer {
                                 rp.getValue(), "StatementCacheType", "java.lang.String"));
 		    }
 
+                } else if ("STATEMENT-CACHE-WARMUP-SIZE".equals(name.toUpperCase(Locale.getDefault()))) {
+
+                    propList.add(new ConnectorConfigProperty("StatementCacheWarmUpSize",
+                            rp.getValue(), "StatementCacheWarmUpSize", "java.lang.String"));
+
                 } else if ("NUMBER-OF-TOP-QUERIES-TO-REPORT".equals(name.toUpperCase(Locale.getDefault()))) {
 
                     propList.add(new ConnectorConfigProperty("NumberOfTopQueriesToReport",
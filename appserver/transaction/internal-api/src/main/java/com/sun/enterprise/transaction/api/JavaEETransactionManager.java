@@ -261,6 +261,12 @@ public interface JavaEETransactionManager extends TransactionManager {
      */
     public java.util.ArrayList getActiveTransactions();
 
+    /*
+     * Returns the given percentiles, between 0 and 100, of the age of the
+     * active transactions in milliseconds. Called by the monitoring framework
+     */
+    public long[] getActiveTransactionAgePercentiles(double... percentiles);
+
     /*
      * Called by Admin Framework. Forces the given transaction to be rolled back
      */
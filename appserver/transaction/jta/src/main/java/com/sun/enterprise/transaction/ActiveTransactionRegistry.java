@@ -0,0 +1,136 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.transaction;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the active transactions, used when transaction monitoring
+ * is enabled.
+ * <p>
+ * Transactions are keyed by themselves, i.e. by their transaction id, as
+ * the equals() of the transaction implementations compares ids. The
+ * registry is a ConcurrentHashMap, whose bins are locked independently, so
+ * that adding and removing a transaction is O(1) and does not contend on
+ * a global lock. Iteration is weakly consistent: it reflects the
+ * transactions active when it started, and possibly some that began or
+ * completed afterwards, without copying or locking the registry.
+ */
+public class ActiveTransactionRegistry {
+
+    private final ConcurrentHashMap<Object, Long> transactions;
+
+    public ActiveTransactionRegistry() {
+        transactions = new ConcurrentHashMap<Object, Long>(256, 0.75f,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Registers an active transaction.
+     *
+     * @return false if the transaction was already registered.
+     */
+    public boolean add(Object tx) {
+        return add(tx, (tx instanceof JavaEETransactionImpl)
+                ? ((JavaEETransactionImpl) tx).getStartTime()
+                : System.currentTimeMillis());
+    }
+
+    boolean add(Object tx, long startTime) {
+        return transactions.putIfAbsent(tx, startTime) == null;
+    }
+
+    /**
+     * Unregisters a transaction.
+     *
+     * @return false if the transaction was not registered.
+     */
+    public boolean remove(Object tx) {
+        return transactions.remove(tx) != null;
+    }
+
+    public void clear() {
+        transactions.clear();
+    }
+
+    public int size() {
+        return transactions.size();
+    }
+
+    /**
+     * Returns a weakly consistent view of the active transactions.
+     */
+    public Collection<Object> getTransactions() {
+        return transactions.keySet();
+    }
+
+    /**
+     * Returns the given percentiles of the age of the active transactions.
+     *
+     * @param percentiles the percentiles, between 0 and 100.
+     * @return the ages in milliseconds, in the order of the percentiles, or
+     * zeros if there is no active transaction.
+     */
+    public long[] getAgePercentiles(double... percentiles) {
+        long now = System.currentTimeMillis();
+        long[] ages = new long[transactions.size()];
+        int count = 0;
+        for (Long startTime : transactions.values()) {
+            if (count == ages.length) {
+                ages = Arrays.copyOf(ages, count * 2 + 1);
+            }
+            ages[count++] = Math.max(0, now - startTime);
+        }
+        Arrays.sort(ages, 0, count);
+
+        long[] result = new long[percentiles.length];
+        if (count > 0) {
+            for (int i = 0; i < percentiles.length; i++) {
+                // nearest rank
+                int rank = (int) Math.ceil(percentiles[i] / 100 * count);
+                result[i] = ages[Math.min(count, Math.max(1, rank)) - 1];
+            }
+        }
+        return result;
+    }
+}
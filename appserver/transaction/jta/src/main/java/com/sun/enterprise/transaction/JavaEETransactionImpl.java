@@ -67,12 +67,12 @@ import com.sun.logging.LogDomains;
  * If jtsTx!=null, all calls are delegated to jtsTx.
  *
 
- * Time out capability is added to the local transactions. This class extends the TimerTask.
- * When the transaction needs to be timedout, this schedules with the timer. At the commit 
+ * Time out capability is added to the local transactions. This class is a Runnable.
+ * When the transaction needs to be timedout, this schedules with the timeout wheel. At the commit 
  * and rollback time, task will be cancelled.  If the transaction is timedout, run() method
  * will be called and transaction will be marked for rollback.
  */
-public final class JavaEETransactionImpl extends TimerTask implements
+public final class JavaEETransactionImpl implements Runnable,
         JavaEETransaction {
 
     static Logger _logger = LogDomains.getLogger(JavaEETransactionImpl.class, LogDomains.JTA_LOGGER);
@@ -108,6 +108,7 @@ public final class JavaEETransactionImpl extends TimerTask implements
     private boolean timedOut = false;
     private boolean isTimerTask = false;
     private int timeout = 0;
+    private TimeoutWheel.Timeout timerTask;
     // END: local transaction timeout
     private boolean imported = false;
 
@@ -128,16 +129,10 @@ public final class JavaEETransactionImpl extends TimerTask implements
     // tx-specific ejb container info associated with this tx
     private Object containerData = null;
 
-    static private boolean isTimerInitialized = false;
-    static private Timer timer = null;
-    static private long timerTasksScheduled = 0; // Global counter
-
-    static synchronized private void initializeTimer() {
-        if (isTimerInitialized)
-            return;
-        timer = new Timer(true); // daemon 
-        isTimerInitialized = true;
-    }
+    // Resolution of the local transaction timeouts, in milliseconds
+    static private final long TIMEOUT_TICK = 100;
+    static private final TimeoutWheel timer =
+            new TimeoutWheel("Local Transaction Timeout", TIMEOUT_TICK);
 
     JavaEETransactionImpl(JavaEETransactionManager javaEETM) {
         this.javaEETM = javaEETM;
@@ -154,10 +149,7 @@ public final class JavaEETransactionImpl extends TimerTask implements
     // START: local transaction timeout
     JavaEETransactionImpl(int timeout, JavaEETransactionManager javaEETM) {
         this(javaEETM);
-        if (!isTimerInitialized)
-            initializeTimer();
-        timer.schedule(this,timeout * 1000L);
-        timerTasksScheduled++;
+        timerTask = timer.schedule(this,timeout * 1000L);
         isTimerTask = true;
         this.timeout = timeout;
     }
@@ -170,7 +162,7 @@ public final class JavaEETransactionImpl extends TimerTask implements
     }
 
     // START: local transaction timeout
-    // TimerTask run() method implementation
+    // Runnable run() method implementation, called by the timeout wheel
     public void run() {
         timedOut = true;
         try {
@@ -192,16 +184,10 @@ public final class JavaEETransactionImpl extends TimerTask implements
         return isTimerTask;
     }
 
-    // Cancels the timertask and returns the timeout
+    // Cancels the timertask and returns the timeout. The task is unlinked
+    // from the timeout wheel, so there is no canceled task left to purge.
     public int cancelTimerTask() {
-        cancel();
-        int mod = javaEETM.getPurgeCancelledTtransactionsAfter();
-        if (mod > 0 && timerTasksScheduled % mod == 0) {
-            int purged = timer.purge();
-            if (_logger.isLoggable(Level.FINE)) {
-                _logger.log(Level.FINE, "Purged " + purged + " timer tasks from canceled queue");
-            } 
-        }
+        timerTask.cancel();
         return timeout;
     }
 
@@ -132,11 +132,11 @@ public class JavaEETransactionManagerSimplified
 
     // admin and monitoring related parameters
     private  static final Hashtable statusMap = new Hashtable();
-    private List activeTransactions = Collections.synchronizedList(new ArrayList());
+    private final ActiveTransactionRegistry activeTransactions = new ActiveTransactionRegistry();
     private boolean monitoringEnabled = false;
 
     private TransactionServiceProbeProvider monitor;
-    private Hashtable txnTable = null;
+    private volatile Hashtable txnTable = null;
 
     private Cache resourceTable;
 
@@ -1126,11 +1126,11 @@ public class JavaEETransactionManagerSimplified
     */
     public ArrayList getActiveTransactions() {
         ArrayList tranBeans = new ArrayList();
-        txnTable = new Hashtable();
-        Object[] activeCopy = activeTransactions.toArray(); // get the clone of the active transactions
-        for(int i=0;i<activeCopy.length;i++){
+        Hashtable table = new Hashtable();
+        // weakly consistent, neither copied nor locked
+        for (Object active : activeTransactions.getTransactions()) {
             try{
-                Transaction tran = (Transaction)activeCopy[i];
+                Transaction tran = (Transaction)active;
                 TransactionAdminBean tBean = getDelegate().getTransactionAdminBean(tran);
                 if (tBean == null) {
                     // Shouldn't happen
@@ -1139,7 +1139,7 @@ public class JavaEETransactionManagerSimplified
                     if (_logger.isLoggable(Level.FINE))
                         _logger.log(Level.FINE, "TM: Adding txnId " + tBean.getId() + " to txnTable");
 
-                    txnTable.put(tBean.getId(), tran);
+                    table.put(tBean.getId(), tran);
                     tranBeans.add(tBean);
                 }
             }catch(Exception ex){
@@ -1147,9 +1147,19 @@ public class JavaEETransactionManagerSimplified
                     "transaction.monitor.error_while_getting_monitor_attr", ex);
             }
         }
+        txnTable = table;
         return tranBeans;
     }
 
+   /*
+    *  Returns the given percentiles of the age of the active transactions, in
+    *  milliseconds. Called by the monitoring framework when transaction
+    *  monitoring is enabled
+    */
+    public long[] getActiveTransactionAgePercentiles(double... percentiles) {
+        return activeTransactions.getAgePercentiles(percentiles);
+    }
+
     public TransactionAdminBean getTransactionAdminBean(Transaction tran)
             throws javax.transaction.SystemException {
 
@@ -1175,18 +1185,21 @@ public class JavaEETransactionManagerSimplified
      */
     public void forceRollback(String txnId) throws IllegalStateException, SystemException{
          // XXX - WORK AROUND MONITORING BUG
-         if (txnTable == null || txnTable.size() == 0)
+         Hashtable table = txnTable;
+         if (table == null || table.size() == 0) {
              getActiveTransactions();
+             table = txnTable;
+         }
          // XXX - WORK AROUND MONITORING BUG
 
-         if (txnTable == null || txnTable.get(txnId) == null) {
+         if (table.get(txnId) == null) {
             String result = sm.getString("transaction.monitor.rollback_invalid_id");
             throw new  IllegalStateException(result);
         } else {
             if (_logger.isLoggable(Level.FINE))
                 _logger.log(Level.FINE, "TM: Marking txnId " + txnId + " for rollback");
 
-             ((Transaction) txnTable.get(txnId)).setRollbackOnly();
+             ((Transaction) table.get(txnId)).setRollbackOnly();
          }
 
     }
@@ -0,0 +1,396 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.logging.LogDomains;
+
+/**
+ * Hierarchical timing wheel used to time out transactions.
+ * <p>
+ * Scheduling and canceling a timeout are O(1): a timeout is linked into
+ * the bucket of the wheel level that covers its deadline, and unlinked
+ * from it when canceled. The wheel is split in shards, each with its own
+ * lock, and a thread only locks the shard it hashes to, so that threads
+ * starting and completing transactions do not contend on a single lock.
+ * <p>
+ * A single daemon thread advances every shard by one tick at a time. The
+ * buckets of the higher levels are cascaded to the lower levels as their
+ * time comes, and the tasks of the expired timeouts are then run on that
+ * thread, outside of the shard locks. A task never runs before its delay
+ * elapsed, and runs at most one tick after it.
+ */
+public class TimeoutWheel {
+
+    private static final Logger _logger = LogDomains.getLogger(TimeoutWheel.class, LogDomains.JTA_LOGGER);
+
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    // Deadlines further away than the wheel covers are clamped
+    private static final long MAX_TICKS = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    private static final int MAX_SHARDS = 64;
+
+    private static final int SCHEDULED = 0;
+    private static final int EXPIRED = 1;
+    private static final int CANCELED = 2;
+
+    private final String name;
+    private final long tickNanos;
+    private final Shard[] shards;
+    private final int shardMask;
+    private final long startNanos = System.nanoTime();
+
+    // the current timeout thread; a thread left over from a previous
+    // start stops as soon as it sees it was replaced
+    private volatile Thread ticker;
+    private volatile boolean running;
+
+    /**
+     * Creates a wheel that checks for expired timeouts every tick.
+     *
+     * @param name the name of the thread running the tasks.
+     * @param tickMillis the duration of a tick, in milliseconds.
+     */
+    public TimeoutWheel(String name, long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis: " + tickMillis);
+        }
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int count = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (count < processors && count < MAX_SHARDS) {
+            count <<= 1;
+        }
+        shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard();
+        }
+        shardMask = count - 1;
+    }
+
+    /**
+     * Schedules a task to run once the delay elapsed, unless the returned
+     * timeout is canceled before.
+     *
+     * @param task the task to run on the timeout thread.
+     * @param delayMillis the delay, in milliseconds.
+     * @return the timeout, to cancel it.
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        if (!running) {
+            start();
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        long delay = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        // Rounded up: the task must not run before the delay elapsed
+        long deadline = (elapsed + delay + tickNanos - 1) / tickNanos;
+
+        Shard shard = shards[shardIndex()];
+        Timeout timeout = new Timeout(shard, task);
+        shard.lock.lock();
+        try {
+            timeout.deadline = Math.max(deadline, shard.tick + 1);
+            shard.add(timeout);
+        } finally {
+            shard.lock.unlock();
+        }
+        return timeout;
+    }
+
+    /**
+     * Returns the number of scheduled timeouts.
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                size += shard.size;
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Stops the timeout thread and discards all the scheduled timeouts.
+     * The wheel is restarted by the next call to schedule.
+     */
+    public void shutdown() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = ticker;
+            ticker = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.clear();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    private synchronized void start() {
+        if (running) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                tickLoop();
+            }
+        }, name);
+        thread.setDaemon(true);
+        ticker = thread;
+        running = true;
+        thread.start();
+    }
+
+    private int shardIndex() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & shardMask;
+    }
+
+    private void tickLoop() {
+        long tick = (System.nanoTime() - startNanos) / tickNanos;
+        List<Timeout> expired = new ArrayList<Timeout>();
+        Thread current = Thread.currentThread();
+        // Not just running: a schedule right after a shutdown restarts the
+        // wheel before this thread saw it was stopped
+        while (ticker == current) {
+            tick++;
+            long sleep = startNanos + tick * tickNanos - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (ticker != current) {
+                        return;
+                    }
+                }
+            }
+            for (Shard shard : shards) {
+                shard.lock.lock();
+                try {
+                    while (shard.tick < tick) {
+                        shard.advance(expired);
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+            for (Timeout timeout : expired) {
+                try {
+                    timeout.task.run();
+                } catch (Throwable t) {
+                    _logger.log(Level.WARNING, "enterprise_distributedtx.some_excep", t);
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * A scheduled task.
+     */
+    public static final class Timeout {
+        private final Shard shard;
+        private final Runnable task;
+
+        // guarded by the lock of the shard
+        private long deadline;
+        private int state = SCHEDULED;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Shard shard, Runnable task) {
+            this.shard = shard;
+            this.task = task;
+        }
+
+        /**
+         * Cancels the timeout.
+         *
+         * @return false if the task already ran or is running, or if the
+         * timeout was already canceled.
+         */
+        public boolean cancel() {
+            shard.lock.lock();
+            try {
+                if (state != SCHEDULED) {
+                    return false;
+                }
+                state = CANCELED;
+                if (prev != null) {
+                    shard.unlink(this);
+                }
+                return true;
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * One shard of the wheel: a ring of buckets per level. Every bucket is a
+     * circular list whose sentinel is a Timeout without task.
+     */
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Timeout[][] buckets = new Timeout[LEVELS][WHEEL_SIZE];
+        // the last tick processed
+        private long tick;
+        private int size;
+
+        Shard() {
+            for (int level = 0; level < LEVELS; level++) {
+                for (int i = 0; i < WHEEL_SIZE; i++) {
+                    Timeout sentinel = new Timeout(this, null);
+                    sentinel.prev = sentinel;
+                    sentinel.next = sentinel;
+                    buckets[level][i] = sentinel;
+                }
+            }
+        }
+
+        /**
+         * Links the timeout in the bucket of its deadline, relative to the
+         * current tick. A timeout due in the current tick goes to the level
+         * 0 bucket of that tick, which is only processed after cascading.
+         */
+        void add(Timeout timeout) {
+            long deadline = Math.min(Math.max(timeout.deadline, tick), tick + MAX_TICKS);
+            long delta = deadline - tick;
+            int level = 0;
+            while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+                level++;
+            }
+            int index = (int) ((deadline >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+            Timeout sentinel = buckets[level][index];
+            timeout.next = sentinel;
+            timeout.prev = sentinel.prev;
+            sentinel.prev.next = timeout;
+            sentinel.prev = timeout;
+            size++;
+        }
+
+        void unlink(Timeout timeout) {
+            timeout.prev.next = timeout.next;
+            timeout.next.prev = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            size--;
+        }
+
+        /**
+         * Advances by one tick: cascades the higher level buckets that are
+         * due, highest first, then expires the level 0 bucket of the tick.
+         */
+        void advance(List<Timeout> expired) {
+            tick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+                    int index = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                    Timeout sentinel = buckets[level][index];
+                    Timeout timeout = sentinel.next;
+                    sentinel.next = sentinel;
+                    sentinel.prev = sentinel;
+                    while (timeout != sentinel) {
+                        Timeout next = timeout.next;
+                        size--;
+                        add(timeout);
+                        timeout = next;
+                    }
+                }
+            }
+            Timeout sentinel = buckets[0][(int) (tick & WHEEL_MASK)];
+            Timeout timeout = sentinel.next;
+            sentinel.next = sentinel;
+            sentinel.prev = sentinel;
+            while (timeout != sentinel) {
+                Timeout next = timeout.next;
+                timeout.prev = null;
+                timeout.next = null;
+                timeout.state = EXPIRED;
+                size--;
+                expired.add(timeout);
+                timeout = next;
+            }
+        }
+
+        void clear() {
+            for (int level = 0; level < LEVELS; level++) {
+                for (int i = 0; i < WHEEL_SIZE; i++) {
+                    Timeout sentinel = buckets[level][i];
+                    Timeout timeout = sentinel.next;
+                    while (timeout != sentinel) {
+                        Timeout next = timeout.next;
+                        timeout.prev = null;
+                        timeout.next = null;
+                        timeout.state = CANCELED;
+                        timeout = next;
+                    }
+                    sentinel.next = sentinel;
+                    sentinel.prev = sentinel;
+                }
+            }
+            size = 0;
+        }
+    }
+}
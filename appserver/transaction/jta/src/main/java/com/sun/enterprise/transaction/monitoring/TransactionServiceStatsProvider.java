@@ -69,6 +69,10 @@ public class TransactionServiceStatsProvider {
     private static final int COLUMN_LENGTH = 25;
     private static final String LINE_BREAK = "%%%EOL%%%";
 
+    private static final double[] AGE_PERCENTILES = {50, 90, 99, 100};
+    // The percentiles of the 4 age statistics are computed together
+    private static final long AGE_REFRESH_INTERVAL = 1000;
+
     private CountStatisticImpl activeCount = new CountStatisticImpl("ActiveCount", "count", 
             "Provides the number of transactions that are currently active.");
 
@@ -86,6 +90,20 @@ public class TransactionServiceStatsProvider {
     private StringStatisticImpl state = new StringStatisticImpl("State", "String", 
                 "Indicates if the transaction service has been frozen.");
 
+    private CountStatisticImpl activeAgeMedian = new CountStatisticImpl("ActiveAgeMedian", "millisecond",
+            "Provides the median age of the transactions that are currently active.");
+
+    private CountStatisticImpl activeAge90 = new CountStatisticImpl("ActiveAge90thPercentile", "millisecond",
+            "Provides the 90th percentile of the age of the transactions that are currently active.");
+
+    private CountStatisticImpl activeAge99 = new CountStatisticImpl("ActiveAge99thPercentile", "millisecond",
+            "Provides the 99th percentile of the age of the transactions that are currently active.");
+
+    private CountStatisticImpl activeAgeMax = new CountStatisticImpl("ActiveAgeMax", "millisecond",
+            "Provides the age of the oldest transaction that is currently active.");
+
+    private long agesUpdated = 0;
+
     private boolean isFrozen = false;
 
     private JavaEETransactionManager txMgr;
@@ -122,6 +140,34 @@ public class TransactionServiceStatsProvider {
         return state;
     }
     
+    @ManagedAttribute(id="activeagemedian")
+    @Description( "Provides the median age of the transactions that are currently active." )
+    public CountStatistic getActiveAgeMedian() {
+        updateActiveAges();
+        return activeAgeMedian;
+    }
+
+    @ManagedAttribute(id="activeage90thpercentile")
+    @Description( "Provides the 90th percentile of the age of the transactions that are currently active." )
+    public CountStatistic getActiveAge90thPercentile() {
+        updateActiveAges();
+        return activeAge90;
+    }
+
+    @ManagedAttribute(id="activeage99thpercentile")
+    @Description( "Provides the 99th percentile of the age of the transactions that are currently active." )
+    public CountStatistic getActiveAge99thPercentile() {
+        updateActiveAges();
+        return activeAge99;
+    }
+
+    @ManagedAttribute(id="activeagemax")
+    @Description( "Provides the age of the oldest transaction that is currently active." )
+    public CountStatistic getActiveAgeMax() {
+        updateActiveAges();
+        return activeAgeMax;
+    }
+
     @ManagedAttribute(id="activeids")
     @Description( "List of inflight transactions." )
     public StringStatistic getActiveIds() {
@@ -217,6 +263,19 @@ public class TransactionServiceStatsProvider {
         isFrozen = b;
     }
 
+    private synchronized void updateActiveAges() {
+        long now = System.currentTimeMillis();
+        if (txMgr == null || now - agesUpdated < AGE_REFRESH_INTERVAL) {
+            return;
+        }
+        agesUpdated = now;
+        long[] ages = txMgr.getActiveTransactionAgePercentiles(AGE_PERCENTILES);
+        activeAgeMedian.setCount(ages[0]);
+        activeAge90.setCount(ages[1]);
+        activeAge99.setCount(ages[2]);
+        activeAgeMax.setCount(ages[3]);
+    }
+
     private void appendColumn(StringBuffer buf, String text, int length) {
         buf.append(text);
         for (int i=text.length(); i<length; i++){
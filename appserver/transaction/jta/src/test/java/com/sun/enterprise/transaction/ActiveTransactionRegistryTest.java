@@ -0,0 +1,81 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.transaction;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ActiveTransactionRegistryTest {
+
+    @Test
+    public void addAndRemove() {
+        ActiveTransactionRegistry registry = new ActiveTransactionRegistry();
+        assertTrue(registry.add("tx1"));
+        assertFalse(registry.add("tx1"));
+        assertTrue(registry.add("tx2"));
+        assertEquals(2, registry.size());
+        assertTrue(registry.getTransactions().contains("tx2"));
+        assertTrue(registry.remove("tx1"));
+        assertFalse(registry.remove("tx1"));
+        assertEquals(1, registry.size());
+        registry.clear();
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void agePercentiles() {
+        ActiveTransactionRegistry registry = new ActiveTransactionRegistry();
+        assertArrayEquals(new long[] {0, 0}, registry.getAgePercentiles(50, 100));
+
+        long now = System.currentTimeMillis();
+        // ages of 1 to 100 seconds
+        for (int i = 1; i <= 100; i++) {
+            registry.add("tx" + i, now - i * 1000L);
+        }
+        long[] ages = registry.getAgePercentiles(50, 90, 99, 100);
+        assertEquals(4, ages.length);
+        assertEquals(50, ages[0] / 1000);
+        assertEquals(90, ages[1] / 1000);
+        assertEquals(99, ages[2] / 1000);
+        assertEquals(100, ages[3] / 1000);
+    }
+}
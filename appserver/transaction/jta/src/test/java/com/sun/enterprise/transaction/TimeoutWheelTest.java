@@ -0,0 +1,187 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimeoutWheelTest {
+
+    @Test
+    public void taskRunsAfterDelay() throws Exception {
+        TimeoutWheel wheel = new TimeoutWheel("test", 10);
+        try {
+            final CountDownLatch ran = new CountDownLatch(1);
+            long start = System.nanoTime();
+            wheel.schedule(new Runnable() {
+                public void run() {
+                    ran.countDown();
+                }
+            }, 100);
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+            assertEquals(0, wheel.size());
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    @Test
+    public void canceledTaskDoesNotRun() throws Exception {
+        TimeoutWheel wheel = new TimeoutWheel("test", 10);
+        try {
+            final AtomicInteger runs = new AtomicInteger();
+            Runnable task = new Runnable() {
+                public void run() {
+                    runs.incrementAndGet();
+                }
+            };
+            TimeoutWheel.Timeout canceled = wheel.schedule(task, 50);
+            TimeoutWheel.Timeout kept = wheel.schedule(task, 50);
+            assertEquals(2, wheel.size());
+            assertTrue(canceled.cancel());
+            assertFalse(canceled.cancel());
+            assertEquals(1, wheel.size());
+            Thread.sleep(300);
+            assertEquals(1, runs.get());
+            assertFalse(kept.cancel());
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    @Test
+    public void timeoutsCascadeFromHigherLevels() throws Exception {
+        // with 1ms ticks, 300ms and more are beyond the first level
+        TimeoutWheel wheel = new TimeoutWheel("test", 1);
+        try {
+            final List<Long> late = new ArrayList<Long>();
+            final CountDownLatch ran = new CountDownLatch(3);
+            for (final long delay : new long[] {100, 300, 700}) {
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                wheel.schedule(new Runnable() {
+                    public void run() {
+                        synchronized (late) {
+                            late.add(System.nanoTime() - deadline);
+                        }
+                        ran.countDown();
+                    }
+                }, delay);
+            }
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+            for (long lateness : late) {
+                assertTrue(lateness >= 0);
+            }
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentScheduleAndCancel() throws Exception {
+        final TimeoutWheel wheel = new TimeoutWheel("test", 10);
+        try {
+            final AtomicInteger runs = new AtomicInteger();
+            final Runnable task = new Runnable() {
+                public void run() {
+                    runs.incrementAndGet();
+                }
+            };
+            Thread[] threads = new Thread[8];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread() {
+                    public void run() {
+                        for (int j = 0; j < 10000; j++) {
+                            wheel.schedule(task, 60000).cancel();
+                        }
+                        wheel.schedule(task, 20);
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Thread.sleep(300);
+            assertEquals(threads.length, runs.get());
+            assertEquals(0, wheel.size());
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    @Test
+    public void restartAfterShutdownKeepsOneThread() throws Exception {
+        TimeoutWheel wheel = new TimeoutWheel("restart-test", 10);
+        try {
+            final CountDownLatch ran = new CountDownLatch(1);
+            Runnable task = new Runnable() {
+                public void run() {
+                    ran.countDown();
+                }
+            };
+            wheel.schedule(task, 60000);
+            wheel.shutdown();
+            wheel.schedule(task, 20);
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals(1, countThreads("restart-test"));
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    private static int countThreads(String name) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (name.equals(thread.getName()) && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
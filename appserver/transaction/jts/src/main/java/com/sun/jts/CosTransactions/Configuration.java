@@ -208,12 +208,26 @@ public class Configuration extends Object {
      */
     public final static String KEYPOINT_COUNT = "com.sun.jts.keypointCount"/*#Frozen*/;
 
+    /**The property key used to enable group commit of the forced writes to the
+     * log.  Concurrent transactions then share a single force of the log file,
+     * which raises the commit throughput when the force dominates, at the price
+     * of a slightly longer commit for a lone transaction.  The value is the time,
+     * in microseconds, the first writer of a batch waits for other records
+     * before forcing the log; zero groups only the records written while the
+     * previous force is in progress.
+     * <p>
+     * The value is <em><b>com.sun.jts.logGroupCommitDelay</b></em>.
+     * <p>
+     * By default, group commit is disabled and every forced write forces the log.
+     */
+    public final static String LOG_GROUP_COMMIT_DELAY = "com.sun.jts.logGroupCommitDelay"/*#Frozen*/;
+
     // Property to specify the instance name
     public final static String INSTANCE_NAME = "com.sun.jts.instancename"/*#Frozen*/;
 
-    /**The property is used to specify the time interval in seconds for which the timeout
-     * manager would scan for timedout transactions. A higher value would mean better
-     * performance, but at the cost of closeness to which coordinator timeout is effected.
+    /**The property is used to specify the time interval in seconds after which the timeout
+     * manager times out again a transaction that is still around after it was timed out.
+     * Transactions are timed out within a second of their timeout.
      * <p>
      * The value is <em><b>com.sun.jts.timeoutInterval"</b></em>
      * <p>
@@ -127,6 +127,32 @@ class LogFile {
 
         this.handle = handle;
 
+        // Group commit is enabled by giving the maximum batch delay.
+
+        String delay = Configuration.getPropertyValue(Configuration.LOG_GROUP_COMMIT_DELAY);
+        if( delay != null )
+            try {
+                enableGroupCommit(Long.parseLong(delay.trim()));
+            } catch( NumberFormatException e ) {
+                _logger.log(Level.WARNING,"jts.invalid_log_group_commit_delay",delay);
+            }
+
+    }
+
+    /**Makes forced writes wait for a group commit instead of forcing the log
+     * themselves.
+     *
+     * @param maxBatchDelay  Time the leader of a batch waits for other records,
+     *                       in microseconds.
+     *
+     * @return
+     *
+     * @see LogGroupCommit
+     */
+    void enableGroupCommit( long maxBatchDelay ) {
+        synchronized( handle ) {
+            handle.groupCommit = new LogGroupCommit(handle,maxBatchDelay);
+        }
     }
 
     /**Writes a log record to the physical log.
@@ -149,21 +175,36 @@ class LogFile {
      *
      * @see
      */
-    synchronized boolean write( int    writeType,
-                                byte[] record,
-                                int    recordType,
-                                LogLSN recordLSN ) {
+    boolean write( int    writeType,
+                   byte[] record,
+                   int    recordType,
+                   LogLSN recordLSN ) {
 
         boolean result = true;
+        LogGroupCommit groupCommit = null;
+        long sequence = 0;
 
         // Write the record.
         // Set the result based on return code from log write.
+        // With group commit, a forced record is only buffered here, and the
+        // force is waited for once the log is released to other writers.
 
         try {
-            LogLSN resultLSN = handle.writeRecord(record,recordType,
-                                                  (writeType==LogFile.FORCED ? LogHandle.FORCE : LogHandle.BUFFER));
-            if( recordLSN != null )
-                recordLSN.copy(resultLSN);
+            synchronized( this ) {
+                LogLSN resultLSN = handle.writeRecord(record,recordType,
+                                                      (writeType==LogFile.FORCED ? LogHandle.FORCE : LogHandle.BUFFER));
+                if( recordLSN != null )
+                    recordLSN.copy(resultLSN);
+                if( writeType == LogFile.FORCED ) {
+                    synchronized( handle ) {
+                        groupCommit = handle.groupCommit;
+                        sequence = handle.recordSequence;
+                    }
+                }
+            }
+
+            if( groupCommit != null )
+                groupCommit.force(sequence);
         } catch( LogException le ) {
 			_logger.log(Level.SEVERE,"jts.log_error",le.toString());
 			 String msg = LogFormatter.getLocalizedMessage(_logger,"jts.log_error",
@@ -144,6 +144,11 @@ class LogFileHandle {
     int bufferUpdateEnd   = -1;
     int buffPos = 0;
 
+    /**Set when updated data was written to the file system by fileFlush,
+     * and may not have been forced to disk yet.
+     */
+    boolean unforced = false;
+
     static {
         dsyncProp = System.getProperty(DSYNC_PROPERTY);
         if (dsyncProp != null) {
@@ -404,6 +409,8 @@ class LogFileHandle {
 
             if( bufferUpdateStart != -1 )
                 fileSync();
+            else if( unforced && dsyncProp == null )
+                fd.sync();
 
             // Close the file.
 
@@ -488,6 +495,7 @@ class LogFileHandle {
 
                 bufferUpdateStart = -1;
                 bufferUpdateEnd   = -1;
+                unforced = false;
             } catch (Throwable e) {
                 throw new LogException(LogException.LOG_READ_FAILURE,1,
                         sm.getString("jts.log_file_sync_failed"), e);
@@ -495,6 +503,61 @@ class LogFileHandle {
 
     }
 
+    /**Writes the updated part of the buffer to the file system, without
+     * forcing it to disk.
+     * <p>
+     * Used by group commit, which forces the returned descriptor with
+     * fileForce once the log latch is released.
+     *
+     * @param
+     *
+     * @return  The descriptor to force, null if there is nothing to force.
+     *
+     * @exception LogException The write failed
+     *
+     * @see
+     */
+    FileDescriptor fileFlush() throws LogException {
+
+        if( bufferUpdateStart != -1 )
+            try {
+                fhandle.seek(bufferUpdateStart);
+                fhandle.write(bufferData,bufferUpdateStart,bufferUpdateEnd-bufferUpdateStart);
+
+                bufferUpdateStart = -1;
+                bufferUpdateEnd   = -1;
+                unforced = true;
+            } catch (Throwable e) {
+                throw new LogException(LogException.LOG_WRITE_FAILURE,1,
+                        sm.getString("jts.log_write_failed"), e);
+            }
+
+        return (unforced && dsyncProp == null) ? fd : null;
+    }
+
+    /**Forces a descriptor returned by fileFlush to disk.
+     * <p>
+     * This does not need the log latch. A file closed in the meantime
+     * was forced when it was closed.
+     *
+     * @param descriptor  The descriptor of the file.
+     *
+     * @return
+     *
+     * @exception LogException The sync failed
+     *
+     * @see
+     */
+    static void fileForce( FileDescriptor descriptor ) throws LogException {
+        try {
+            descriptor.sync();
+        } catch (Throwable e) {
+            if( descriptor.valid() )
+                throw new LogException(LogException.LOG_ERROR_FORCING_LOG,1,
+                        sm.getString("jts.log_file_sync_failed"), e);
+        }
+    }
+
     /**Reads a vector of records from the file.
      *
      * @param vector  The vector to contain the records to be read.
@@ -0,0 +1,256 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.jts.CosTransactions;
+
+// Import required classes.
+
+import java.io.FileDescriptor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**Group commit of the forced writes of a log.
+ * <p>
+ * Forced records are written to the log buffer like unforced ones. The
+ * writer then waits until a force covers its record. The first waiter to
+ * find no force in progress becomes the leader of the next batch: it
+ * optionally waits for the maximum batch delay so that more records join
+ * the batch. Then it writes the log buffer to the file system under the
+ * log latch, and forces the files with the latch released, so that other
+ * writers can carry on. Every waiter whose record was written before the
+ * flush is then released, with a single force for the whole batch.
+ *
+ * @see LogFile
+ * @see LogHandle
+ */
+class LogGroupCommit {
+
+    /**The log whose forced writes are grouped.
+     */
+    private final LogHandle handle;
+
+    /**Time the leader of a batch waits for other records, in nanoseconds.
+     */
+    private final long maxBatchDelay;
+
+    /**Sequence number of the last record forced to disk.
+     */
+    private long forcedSequence = 0;
+
+    /**Whether a leader is currently forcing a batch.
+     */
+    private boolean forcing = false;
+
+    /**Sequence number of the last record of the last failed batch, and the
+     * cause of the failure.
+     */
+    private long failedSequence = 0;
+    private LogException failure = null;
+
+    /**Statistics.
+     */
+    private long batchCount = 0;
+    private long batchedRecords = 0;
+
+    /**Creates the group commit for the given log.
+     *
+     * @param handle         The log.
+     * @param maxBatchDelay  Time the leader of a batch waits for other records,
+     *                       in microseconds. Zero only groups the records
+     *                       written while the previous batch is forced.
+     *
+     * @return
+     *
+     * @see
+     */
+    LogGroupCommit( LogHandle handle, long maxBatchDelay ) {
+        this.handle = handle;
+        this.maxBatchDelay = TimeUnit.MICROSECONDS.toNanos(Math.max(0, maxBatchDelay));
+    }
+
+    /**Waits until the record with the given sequence number is forced to
+     * disk, forcing the log if no other thread does it.
+     *
+     * @param sequence  The sequence number of the record.
+     *
+     * @return
+     *
+     * @exception LogException The force of the batch of the record failed.
+     *
+     * @see
+     */
+    void force( long sequence ) throws LogException {
+        boolean interrupted = false;
+
+        synchronized( this ) {
+            while( true ) {
+                if( forcedSequence >= sequence ) {
+                    if( interrupted )
+                        Thread.currentThread().interrupt();
+                    return;
+                }
+                if( failure != null && failedSequence >= sequence ) {
+                    if( interrupted )
+                        Thread.currentThread().interrupt();
+                    throw new LogException(LogException.LOG_ERROR_FORCING_LOG, 1,
+                            failure.getMessage(), failure);
+                }
+                if( !forcing ) {
+                    forcing = true;
+                    break;
+                }
+                try {
+                    wait();
+                } catch( InterruptedException e ) {
+                    // the record may not be on disk yet, keep waiting
+                    interrupted = true;
+                }
+            }
+        }
+
+        try {
+            lead();
+        } finally {
+            if( interrupted )
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**Forces one batch, as its leader. The batch only counts as forced once
+     * its last descriptor is forced: any other exit, including a runtime
+     * exception or an error, fails the records of the batch.
+     *
+     * @param
+     *
+     * @return
+     *
+     * @exception LogException The force failed.
+     *
+     * @see
+     */
+    private void lead() throws LogException {
+        List<LogExtent> extents = new ArrayList<LogExtent>();
+        List<FileDescriptor> descriptors = new ArrayList<FileDescriptor>();
+        long batchSequence = 0;
+        long previousSequence;
+        boolean forced = false;
+        LogException error = null;
+        Throwable cause = null;
+
+        synchronized( this ) {
+            previousSequence = forcedSequence;
+        }
+
+        try {
+            if( maxBatchDelay > 0 )
+                LockSupport.parkNanos(maxBatchDelay);
+
+            // Taken before any I/O, so that a failed flush still fails the
+            // records that were written for this batch.
+            synchronized( handle ) {
+                batchSequence = handle.recordSequence;
+            }
+            batchSequence = handle.flushForGroupCommit(extents, descriptors);
+            for( FileDescriptor descriptor : descriptors )
+                LogFileHandle.fileForce(descriptor);
+            forced = true;
+        } catch( LogException le ) {
+            error = le;
+        } catch( RuntimeException re ) {
+            cause = re;
+            throw re;
+        } catch( Error e ) {
+            cause = e;
+            throw e;
+        } finally {
+            if( !forced && error == null )
+                error = new LogException(LogException.LOG_ERROR_FORCING_LOG, 2,
+                        String.valueOf(cause), cause);
+            try {
+                if( !forced )
+                    handle.groupCommitFailed(extents);
+            } finally {
+                synchronized( this ) {
+                    forcing = false;
+                    if( forced ) {
+                        if( batchSequence > forcedSequence )
+                            forcedSequence = batchSequence;
+                        batchCount++;
+                        batchedRecords += batchSequence - previousSequence;
+                    } else {
+                        if( batchSequence > failedSequence )
+                            failedSequence = batchSequence;
+                        failure = error;
+                    }
+                    notifyAll();
+                }
+            }
+        }
+
+        if( error != null )
+            throw error;
+    }
+
+    /**Returns the number of batches forced so far.
+     *
+     * @param
+     *
+     * @return  The number of batches.
+     *
+     * @see
+     */
+    synchronized long getBatchCount() {
+        return batchCount;
+    }
+
+    /**Returns the average number of records per batch.
+     *
+     * @param
+     *
+     * @return  The average batch size.
+     *
+     * @see
+     */
+    synchronized double getAverageBatchSize() {
+        return (batchCount == 0) ? 0 : (double)batchedRecords / batchCount;
+    }
+}
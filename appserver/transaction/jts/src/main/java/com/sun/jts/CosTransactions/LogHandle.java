@@ -236,6 +236,16 @@ class LogHandle {
     LogControlDescriptor logControlDescriptor = null;
     LogControl           logControl = null;
 
+    /**When set, FORCE writes do not sync the log themselves: the writer
+     * waits for a group commit covering its record (see LogFile).
+     */
+    LogGroupCommit       groupCommit = null;
+
+    /**Number of records written, used by group commit to tell which
+     * records a force covers.
+     */
+    long                 recordSequence = 0;
+
 
     /**Creates a LogHandle object for the given log instance.
      *
@@ -552,7 +562,7 @@ class LogHandle {
         logEDP.writtenSinceLastForce = true;
         logEDP.cursorPosition += bytesWritten;
 
-        // IF LOG_FORCE was specified
+        // IF LOG_FORCE was specified and group commit is not used
         //   LOOP through each extent chain in the hash table
         //     IF 'extent written' flag is TRUE
         //       Issue FSYNC for extent file descriptor
@@ -562,7 +572,7 @@ class LogHandle {
         //       Set 'extent written' flag to FALSE
         //   ENDLOOP
 
-        if( writeMode == FORCE ) {
+        if( writeMode == FORCE && groupCommit == null ) {
             Enumeration extents = extentTable.elements();
             while( extents.hasMoreElements() ) {
                 LogExtent nextEDP = (LogExtent)extents.nextElement();
@@ -586,6 +596,7 @@ class LogHandle {
         // Increment the RecordsWritten counter in Log_FileDescriptor block
 
         recordsWritten++;
+        recordSequence++;
 
         // IF RecordsWritten = LOG_CONTROL_FORCE_INTERVAL or LOG_FORCE was specified
         //   Write the Log_ControlDescriptor structure (embedded in the
@@ -611,6 +622,55 @@ class LogHandle {
         return result;
     }
 
+    /**Writes the records written since the last force to the file system,
+     * for a group commit.
+     * <p>
+     * The descriptors of the extent files to force, and the extents
+     * themselves, are added to the given lists. The caller forces the
+     * descriptors once the log latch is released.
+     *
+     * @param extents      The extents which are flushed.
+     * @param descriptors  The descriptors to force.
+     *
+     * @return  The sequence number of the last record covered by the force.
+     *
+     * @exception LogException The write failed.
+     *
+     * @see
+     */
+    synchronized long flushForGroupCommit( List<LogExtent> extents,
+                                           List<FileDescriptor> descriptors )
+        throws LogException {
+
+        Enumeration extentList = extentTable.elements();
+        while( extentList.hasMoreElements() ) {
+            LogExtent nextEDP = (LogExtent)extentList.nextElement();
+            if( nextEDP.writtenSinceLastForce ) {
+                FileDescriptor descriptor = nextEDP.fileHandle.fileFlush();
+                nextEDP.writtenSinceLastForce = false;
+                extents.add(nextEDP);
+                if( descriptor != null )
+                    descriptors.add(descriptor);
+            }
+        }
+
+        return recordSequence;
+    }
+
+    /**Marks the given extents as written again after their group commit
+     * failed, so that the next force syncs them.
+     *
+     * @param extents  The extents of the failed group commit.
+     *
+     * @return
+     *
+     * @see
+     */
+    synchronized void groupCommitFailed( List<LogExtent> extents ) {
+        for( LogExtent nextEDP : extents )
+            nextEDP.writtenSinceLastForce = true;
+    }
+
     /**Reads a record from the log.
      *
      * @param readLSN  The LSN of the record to be read.
@@ -63,8 +63,10 @@
 package com.sun.jts.CosTransactions;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.omg.CosTransactions.*;
+import com.sun.enterprise.transaction.TimeoutWheel;
 import com.sun.jts.jtsxa.XID;
 
 import com.sun.jts.trace.*;
@@ -75,8 +77,12 @@ import com.sun.logging.LogDomains;
 import com.sun.jts.utils.LogFormatter;
 
 /**
- * This class records state for timing out transactions, and runs a thread
- * which performs occasional checks to time out transactions.
+ * This class records state for timing out transactions, and schedules
+ * their timeouts on a timing wheel, whose thread times out transactions.
+ * <p>
+ * A transaction that is still around after it was timed out is timed out
+ * again every timeout interval (see Configuration.TIMEOUT_INTERVAL), until
+ * its timeout is cancelled.
  *
  * @version 0.01
  *
@@ -106,12 +112,18 @@ class TimeoutManager {
      */
     private static boolean initialised = false;
 
-    private static Hashtable     pendingTimeouts = new Hashtable();
-    private static Hashtable     indoubtTimeouts = new Hashtable();
-    private static TimeoutThread timeoutThread = null;
+    /**
+     * The resolution of the timeouts, in milliseconds.
+     */
+    private static final long TICK = 1000;
+
+    private static Map<Long,TimeoutInfo> pendingTimeouts = new ConcurrentHashMap<Long,TimeoutInfo>();
+    private static Map<Long,TimeoutInfo> indoubtTimeouts = new ConcurrentHashMap<Long,TimeoutInfo>();
+    private static volatile TimeoutWheel timeoutWheel = null;
+    private static long          timeoutInterval = 10000;
     private static boolean       timeoutActive = false;
     private static boolean       quiescing = false;
-    private static boolean       isSetTimeout = false;
+    private static volatile boolean isSetTimeout = false;
 
 	/*
 		Logger to log transaction messages
@@ -138,9 +150,7 @@ class TimeoutManager {
 
         // Start the timeout thread.
 
-        if (!timeoutActive && timeoutThread == null) {
-           //  timeoutThread = new TimeoutThread();
-           //  timeoutThread.start();
+        if (!timeoutActive && timeoutWheel == null) {
             timeoutActive = true;
         }
     }
@@ -149,9 +159,16 @@ class TimeoutManager {
     static synchronized void initSetTimeout() {
 	if (isSetTimeout)
 	   return;
+        try {
+            String interval = Configuration.getPropertyValue(Configuration.TIMEOUT_INTERVAL);
+            if (interval != null) {
+                timeoutInterval = Math.max(10000, Integer.parseInt(interval) * 1000L);
+            }
+        } catch (Exception e) {
+            timeoutInterval = 10000;
+        }
+        timeoutWheel = new TimeoutWheel("JTS Timeout Thread"/*#Frozen*/, TICK);
         isSetTimeout = true;
-        timeoutThread = new TimeoutThread();
-        timeoutThread.start();
     }
 
     /**
@@ -187,47 +204,47 @@ class TimeoutManager {
             // new TimeoutInfo if necessary, and set up the type and interval.
 
             case TimeoutManager.ACTIVE_TIMEOUT :
-		 if (!isSetTimeout) {
-		     initSetTimeout();
-                 }
-                 timeoutInfo = new TimeoutInfo();
-                 timeoutInfo.expireTime  =
-                    new Date().getTime() + seconds * 1000L;
-                 timeoutInfo.localTID    = localTID;
-                 timeoutInfo.timeoutType = timeoutType;
-                 pendingTimeouts.put(localTID,timeoutInfo);
-                 break;
             case TimeoutManager.IN_DOUBT_TIMEOUT :
-		 if (!isSetTimeout) {
-		     initSetTimeout();
-		     // isSetTimeout = true;
-                 }
+                if (!isSetTimeout) {
+                    initSetTimeout();
+                }
                 timeoutInfo = new TimeoutInfo();
                 timeoutInfo.expireTime  =
                     new Date().getTime() + seconds * 1000L;
                 timeoutInfo.localTID    = localTID;
                 timeoutInfo.timeoutType = timeoutType;
-                indoubtTimeouts.put(localTID,timeoutInfo);
+
+                // Replace any current timeout of the transaction.
+
+                Map<Long,TimeoutInfo> timeouts =
+                    (timeoutType == TimeoutManager.ACTIVE_TIMEOUT) ? pendingTimeouts : indoubtTimeouts;
+                TimeoutInfo previous = timeouts.put(localTID,timeoutInfo);
+                if (previous != null) {
+                    previous.cancel();
+                }
+                timeoutInfo.reschedule(seconds * 1000L);
                 break;
 
             // For any other type, remove the timeout if there is one.
 
             default:
-		if (!isSetTimeout)
-		  break;
-                   result = (pendingTimeouts.remove(localTID) != null);
-		   if (!result)
-                      result = (indoubtTimeouts.remove(localTID) != null);
-
-                    // If the transaction service is quiescing and
-                    // there are no more pending timeouts,
-                    // deactivate timeout and stop the timeout thread.
-
-                    if (quiescing && pendingTimeouts.isEmpty() && indoubtTimeouts.isEmpty()) {
-                        timeoutThread.stop();
-                        timeoutActive = false;
-                        // pendingTimeouts = null;
-                    }
+                if (!isSetTimeout)
+                    break;
+                timeoutInfo = pendingTimeouts.remove(localTID);
+                if (timeoutInfo == null)
+                    timeoutInfo = indoubtTimeouts.remove(localTID);
+                result = (timeoutInfo != null);
+                if (result)
+                    timeoutInfo.cancel();
+
+                // If the transaction service is quiescing and
+                // there are no more pending timeouts,
+                // deactivate timeout and stop the timeout thread.
+
+                if (quiescing && pendingTimeouts.isEmpty() && indoubtTimeouts.isEmpty()) {
+                    timeoutWheel.shutdown();
+                    timeoutActive = false;
+                }
                 break;
             }
         } else {
@@ -360,99 +377,55 @@ class TimeoutManager {
     }
 
     /**
-     * Periodically checks the existing timeouts.
+     * Times out a transaction whose timeout expired.
      * <p>
-     * This is done to discover if any transactions have overrun their allotted
-     * time.  Those which have are returned as an Enumeration.
+     * Called on the thread of the timing wheel, which holds no lock: this
+     * must not be done while holding a lock that RecoveryManager methods
+     * may hold when calling setTimeout on other threads.
      * <p>
-     * Note that this method should not do anything that will cause a
-     * synchronized method in the RecoveryManager to be called, as this could
-     * cause a deadlock when RecoveryManager methods on other threads call
-     * setTimeout.
+     * If the timeout is still current afterwards, i.e. the transaction is
+     * still around, it is timed out again after the timeout interval.
      *
-     * @param
+     * @param timeoutInfo  The expired timeout.
      *
-     * @return  The information for transactions which have timed out.
+     * @return
      *
      * @see
      */
-     static Enumeration checkTimeouts() {
-        if (!isSetTimeout)
-           return null;
-
-        Enumeration result = null;
-
-        // When woken up, go through all current timeouts and identify those
-        // which have expired.
-
-        if (timeoutActive && ((pendingTimeouts.size() != 0) || (indoubtTimeouts.size() != 0))) {
-            Vector timedOut = null;
-
-            Enumeration timeouts = null;
-          
-            synchronized (pendingTimeouts) {
-                timeouts = pendingTimeouts.elements();
-
-                while (timeouts.hasMoreElements()) {
-
-                    TimeoutInfo timeoutInfo = (TimeoutInfo)timeouts.nextElement();
-
-                    // For each timeout in the list, check whether it has expired.
-                    // If so, look up the Coordinator and roll it back.
-
-                    if (new Date().getTime() > timeoutInfo.expireTime) {
-
-                       // Add the TimeoutInfo to the queue of
-                       //those that have timed out.
-
-                       if (timedOut == null) {
-                           timedOut = new Vector();
-                       }
-
-                       timedOut.addElement(timeoutInfo);
-                    }
-               }
-            }
-
-	    synchronized (indoubtTimeouts) {
-
-                timeouts = indoubtTimeouts.elements();
-
-                while (timeouts.hasMoreElements()) {
-
-                    TimeoutInfo timeoutInfo = (TimeoutInfo)timeouts.nextElement();
-
-                    // For each timeout in the list, check whether it has expired.
-                    // If so, look up the Coordinator and roll it back.
-
-                    if (new Date().getTime() > timeoutInfo.expireTime) {
-
-                       // Add the TimeoutInfo to the queue of
-                       //those that have timed out.
+    static void expire(TimeoutInfo timeoutInfo) {
+        Map<Long,TimeoutInfo> timeouts =
+            (timeoutInfo.timeoutType == TimeoutManager.ACTIVE_TIMEOUT) ? pendingTimeouts : indoubtTimeouts;
+        if (!timeoutActive || timeouts == null || timeouts.get(timeoutInfo.localTID) != timeoutInfo)
+            return;
 
-                       if (timedOut == null) {
-                           timedOut = new Vector();
-                       }
+        // Look up the Coordinator and tell it to roll back
+        // if it still exists. Note that we rely on the
+        // Coordinator calling removeCoordinator when it
+        // has finished, which will remove the timeout from
+        // the list, and remove other associations as well.
 
-                       timedOut.addElement(timeoutInfo);
-                    }
-                }
+        timeoutCoordinator(timeoutInfo.localTID, timeoutInfo.timeoutType);
 
-            }
-            // Enumerate the transactions which have timed out.
+        if (timeoutActive && timeouts.get(timeoutInfo.localTID) == timeoutInfo)
+            timeoutInfo.reschedule(timeoutInterval);
+    }
 
-            if (timedOut != null) {
-                result = timedOut.elements();
+    /**
+     * Schedules the given timeout on the timing wheel.
+     *
+     * @param timeoutInfo  The timeout.
+     * @param millis       The delay before it expires.
+     *
+     * @return  The scheduled timeout.
+     *
+     * @see
+     */
+    static TimeoutWheel.Timeout schedule(final TimeoutInfo timeoutInfo, long millis) {
+        return timeoutWheel.schedule(new Runnable() {
+            public void run() {
+                expire(timeoutInfo);
             }
-           }
-
-        // The remainder of the timeout processing is not carried out here
-        // because we would get deadlocked with addCoordinator or
-        // removeCoordinator that also update the timeout list.  Hence the
-        // returned enumeration, which may be processed with
-        // no concurrency control.
-
-        return result;
+        }, millis);
     }
 
     /**
@@ -460,14 +433,9 @@ class TimeoutManager {
      */
     static XID[] getInDoubtXids() {
         
-       synchronized (indoubtTimeouts) {
         Vector inDoubtList = new Vector();
         
-        Enumeration timeouts = indoubtTimeouts.elements();
-
-        while (timeouts.hasMoreElements()) {
-
-            TimeoutInfo timeoutInfo = (TimeoutInfo) timeouts.nextElement();
+        for (TimeoutInfo timeoutInfo : indoubtTimeouts.values()) {
 
             // Look up the Coordinator for the transaction.
             // If there is none, then the transaction has already gone.
@@ -484,7 +452,6 @@ class TimeoutManager {
         }
         
         return (XID[]) inDoubtList.toArray(new XID[] {});
-       }
     }
 
     /**
@@ -500,9 +467,9 @@ class TimeoutManager {
      */
     static long timeLeft(Long localTID) {
 
-        TimeoutInfo timeoutInfo = (TimeoutInfo) pendingTimeouts.get(localTID);
+        TimeoutInfo timeoutInfo = pendingTimeouts.get(localTID);
         if (timeoutInfo == null)
-            timeoutInfo = (TimeoutInfo) indoubtTimeouts.get(localTID);
+            timeoutInfo = indoubtTimeouts.get(localTID);
         long result = -1;
         if (timeoutInfo != null) {
             result = timeoutInfo.expireTime - new Date().getTime();
@@ -528,7 +495,7 @@ class TimeoutManager {
      *
      * @see
      */
-    static void shutdown(boolean immediate) {
+    static synchronized void shutdown(boolean immediate) {
 
         // For immediate, kill the timeout thread and throw
         // away all information. Also, if there are no pending
@@ -537,8 +504,10 @@ class TimeoutManager {
 
         if (immediate ||
                 pendingTimeouts == null || pendingTimeouts.isEmpty()) {
-            if (timeoutThread != null) {
-                timeoutThread.stop();
+            timeoutActive = false;
+
+            if (timeoutWheel != null) {
+                timeoutWheel.shutdown();
             }
 
             if (pendingTimeouts != null) {
@@ -546,8 +515,6 @@ class TimeoutManager {
             }
 
             pendingTimeouts = null;
-            timeoutThread = null;
-            timeoutActive = false;
         } else {
             quiescing = true;
         }
@@ -618,64 +585,28 @@ class TimeoutInfo extends Object {
     Long localTID = null;
     long expireTime = 0;
     int  timeoutType = TimeoutManager.NO_TIMEOUT;
-}
-
-/**
- * This class represents a thread on which the TimeoutManager can perform
- * timeout checking.
- *
- * @version 0.01
- *
- * @author Simon Holdsworth, IBM Corporation
- *
- * @see
- */
-
-//----------------------------------------------------------------------------
-// CHANGE HISTORY
-//
-// Version By     Change Description
-//   0.01  SAJH   Initial implementation.
-//----------------------------------------------------------------------------
 
-class TimeoutThread extends Thread {
+    private TimeoutWheel.Timeout timeout = null;
+    private boolean cancelled = false;
 
-    private int TIMEOUT_INTERVAL ;
-
-    static Logger _logger = LogDomains.getLogger(TimeoutThread.class, LogDomains.TRANSACTION_LOGGER);
     /**
-     * TimeoutThread constructor.
-     * <p>
-     * This sets the thread name, and sets the thread to be a daemon thread so
-     * that it does not prevent the process from terminating.
+     * Schedules the timeout to expire after the given delay, unless it was
+     * cancelled.
      *
-     * @param
+     * @param millis  The delay.
      *
      * @return
      *
      * @see
      */
-    TimeoutThread() {
-        setName("JTS Timeout Thread"/*#Frozen*/);
-        setDaemon(true);
-        try{
-            String timeout_interval = Configuration.getPropertyValue(Configuration.TIMEOUT_INTERVAL);
-            if(timeout_interval!=null){
-                TIMEOUT_INTERVAL= Integer.parseInt(timeout_interval);
-		TIMEOUT_INTERVAL*=1000;
-                if(TIMEOUT_INTERVAL<10000)
-                    TIMEOUT_INTERVAL=10000;
-            }
-            else{
-                TIMEOUT_INTERVAL=10000;
-            }
-        }catch(Exception e){
-            TIMEOUT_INTERVAL=10000;
-        }
+    synchronized void reschedule(long millis) {
+        if (cancelled)
+            return;
+        timeout = TimeoutManager.schedule(this, millis);
     }
 
     /**
-     * Performs timeout checking on a regular basis (every ten seconds or so).
+     * Cancels the timeout.
      *
      * @param
      *
@@ -683,41 +614,9 @@ class TimeoutThread extends Thread {
      *
      * @see
      */
-    public void run() {
-        try {
-            while (true) {
-
-                // Sleep for a while between checks.
-
-                Thread.sleep(TIMEOUT_INTERVAL);
-
-                // Perform timeout checks, getting a list of timed-out
-                // transactions.
-
-                Enumeration timedOut = TimeoutManager.checkTimeouts();
-
-                // Now we must go through the list, telling each
-                // timed-out Coordinator to do something appropriate.
-
-                if (timedOut != null) {
-                    while (timedOut.hasMoreElements()) {
-                        TimeoutInfo timeoutInfo =
-                            (TimeoutInfo) timedOut.nextElement();
-
-                        // Look up the Coordinator and tell it to roll back
-                        // if it still exists. Note that we rely on the
-                        // Coordinator calling removeCoordinator when it
-                        // has finished, which will remove the timeout from 
-                        // the list, and remove other associations as well.
-
-                        TimeoutManager.
-                            timeoutCoordinator(timeoutInfo.localTID,
-                                               timeoutInfo.timeoutType);
-                    }
-                }
-            }
-        } catch (InterruptedException exc) {
-			_logger.log(Level.INFO,"jts.time_out_thread_stopped");
-        }
+    synchronized void cancel() {
+        cancelled = true;
+        if (timeout != null)
+            timeout.cancel();
     }
 }
@@ -156,6 +156,10 @@ public class TransactionServiceProperties {
                             if (isValueSet(value)) {
                                 jtsProperties.put(Configuration.COMMIT_ONE_PHASE_DURING_RECOVERY, value);
                             }
+                        } else if (name.equals("log-group-commit-delay")) {
+                            if (isValueSet(value)) {
+                                jtsProperties.put(Configuration.LOG_GROUP_COMMIT_DELAY, value);
+                            }
                         } else if (name.equals("add-wait-point-during-recovery")) {
                             if (isValueSet(value)) {
                                 try {
@@ -0,0 +1,226 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.jts.CosTransactions;
+
+import java.io.FileDescriptor;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LogGroupCommitTest {
+
+    @Test
+    public void concurrentWritersAreForcedInOrder() throws Exception {
+        final FakeLogHandle handle = new FakeLogHandle();
+        final LogGroupCommit groupCommit = new LogGroupCommit(handle, 0);
+        final int threads = 16;
+        final int writes = 50;
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] writers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            writers[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < writes; j++) {
+                            long sequence = handle.write();
+                            groupCommit.force(sequence);
+                            // the force only returns once a flush covers the record
+                            if (handle.getFlushedSequence() < sequence) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+            writers[i].start();
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(0, errors.get());
+        assertFalse(handle.outOfOrder);
+        assertEquals(threads * writes, handle.getFlushedSequence());
+        assertEquals(handle.flushes.get(), groupCommit.getBatchCount());
+        assertTrue(groupCommit.getBatchCount() < threads * writes);
+        assertTrue(groupCommit.getAverageBatchSize() > 1);
+    }
+
+    @Test
+    public void failedFlushFailsTheRecordsOfItsBatch() throws Exception {
+        FakeLogHandle handle = new FakeLogHandle();
+        LogGroupCommit groupCommit = new LogGroupCommit(handle, 0);
+        handle.write();
+        long sequence = handle.write();
+        handle.failures = 1;
+        try {
+            groupCommit.force(sequence);
+            fail();
+        } catch (LogException e) {
+            assertEquals(LogException.LOG_ERROR_FORCING_LOG, e.errorCode);
+        }
+        assertEquals(1, handle.failedBatches.get());
+
+        // the first record was part of the failed batch, it is not retried
+        try {
+            groupCommit.force(1);
+            fail();
+        } catch (LogException e) {
+            assertEquals(LogException.LOG_ERROR_FORCING_LOG, e.errorCode);
+        }
+        assertEquals(1, handle.flushes.get());
+
+        // a later record starts a new batch, which also covers the failed ones
+        groupCommit.force(handle.write());
+        assertEquals(2, handle.flushes.get());
+        assertEquals(3, handle.getFlushedSequence());
+        groupCommit.force(1);
+        assertEquals(2, handle.flushes.get());
+        assertEquals(1, groupCommit.getBatchCount());
+    }
+
+    @Test
+    public void runtimeFailureFailsTheRecordsOfItsBatch() throws Exception {
+        FakeLogHandle handle = new FakeLogHandle();
+        LogGroupCommit groupCommit = new LogGroupCommit(handle, 0);
+        long sequence = handle.write();
+        handle.runtimeFailures = 1;
+        try {
+            groupCommit.force(sequence);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("flush crashed", e.getMessage());
+        }
+        assertEquals(1, handle.failedBatches.get());
+        assertEquals(0, groupCommit.getBatchCount());
+
+        // the record is not reported as forced
+        try {
+            groupCommit.force(sequence);
+            fail();
+        } catch (LogException e) {
+            assertEquals(LogException.LOG_ERROR_FORCING_LOG, e.errorCode);
+            assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+        }
+        assertEquals(1, handle.flushes.get());
+    }
+
+    @Test
+    public void forcedRecordIsNotForcedAgain() throws Exception {
+        FakeLogHandle handle = new FakeLogHandle();
+        LogGroupCommit groupCommit = new LogGroupCommit(handle, 0);
+        long first = handle.write();
+        long second = handle.write();
+        groupCommit.force(second);
+        groupCommit.force(first);
+        groupCommit.force(second);
+        assertEquals(1, handle.flushes.get());
+        assertEquals(2.0, groupCommit.getAverageBatchSize(), 0);
+    }
+
+    /**
+     * Log handle that only counts its records and flushes. A flush covers
+     * every record written before it and takes a millisecond, so that writers
+     * pile up behind it.
+     */
+    static class FakeLogHandle extends LogHandle {
+        final AtomicInteger flushes = new AtomicInteger();
+        final AtomicInteger failedBatches = new AtomicInteger();
+        volatile int failures;
+        volatile int runtimeFailures;
+        volatile boolean outOfOrder;
+        private long flushedSequence;
+
+        FakeLogHandle() throws LogException {
+            super(null, "test", null, null);
+        }
+
+        synchronized long write() {
+            return ++recordSequence;
+        }
+
+        synchronized long getFlushedSequence() {
+            return flushedSequence;
+        }
+
+        long flushForGroupCommit(List<LogExtent> extents,
+                                 List<FileDescriptor> descriptors)
+            throws LogException {
+            long sequence;
+            synchronized (this) {
+                sequence = recordSequence;
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushes.incrementAndGet();
+            synchronized (this) {
+                if (runtimeFailures > 0) {
+                    runtimeFailures--;
+                    throw new IllegalStateException("flush crashed");
+                }
+                if (failures > 0) {
+                    failures--;
+                    throw new LogException(LogException.LOG_ERROR_FORCING_LOG, 1,
+                            "flush failed", null);
+                }
+                if (sequence < flushedSequence) {
+                    outOfOrder = true;
+                }
+                flushedSequence = sequence;
+            }
+            return sequence;
+        }
+
+        void groupCommitFailed(List<LogExtent> extents) {
+            failedBatches.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.jts.CosTransactions;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the forced writes of the transaction log, one per
+ * committed XA transaction, i.e. the XA commits per second the log allows.
+ * <p>
+ * <code>groupCommitDelay</code> is the maximum batch delay of the group
+ * commit, in microseconds; -1 forces the log on every write as the log
+ * writer does when group commit is disabled.
+ * <p>
+ * Not run as part of the unit tests. Run it with the test classpath, e.g.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.sun.jts.CosTransactions.LogWriterBenchmark
+ * </pre>
+ * {@link #main(String[])} runs every log writer with 1 to 64 threads. The
+ * log is created in <code>java.io.tmpdir</code>, which should be on the
+ * disk to measure.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogWriterBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    //size of a commit record of a transaction with two XA resources
+    private static final int RECORD_SIZE = 200;
+
+    //writes between two checkpoints, which keep the log from filling up
+    private static final int CHECKPOINT_INTERVAL = 1000;
+
+    @Param({"-1", "0", "100"})
+    public long groupCommitDelay;
+
+    private File logDirectory;
+    private Log log;
+    private LogFile logFile;
+    private final AtomicLong writes = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        logDirectory = File.createTempFile("txlog", "");
+        logDirectory.delete();
+        logDirectory.mkdirs();
+
+        log = new Log(logDirectory.getPath());
+        log.initialise();
+        logFile = log.open("benchmark", new LogUpcallTarget() {
+            public void upcall(int reason) {
+            }
+        });
+        if (groupCommitDelay >= 0) {
+            logFile.enableGroupCommit(groupCommitDelay);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        logFile.close(true);
+        log.terminate();
+        delete(logDirectory);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Benchmark
+    public LogLSN commit() {
+        LogLSN lsn = new LogLSN();
+        logFile.write(LogFile.FORCED, new byte[RECORD_SIZE], LogFile.NORMAL, lsn);
+        if (writes.incrementAndGet() % CHECKPOINT_INTERVAL == 0) {
+            logFile.checkpoint(lsn);
+        }
+        return lsn;
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : THREAD_COUNTS) {
+            Options opt = new OptionsBuilder()
+                    .include(LogWriterBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
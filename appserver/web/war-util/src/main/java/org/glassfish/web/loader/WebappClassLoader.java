@@ -137,6 +137,11 @@ import java.util.logging.Logger;
  * <p>
  * <strong>IMPLEMENTATION NOTE</strong> - No check for sealing violations or
  * security is made unless a security manager is present.
+ * <p>
+ * <strong>IMPLEMENTATION NOTE</strong> - The class loader is parallel
+ * capable: classes are loaded under a lock per class name. Resources are
+ * looked up in the JAR files through an index of the directories of their
+ * entries, built by <code>addJar()</code>.
  *
  * @author Remy Maucherat
  * @author Craig R. McClanahan
@@ -149,6 +154,12 @@ public class WebappClassLoader
 {
     // ------------------------------------------------------- Static Variables
 
+    static {
+        // classes are loaded under a lock per class name instead of under
+        // the lock of the loader
+        registerAsParallelCapable();
+    }
+
     private static final Logger logger = LogFacade.getLogger();
 
     private static final ResourceBundle rb = logger.getResourceBundle();
@@ -255,6 +266,15 @@ public class WebappClassLoader
      */
     protected final Object jarFilesLock = new Object();
 
+    /**
+     * The positions in jarFiles of the JARs containing entries in a given
+     * directory, keyed by directory name ("" for the root), in search order.
+     * Built by addJar, so that looking up a resource only opens the JARs
+     * which may contain it.
+     */
+    private final ConcurrentHashMap<String, int[]> jarIndex =
+        new ConcurrentHashMap<String, int[]>();
+
     /**
      * The list of JARs, in the order they should be searched
      * for locally loaded classes or resources.
@@ -865,6 +885,49 @@ public class WebappClassLoader
         }
         result4[jarRealFiles.length] = file;
         jarRealFiles = result4;
+
+        // once the JAR can be found in jarFiles and jarRealFiles
+        indexJar(jarFile, jarFiles.length - 1);
+    }
+
+
+    /**
+     * Adds the directories of the entries of the JAR at the given position
+     * of jarFiles to jarIndex.
+     * <p>
+     * Only called by the synchronized addJar, so the get and put of a
+     * directory are never interleaved with another update. Lookups run
+     * concurrently: they see either the previous or the new array of
+     * positions, never one being modified, and jarFiles was assigned before
+     * the put that they read it after.
+     */
+    private void indexJar(JarFile jarFile, int position) {
+        Set<String> dirs = new HashSet<String>();
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            String entryName = entries.nextElement().getName();
+            dirs.add(getJarIndexKey(entryName));
+            if (entryName.endsWith("/")) {
+                // JarFile.getJarEntry also finds "dir/" when looking up "dir"
+                dirs.add(getJarIndexKey(
+                        entryName.substring(0, entryName.length() - 1)));
+            }
+        }
+        for (String dir : dirs) {
+            int[] positions = jarIndex.get(dir);
+            if (positions == null) {
+                positions = new int[] { position };
+            } else {
+                positions = Arrays.copyOf(positions, positions.length + 1);
+                positions[positions.length - 1] = position;
+            }
+            jarIndex.put(dir, positions);
+        }
+    }
+
+    private static String getJarIndexKey(String path) {
+        int pos = path.lastIndexOf('/');
+        return (pos < 0) ? "" : path.substring(0, pos);
     }
 
 
@@ -1034,7 +1097,9 @@ public class WebappClassLoader
                 // Create the code source object
                 CodeSource codeSource =
                     new CodeSource(entry.codeBase, entry.certificates);
-                synchronized (this) {
+                // the same entry is returned to all the threads loading a
+                // class, see findResourceInternal
+                synchronized (entry) {
                     if (entry.loadedClass == null) {
                         /* START GlassFish [680]
                         clazz = defineClass(name, entry.binaryContent, 0,
@@ -1498,7 +1563,16 @@ public class WebappClassLoader
      * @exception ClassNotFoundException if the class was not found
      */
     @Override
-    protected synchronized Class<?> loadClass(String name, boolean resolve)
+    protected Class<?> loadClass(String name, boolean resolve)
+        throws ClassNotFoundException {
+
+        synchronized (getClassLoadingLock(name)) {
+            return loadClass0(name, resolve);
+        }
+    }
+
+
+    private Class<?> loadClass0(String name, boolean resolve)
         throws ClassNotFoundException {
 
         if (logger.isLoggable(Level.FINER)) {
@@ -1841,6 +1915,7 @@ public class WebappClassLoader
         jarRealFiles = null;
         jarPath = null;
         jarNames.clear();
+        jarIndex.clear();
         lastModifiedDates = null;
         paths = null;
         hasExternalRepositories = false;
@@ -2583,7 +2658,7 @@ public class WebappClassLoader
         if (entry == null)
                throw new ClassNotFoundException(name);
 
-        synchronized (this) {
+        synchronized (entry) {
             Class<?> clazz = entry.loadedClass;
             if (clazz != null)
                 return entry;
@@ -2687,9 +2762,7 @@ public class WebappClassLoader
         entry = findResourceInternalFromRepositories(name, path);
 
         if (entry == null) {
-            synchronized (jarFiles) {
-                entry = findResourceInternalFromJars(name, path);
-            }
+            entry = findResourceInternalFromJars(name, path);
         }
 
         if (entry == null) {
@@ -2815,9 +2888,14 @@ public class WebappClassLoader
             return null;
         }
 
-        int jarFilesLength = jarFiles.length;
+        // only the JARs having entries in the directory of the resource
+        int[] positions = jarIndex.get(getJarIndexKey(path));
+        if (positions == null) {
+            return null;
+        }
 
-        for (int i=0; (entry == null) && (i < jarFilesLength); i++) {
+        for (int p=0; (entry == null) && (p < positions.length); p++) {
+            int i = positions[p];
             jarEntry = jarFiles[i].getJarEntry(path);
 
             if (jarEntry != null) {
@@ -3041,9 +3119,8 @@ public class WebappClassLoader
 
         ResourceEntry entry = resourceEntries.get(name);
         if (entry != null) {
-            synchronized(this) {
-                return entry.loadedClass;
-            }
+            // loadedClass is volatile
+            return entry.loadedClass;
         }
         return (null);  // FIXME - findLoadedResource()
 
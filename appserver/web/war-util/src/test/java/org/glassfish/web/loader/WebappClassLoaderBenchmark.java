@@ -0,0 +1,238 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.web.loader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.apache.naming.resources.FileDirContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the startup of a web application with many JAR files in
+ * <code>WEB-INF/lib</code>: a new class loader is created, the JAR files are
+ * added to it, and every class and a resource of every JAR file are loaded
+ * by <code>threads</code> threads, as the deployment and the first requests
+ * of the application do.
+ * <p>
+ * Not run as part of the unit tests. Run it with the test classpath, e.g.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.glassfish.web.loader.WebappClassLoaderBenchmark
+ * </pre>
+ * The web application is created in <code>java.io.tmpdir</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebappClassLoaderBenchmark {
+
+    private static final String JAR_PATH = "/WEB-INF/lib";
+
+    private static final int CLASSES_PER_JAR = 50;
+
+    @Param({"200"})
+    public int jarCount;
+
+    @Param({"1", "4", "16"})
+    public int threads;
+
+    private File docBase;
+    private FileDirContext resources;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws Exception {
+        docBase = File.createTempFile("webapp", "");
+        docBase.delete();
+        File lib = new File(docBase, JAR_PATH);
+        lib.mkdirs();
+        for (int i = 0; i < jarCount; i++) {
+            createJar(new File(lib, "lib" + i + ".jar"), i);
+        }
+
+        resources = new FileDirContext();
+        resources.setDocBase(docBase.getPath());
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        delete(docBase);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void createJar(File file, int jar) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            String dir = "bench/p" + jar + "/";
+            out.putNextEntry(new JarEntry("bench/"));
+            out.putNextEntry(new JarEntry(dir));
+            for (int i = 0; i < CLASSES_PER_JAR; i++) {
+                String className = dir + "C" + i;
+                out.putNextEntry(new JarEntry(className + ".class"));
+                out.write(createClass(className));
+            }
+            out.putNextEntry(new JarEntry(dir + "messages.properties"));
+            out.write(("jar=" + jar).getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Creates an empty class extending Object, without any method.
+     */
+    private static byte[] createClass(String internalName) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(50);
+        // constant pool: the names and classes of this class and of Object
+        out.writeShort(5);
+        out.writeByte(1);
+        out.writeUTF(internalName);
+        out.writeByte(7);
+        out.writeShort(1);
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object");
+        out.writeByte(7);
+        out.writeShort(3);
+        // public super, this class, super class
+        out.writeShort(0x21);
+        out.writeShort(2);
+        out.writeShort(4);
+        // interfaces, fields, methods, attributes
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public WebappClassLoader startup() throws Exception {
+        final WebappClassLoader loader =
+                new WebappClassLoader(WebappClassLoaderBenchmark.class.getClassLoader());
+        loader.setResources(resources);
+        loader.setJarPath(JAR_PATH);
+        for (int i = 0; i < jarCount; i++) {
+            String jar = JAR_PATH + "/lib" + i + ".jar";
+            File file = new File(docBase, jar);
+            loader.addJar(jar, new JarFile(file), file);
+        }
+        loader.start();
+
+        List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            futures.add(executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    for (int i = first; i < jarCount; i += threads) {
+                        for (int j = 0; j < CLASSES_PER_JAR; j++) {
+                            loader.loadClass("bench.p" + i + ".C" + j);
+                        }
+                        if (loader.getResource("bench/p" + i + "/messages.properties") == null) {
+                            throw new IllegalStateException("Resource of jar " + i + " not found");
+                        }
+                        // a miss, as for the lookups delegated in vain to the application
+                        loader.getResource("bench/p" + i + "/missing.properties");
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        loader.stop();
+        return loader;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(WebappClassLoaderBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
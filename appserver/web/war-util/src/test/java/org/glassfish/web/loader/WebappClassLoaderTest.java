@@ -0,0 +1,163 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.web.loader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.apache.naming.resources.FileDirContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lookups of resources of JAR files through the index of the directories
+ * of their entries.
+ */
+public class WebappClassLoaderTest {
+
+    private static final String JAR_PATH = "/WEB-INF/lib";
+
+    private File docBase;
+    private WebappClassLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        docBase = File.createTempFile("webapp", "");
+        docBase.delete();
+        File lib = new File(docBase, JAR_PATH);
+        lib.mkdirs();
+        createJar(new File(lib, "lib0.jar"),
+                "loadertest-root.txt", "loadertest/", "loadertest/a.txt");
+        createJar(new File(lib, "lib1.jar"),
+                "loadertest-root.txt", "loadertest/b.txt", "loadertest-empty/");
+
+        FileDirContext resources = new FileDirContext();
+        resources.setDocBase(docBase.getPath());
+        loader = new WebappClassLoader(WebappClassLoaderTest.class.getClassLoader());
+        loader.setResources(resources);
+        loader.setJarPath(JAR_PATH);
+        for (int i = 0; i < 2; i++) {
+            String jar = JAR_PATH + "/lib" + i + ".jar";
+            File file = new File(docBase, jar);
+            loader.addJar(jar, new JarFile(file), file);
+        }
+        loader.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        loader.stop();
+        delete(docBase);
+    }
+
+    @Test
+    public void rootResourceIsFoundInFirstJar() throws Exception {
+        URL url = loader.getResource("loadertest-root.txt");
+        assertNotNull(url);
+        assertEquals("lib0.jar:loadertest-root.txt", read(url));
+    }
+
+    @Test
+    public void resourcesAreFoundInTheJarsOfTheirDirectory() throws Exception {
+        assertEquals("lib0.jar:loadertest/a.txt",
+                read(loader.getResource("loadertest/a.txt")));
+        // lib1.jar has no entry for the directory itself
+        assertEquals("lib1.jar:loadertest/b.txt",
+                read(loader.getResource("loadertest/b.txt")));
+        assertNull(loader.getResource("loadertest/missing.txt"));
+        assertNull(loader.getResource("loadertest-missing/a.txt"));
+    }
+
+    @Test
+    public void directoryEntriesAreFound() throws Exception {
+        assertNotNull(loader.getResource("loadertest-empty/"));
+        // JarFile.getJarEntry also finds a directory without its slash
+        assertNotNull(loader.getResource("loadertest-empty"));
+        assertNotNull(loader.getResource("loadertest"));
+    }
+
+    private static String read(URL url) throws IOException {
+        InputStream in = url.openStream();
+        try {
+            StringBuilder content = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                content.append((char) c);
+            }
+            return content.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void createJar(File file, String... entries) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+                if (!entry.endsWith("/")) {
+                    out.write((file.getName() + ":" + entry).getBytes("ISO-8859-1"));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
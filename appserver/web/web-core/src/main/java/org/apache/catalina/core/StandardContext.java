@@ -59,6 +59,7 @@
 package org.apache.catalina.core;
 
 import static com.sun.logging.LogCleanerUtil.neutralizeForLog;
+import com.sun.enterprise.util.uuid.UuidGenerator;
 import org.glassfish.grizzly.http.server.util.AlternateDocBase;
 import org.glassfish.grizzly.http.server.util.Mapper;
 import org.glassfish.grizzly.http.server.util.MappingData;
@@ -325,6 +326,12 @@ public class StandardContext
      */
     private boolean distributable = false;
 
+    /**
+     * The generator of session ids of this web application, or null to
+     * keep the one of the session manager.
+     */
+    private UuidGenerator sessionIdGenerator = null;
+
     /**
      * Thread local data used during request dispatch.
      */
@@ -598,6 +605,11 @@ public class StandardContext
      */
     protected int cacheTTL = 5000;
 
+    /**
+     * Whether the content of the cached resources is kept off-heap.
+     */
+    protected boolean cacheOffHeap = false;
+
     /**
      * Non proxied resources.
      */
@@ -864,6 +876,21 @@ public class StandardContext
         this.cacheMaxSize = cacheMaxSize;
     }
 
+    /**
+     * Is the content of the cached resources kept off-heap ?
+     */
+    public boolean isCacheOffHeap() {
+        return cacheOffHeap;
+    }
+
+    /**
+     * Set whether the content of the cached resources is kept off-heap,
+     * in direct buffers.
+     */
+    public void setCacheOffHeap(boolean cacheOffHeap) {
+        this.cacheOffHeap = cacheOffHeap;
+    }
+
     /**
      * Return the "follow standard delegation model" flag used to configure
      * our ClassLoader.
@@ -1264,6 +1291,32 @@ public class StandardContext
         }
     }
 
+    /**
+     * Return the generator of session ids of this web application, or null
+     * if the default generator of the session manager is used.
+     */
+    public UuidGenerator getSessionIdGenerator() {
+        return sessionIdGenerator;
+    }
+
+    /**
+     * Set the generator of session ids of this web application. It is
+     * propagated to the session manager, which must extend ManagerBase.
+     *
+     * @param sessionIdGenerator The new (thread-safe) session id generator
+     */
+    public void setSessionIdGenerator(UuidGenerator sessionIdGenerator) {
+        UuidGenerator oldSessionIdGenerator = this.sessionIdGenerator;
+        this.sessionIdGenerator = sessionIdGenerator;
+        support.firePropertyChange("sessionIdGenerator",
+                                   oldSessionIdGenerator,
+                                   this.sessionIdGenerator);
+
+        if (sessionIdGenerator != null && getManager() instanceof ManagerBase) {
+            ((ManagerBase) getManager()).setUuidGenerator(sessionIdGenerator);
+        }
+    }
+
     /**
      * Return the document root for this Context.  This can be an absolute
      * pathname, a relative pathname, or a URL.
@@ -1850,6 +1903,7 @@ public class StandardContext
             baseDirContext.setCached(isCachingAllowed());
             baseDirContext.setCacheTTL(getCacheTTL());
             baseDirContext.setCacheMaxSize(getCacheMaxSize());
+            baseDirContext.setCacheOffHeap(isCacheOffHeap());
         }
         if (resources instanceof FileDirContext) {
             filesystemBased = true;
@@ -1885,6 +1939,7 @@ public class StandardContext
             ((BaseDirContext) resources).setCached(isCachingAllowed());
             ((BaseDirContext) resources).setCacheTTL(getCacheTTL());
             ((BaseDirContext) resources).setCacheMaxSize(getCacheMaxSize());
+            ((BaseDirContext) resources).setCacheOffHeap(isCacheOffHeap());
         }
         if (resources instanceof FileDirContext) {
             filesystemBased = true;
@@ -5401,6 +5456,9 @@ public class StandardContext
      * Starts the session manager of this Context.
      */
     protected void managerStart() throws LifecycleException {
+        if (sessionIdGenerator != null && manager instanceof ManagerBase) {
+            ((ManagerBase) manager).setUuidGenerator(sessionIdGenerator);
+        }
         if ((manager != null) && (manager instanceof Lifecycle)) {
             ((Lifecycle) getManager()).start();
         }
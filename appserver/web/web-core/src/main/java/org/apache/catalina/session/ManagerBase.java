@@ -58,8 +58,8 @@
 
 package org.apache.catalina.session;
 
+import com.sun.enterprise.util.uuid.ConcurrentUuidGeneratorImpl;
 import com.sun.enterprise.util.uuid.UuidGenerator;
-import com.sun.enterprise.util.uuid.UuidGeneratorImpl;
 import org.apache.catalina.*;
 import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.core.StandardHost;
@@ -171,9 +171,12 @@ public abstract class ManagerBase implements Manager {
     /**
      * The Uuid Generator to be used
      * when generating universally unique session identifiers.
+     * It must be thread-safe, as ids are generated without holding
+     * the lock of this Manager.
      * HERCULES: add
      */
-    protected UuidGenerator uuidGenerator = new UuidGeneratorImpl();     
+    protected volatile UuidGenerator uuidGenerator =
+        new ConcurrentUuidGeneratorImpl();
 
 
     /**
@@ -951,7 +954,7 @@ public abstract class ManagerBase implements Manager {
      * Generate and return a new session identifier.
      * Hercules:added
      */
-    protected synchronized String generateSessionId(Object obj) {
+    protected String generateSessionId(Object obj) {
         return uuidGenerator.generateUuid(obj);
     }   
     
@@ -959,7 +962,7 @@ public abstract class ManagerBase implements Manager {
      * Generate and return a new session identifier.
      * Hercules:modified
      */
-    protected synchronized String generateSessionId() {
+    protected String generateSessionId() {
         return generateSessionId(new Object());
     }    
 
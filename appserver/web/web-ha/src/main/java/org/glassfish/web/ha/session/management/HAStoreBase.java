@@ -52,7 +52,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.GZIPOutputStream;
 
 import com.sun.enterprise.container.common.spi.util.JavaEEIOUtils;
 import org.apache.catalina.*;
@@ -70,12 +69,15 @@ public abstract class HAStoreBase extends StoreBase {
 
     protected JavaEEIOUtils ioUtils;
 
+    private final SessionStateCodec stateCodec;
+
     static final Logger _logger = LogFacade.getLogger();
 
 
     /** Creates a new instance of HAStoreBase */
     public HAStoreBase(JavaEEIOUtils ioUtils) {
         this.ioUtils =  ioUtils;
+        this.stateCodec = new SessionStateCodec(ioUtils);
     }
     
     /**
@@ -186,53 +188,33 @@ public abstract class HAStoreBase extends StoreBase {
     *   The session we are serializing
     *
     */
-    protected byte[] getByteArray(Session session, boolean compress)
+    protected byte[] getByteArray(final Session session, boolean compress)
       throws IOException {
-        ByteArrayOutputStream bos = null;
-        ObjectOutputStream oos = null;
-
-
-
-        byte[] obs;
-        try {
-            bos = new ByteArrayOutputStream();
-            // ObjectInputOutputStreamFactory oiosf = ObjectInputOutputStreamFactoryFactory.getFactory();
-            
-            
-            try {
-                if (compress) {
-                    oos = ioUtils.createObjectOutputStream(
-                        new GZIPOutputStream(new BufferedOutputStream(bos)), true);
-                } else {
-                    oos = ioUtils.createObjectOutputStream(new BufferedOutputStream(bos), true);
-                }
-            } catch (Exception ex) {}
-
-            //use normal ObjectOutputStream if there is a failure during stream creation
-            if(oos == null) {
-                if (compress) {
-                    oos = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(bos)));
-                } else {
-                    oos = new ObjectOutputStream(new BufferedOutputStream(bos));
-                }
-            }             
-
-            writeSession(session, oos);
-            oos.close();
-            oos = null;
-
-            obs = bos.toByteArray();
-            //for monitoring
-        }
-        finally {
-            if ( oos != null )  {
-                oos.close();
+        return stateCodec.encode(new SessionStateCodec.StateWriter() {
+            public void writeState(ObjectOutputStream oos) throws IOException {
+                writeSession(session, oos);
             }
-        }
+        }, compress);
+    }
 
-        return obs;
+    /**
+    * Return the serialized data of a state created by
+    * {@link #getByteArray(Session, boolean)}.
+    *
+    * @param state
+    *   The state
+    * @param compressed
+    *   Whether the state was created with compression
+    */
+    protected InputStream getStateInputStream(byte[] state, boolean compressed)
+      throws IOException {
+        return stateCodec.decode(state, compressed);
     }
-    
+
+    SessionStateCodec getStateCodec() {
+        return stateCodec;
+    }
+
     //SJSAS 6406580 START
     /**
     * Remove the Session with the specified session identifier from
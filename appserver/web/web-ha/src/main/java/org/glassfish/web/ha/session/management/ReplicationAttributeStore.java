@@ -268,7 +268,6 @@ public class ReplicationAttributeStore extends ReplicationStore {
         }
         byte[] state = metadata.getState();
         Session _session = null;
-        BufferedInputStream bis = null;
         ByteArrayInputStream bais = null;
         Loader loader = null;    
         ClassLoader classLoader = null;
@@ -281,7 +280,6 @@ public class ReplicationAttributeStore extends ReplicationStore {
         try
         {
             bais = new ByteArrayInputStream(state);
-            bis = new BufferedInputStream(bais);
             
             //Get the username, ssoId from metadata
             //ssoId = metadata.getSsoId();
@@ -303,12 +301,12 @@ public class ReplicationAttributeStore extends ReplicationStore {
             if (classLoader != null) {
 
                 try {
-                    ois = ioUtils.createObjectInputStream(bis, true, classLoader);
+                    ois = ioUtils.createObjectInputStream(bais, true, classLoader);
                 } catch (Exception ex) {}
 
             }
             if (ois == null) {
-                ois = new ObjectInputStream(bis); 
+                ois = new ObjectInputStream(bais); 
             }
             
             if(ois != null) {
@@ -319,7 +317,6 @@ public class ReplicationAttributeStore extends ReplicationStore {
 
                     try {
                         ois.close();
-                        bis = null;
                     }
                     catch (IOException e) {
                     }
@@ -480,38 +477,13 @@ public class ReplicationAttributeStore extends ReplicationStore {
     *   The attribute value we are serializing
     *
     */
-    protected byte[] getByteArray(Object attributeValue)
+    protected byte[] getByteArray(final Object attributeValue)
       throws IOException {
-        ByteArrayOutputStream bos = null;
-        ObjectOutputStream oos = null;
-
-
-        byte[] obs;
-        try {
-            bos = new ByteArrayOutputStream();
-            
-
-            try {
-                oos = ioUtils.createObjectOutputStream(new BufferedOutputStream(bos), true);
-            } catch (Exception ex) {}
-
-            //use normal ObjectOutputStream if there is a failure during stream creation
-            if(oos == null) {
-                oos = new ObjectOutputStream(new BufferedOutputStream(bos)); 
-            }            
-            oos.writeObject(attributeValue);
-            oos.close();
-            oos = null;
-
-            obs = bos.toByteArray();
-        }
-        finally {
-            if ( oos != null )  {
-                oos.close();
+        return getStateCodec().encode(new SessionStateCodec.StateWriter() {
+            public void writeState(ObjectOutputStream oos) throws IOException {
+                oos.writeObject(attributeValue);
             }
-        }
-
-        return obs;
+        }, false);
     }
     
     /**
@@ -528,7 +500,6 @@ public class ReplicationAttributeStore extends ReplicationStore {
         throws IOException, ClassNotFoundException 
     {
         Object attributeValue = null;
-        BufferedInputStream bis = null;
         ByteArrayInputStream bais = null;
         Loader loader = null;    
         ClassLoader classLoader = null;
@@ -539,7 +510,6 @@ public class ReplicationAttributeStore extends ReplicationStore {
         try
         {
             bais = new ByteArrayInputStream(state);
-            bis = new BufferedInputStream(bais);
             
             if (container != null) {
                 loader = container.getLoader();
@@ -552,12 +522,12 @@ public class ReplicationAttributeStore extends ReplicationStore {
             if (classLoader != null) {
 
                 try {
-                    ois = ioUtils.createObjectInputStream(bis, true, classLoader);
+                    ois = ioUtils.createObjectInputStream(bais, true, classLoader);
                 } catch (Exception ex) {}
 
             }
             if (ois == null) {
-                ois = new ObjectInputStream(bis); 
+                ois = new ObjectInputStream(bais); 
             }
             
             if(ois != null) {
@@ -568,7 +538,6 @@ public class ReplicationAttributeStore extends ReplicationStore {
 
                     try {
                         ois.close();
-                        bis = null;
                     }
                     catch (IOException e) {
                     }
@@ -601,45 +570,20 @@ public class ReplicationAttributeStore extends ReplicationStore {
     *   The Collection of entries we are serializing
     *
     */
-    protected byte[] getByteArrayFromCollection(Collection entries)
+    protected byte[] getByteArrayFromCollection(final Collection entries)
       throws IOException {
-        ByteArrayOutputStream bos = null;
-        ObjectOutputStream oos = null;
-
-        
-        byte[] obs;
-        try {
-            bos = new ByteArrayOutputStream();
-            
-
-            try {
-                oos = ioUtils.createObjectOutputStream(new BufferedOutputStream(bos), true);
-            } catch (Exception ex) {}
-
-            //use normal ObjectOutputStream if there is a failure during stream creation
-            if(oos == null) {
-                oos = new ObjectOutputStream(new BufferedOutputStream(bos)); 
-            }
-            //first write out the entriesSize
-            int entriesSize = entries.size();
-            oos.writeObject(Integer.valueOf(entriesSize));
-            //then write out the entries
-            Iterator it = entries.iterator();
-            while(it.hasNext()) {
-                oos.writeObject(it.next());
-            }
-            oos.close();
-            oos = null;
-
-            obs = bos.toByteArray();
-        }
-        finally {
-            if ( oos != null )  {
-                oos.close();
+        return getStateCodec().encode(new SessionStateCodec.StateWriter() {
+            public void writeState(ObjectOutputStream oos) throws IOException {
+                //first write out the entriesSize
+                int entriesSize = entries.size();
+                oos.writeObject(Integer.valueOf(entriesSize));
+                //then write out the entries
+                Iterator it = entries.iterator();
+                while(it.hasNext()) {
+                    oos.writeObject(it.next());
+                }
             }
-        }
-
-        return obs;
+        }, false);
     }
     
     /**
@@ -656,7 +600,6 @@ public class ReplicationAttributeStore extends ReplicationStore {
         throws IOException, ClassNotFoundException 
     {
         Collection<Object> attributeValueList = new ArrayList<Object>();
-        BufferedInputStream bis = null;
         ByteArrayInputStream bais = null;
         Loader loader = null;    
         ClassLoader classLoader = null;
@@ -666,7 +609,6 @@ public class ReplicationAttributeStore extends ReplicationStore {
         try
         {
             bais = new ByteArrayInputStream(state);
-            bis = new BufferedInputStream(bais);
             
             if (container != null) {
                 loader = container.getLoader();
@@ -679,12 +621,12 @@ public class ReplicationAttributeStore extends ReplicationStore {
             if (classLoader != null) {
 
                 try {
-                    ois = ioUtils.createObjectInputStream(bis, true, classLoader);
+                    ois = ioUtils.createObjectInputStream(bais, true, classLoader);
                 } catch (Exception ex) {}
 
             }
             if (ois == null) {
-                ois = new ObjectInputStream(bis); 
+                ois = new ObjectInputStream(bais); 
             }
             if(ois != null) {
                 try {
@@ -702,7 +644,6 @@ public class ReplicationAttributeStore extends ReplicationStore {
                 finally {
                     try {
                         ois.close();
-                        bis = null;
                     }
                     catch (IOException e) {
                     }
@@ -62,7 +62,6 @@ import org.glassfish.web.ha.LogFacade;
 
 import java.io.*;
 import java.util.logging.Level;
-import java.util.zip.GZIPInputStream;
 
 /**
  *
@@ -237,8 +236,7 @@ public class ReplicationStore extends HAStoreBase {
     }
 
     protected boolean isReplicationCompressionEnabled() {
-        //XXX Need to fix this.
-        return false;
+        return SessionStateCodec.isCompressionEnabled();
     }
 
     /**
@@ -499,8 +497,6 @@ public class ReplicationStore extends HAStoreBase {
     public Session getSession(byte[] state,  long version) throws IOException {
         Session _session = null;
         InputStream is;
-        BufferedInputStream bis;
-        ByteArrayInputStream bais;    
         ObjectInputStream ois = null;
         Loader loader = null;
         ClassLoader classLoader = null;
@@ -508,13 +504,7 @@ public class ReplicationStore extends HAStoreBase {
         java.security.Principal pal=null; //MERGE chg added
         try
         {
-            bais = new ByteArrayInputStream(state);
-            bis = new BufferedInputStream(bais);
-            if(isReplicationCompressionEnabled()) {
-                is = new GZIPInputStream(bis);
-            } else {
-                is = bis;
-            }            
+            is = getStateInputStream(state, isReplicationCompressionEnabled());
             
 
             if(_logger.isLoggable(Level.FINEST)) {
@@ -545,7 +535,6 @@ public class ReplicationStore extends HAStoreBase {
                 if (ois != null) {
                     try {
                         ois.close();
-                        bis = null;
                     }
                     catch (IOException e) {
                     }
@@ -0,0 +1,276 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.web.ha.session.management;
+
+import com.sun.enterprise.container.common.spi.util.JavaEEIOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Serializes the state of sessions and session attributes for replication.
+ * <p>
+ * The state is written to a buffer that is reused by the thread, instead of
+ * a new <code>ByteArrayOutputStream</code> and <code>BufferedOutputStream</code>
+ * for every save, so that only the returned byte[] is allocated. A buffer that
+ * grew beyond 1MB is not kept.
+ * <p>
+ * When compression is requested, states smaller than the compression
+ * threshold are not compressed and larger ones are deflated at the fastest
+ * level with a deflater reused by the thread. A compressed state starts with
+ * a byte telling which was done; an uncompressed state is exactly the
+ * serialized data, as before.
+ */
+final class SessionStateCodec {
+
+    static final String COMPRESSION_PROPERTY = "org.glassfish.web.ha.session.compression";
+
+    static final String COMPRESSION_THRESHOLD_PROPERTY = "org.glassfish.web.ha.session.compressionThreshold";
+
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final byte STORED = 0;
+
+    private static final byte DEFLATED = 1;
+
+    private static final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    /**
+     * Writes a state to an object stream.
+     */
+    interface StateWriter {
+        void writeState(ObjectOutputStream oos) throws IOException;
+    }
+
+    private final JavaEEIOUtils ioUtils;
+
+    private final int compressionThreshold;
+
+    SessionStateCodec(JavaEEIOUtils ioUtils) {
+        this(ioUtils, Integer.getInteger(COMPRESSION_THRESHOLD_PROPERTY, DEFAULT_COMPRESSION_THRESHOLD));
+    }
+
+    SessionStateCodec(JavaEEIOUtils ioUtils, int compressionThreshold) {
+        this.ioUtils = ioUtils;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    static boolean isCompressionEnabled() {
+        return Boolean.getBoolean(COMPRESSION_PROPERTY);
+    }
+
+    byte[] encode(StateWriter writer, boolean compress) throws IOException {
+        Buffers b = buffers.get();
+        //a state written while another one is being written, e.g. by writeObject()
+        boolean nested = b.inUse;
+        if (nested) {
+            b = new Buffers();
+        }
+        b.inUse = true;
+        try {
+            ExposedByteArrayOutputStream out = b.serialized;
+            out.reset();
+            ObjectOutputStream oos = createObjectOutputStream(out);
+            try {
+                writer.writeState(oos);
+            } finally {
+                oos.close();
+            }
+            if (!compress) {
+                return out.toByteArray();
+            }
+            if (out.size() < compressionThreshold) {
+                byte[] result = new byte[out.size() + 1];
+                result[0] = STORED;
+                System.arraycopy(out.getBuffer(), 0, result, 1, out.size());
+                return result;
+            }
+            return deflate(b, out);
+        } finally {
+            b.inUse = false;
+            b.trim();
+        }
+    }
+
+    private byte[] deflate(Buffers b, ExposedByteArrayOutputStream in) {
+        ExposedByteArrayOutputStream out = b.compressed;
+        out.reset();
+        out.write(DEFLATED);
+        Deflater deflater = b.getDeflater();
+        deflater.reset();
+        deflater.setInput(in.getBuffer(), 0, in.size());
+        deflater.finish();
+        byte[] chunk = b.chunk;
+        while (!deflater.finished()) {
+            int count = deflater.deflate(chunk);
+            out.write(chunk, 0, count);
+        }
+        if (out.size() > in.size()) {
+            //not compressible
+            byte[] result = new byte[in.size() + 1];
+            result[0] = STORED;
+            System.arraycopy(in.getBuffer(), 0, result, 1, in.size());
+            return result;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the serialized data of a state returned by {@link #encode}.
+     */
+    InputStream decode(byte[] state, boolean compressed) throws IOException {
+        if (!compressed) {
+            return new ByteArrayInputStream(state);
+        }
+        if (state.length == 0) {
+            throw new IOException("Empty session state");
+        }
+        switch (state[0]) {
+            case STORED:
+                return new ByteArrayInputStream(state, 1, state.length - 1);
+            case DEFLATED:
+                return new InflaterInputStream(new ByteArrayInputStream(state, 1, state.length - 1));
+            default:
+                throw new IOException("Unknown session state encoding: " + state[0]);
+        }
+    }
+
+    private ObjectOutputStream createObjectOutputStream(OutputStream out) throws IOException {
+        ObjectOutputStream oos = null;
+        if (ioUtils != null) {
+            try {
+                oos = ioUtils.createObjectOutputStream(out, true);
+            } catch (Exception ex) {
+                //use normal ObjectOutputStream if there is a failure during stream creation
+            }
+        }
+        if (oos == null) {
+            oos = new ObjectOutputStream(out);
+        }
+        return oos;
+    }
+
+    private static final class Buffers {
+        private ExposedByteArrayOutputStream serialized = new ExposedByteArrayOutputStream();
+        private ExposedByteArrayOutputStream compressed = new ExposedByteArrayOutputStream();
+        private final byte[] chunk = new byte[8192];
+        private Deflater deflater;
+        private boolean inUse;
+
+        Deflater getDeflater() {
+            if (deflater == null) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+            }
+            return deflater;
+        }
+
+        void trim() {
+            if (serialized.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                serialized = new ExposedByteArrayOutputStream();
+            }
+            if (compressed.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                compressed = new ExposedByteArrayOutputStream();
+            }
+        }
+    }
+
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+        ExposedByteArrayOutputStream() {
+            super(8192);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        // not synchronized, the stream is confined to a thread
+        @Override
+        public void write(int b) {
+            if (count == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length << 1);
+            }
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (count + len > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + len));
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.web.ha.session.management;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the serialization done for every replicated request,
+ * i.e. the replicated requests per second the serialization allows, against
+ * the size of the session.
+ * <p>
+ * <code>legacy</code> and <code>legacyGzip</code> are the streams that were
+ * created for every save; <code>pooled</code> and <code>pooledCompressed</code>
+ * use {@link SessionStateCodec}. {@link #fullSession()} serializes all the
+ * attributes, as the "session" persistence scope does, and
+ * {@link #modifiedAttribute()} the only attribute changed by the request, as
+ * the "modified-attribute" scope does.
+ * <p>
+ * Not run as part of the unit tests. Run it with the test classpath, e.g.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.glassfish.web.ha.session.management.SessionReplicationBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class SessionReplicationBenchmark {
+
+    private static final int ATTRIBUTES = 16;
+
+    @Param({"1024", "16384", "131072"})
+    public int sessionSize;
+
+    @Param({"legacy", "legacyGzip", "pooled", "pooledCompressed"})
+    public String serialization;
+
+    private HashMap<String, Serializable> attributes;
+    private SessionStateCodec codec;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        String[] words = {"order", "cart", "item", "price", "customer", "address", "42", "true"};
+        attributes = new HashMap<String, Serializable>();
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            StringBuilder value = new StringBuilder();
+            while (value.length() < sessionSize / ATTRIBUTES) {
+                value.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            attributes.put("attribute" + i, value.toString());
+        }
+        codec = new SessionStateCodec(null);
+    }
+
+    @Benchmark
+    public byte[] fullSession() throws IOException {
+        return serialize(attributes);
+    }
+
+    @Benchmark
+    public byte[] modifiedAttribute() throws IOException {
+        return serialize(attributes.get("attribute0"));
+    }
+
+    private byte[] serialize(final Object state) throws IOException {
+        if (serialization.startsWith("legacy")) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream oos;
+            if (serialization.equals("legacyGzip")) {
+                oos = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(bos)));
+            } else {
+                oos = new ObjectOutputStream(new BufferedOutputStream(bos));
+            }
+            oos.writeObject(state);
+            oos.close();
+            return bos.toByteArray();
+        }
+        return codec.encode(new SessionStateCodec.StateWriter() {
+            public void writeState(ObjectOutputStream oos) throws IOException {
+                oos.writeObject(state);
+            }
+        }, serialization.equals("pooledCompressed"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(SessionReplicationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
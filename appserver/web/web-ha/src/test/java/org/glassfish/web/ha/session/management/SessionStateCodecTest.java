@@ -0,0 +1,182 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.web.ha.session.management;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SessionStateCodecTest {
+
+    private static final int THRESHOLD = 1024;
+
+    private final SessionStateCodec codec = new SessionStateCodec(null, THRESHOLD);
+
+    private byte[] encode(final Object state, boolean compress) throws IOException {
+        return codec.encode(new SessionStateCodec.StateWriter() {
+            public void writeState(ObjectOutputStream oos) throws IOException {
+                oos.writeObject(state);
+            }
+        }, compress);
+    }
+
+    private Object decode(byte[] state, boolean compressed) throws Exception {
+        InputStream is = codec.decode(state, compressed);
+        ObjectInputStream ois = new ObjectInputStream(is);
+        try {
+            return ois.readObject();
+        } finally {
+            ois.close();
+        }
+    }
+
+    private static byte[] serialize(Object state) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(state);
+        oos.close();
+        return out.toByteArray();
+    }
+
+    private static String text(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append("session attribute value ");
+        }
+        return sb.substring(0, length);
+    }
+
+    private static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void uncompressedWireFormatIsUnchanged() throws Exception {
+        String state = text(10000);
+        byte[] encoded = encode(state, false);
+        assertArrayEquals(serialize(state), encoded);
+        assertEquals(state, decode(encoded, false));
+    }
+
+    @Test
+    public void smallStateIsStoredBehindHeader() throws Exception {
+        String state = text(100);
+        byte[] encoded = encode(state, true);
+        byte[] serialized = serialize(state);
+        assertTrue(serialized.length < THRESHOLD);
+        assertEquals(0, encoded[0]);
+        assertArrayEquals(serialized, Arrays.copyOfRange(encoded, 1, encoded.length));
+        assertEquals(state, decode(encoded, true));
+    }
+
+    @Test
+    public void largeStateIsDeflated() throws Exception {
+        String state = text(64 * 1024);
+        byte[] encoded = encode(state, true);
+        assertEquals(1, encoded[0]);
+        assertTrue(encoded.length < serialize(state).length / 4);
+        assertEquals(state, decode(encoded, true));
+    }
+
+    @Test
+    public void incompressibleStateIsStored() throws Exception {
+        byte[] state = random(16 * 1024);
+        byte[] encoded = encode(state, true);
+        assertEquals(0, encoded[0]);
+        assertArrayEquals(state, (byte[]) decode(encoded, true));
+    }
+
+    @Test
+    public void buffersAreReusedAcrossStates() throws Exception {
+        // a large state, then smaller ones through the same thread buffers
+        String large = text(2 * 1024 * 1024);
+        assertEquals(large, decode(encode(large, true), true));
+        for (int i = 1; i <= 5; i++) {
+            String state = text(i * 500);
+            assertEquals(state, decode(encode(state, true), true));
+            assertEquals(state, decode(encode(state, false), false));
+        }
+    }
+
+    @Test
+    public void nestedStateIsEncodedSeparately() throws Exception {
+        Nested nested = new Nested(codec, text(5000));
+        byte[] encoded = encode(nested, true);
+        Nested decoded = (Nested) decode(encoded, true);
+        assertEquals(nested.value, decoded.value);
+        assertEquals(nested.value, decode(decoded.inner, true));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownEncodingIsRejected() throws Exception {
+        codec.decode(new byte[] {7, 1, 2}, true);
+    }
+
+    private static class Nested implements Serializable {
+        private final String value;
+        private transient SessionStateCodec codec;
+        private byte[] inner;
+
+        Nested(SessionStateCodec codec, String value) {
+            this.codec = codec;
+            this.value = value;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            inner = codec.encode(new SessionStateCodec.StateWriter() {
+                public void writeState(ObjectOutputStream oos) throws IOException {
+                    oos.writeObject(value);
+                }
+            }, true);
+            out.defaultWriteObject();
+        }
+    }
+}
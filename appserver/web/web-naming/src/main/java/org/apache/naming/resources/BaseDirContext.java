@@ -148,6 +148,12 @@ public abstract class BaseDirContext implements DirContext {
     protected int cacheMaxSize = 10240; // 10 MB
 
 
+    /**
+     * Whether the content of the cached resources is kept off-heap.
+     */
+    protected boolean cacheOffHeap = false;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -248,6 +254,22 @@ public abstract class BaseDirContext implements DirContext {
     }
 
 
+    /**
+     * Is the content of the cached resources kept off-heap ?
+     */
+    public boolean isCacheOffHeap() {
+        return cacheOffHeap;
+    }
+
+
+    /**
+     * Set whether the content of the cached resources is kept off-heap.
+     */
+    public void setCacheOffHeap(boolean cacheOffHeap) {
+        this.cacheOffHeap = cacheOffHeap;
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -0,0 +1,392 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.naming.resources;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resource cache for large applications, used by default by
+ * {@link ProxyDirContext}.
+ * <p>
+ * Entries are kept in a concurrent map, so lookups take no lock and loading
+ * or unloading an entry does not copy the whole cache. The size of the
+ * cache is accounted in bytes: the content of an entry plus a fixed
+ * overhead. When it goes over <code>cacheMaxSize</code>, entries are evicted
+ * in "second chance" (clock) order: an entry looked up since the last pass of
+ * the clock hand is kept for one more revolution.
+ * <p>
+ * Not found entries are kept apart, up to <code>spareNotFoundEntries</code>
+ * of them, and expire after the cache TTL of the context. The content of the
+ * entries may be stored in direct buffers (see {@link #setOffHeap}), in which
+ * case it does not count in the heap.
+ */
+public class ConcurrentResourceCache extends ResourceCache {
+
+
+    // ----------------------------------------------------- Class Variables
+
+
+    /**
+     * Bytes accounted for every entry on top of its content (name,
+     * attributes, ...).
+     */
+    protected static final int ENTRY_OVERHEAD = 1024;
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    public ConcurrentResourceCache() {
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * Entries of existing resources.
+     */
+    private final ConcurrentHashMap<String, Node> entries =
+        new ConcurrentHashMap<String, Node>();
+
+
+    /**
+     * Entries of resources which do not exist.
+     */
+    private final ConcurrentHashMap<String, CacheEntry> notFoundEntries =
+        new ConcurrentHashMap<String, CacheEntry>();
+
+
+    /**
+     * Eviction order, the head of the queue is under the clock hand.
+     */
+    private final ConcurrentLinkedQueue<Node> clock =
+        new ConcurrentLinkedQueue<Node>();
+
+
+    /**
+     * Number of unloaded nodes still in the clock queue.
+     */
+    private final AtomicInteger deadNodes = new AtomicInteger();
+
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+
+    private final AtomicLong byteSize = new AtomicLong();
+
+
+    private final LongAdder accesses = new LongAdder();
+
+
+    private final LongAdder hits = new LongAdder();
+
+
+    /**
+     * Whether the content of the entries is moved to direct buffers.
+     */
+    private volatile boolean offHeap = false;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    @Override
+    public long getAccessCount() {
+        return accesses.sum();
+    }
+
+
+    @Override
+    public long getHitsCount() {
+        return hits.sum();
+    }
+
+
+    /**
+     * Return the current cache size in KB.
+     */
+    @Override
+    public int getCacheSize() {
+        return (int) (byteSize.get() / 1024);
+    }
+
+
+    /**
+     * Return the number of cached entries, not found entries excluded.
+     */
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+
+    /**
+     * Return the number of cached not found entries.
+     */
+    public int getNotFoundEntryCount() {
+        return notFoundEntries.size();
+    }
+
+
+    /**
+     * Is the content of the entries stored off-heap ?
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+
+    /**
+     * Set whether the content of the entries loaded from now on is stored
+     * in direct buffers rather than in byte arrays.
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Space is made by {@link #load}, this only checks that an entry of the
+     * given size (in KB) can be cached at all.
+     */
+    @Override
+    public boolean allocate(int space) {
+        return space <= cacheMaxSize;
+    }
+
+
+    @Override
+    public CacheEntry lookup(String name) {
+        accesses.increment();
+        Node node = entries.get(name);
+        if (node != null) {
+            if (!node.referenced) {
+                node.referenced = true;
+            }
+            hits.increment();
+            return node.entry;
+        }
+        CacheEntry entry = notFoundEntries.get(name);
+        if (entry != null) {
+            if (entry.timestamp < System.currentTimeMillis()) {
+                notFoundEntries.remove(name, entry);
+                return null;
+            }
+            hits.increment();
+        }
+        return entry;
+    }
+
+
+    @Override
+    public void load(CacheEntry entry) {
+        if (!entry.exists) {
+            if (notFoundEntries.size() >= spareNotFoundEntries) {
+                purgeNotFoundEntries();
+            }
+            notFoundEntries.put(entry.name, entry);
+            return;
+        }
+
+        // the weight is the same on and off heap, the direct buffer is only
+        // allocated for an entry which is going to be cached
+        long weight = weigh(entry);
+        if ((weight > cacheMaxSize * 1024L) || entries.containsKey(entry.name)) {
+            return;
+        }
+        if (offHeap && (entry.resource != null)
+                && !(entry.resource instanceof ByteBufferResource)
+                && (entry.resource.getContent() != null)) {
+            entry.resource =
+                new ByteBufferResource(entry.resource.getContent());
+        }
+
+        Node node = new Node(entry, weight);
+        if (entries.putIfAbsent(entry.name, node) != null) {
+            return;
+        }
+        byteSize.addAndGet(node.weight);
+        clock.offer(node);
+        evict();
+    }
+
+
+    @Override
+    public boolean unload(String name) {
+        Node node = entries.remove(name);
+        if (node != null) {
+            unlinked(node);
+            return true;
+        }
+        return (notFoundEntries.remove(name) != null);
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    /**
+     * Return the number of bytes accounted for the given entry.
+     */
+    protected long weigh(CacheEntry entry) {
+        long weight = ENTRY_OVERHEAD;
+        if (entry.resource instanceof ByteBufferResource) {
+            weight += ((ByteBufferResource) entry.resource).getContentLength();
+        } else if ((entry.resource != null)
+                && (entry.resource.getContent() != null)) {
+            weight += entry.resource.getContent().length;
+        }
+        return weight;
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    private void unlinked(Node node) {
+        node.removed = true;
+        byteSize.addAndGet(-node.weight);
+        // the node is dropped from the clock when the hand reaches it, or by
+        // a sweep if entries are unloaded faster than they are evicted
+        if (deadNodes.incrementAndGet() > entries.size() + 64) {
+            sweep();
+        }
+    }
+
+
+    /**
+     * Evicts entries until the cache fits in cacheMaxSize.
+     */
+    private void evict() {
+        long maxBytes = cacheMaxSize * 1024L;
+        if (byteSize.get() <= maxBytes) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            // after one revolution no entry has its reference bit set
+            int budget = 2 * (entries.size() + deadNodes.get()) + 1;
+            Node node;
+            while ((byteSize.get() > maxBytes) && (budget-- > 0)
+                    && ((node = clock.poll()) != null)) {
+                if (node.removed) {
+                    deadNodes.decrementAndGet();
+                } else if (node.referenced) {
+                    node.referenced = false;
+                    clock.offer(node);
+                } else if (entries.remove(node.entry.name, node)) {
+                    node.removed = true;
+                    byteSize.addAndGet(-node.weight);
+                } else {
+                    // unloaded concurrently, and already counted as dead
+                    deadNodes.decrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    /**
+     * Drops the unloaded nodes from the clock.
+     */
+    private void sweep() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            Iterator<Node> it = clock.iterator();
+            while (it.hasNext()) {
+                if (it.next().removed) {
+                    it.remove();
+                    deadNodes.decrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    /**
+     * Removes the expired not found entries, or all of them if there are
+     * still too many.
+     */
+    private void purgeNotFoundEntries() {
+        long now = System.currentTimeMillis();
+        Iterator<CacheEntry> it = notFoundEntries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().timestamp < now) {
+                it.remove();
+            }
+        }
+        if (notFoundEntries.size() >= spareNotFoundEntries) {
+            notFoundEntries.clear();
+        }
+    }
+
+
+    // -------------------------------------------------------- Private Classes
+
+
+    private static final class Node {
+
+        final CacheEntry entry;
+        final long weight;
+        volatile boolean referenced;
+        volatile boolean removed;
+
+        Node(CacheEntry entry, long weight) {
+            this.entry = entry;
+            this.weight = weight;
+        }
+    }
+}
@@ -113,6 +113,10 @@ public class ProxyDirContext implements DirContext {
                 cache = (ResourceCache) 
                     Class.forName(cacheClassName).newInstance();
                 cache.setCacheMaxSize(baseDirContext.getCacheMaxSize());
+                if (cache instanceof ConcurrentResourceCache) {
+                    ((ConcurrentResourceCache) cache).setOffHeap(
+                        baseDirContext.isCacheOffHeap());
+                }
                 cacheTTL = baseDirContext.getCacheTTL();
                 cacheObjectMaxSize = baseDirContext.getCacheMaxSize() / 20;
             }
@@ -147,7 +151,7 @@ public class ProxyDirContext implements DirContext {
      * Cache class.
      */
     protected String cacheClassName = 
-        "org.apache.naming.resources.ResourceCache";
+        "org.apache.naming.resources.ConcurrentResourceCache";
 
 
     /**
@@ -1477,7 +1481,8 @@ public class ProxyDirContext implements DirContext {
         if (((!entry.exists)
              || (entry.context != null)
              || ((entry.resource != null) 
-                 && (entry.resource.getContent() != null)))
+                 && ((entry.resource.getContent() != null)
+                     || (entry.resource instanceof ByteBufferResource))))
             && (System.currentTimeMillis() < entry.timestamp)) {
             return true;
         }
@@ -1602,6 +1607,13 @@ public class ProxyDirContext implements DirContext {
         entry.timestamp = System.currentTimeMillis() + cacheTTL;
 
         // Add new entry to cache
+        if (cache instanceof ConcurrentResourceCache) {
+            // thread safe, and checks itself that the entry isn't cached yet
+            if (cache.allocate(entry.size)) {
+                cache.load(entry);
+            }
+            return;
+        }
         synchronized (cache) {
             // Check cache size, and remove elements if too big
             if ((cache.lookup(name) == null) && cache.allocate(entry.size)) {
@@ -1618,6 +1630,9 @@ public class ProxyDirContext implements DirContext {
     protected boolean cacheUnload(String name) {
         if (cache == null)
             return false;
+        if (cache instanceof ConcurrentResourceCache) {
+            return cache.unload(name);
+        }
         synchronized (cache) {
             return cache.unload(name);
         }
@@ -0,0 +1,165 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.naming.resources;
+
+import java.io.InputStream;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentResourceCacheTest {
+
+    private static CacheEntry entry(String name, int contentLength) {
+        CacheEntry entry = new CacheEntry();
+        entry.name = name;
+        entry.resource = new Resource(new byte[contentLength]);
+        entry.size += contentLength / 1024;
+        entry.timestamp = System.currentTimeMillis() + 5000;
+        return entry;
+    }
+
+    private static CacheEntry notFound(String name, long ttl) {
+        CacheEntry entry = new CacheEntry();
+        entry.name = name;
+        entry.exists = false;
+        entry.timestamp = System.currentTimeMillis() + ttl;
+        return entry;
+    }
+
+    @Test
+    public void lookupLoadAndUnload() {
+        ConcurrentResourceCache cache = new ConcurrentResourceCache();
+        CacheEntry entry = entry("/index.html", 100);
+        cache.load(entry);
+        assertSame(entry, cache.lookup("/index.html"));
+        assertNull(cache.lookup("/other.html"));
+        assertEquals(2, cache.getAccessCount());
+        assertEquals(1, cache.getHitsCount());
+        assertTrue(cache.unload("/index.html"));
+        assertNull(cache.lookup("/index.html"));
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    @Test
+    public void evictsBySizeAndKeepsReferencedEntries() {
+        ConcurrentResourceCache cache = new ConcurrentResourceCache();
+        cache.setCacheMaxSize(100); // KB
+        cache.load(entry("/hot", 10 * 1024));
+        for (int i = 0; i < 50; i++) {
+            assertNotNull(cache.lookup("/hot"));
+            cache.load(entry("/cold" + i, 10 * 1024));
+        }
+        assertTrue(cache.getCacheSize() <= 100);
+        assertTrue(cache.getEntryCount() < 51);
+        assertNotNull(cache.lookup("/hot"));
+        assertNotNull(cache.lookup("/cold49"));
+    }
+
+    @Test
+    public void rejectsEntriesLargerThanTheCache() {
+        ConcurrentResourceCache cache = new ConcurrentResourceCache();
+        cache.setCacheMaxSize(10);
+        assertFalse(cache.allocate(11));
+        cache.load(entry("/big", 20 * 1024));
+        assertNull(cache.lookup("/big"));
+    }
+
+    @Test
+    public void notFoundEntriesExpire() throws Exception {
+        ConcurrentResourceCache cache = new ConcurrentResourceCache();
+        cache.load(notFound("/missing", 60000));
+        cache.load(notFound("/expired", -1));
+        assertFalse(cache.lookup("/missing").exists);
+        assertNull(cache.lookup("/expired"));
+        assertEquals(1, cache.getNotFoundEntryCount());
+
+        cache.setSpareNotFoundEntries(10);
+        for (int i = 0; i < 100; i++) {
+            cache.load(notFound("/missing" + i, 60000));
+        }
+        assertTrue(cache.getNotFoundEntryCount() <= 10);
+    }
+
+    @Test
+    public void offHeapContent() throws Exception {
+        ConcurrentResourceCache cache = new ConcurrentResourceCache();
+        cache.setOffHeap(true);
+        CacheEntry entry = entry("/data", 0);
+        byte[] content = new byte[3000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        entry.resource = new Resource(content);
+        cache.load(entry);
+
+        CacheEntry cached = cache.lookup("/data");
+        assertTrue(cached.resource instanceof ByteBufferResource);
+        assertNull(cached.resource.getContent());
+        InputStream is = cached.resource.streamContent();
+        byte[] read = new byte[content.length];
+        int pos = 0;
+        int n;
+        while ((n = is.read(read, pos, read.length - pos)) > 0) {
+            pos += n;
+        }
+        assertEquals(content.length, pos);
+        assertEquals(-1, is.read());
+        assertArrayEquals(content, read);
+        assertEquals(3, cache.getCacheSize()); // 3000 bytes + overhead
+    }
+
+    @Test
+    public void offHeapContentIsOnlyCopiedForCachedEntries() {
+        ConcurrentResourceCache cache = new ConcurrentResourceCache();
+        cache.setCacheMaxSize(10);
+        cache.setOffHeap(true);
+        cache.load(entry("/data", 0));
+
+        CacheEntry again = entry("/data", 100);
+        cache.load(again);
+        assertFalse(again.resource instanceof ByteBufferResource);
+
+        CacheEntry big = entry("/big", 20 * 1024);
+        cache.load(big);
+        assertFalse(big.resource instanceof ByteBufferResource);
+        assertNull(cache.lookup("/big"));
+    }
+}
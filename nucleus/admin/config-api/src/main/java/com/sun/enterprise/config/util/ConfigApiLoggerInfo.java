@@ -1068,4 +1068,14 @@ public class ConfigApiLoggerInfo {
             action="Take appropriate action based on the error details in the log.")
     public final static String ERR_UPGRADE_HTTP_SVC_PROPS = "NCLS-CFGAPI-00137";
 
+    @LogMessageInfo(
+            message = "Total time to load the snapshot of domain.xml: ",
+            level = "FINE")
+    public final static String totalTimeToLoadSnapshot = LOGMSG_PREFIX + "-00138";
+
+    @LogMessageInfo(
+            message = "The snapshot of domain.xml is not used: ",
+            level = "FINE")
+    public final static String snapshotNotUsed = LOGMSG_PREFIX + "-00139";
+
 }
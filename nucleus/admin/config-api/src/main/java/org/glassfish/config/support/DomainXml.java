@@ -223,8 +223,22 @@ public abstract class DomainXml implements Populator {
      */
     protected void parseDomainXml(ConfigParser parser, final URL domainXml, final String serverName) {
         long startNano = System.nanoTime();
+        DomDocument document = getDomDocument();
 
+        File configFile = getSnapshotCandidate(domainXml);
+        if (configFile != null && loadSnapshot(document, configFile)) {
+            Long l = System.nanoTime() - startNano;
+            LogRecord lr = new LogRecord(Level.FINE, totalTimeToLoadSnapshot + l.toString());
+            lr.setLoggerName(getClass().getName());
+            EarlyLogHandler.earlyMessages.add(lr);
+            return;
+        }
+
+        long checksum = 0;
         try {
+            if (configFile != null) {
+                checksum = DomainXmlSnapshot.checksum(configFile);
+            }
             ServerReaderFilter xsr = null;
             // Set the resolver so that any external entity references, such 
             // as a reference to a DTD, return an empty file.  The domain.xml
@@ -256,8 +270,11 @@ public abstract class DomainXml implements Populator {
                 } catch (Exception e) {
                     // ignore
                 }
-                parser.parse(xsr, getDomDocument());
+                parser.parse(xsr, document);
                 xsr.close();
+                if (configFile != null) {
+                    saveSnapshot(document, configFile, checksum);
+                }
             } finally {
                 if (lock != null) {
                     lock.unlock();
@@ -283,6 +300,58 @@ public abstract class DomainXml implements Populator {
 
     }
 
+    /**
+     * Returns the configuration file whose snapshot may be used, or null if
+     * <tt>domain.xml</tt> must be parsed, see {@link DomainXmlSnapshot}.
+     */
+    private File getSnapshotCandidate(URL domainXml) {
+        if (!DomainXmlSnapshot.isEnabled() || !"file".equals(domainXml.getProtocol())
+                || "upgrade".equals(context.getPlatformMainServiceName())) {
+            return null;
+        }
+        try {
+            return new File(domainXml.toURI());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private boolean loadSnapshot(DomDocument document, File configFile) {
+        Lock lock = null;
+        try {
+            try {
+                lock = configAccess.accessRead();
+            } catch (Exception e) {
+                // ignore
+            }
+            return DomainXmlSnapshot.read(document, configFile, DomainXmlSnapshot.getKey(env));
+        } catch (Exception e) {
+            LogRecord lr = new LogRecord(Level.FINE, snapshotNotUsed + e);
+            lr.setLoggerName(getClass().getName());
+            EarlyLogHandler.earlyMessages.add(lr);
+            return false;
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Must be called with the read lock held, so that <tt>domain.xml</tt>
+     * cannot change between its parsing and the snapshot.
+     */
+    private void saveSnapshot(DomDocument document, File configFile, long checksum) {
+        try {
+            DomainXmlSnapshot.write(document, configFile, checksum, DomainXmlSnapshot.getKey(env));
+        } catch (Exception e) {
+            DomainXmlSnapshot.delete(configFile);
+            LogRecord lr = new LogRecord(Level.FINE, snapshotNotUsed + e);
+            lr.setLoggerName(getClass().getName());
+            EarlyLogHandler.earlyMessages.add(lr);
+        }
+    }
+
     protected abstract DomDocument getDomDocument();
 
     private final static LocalStringsImpl strings = new LocalStringsImpl(DomainXml.class);
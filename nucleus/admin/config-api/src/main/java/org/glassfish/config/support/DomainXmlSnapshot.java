@@ -0,0 +1,211 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.config.support;
+
+import com.sun.enterprise.util.io.FileUtils;
+import org.glassfish.server.ServerEnvironmentImpl;
+import org.jvnet.hk2.config.DomDocument;
+import org.jvnet.hk2.config.DomSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of the configuration read from <tt>domain.xml</tt>, kept
+ * alongside it in <tt>domain.xml.snapshot</tt>, see {@link DomSnapshot}.
+ * <p>
+ * The snapshot records the length, the modification time and the CRC-32 of the
+ * <tt>domain.xml</tt> it was taken from, as well as the runtime type and the
+ * name of the server, since an instance only reads its part of the
+ * configuration. It is used only if all of them still match, and is itself
+ * protected by a CRC-32.
+ * <p>
+ * Set the <tt>org.glassfish.config.snapshot</tt> system property to false to
+ * always parse <tt>domain.xml</tt>.
+ */
+public final class DomainXmlSnapshot {
+
+    public static final String ENABLED_PROPERTY = "org.glassfish.config.snapshot";
+
+    private static final String SUFFIX = ".snapshot";
+
+    private static final int MAGIC = 0x47465843;    // "GFXC"
+    private static final int VERSION = 1;
+
+    private DomainXmlSnapshot() {
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+    }
+
+    public static File getSnapshotFile(File configFile) {
+        return new File(configFile.getParentFile(), configFile.getName() + SUFFIX);
+    }
+
+    /**
+     * Returns what the configuration read by a server depends on, besides
+     * the content of <tt>domain.xml</tt>.
+     */
+    public static String getKey(ServerEnvironmentImpl env) {
+        return env.getRuntimeType() + "/" + env.getInstanceName();
+    }
+
+    /**
+     * Returns the CRC-32 of the content of a file.
+     */
+    public static long checksum(File file) throws IOException {
+        CheckedInputStream in = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file)), new CRC32());
+        try {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // read until the end of the file
+            }
+            return in.getChecksum().getValue();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Populates a document from the snapshot of a configuration file.
+     *
+     * @param document the document to populate
+     * @param configFile the configuration file
+     * @param key the key of the server, see {@link #getKey(ServerEnvironmentImpl)}
+     * @return true if the document was populated, false if there is no snapshot
+     *      of the current content of the configuration file
+     * @throws IOException if the snapshot cannot be read; the document is
+     *      then unchanged
+     */
+    public static boolean read(DomDocument document, File configFile, String key) throws IOException {
+        File snapshotFile = getSnapshotFile(configFile);
+        if (!snapshotFile.isFile()) {
+            return false;
+        }
+        byte[] bytes = Files.readAllBytes(snapshotFile.toPath());
+        if (bytes.length < 8) {
+            throw new IOException("Truncated snapshot " + snapshotFile);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipBytes(bytes.length - 8);
+        if (in.readLong() != crc.getValue()) {
+            throw new IOException("Corrupted snapshot " + snapshotFile);
+        }
+
+        in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return false;
+        }
+        if (!key.equals(in.readUTF())
+                || in.readLong() != configFile.length()
+                || in.readLong() != configFile.lastModified()
+                || in.readLong() != checksum(configFile)) {
+            return false;
+        }
+        DomSnapshot.read(document, in);
+        return true;
+    }
+
+    /**
+     * Writes the snapshot of a document read from, or written to, a
+     * configuration file.
+     *
+     * @param document the document
+     * @param configFile the configuration file, as the document was read from or written to it
+     * @param checksum the CRC-32 of the content of the configuration file
+     * @param key the key of the server, see {@link #getKey(ServerEnvironmentImpl)}
+     */
+    public static void write(DomDocument document, File configFile, long checksum, String key) throws IOException {
+        File snapshotFile = getSnapshotFile(configFile);
+        File f = File.createTempFile("domain", SUFFIX, configFile.getParentFile());
+        try {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(f)), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(key);
+                out.writeLong(configFile.length());
+                out.writeLong(configFile.lastModified());
+                out.writeLong(checksum);
+                DomSnapshot.write(document, out);
+                out.writeLong(checked.getChecksum().getValue());
+            } finally {
+                out.close();
+            }
+            if (!FileUtils.renameFile(f, snapshotFile)) {
+                throw new IOException("Could not rename " + f + " to " + snapshotFile);
+            }
+        } finally {
+            if (f.exists() && !f.delete()) {
+                f.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Deletes the snapshot of a configuration file, e.g. when it could not be
+     * updated with the configuration file.
+     */
+    public static void delete(File configFile) {
+        File snapshotFile = getSnapshotFile(configFile);
+        if (snapshotFile.exists() && !snapshotFile.delete()) {
+            snapshotFile.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,889 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.appserv.util.cache;
+
+import com.sun.enterprise.util.CULoggerInfo;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ConcurrentLruCache
+ * in-memory bounded cache with an LRU list, for read mostly workloads.
+ * <p>
+ * Entries are kept in a <code>ConcurrentHashMap</code> so lookups take no
+ * lock. Unlike LruCache, a lookup does not move the entry to the head of the
+ * LRU list itself : the entry is recorded in a small lossy buffer, picked by
+ * the calling thread, and the buffers are applied to the LRU list in batches
+ * by the thread that gets the eviction lock with a try-lock. Additions and
+ * removals are queued the same way, then drained right away, so the cache
+ * never stays above its threshold.
+ * <p>
+ * As the access order is only approximated (a recorded access may be dropped
+ * when a buffer is full), the entry trimmed on overflow is not always the
+ * least recently used one, but one that was not used recently.
+ * <p>
+ * It can replace LruCache wherever a Cache is created from its class name,
+ * e.g. with the cacheClassName property of the web tier cache.
+ */
+public class ConcurrentLruCache implements Cache {
+
+    // the item never expires
+    public static final long NO_TIMEOUT = -1;
+
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    // must be powers of 2
+    private static final int READ_BUFFER_SIZE = 32;
+    private static final int MAX_READ_BUFFERS = 64;
+    private static final int MAX_REFRESH_LOCKS = 4096;
+
+    // a read buffer is drained once it holds that many accesses
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = 16;
+
+    protected int maxEntries;
+    protected int threshold;
+    protected long timeout = NO_TIMEOUT;
+    protected int defaultMaxEntries = Constants.DEFAULT_MAX_ENTRIES;
+    protected boolean isUnbounded = false;
+
+    private ConcurrentHashMap<Object, Node> map;
+    private final AtomicInteger entryCount = new AtomicInteger();
+
+    // LRU list, guarded by the eviction lock
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private Node head;
+    private Node tail;
+    private int listSize;
+
+    private ReadBuffer[] readBuffers;
+    private final ConcurrentLinkedQueue<Node> writeQueue =
+        new ConcurrentLinkedQueue<Node>();
+
+    // locks and flags for item thread-safe refreshes
+    private Object[] refreshLocks;
+    private boolean[] refreshFlags;
+
+    protected ArrayList listeners = new ArrayList();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder removalCount = new LongAdder();
+    private final LongAdder refreshCount = new LongAdder();
+    private final LongAdder addCount = new LongAdder();
+    private final LongAdder trimCount = new LongAdder();
+
+    /**
+     * default constructor
+     */
+    public ConcurrentLruCache() { }
+
+    /**
+     * constructor with specified max entries.
+     * @param defaultMaxEntries specifies the default max entries
+     *        to use when the maxEntries is <= 0.
+     */
+    public ConcurrentLruCache(int defaultMaxEntries) {
+        this.defaultMaxEntries = defaultMaxEntries;
+    }
+
+    /**
+     * initialize the cache
+     * @param maxEntries maximum number of entries expected in the cache
+     * @param props opaque list of properties for a given cache implementation
+     * @throws a generic Exception if the initialization failed
+     */
+    public void init(int maxEntries, Properties props) throws Exception {
+        init(maxEntries, DEFAULT_LOAD_FACTOR, props);
+    }
+
+    /**
+     * initialize the cache
+     * @param maxEntries maximum number of entries expected in the cache
+     * @param loadFactor the load factor
+     * @param props opaque list of properties for a given cache implementation
+     */
+    public void init(int maxEntries, float loadFactor, Properties props) {
+        init(maxEntries, NO_TIMEOUT, loadFactor, props);
+    }
+
+    /**
+     * initialize the cache
+     * @param maxEntries maximum number of entries expected in the cache
+     * @param loadFactor the load factor
+     * @param timeout to be used to trim the expired entries
+     * @param props opaque list of properties for a given cache implementation
+     */
+    public void init(int maxEntries, long timeout, float loadFactor, Properties props) {
+
+        // if the max entries is <= 0 then set the default max entries
+        if (maxEntries <= 0) {
+            maxEntries = defaultMaxEntries;
+
+            // mark this cache unbounded
+            isUnbounded = true;
+        }
+        if (maxEntries <= 0) {
+            String msg = CULoggerInfo.getString(CULoggerInfo.illegalMaxEntries);
+            msg = MessageFormat.format(msg, new Object[] { Integer.valueOf(maxEntries) });
+            throw new IllegalArgumentException(msg);
+        }
+        setTimeout(timeout);
+
+        //Cannot have the loadfactor as a negative value
+        if (loadFactor < 0)
+            loadFactor = 0;
+
+        this.maxEntries = maxEntries;
+        this.threshold = (int)(maxEntries * loadFactor) + 1;
+        map = new ConcurrentHashMap<Object, Node>(Math.min(maxEntries, 1 << 16));
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        int count = 1;
+        while (count < processors && count < MAX_READ_BUFFERS)
+            count <<= 1;
+        readBuffers = new ReadBuffer[count];
+        for (int i = 0; i < count; i++)
+            readBuffers[i] = new ReadBuffer();
+
+        count = 1;
+        while (count < maxEntries && count < MAX_REFRESH_LOCKS)
+            count <<= 1;
+        refreshLocks = new Object[count];
+        refreshFlags = new boolean[count];
+        for (int i = 0; i < count; i++)
+            refreshLocks[i] = new Object();
+    }
+
+    /**
+     * sets the timeout value
+     * @param timeout to be used to trim the expired entries
+     */
+    public void setTimeout(long timeout) {
+        // accept a positive timeout
+        if (timeout > 0)
+            this.timeout = timeout;
+    }
+
+    /**
+     * add the cache module listener
+     * @param listener <code>CacheListener</code> implementation
+     */
+    public void addCacheListener(CacheListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns a hash code for non-null Object x.
+     */
+    private static int hash(Object x) {
+        int h = x.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * get the index of the item given a key
+     * @param key of the entry
+     * @return the index to be used with waitRefresh and notifyRefresh
+     */
+    public int getIndex(Object key) {
+        return hash(key) & (refreshLocks.length - 1);
+    }
+
+    /**
+     * get the item stored at the key.
+     * @param key lookup key
+     * @returns the item stored at the key; null if not found.
+     */
+    public Object get(Object key) {
+        Node node = map.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        afterRead(node);
+        return node.value;
+    }
+
+    /**
+     * get all the items stored at the key.
+     * @param key lookup key
+     * @returns an Iterator over the items with the given key.
+     */
+    public Iterator getAll(Object key) {
+        ArrayList valueList = new ArrayList();
+        for (Node node = map.get(key); node != null; node = node.next) {
+            hitCount.increment();
+            valueList.add(node.value);
+        }
+        return valueList.iterator();
+    }
+
+    /**
+     * check if the cache contains the item at the key
+     * @param key lookup key
+     * @returns true if there is an item stored at the key; false if not.
+     */
+    public boolean contains(Object key) {
+        return (get(key) != null);
+    }
+
+    /**
+     * get an Iterator for the keys stored in the cache
+     * @returns an Iterator
+     */
+    public Iterator keys() {
+        ArrayList keyList = new ArrayList(entryCount.get());
+        for (Map.Entry<Object, Node> entry : map.entrySet()) {
+            for (Node node = entry.getValue(); node != null; node = node.next) {
+                keyList.add(entry.getKey());
+            }
+        }
+        return keyList.iterator();
+    }
+
+    /**
+     * get an Enumeration for the keys stored in the cache
+     * @returns an Enumeration
+     */
+    public Enumeration elements() {
+        Vector keyList = new Vector();
+        for (Iterator iter = keys(); iter.hasNext(); ) {
+            keyList.addElement(iter.next());
+        }
+        return keyList.elements();
+    }
+
+    /**
+     * get an Iterator for the values stored in the cache
+     * @returns an Iterator
+     */
+    public Iterator values() {
+        ArrayList valueList = new ArrayList(entryCount.get());
+        for (Node head : map.values()) {
+            for (Node node = head; node != null; node = node.next) {
+                valueList.add(node.value);
+            }
+        }
+        return valueList.iterator();
+    }
+
+    /**
+     * cache the given value at the specified key and return previous value
+     * @param key lookup key
+     * @param object item value to be stored
+     * @returns the previous item stored at the key; null if not found.
+     */
+    public Object put(Object key, Object value) {
+        return put(key, value, -1);
+    }
+
+    /**
+     * cache the given value at the specified key and return previous value
+     * @param key lookup key
+     * @param object item value to be stored
+     * @param size in bytes of the value being cached
+     * @returns the previous item stored at the key; null if not found.
+     */
+    public Object put(final Object key, final Object value, final int size) {
+        final Node[] added = new Node[1];
+        final Object[] oldValue = new Object[1];
+        Node node = map.compute(key, (k, first) -> {
+            if (first == null) {
+                added[0] = new Node(k, value, size, null);
+                return added[0];
+            }
+            oldValue[0] = first.value;
+            first.value = value;
+            first.size = size;
+            return first;
+        });
+
+        if (added[0] != null) {
+            entryCount.incrementAndGet();
+            addCount.increment();
+            afterWrite(node);
+        } else {
+            refreshCount.increment();
+            afterRead(node);
+        }
+        return oldValue[0];
+    }
+
+    /**
+     * add the given value to the cache at the specified key
+     * @param key lookup key
+     * @param object item value to be stored
+     */
+    public void add(Object key, Object value) {
+        add(key, value, -1);
+    }
+
+    /**
+     * add the given value with specified size to the cache at specified key
+     * @param key lookup key
+     * @param object item value to be stored
+     * @param size in bytes of the value being added
+     *
+     * This function is suitable for multi-valued keys.
+     */
+    public void add(final Object key, final Object value, final int size) {
+        Node node = map.compute(key, (k, first) -> new Node(k, value, size, first));
+
+        entryCount.incrementAndGet();
+        addCount.increment();
+        afterWrite(node);
+    }
+
+    /**
+     * remove the item stored at the key.
+     * @param key lookup key
+     * @returns the item stored at the key; null if not found.
+     */
+    public Object remove(Object key) {
+        Node removed = removeNode(key, null, false);
+        return (removed != null) ? removed.value : null;
+    }
+
+    /**
+     * remove the given value stored at the key; value-specific removals.
+     * @param key lookup key
+     * @param value to match (for a multi-valued keys)
+     * @returns the item stored at the key; null if not found.
+     */
+    public Object remove(Object key, Object value) {
+        Node removed = removeNode(key, value, false);
+        return (removed != null) ? removed.value : null;
+    }
+
+    /**
+     * remove all the item with the given key.
+     * @param key lookup key
+     */
+    public void removeAll(Object key) {
+        Node first = map.remove(key);
+        if (first == null) {
+            return;
+        }
+        for (Node node = first; node != null; node = node.next) {
+            node.dead = true;
+            entryCount.decrementAndGet();
+            removalCount.increment();
+            writeQueue.add(node);
+        }
+        drainBuffers();
+    }
+
+    /**
+     * remove the first item at the key, or the one holding the given value
+     * or being the given node.
+     */
+    private Node removeNode(Object key, final Object value, final boolean isNode) {
+        final Node[] removed = new Node[1];
+        map.computeIfPresent(key, (k, first) -> {
+            Node prev = null;
+            for (Node node = first; node != null; prev = node, node = node.next) {
+                if (isNode ? (node == value)
+                        : (value == null || value == node.value)) {
+                    removed[0] = node;
+                    node.dead = true;
+                    if (prev == null) {
+                        return node.next;
+                    }
+                    // the chain may be read concurrently, copy the nodes
+                    // before the removed one instead of unlinking it
+                    return copyChain(first, node);
+                }
+            }
+            return first;
+        });
+
+        if (removed[0] == null) {
+            if (!isNode)
+                missCount.increment();
+            return null;
+        }
+        entryCount.decrementAndGet();
+        if (!isNode) {
+            removalCount.increment();
+            hitCount.increment();
+            writeQueue.add(removed[0]);
+            drainBuffers();
+        }
+        return removed[0];
+    }
+
+    /**
+     * Replaces the nodes of the chain preceding the removed node by new nodes,
+     * the last one linked to the successor of the removed node. The LRU list
+     * is updated as these new nodes are queued as additions, the old ones as
+     * removals.
+     */
+    private Node copyChain(Node first, Node removed) {
+        Node copy = removed.next;
+        ArrayList<Node> olds = new ArrayList<Node>();
+        for (Node node = first; node != removed; node = node.next) {
+            olds.add(node);
+        }
+        for (int i = olds.size() - 1; i >= 0; i--) {
+            Node old = olds.get(i);
+            copy = new Node(old.key, old.value, old.size, copy);
+            copy.lastAccessed = old.lastAccessed;
+            old.dead = true;
+            writeQueue.add(old);
+            writeQueue.add(copy);
+        }
+        return copy;
+    }
+
+    /**
+     * records the access of the node in the read buffer of the calling thread
+     */
+    private void afterRead(Node node) {
+        if (timeout != NO_TIMEOUT)
+            node.lastAccessed = System.currentTimeMillis();
+
+        long id = Thread.currentThread().getId();
+        ReadBuffer buffer = readBuffers[(int) (id ^ (id >>> 32)) & (readBuffers.length - 1)];
+        if (buffer.offer(node)) {
+            tryDrainBuffers();
+        }
+    }
+
+    /**
+     * queues the addition of the node and applies it
+     */
+    private void afterWrite(Node node) {
+        writeQueue.add(node);
+        drainBuffers();
+    }
+
+    /**
+     * drains the buffers if no other thread is doing it
+     */
+    private void tryDrainBuffers() {
+        if (evictionLock.tryLock()) {
+            List<Node> trimmed;
+            try {
+                trimmed = drainBuffersLocked();
+            } finally {
+                evictionLock.unlock();
+            }
+            notifyTrimmed(trimmed);
+        }
+        // writes queued while the lock was held
+        drainBuffers();
+    }
+
+    /**
+     * drains the buffers until the write queue is empty. If another thread
+     * holds the lock, that thread will see the pending writes once it
+     * released the lock.
+     */
+    private void drainBuffers() {
+        while (!writeQueue.isEmpty() && evictionLock.tryLock()) {
+            List<Node> trimmed;
+            try {
+                trimmed = drainBuffersLocked();
+            } finally {
+                evictionLock.unlock();
+            }
+            notifyTrimmed(trimmed);
+        }
+    }
+
+    /**
+     * applies the buffered reads and the queued writes to the LRU list, then
+     * trims it down to the threshold. Must be called with the eviction lock.
+     * @return the trimmed nodes, the listeners are to be notified
+     */
+    private List<Node> drainBuffersLocked() {
+        for (ReadBuffer buffer : readBuffers) {
+            buffer.drain(this);
+        }
+
+        Node node;
+        while ((node = writeQueue.poll()) != null) {
+            if (!node.dead && !node.linked) {
+                linkHead(node);
+            } else if (node.dead && node.linked) {
+                unlink(node);
+            }
+        }
+
+        List<Node> trimmed = null;
+        while (!isUnbounded && listSize > threshold) {
+            Node victim = tail;
+            unlink(victim);
+            if (removeNode(victim.key, victim, true) != null) {
+                trimCount.increment();
+                if (trimmed == null)
+                    trimmed = new ArrayList<Node>();
+                trimmed.add(victim);
+            }
+        }
+        return trimmed;
+    }
+
+    private void notifyTrimmed(List<Node> trimmed) {
+        if (trimmed == null)
+            return;
+        for (Node node : trimmed) {
+            for (int i = 0; i < listeners.size(); i++) {
+                CacheListener listener = (CacheListener) listeners.get(i);
+                listener.trimEvent(node.key, node.value);
+            }
+        }
+    }
+
+    /**
+     * moves an accessed node to the head of the LRU list.
+     * Must be called with the eviction lock.
+     */
+    void onAccess(Node node) {
+        if (node.linked && !node.dead && node != head) {
+            unlink(node);
+            linkHead(node);
+        }
+    }
+
+    private void linkHead(Node node) {
+        node.lPrev = null;
+        node.lNext = head;
+        if (head != null)
+            head.lPrev = node;
+        else
+            tail = node;
+        head = node;
+        node.linked = true;
+        listSize++;
+    }
+
+    private void unlink(Node node) {
+        Node prev = node.lPrev;
+        Node next = node.lNext;
+        if (prev != null)
+            prev.lNext = next;
+        else
+            head = next;
+        if (next != null)
+            next.lPrev = prev;
+        else
+            tail = prev;
+        node.lPrev = node.lNext = null;
+        node.linked = false;
+        listSize--;
+    }
+
+    /**
+     * wait for a refresh on the object associated with the key
+     * @param index index of the entry, as returned by getIndex()
+     * @returns true on successful notification, or false if there is
+     *  no thread refreshing this entry.
+     */
+    public boolean waitRefresh(int index) {
+        synchronized (refreshLocks[index]) {
+            if (refreshFlags[index] == false) {
+                refreshFlags[index] = true;
+                return false;
+            }
+
+            // wait till refresh is finished
+            try {
+                while (refreshFlags[index])
+                    refreshLocks[index].wait();
+            } catch (InterruptedException ie) {}
+        }
+        return true;
+    }
+
+    /**
+     * notify threads waiting for a refresh on the object associated with the key
+     * @param index index of the entry, as returned by getIndex()
+     */
+    public void notifyRefresh(int index) {
+        // notify other threads waiting for refresh
+        synchronized (refreshLocks[index]) {
+            refreshFlags[index] = false;
+            refreshLocks[index].notifyAll();
+        }
+    }
+
+    /**
+     * clear all the entries from the cache.
+     * @returns the number of entries cleared from the cache
+     */
+    public int clear() {
+        int count = 0;
+        evictionLock.lock();
+        try {
+            for (Object key : map.keySet()) {
+                Node first = map.remove(key);
+                for (Node node = first; node != null; node = node.next) {
+                    node.dead = true;
+                    entryCount.decrementAndGet();
+                    count++;
+                }
+            }
+            // nodes added meanwhile are still in the write queue
+            while (head != null) {
+                unlink(head);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        drainBuffers();
+        return count;
+    }
+
+    /**
+     * trim the expired entries from the cache.
+     * @param maxCount maximum number of invalid entries to trim
+     *        specify Integer.MAX_VALUE to trim all invalid entries
+     * This call is to be scheduled by a thread managed by the container.
+     *
+     * NOTE: this algorithm assumes that all the entries in the cache have
+     * identical timeout (otherwise traversing from tail won't be right).
+     */
+    public void trimExpiredEntries(int maxCount) {
+        if (timeout == NO_TIMEOUT)
+            return;
+
+        long currentTime = System.currentTimeMillis();
+        List<Node> trimmed = new ArrayList<Node>();
+        List<Node> overflow;
+        evictionLock.lock();
+        try {
+            overflow = drainBuffersLocked();
+            int count = 0;
+            Node node;
+            while ((node = tail) != null && count < maxCount
+                    && (node.lastAccessed + timeout) <= currentTime) {
+                unlink(node);
+                if (removeNode(node.key, node, true) != null) {
+                    trimCount.increment();
+                    trimmed.add(node);
+                    count++;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyTrimmed(overflow);
+        notifyTrimmed(trimmed);
+        drainBuffers();
+    }
+
+    /**
+     * is this cache empty?
+     * @returns true if the cache is empty; false otherwise.
+     */
+    public boolean isEmpty() {
+        return (entryCount.get() == 0);
+    }
+
+    /**
+     * get the number of entries in the cache
+     * @return the number of entries the cache currently holds
+     */
+    public int getEntryCount() {
+        return entryCount.get();
+    }
+
+    /**
+     * get the desired statistic counter
+     * @param key to corresponding stat
+     * @return an Object corresponding to the stat
+     * See also: Constant.java for the key
+     */
+    public Object getStatByName(String key) {
+        if (key == null)
+            return null;
+        return getStats().get(key);
+    }
+
+    /**
+     * get the stats snapshot
+     * @return a Map of stats
+     * See also: Constant.java for the keys
+     */
+    public Map getStats() {
+        HashMap stats = new HashMap();
+
+        stats.put(Constants.STAT_BASECACHE_MAX_ENTRIES,
+                  Integer.valueOf(maxEntries));
+        stats.put(Constants.STAT_BASECACHE_THRESHOLD,
+                  Integer.valueOf(threshold));
+        stats.put(Constants.STAT_BASECACHE_TABLE_SIZE,
+                  Integer.valueOf(map.size()));
+        stats.put(Constants.STAT_BASECACHE_ENTRY_COUNT,
+                  Integer.valueOf(entryCount.get()));
+        stats.put(Constants.STAT_BASECACHE_HIT_COUNT,
+                  Integer.valueOf(hitCount.intValue()));
+        stats.put(Constants.STAT_BASECACHE_MISS_COUNT,
+                  Integer.valueOf(missCount.intValue()));
+        stats.put(Constants.STAT_BASECACHE_REMOVAL_COUNT,
+                  Integer.valueOf(removalCount.intValue()));
+        stats.put(Constants.STAT_BASECACHE_REFRESH_COUNT,
+                  Integer.valueOf(refreshCount.intValue()));
+        stats.put(Constants.STAT_BASECACHE_OVERFLOW_COUNT,
+                  Integer.valueOf(0));
+        stats.put(Constants.STAT_BASECACHE_ADD_COUNT,
+                  Integer.valueOf(addCount.intValue()));
+        stats.put(Constants.STAT_LRUCACHE_LIST_LENGTH,
+                  Integer.valueOf(listSize));
+        stats.put(Constants.STAT_LRUCACHE_TRIM_COUNT,
+                  Integer.valueOf(trimCount.intValue()));
+
+        return stats;
+    }
+
+    /**
+     * clear the stats
+     */
+    public void clearStats() {
+        hitCount.reset();
+        missCount.reset();
+        removalCount.reset();
+        refreshCount.reset();
+        addCount.reset();
+        trimCount.reset();
+    }
+
+    /**
+     * Destroys this cache. This method should perform final clean ups.
+     */
+    public void destroy() {
+        if (listeners != null && map != null) {
+            clear();
+            listeners.clear();
+        }
+        listeners = null;
+    }
+
+    /**
+     * A cached value. The LRU links are guarded by the eviction lock, the
+     * chain of values sharing a key by the map.
+     */
+    static final class Node {
+        final Object key;
+        volatile Object value;
+        volatile int size;
+        final Node next;
+        volatile boolean dead;
+        volatile long lastAccessed;
+
+        Node lPrev;
+        Node lNext;
+        boolean linked;
+
+        Node(Object key, Object value, int size, Node next) {
+            this.key = key;
+            this.value = value;
+            this.size = size;
+            this.next = next;
+            this.lastAccessed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * A bounded, lossy buffer of accessed nodes. Threads add to it without
+     * lock, a full buffer drops the access; it is emptied by the thread
+     * holding the eviction lock.
+     */
+    static final class ReadBuffer {
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+        private final AtomicReferenceArray<Node> slots =
+            new AtomicReferenceArray<Node>(READ_BUFFER_SIZE);
+
+        /**
+         * @return true if the buffer should be drained
+         */
+        boolean offer(Node node) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            long size = tail - head;
+            if (size >= READ_BUFFER_SIZE) {
+                return true;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) tail & (READ_BUFFER_SIZE - 1), node);
+                return size + 1 >= READ_BUFFER_DRAIN_THRESHOLD;
+            }
+            // contended, dropping the access is fine
+            return false;
+        }
+
+        /**
+         * Must be called with the eviction lock.
+         */
+        void drain(ConcurrentLruCache cache) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) head & (READ_BUFFER_SIZE - 1);
+                Node node = slots.get(index);
+                if (node == null) {
+                    // not published yet
+                    break;
+                }
+                slots.lazySet(index, null);
+                cache.onAccess(node);
+            }
+            readCounter = head;
+        }
+    }
+}
@@ -90,6 +90,12 @@ import org.glassfish.hk2.api.PreDestroy;
  * Class loader used by the ejbs of an application or stand alone module.
  *
  * This class loader also keeps cache of not found classes and resources.
+ * <p>
+ * The class loader is parallel capable. Its url entries are kept in an
+ * immutable set, replaced as a whole when a url is added, and the names of the
+ * entries of every jar are indexed when it is added, so that class and
+ * resource lookups neither lock the class loader nor open the jars which do
+ * not contain the name looked up.
  * </xmp>
  *
  * @author Nazrul Islam
@@ -109,20 +115,28 @@ public class ASURLClassLoader
        Another benefit is that there is no synchronization needed to get the Map/Vector/List itself.
     */
 
+    static {
+        registerAsParallelCapable();
+    }
+
     /** logger for this class */
     private static final Logger _logger=CULoggerInfo.getLogger();
 
+    /** maximum number of names kept by each of the not found caches */
+    private static final int NOT_FOUND_CACHE_SIZE =
+            Integer.getInteger("com.sun.enterprise.loader.notFoundCacheSize", 10000);
+
     /*
-       list of url entries of this class loader. Using LinkedHashSet instead of original ArrayList
-       for faster search.
+       set of url entries of this class loader, in search order. The set is immutable and
+       replaced as a whole by appendURL(), so lookups iterate over it without locking.
     */
-    private final Set<URLEntry> urlSet = Collections.synchronizedSet(new LinkedHashSet<URLEntry>());
+    private volatile Set<URLEntry> urlSet = Collections.emptySet();
 
     /** cache of not found resources */
-    private final Map<String,String> notFoundResources   = new ConcurrentHashMap<String,String>();
+    private final NotFoundCache notFoundResources = new NotFoundCache(NOT_FOUND_CACHE_SIZE);
 
     /** cache of not found classes */
-    private final Map<String,String> notFoundClasses     = new ConcurrentHashMap<String,String>();
+    private final NotFoundCache notFoundClasses = new NotFoundCache(NOT_FOUND_CACHE_SIZE);
 
     /**
         State flag to track whether this instance has been shut off.
@@ -237,6 +251,7 @@ public class ASURLClassLoader
                     u.table.clear();
                     u.table = null;
                 }
+                u.entries = null;
                 u = null;
                 i++;
             }
@@ -245,9 +260,9 @@ public class ASURLClassLoader
 
             // clears out the tables
             // Clear all values.  Because fields are 'final' (for thread safety), cannot null them
-            this.urlSet.clear();
-            if (this.notFoundResources != null) { this.notFoundResources.clear(); }
-            if (this.notFoundClasses != null)   { this.notFoundClasses.clear();   }
+            this.urlSet = Collections.emptySet();
+            this.notFoundResources.clear();
+            this.notFoundClasses.clear();
         }
     }
 
@@ -302,8 +317,10 @@ public class ASURLClassLoader
             URLEntry entry = new URLEntry(url);
 
             if ( !urlSet.contains(entry) ) {
-                // adds the url entry to the list
-                this.urlSet.add(entry);
+                // adds the url entry to a copy of the set, which replaces it
+                Set<URLEntry> newUrlSet = new LinkedHashSet<URLEntry>(this.urlSet);
+                newUrlSet.add(entry);
+                this.urlSet = Collections.unmodifiableSet(newUrlSet);
 
                 if (entry.isJar) {
                     // checks the manifest if a jar
@@ -340,26 +357,19 @@ public class ASURLClassLoader
     /**
      * Returns the urls of this class loader.
      *
-     * Method is 'synchronized' to avoid the  thread-unsafe null-check idiom idiom, also
-     * protects the caller from simultaneous changes while iterating,
-     * by returning a URL[] (copy) rather than the original.  Also protects against
-     * changes to 'urlSet' while iterating over it.
+     * Returns a URL[] (copy) rather than the original, which protects the caller
+     * from simultaneous changes while iterating. 'urlSet' itself is immutable.
      *
      * @return    the urls of this class loader or an empty array
      */
-    public synchronized URL[] getURLs() {
+    public URL[] getURLs() {
 
-        URL[] url  = null;
+        final Set<URLEntry> entries = this.urlSet;
+        URL[] url  = new URL[entries.size()];
 
         int i=0;
-        if (this.urlSet != null) {
-            url  = new URL[this.urlSet.size()];
-
-            for (URLEntry urlEntry : urlSet) {
-                url[i++] = (urlEntry).source;
-            }
-        } else {
-            url = new URL[0];
+        for (URLEntry urlEntry : entries) {
+            url[i++] = urlEntry.source;
         }
 
         return url;
@@ -518,38 +528,27 @@ public class ASURLClassLoader
             return null;
         }
 
-        // This code is dubious, because it iterates over items that could
-        // be changing via another thread.   It appears that since 'urlSet' cannot shrink
-        // that the iteration at least won't go out of bounds.  And it's probably OK
-        // if more than one thread adds the same resource to 'notFoundResources'.
-        //
-        // HOWEVER, there is still a race condition from the check for 'doneCalled' above.
-        // That's OK for 'notFoundResources', but it could lead to an ArrayIndexOutOfBounds
-        // excpetion for 'urlSet', should the set be cleared while looping.
+        // 'urlSet' is immutable, so the iteration is safe even if done() is called
+        // meanwhile, in which case the jars are closed and the resource is not found.
+        // It's OK if more than one thread adds the same resource to 'notFoundResources'.
 
         // resource is in the not found list
-        String nf = (String) notFoundResources.get(name);
-        if (nf != null && nf.equals(name) ) {
+        if (notFoundResources.contains(name)) {
             return null;
         }
 
-        int i = 0;
-        synchronized(this) {
-            for (final URLEntry u : this.urlSet) {
+        for (final URLEntry u : this.urlSet) {
 
-                if (!u.hasItem(name)) {
-                    i++;
-                    continue;
-                }
-
-                final URL url = findResource0(u, name);
-                if (url != null) return url;
-                i++;
+            if (!u.hasItem(name)) {
+                continue;
             }
+
+            final URL url = findResource0(u, name);
+            if (url != null) return url;
         }
 
         // add resource to the not found list
-        notFoundResources.put(name, name);
+        notFoundResources.add(name);
 
         return null;
     }
@@ -558,11 +557,10 @@ public class ASURLClassLoader
      * Returns an enumeration of java.net.URL objects
      * representing all the resources with the given name.
      *
-     * This method is synchronized to avoid (a) race condition checking 'doneCalled',
-     * (b) changes to contents or length of 'resourcesList' and/or 'notFoundResources' while iterating
-     * over them, (c) thread visibility to all of the above.
+     * This method is not synchronized: 'urlSet' is immutable and 'resourcesList'
+     * is local to the call.
      */
-    public synchronized Enumeration<URL>
+    public Enumeration<URL>
     findResources(String name) throws IOException {
         if( doneCalled ) {
             _logger.log(Level.WARNING, CULoggerInfo.doneAlreadyCalled,
@@ -573,13 +571,14 @@ public class ASURLClassLoader
         List<URL> resourcesList = new ArrayList<URL>();
 
         // resource is in the not found list
-        final String nf = (String) notFoundResources.get(name);
-        if (nf != null && nf.equals(name) ) {
+        if (notFoundResources.contains(name)) {
             return (new Vector(resourcesList)).elements();
         }
 
-        for (Iterator<URLEntry> iter = this.urlSet.iterator(); iter.hasNext();) {
-            final URLEntry urlEntry = iter.next();
+        for (final URLEntry urlEntry : this.urlSet) {
+            if (!urlEntry.hasItem(name)) {
+                continue;
+            }
             final URL url = findResource0(urlEntry, name);
             if (url != null) {
                 resourcesList.add(url);
@@ -588,7 +587,7 @@ public class ASURLClassLoader
 
         if (resourcesList.size() == 0) {
             // add resource to the not found list
-            notFoundResources.put(name, name);
+            notFoundResources.add(name);
         }
 
         return (new Vector(resourcesList)).elements();
@@ -684,6 +683,9 @@ public class ASURLClassLoader
                     }
                 } catch (IOException ioe) {
                     _logger.log(Level.INFO, CULoggerInfo.exceptionInASURLClassLoader, ioe);
+                } catch (IllegalStateException ise) {
+                    // the jar was closed by done() during the lookup
+                    _logger.log(Level.FINE, "jar closed while loading " + entryName, ise);
                 }
                 return null;
             }
@@ -812,14 +814,15 @@ public class ASURLClassLoader
      * have to be read and reading the bytes. It does not actually define
      * the Class object.
      * <p>
-     * To preclude a race condition on checking 'doneCalled', as well as transient errors
-     * if done() is called while running, this method is 'synchronized'.
+     * This method is not 'synchronized', so that classes are found in parallel.
+     * If done() is called while running, the jars are closed and the class is
+     * not found.
 
      * @param name class name in java.lang.Object format
      * @return class bytes as well protection domain information
      * @throws ClassNotFoundException
      */
-    protected synchronized ClassData findClassData(String name) throws ClassNotFoundException {
+    protected ClassData findClassData(String name) throws ClassNotFoundException {
 
         if( doneCalled ) {
             _logger.log(Level.WARNING,
@@ -828,18 +831,15 @@ public class ASURLClassLoader
             throw new ClassNotFoundException(name);
         }
 
-        String nf = (String) notFoundClasses.get(name);
-        if (nf != null && nf.equals(name) ) {
+        if (notFoundClasses.contains(name)) {
             throw new ClassNotFoundException(name);
         }
 
         // search thru the JARs for a file of the form java/lang/Object.class
         String entryName = name.replace('.', '/') + ".class";
 
-        int i = 0;
         for (URLEntry u : this.urlSet) {
             if (!u.hasItem(entryName)) {
-                i++;
                 continue;
             }
 
@@ -856,11 +856,10 @@ public class ASURLClassLoader
                     return new ClassData(result, pdWithPemissions);
                 }
             }
-            i++;
         }
 
         // add to the not found classes list
-        notFoundClasses.put(name, name);
+        notFoundClasses.add(name);
 
         throw new ClassNotFoundException(name);
     }
@@ -1000,6 +999,64 @@ public class ASURLClassLoader
         }
     }
 
+    /**
+     * Cache of the names of classes or resources that were not found, bounded
+     * so that it does not grow without limit with the lookup misses of large
+     * applications.
+     * <p>
+     * Names are kept in two generations: when the current generation is full it
+     * becomes the previous one, whose names are dropped at the next rotation
+     * unless they are looked up meanwhile. Lookups and additions do not lock.
+     */
+    static final class NotFoundCache {
+
+        private final int generationSize;
+
+        private volatile Map<String,Boolean> current = new ConcurrentHashMap<String,Boolean>();
+
+        private volatile Map<String,Boolean> previous = new ConcurrentHashMap<String,Boolean>();
+
+        NotFoundCache(int maxSize) {
+            generationSize = Math.max(1, maxSize / 2);
+        }
+
+        boolean contains(String name) {
+            if (current.containsKey(name)) {
+                return true;
+            }
+            if (previous.containsKey(name)) {
+                add(name);
+                return true;
+            }
+            return false;
+        }
+
+        void add(String name) {
+            final Map<String,Boolean> names = current;
+            names.put(name, Boolean.TRUE);
+            if (names.size() > generationSize) {
+                rotate(names);
+            }
+        }
+
+        private synchronized void rotate(Map<String,Boolean> full) {
+            // another thread may have rotated the generations already
+            if (current == full) {
+                previous = full;
+                current = new ConcurrentHashMap<String,Boolean>();
+            }
+        }
+
+        synchronized void clear() {
+            current = new ConcurrentHashMap<String,Boolean>();
+            previous = new ConcurrentHashMap<String,Boolean>();
+        }
+
+        int size() {
+            return current.size() + previous.size();
+        }
+    }
+
     /**
      * URL entry - keeps track of the url resources.
      */
@@ -1022,6 +1079,10 @@ public class ASURLClassLoader
         /** ensure thread visibility by making it 'volatile'  */
         volatile Hashtable<String,String> table = null;
 
+        /** immutable set of the names of the entries if url is a jar else null,
+            ensure thread visibility by making it 'volatile'  */
+        volatile Set<String> entries = null;
+
         /** ProtectionDomain with signers if jar is signed,
             ensure thread visibility by making it 'volatile'  */
         volatile ProtectionDomain pd = null;
@@ -1038,6 +1099,7 @@ public class ASURLClassLoader
 
                 if (isJar) {
                     zip = new ProtectedJarFile(file);
+                    entries = indexEntries(zip);
                 }
 
                 table = new Hashtable<String,String>();
@@ -1049,6 +1111,21 @@ public class ASURLClassLoader
             }
         }
 
+        /**
+         *Returns the names of the entries of a jar. The content of a jar
+         *cannot change once opened, so the names are read only once.
+         *@param jar the jar to index
+         *@return immutable set of the names of the entries of the jar
+         */
+        private static Set<String> indexEntries(JarFile jar) {
+            Set<String> names = new HashSet<String>();
+            Enumeration<JarEntry> jarEntries = jar.entries();
+            while (jarEntries.hasMoreElements()) {
+                names.add(jarEntries.nextElement().getName());
+            }
+            return Collections.unmodifiableSet(names);
+        }
+
         private void fillTable(File f, Hashtable t, String parent) throws IOException {
 
             String localName = (parent.equals("")) ? "" : parent + "/";
@@ -1082,6 +1159,13 @@ public class ASURLClassLoader
 
 
         boolean hasItem(String item) {
+            if (isJar) {
+                // an entry of a directory may be looked up without its trailing '/'
+                final Set<String> names = entries;
+                return names != null
+                        && (names.contains(item) || names.contains(item + "/"));
+            }
+
             // in the case of ejbc stub compilation, asurlclassloader is created before stubs
             // gets generated, thus we need to return true for this case.
             if (table.size() == 0) {
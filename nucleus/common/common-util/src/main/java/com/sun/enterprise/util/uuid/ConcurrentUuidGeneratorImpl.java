@@ -0,0 +1,162 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.util.uuid;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A {@link UuidGenerator} generating the same ids as {@link UuidGeneratorImpl}
+ * without serializing all the callers on a single <code>SecureRandom</code>.
+ * <p>
+ * Random numbers are drawn from stripes, picked by the calling thread. Each
+ * stripe has its own <code>SecureRandom</code> and a buffer of pre-computed
+ * values. Once half of the buffer is consumed, a spare buffer is filled by a
+ * background thread, so that callers normally only copy a value out of the
+ * buffer.
+ */
+public class ConcurrentUuidGeneratorImpl implements UuidGenerator {
+
+    private static final int MAX_STRIPES = 64;
+    private static final int BUFFER_SIZE = 256;
+
+    // shared by all the generators, its thread is only started when needed
+    private static final ExecutorService refiller =
+        Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "uuid-entropy-refiller");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public ConcurrentUuidGeneratorImpl() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param concurrency expected number of threads generating ids at the
+     *  same time, rounded up to a power of two stripes
+     */
+    public ConcurrentUuidGeneratorImpl(int concurrency) {
+        int count = 1;
+        while (count < concurrency && count < MAX_STRIPES) {
+            count <<= 1;
+        }
+        stripes = new Stripe[count];
+        stripeMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    public String generateUuid() {
+        return generateUuid(new Object());
+    }
+
+    public String generateUuid(Object obj) {
+        Stripe stripe = stripes[stripeIndex()];
+        int addressRandom = stripe.nextInt();
+        return UuidUtil.generateUuid(obj, addressRandom, stripe.nextInt());
+    }
+
+    private int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        // spread sequential thread ids
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & stripeMask;
+    }
+
+    private static final class Stripe implements Runnable {
+
+        private final SecureRandom random = new SecureRandom();
+        private int[] buffer = new int[BUFFER_SIZE];
+        private int position = BUFFER_SIZE;
+        // filled in the background, guarded by this
+        private int[] spare;
+        private boolean refilling;
+
+        synchronized int nextInt() {
+            if (position == buffer.length) {
+                if (spare != null) {
+                    buffer = spare;
+                    spare = null;
+                } else {
+                    // the refiller did not keep up, pay for it here
+                    fill(buffer);
+                }
+                position = 0;
+            }
+            int value = buffer[position++];
+            if (spare == null && !refilling && position >= BUFFER_SIZE / 2) {
+                refilling = true;
+                try {
+                    refiller.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    refilling = false;
+                }
+            }
+            return value;
+        }
+
+        public void run() {
+            int[] values = new int[BUFFER_SIZE];
+            fill(values);
+            synchronized (this) {
+                spare = values;
+                refilling = false;
+            }
+        }
+
+        private void fill(int[] values) {
+            byte[] bytes = new byte[values.length * 4];
+            random.nextBytes(bytes);
+            ByteBuffer.wrap(bytes).asIntBuffer().get(values);
+        }
+    }
+}
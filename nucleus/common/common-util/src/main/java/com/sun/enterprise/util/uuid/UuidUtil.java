@@ -75,6 +75,15 @@ public class UuidUtil
     //this method can take in the session object
     //and insure better uniqueness guarantees
     public static String generateUuid(Object obj) {
+        int addressRandom = getNextInt();
+        return generateUuid(obj, addressRandom, getNextInt());
+    }
+
+    /**
+     * Builds an uuid out of the given random numbers, so that generators
+     * having their own source of randomness produce the same format.
+     */
+    static String generateUuid(Object obj, int addressRandom, int random) {
 
         //low order time bits
         long presentTime = System.currentTimeMillis();
@@ -87,9 +96,9 @@ public class UuidUtil
         sb.append(getIdentityHashCode(obj));
         //sb.append(":");
         //sb.append(_inetAddr);
-        sb.append(addRandomTo(_inetAddr));
+        sb.append(addRandomTo(_inetAddr, addressRandom));
         //sb.append(":");
-        sb.append(getNextRandomString());
+        sb.append(formatHexString(random));
         return sb.toString();
     }
 
@@ -125,10 +134,9 @@ public class UuidUtil
         }
     }
 
-    private static String addRandomTo(String hexString)
+    private static String addRandomTo(String hexString, int nextRandom)
     {
         long hexAsLong = convertToLong(hexString);
-        int nextRandom = getNextInt();
         long resultInt = hexAsLong + nextRandom;
         String result = Long.toHexString(resultInt);
         // START PWC 6425338
@@ -193,11 +201,6 @@ public class UuidUtil
         return _seeder.nextInt();
     }
 
-    private static String getNextRandomString() {
-        int nextInt = getNextInt();
-        return formatHexString(nextInt);
-    }
-
     private static long convertToLong(String hexString)
     {
         long result = 0;
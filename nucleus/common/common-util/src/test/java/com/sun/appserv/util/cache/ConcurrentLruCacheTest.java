@@ -0,0 +1,187 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.appserv.util.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentLruCacheTest {
+
+    private static ConcurrentLruCache createCache(int maxEntries) {
+        ConcurrentLruCache cache = new ConcurrentLruCache();
+        // a load factor of 1 keeps exactly maxEntries + 1 entries
+        cache.init(maxEntries, 1.0f, null);
+        return cache;
+    }
+
+    @Test
+    public void putGetAndRemove() {
+        ConcurrentLruCache cache = createCache(16);
+        assertNull(cache.put("a", "1"));
+        assertEquals("1", cache.put("a", "2"));
+        assertEquals("2", cache.get("a"));
+        assertTrue(cache.contains("a"));
+        assertEquals(1, cache.getEntryCount());
+        assertEquals("2", cache.remove("a"));
+        assertNull(cache.get("a"));
+        assertTrue(cache.isEmpty());
+        assertEquals(Integer.valueOf(1),
+                cache.getStatByName(Constants.STAT_BASECACHE_REFRESH_COUNT));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreTrimmed() {
+        ConcurrentLruCache cache = createCache(4);
+        final List<Object> trimmed = new ArrayList<Object>();
+        cache.addCacheListener(new CacheListener() {
+            public void trimEvent(Object key, Object value) {
+                trimmed.add(key);
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            cache.put(Integer.valueOf(i), "v" + i);
+        }
+        // reads are buffered, enough of them are applied by the next write
+        for (int i = 0; i < 32; i++) {
+            cache.get(Integer.valueOf(0));
+        }
+        cache.put(Integer.valueOf(5), "v5");
+        assertEquals(5, cache.getEntryCount());
+        assertEquals(1, trimmed.size());
+        assertEquals(Integer.valueOf(1), trimmed.get(0));
+        assertEquals("v0", cache.get(Integer.valueOf(0)));
+        assertNull(cache.get(Integer.valueOf(1)));
+    }
+
+    @Test
+    public void multiValuedKeys() {
+        ConcurrentLruCache cache = createCache(16);
+        String one = "1", two = "2", three = "3";
+        cache.add("k", one);
+        cache.add("k", two);
+        cache.add("k", three);
+        assertEquals(3, cache.getEntryCount());
+        assertEquals(three, cache.get("k"));
+
+        assertSame(two, cache.remove("k", two));
+        List<Object> values = new ArrayList<Object>();
+        for (Iterator iter = cache.getAll("k"); iter.hasNext(); ) {
+            values.add(iter.next());
+        }
+        assertEquals(2, values.size());
+        assertTrue(values.contains(one) && values.contains(three));
+
+        cache.removeAll("k");
+        assertTrue(cache.isEmpty());
+        assertFalse(cache.getAll("k").hasNext());
+    }
+
+    @Test
+    public void expiredEntriesAreTrimmed() throws Exception {
+        ConcurrentLruCache cache = new ConcurrentLruCache();
+        cache.init(16, 50, 1.0f, null);
+        cache.put("old", "1");
+        Thread.sleep(100);
+        cache.put("new", "2");
+        cache.trimExpiredEntries(Integer.MAX_VALUE);
+        assertNull(cache.get("old"));
+        assertEquals("2", cache.get("new"));
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void clearRemovesEverything() {
+        ConcurrentLruCache cache = createCache(16);
+        for (int i = 0; i < 10; i++) {
+            cache.put(Integer.valueOf(i), "v");
+        }
+        assertEquals(10, cache.clear());
+        assertTrue(cache.isEmpty());
+        assertFalse(cache.keys().hasNext());
+        cache.put("a", "b");
+        assertEquals("b", cache.get("a"));
+    }
+
+    @Test
+    public void concurrentAccessStaysBounded() throws Exception {
+        final ConcurrentLruCache cache = createCache(64);
+        int threads = 8;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        for (int i = 0; i < 20000; i++) {
+                            Integer key = Integer.valueOf(random.nextInt(256));
+                            int op = random.nextInt(10);
+                            if (op < 6) {
+                                cache.get(key);
+                            } else if (op < 9) {
+                                cache.put(key, key);
+                            } else {
+                                cache.remove(key);
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        cache.put("last", "last");
+        assertTrue(cache.getEntryCount() <= 65);
+        int keys = 0;
+        for (Iterator iter = cache.keys(); iter.hasNext(); iter.next()) {
+            keys++;
+        }
+        assertEquals(cache.getEntryCount(), keys);
+        assertEquals(Integer.valueOf(keys),
+                cache.getStatByName(Constants.STAT_LRUCACHE_LIST_LENGTH));
+    }
+}
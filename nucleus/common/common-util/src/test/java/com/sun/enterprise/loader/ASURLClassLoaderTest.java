@@ -0,0 +1,148 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.loader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class ASURLClassLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ASURLClassLoader loader;
+
+    @Before
+    public void setUp() {
+        loader = new ASURLClassLoader(null);
+    }
+
+    @After
+    public void tearDown() {
+        loader.done();
+    }
+
+    private File createJar(String name, String... entries) throws IOException {
+        File file = folder.newFile(name);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+                if (!entry.endsWith("/")) {
+                    out.write(entry.getBytes("UTF-8"));
+                }
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void resourcesAreFoundThroughTheIndex() throws Exception {
+        File first = createJar("first.jar", "META-INF/", "META-INF/first.txt", "common.txt");
+        File second = createJar("second.jar", "META-INF/", "META-INF/second.txt", "common.txt");
+        loader.appendURL(first);
+        loader.appendURL(second);
+
+        assertEquals(2, loader.getURLs().length);
+        assertTrue(loader.findResource("META-INF/second.txt").toString()
+                .contains("second.jar!/META-INF/second.txt"));
+        assertTrue(loader.findResource("common.txt").toString().contains("first.jar!/"));
+        assertNotNull(loader.findResource("META-INF"));
+        assertNull(loader.findResource("missing.txt"));
+        assertEquals(2, Collections.list(loader.findResources("common.txt")).size());
+        assertEquals(1, Collections.list(loader.findResources("META-INF/first.txt")).size());
+    }
+
+    @Test
+    public void duplicateUrlsAreIgnored() throws Exception {
+        File jar = createJar("lib.jar", "lib.txt");
+        loader.appendURL(jar);
+        loader.appendURL(jar);
+        assertArrayEquals(new URL[] { jar.toURI().toURL() }, loader.getURLs());
+    }
+
+    @Test
+    public void appendingAUrlClearsTheNotFoundCaches() throws Exception {
+        loader.appendURL(createJar("first.jar", "first.txt"));
+        assertNull(loader.findResource("later.txt"));
+        try {
+            loader.loadClass("later.Later");
+            fail();
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+
+        loader.appendURL(createJar("later.jar", "later.txt", "later/Later.class"));
+        assertNotNull(loader.findResource("later.txt"));
+        assertNotNull(loader.findResource("later/Later.class"));
+    }
+
+    @Test
+    public void notFoundCacheIsBounded() {
+        ASURLClassLoader.NotFoundCache cache = new ASURLClassLoader.NotFoundCache(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.add("name" + i);
+            // a name looked up often is kept
+            assertTrue(cache.contains("name0"));
+        }
+        assertTrue(cache.size() <= 100 + 2);
+        assertTrue(cache.contains("name999"));
+        assertFalse(cache.contains("name1"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(cache.contains("name0"));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.util.uuid;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentUuidGeneratorImplTest {
+
+    @Test
+    public void sameFormatAsUuidGeneratorImpl() {
+        String expected = new UuidGeneratorImpl().generateUuid();
+        UuidGenerator generator = new ConcurrentUuidGeneratorImpl(4);
+        for (int i = 0; i < 2000; i++) {
+            String uuid = generator.generateUuid(new Object());
+            assertEquals(expected.length(), uuid.length());
+            assertTrue(uuid, uuid.matches("[0-9a-f]+"));
+        }
+    }
+
+    @Test
+    public void uniqueAcrossBufferRefills() {
+        UuidGenerator generator = new ConcurrentUuidGeneratorImpl(1);
+        Set<String> uuids = new HashSet<String>();
+        Object obj = new Object();
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(uuids.add(generator.generateUuid(obj)));
+        }
+    }
+
+    @Test
+    public void uniqueAcrossThreads() throws Exception {
+        final UuidGenerator generator = new ConcurrentUuidGeneratorImpl(2);
+        final Set<String> uuids =
+            ConcurrentHashMap.<String>newKeySet();
+        final int perThread = 2000;
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < perThread; j++) {
+                        uuids.add(generator.generateUuid());
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(threads.length * perThread, uuids.size());
+    }
+}
@@ -44,9 +44,9 @@ package org.glassfish.internal.data;
 import org.jvnet.hk2.annotations.Service;
 import javax.inject.Singleton;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Registry for deployed Applications
@@ -60,7 +60,9 @@ import java.util.Set;
 @Singleton
 public class ApplicationRegistry {
 
-    private Map<String, ApplicationInfo> apps = new HashMap<String, ApplicationInfo>();
+    // applications are registered from several threads when they are loaded
+    // in parallel at startup, while others look them up
+    private Map<String, ApplicationInfo> apps = new ConcurrentHashMap<String, ApplicationInfo>();
 
     public synchronized void add(String name, ApplicationInfo info) {
         apps.put(name, info);
@@ -48,6 +48,7 @@ import javax.inject.Singleton;
 
 import javax.inject.Inject;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The container Registry holds references to the currently running containers.
@@ -61,7 +62,9 @@ public class ContainerRegistry {
     @Inject
     ServiceLocator habitat;
     
-    Map<String, EngineInfo> containers = new HashMap<String, EngineInfo>();
+    // containers are started by the threads loading applications in parallel
+    // at startup, while others list them
+    Map<String, EngineInfo> containers = new ConcurrentHashMap<String, EngineInfo>();
 
 
     public synchronized void addContainer(String name, EngineInfo info) {
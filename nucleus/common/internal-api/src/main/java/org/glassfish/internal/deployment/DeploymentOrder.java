@@ -40,6 +40,7 @@
 
 package org.glassfish.internal.deployment;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Comparator;
 import java.util.TreeSet;
@@ -121,4 +122,43 @@ public class DeploymentOrder {
     }
     return appList.iterator();
   }
+
+  /**
+   * Returns the applications to deploy in deployment order, grouped by
+   * deployment type and deployment-order attribute. The applications of
+   * a group may be deployed concurrently, once the applications of the
+   * previous groups are deployed.
+   */
+  public static List<List<Application>> getApplicationDeploymentGroups() {
+    return getApplicationDeploymentGroups(application_deployments);
+  }
+
+  static List<List<Application>> getApplicationDeploymentGroups(Collection<ApplicationOrderInfo> deployments) {
+    List<List<Application>> groups = new ArrayList<List<Application>>();
+    List<Application> group = null;
+    ApplicationOrderInfo previous = null;
+    Iterator<ApplicationOrderInfo> it = deployments.iterator();
+    while (it.hasNext()) {
+      ApplicationOrderInfo appOrderInfo = it.next();
+      if (previous == null || !isSameGroup(previous, appOrderInfo)) {
+        group = new ArrayList<Application>();
+        groups.add(group);
+      }
+      group.add(appOrderInfo.getApplication());
+      previous = appOrderInfo;
+    }
+    return groups;
+  }
+
+  private static boolean isSameGroup(ApplicationOrderInfo o1, ApplicationOrderInfo o2) {
+    for (int i = 0; i < APPLICATION_DEPLOYMENT_ORDER.length; i++) {
+      DeploymentType depType = APPLICATION_DEPLOYMENT_ORDER[i];
+      if (depType.isInstance(o1)) {
+        return depType.isInstance(o2) &&
+          Integer.valueOf(o1.getApplication().getDeploymentOrder()).equals(
+            Integer.valueOf(o2.getApplication().getDeploymentOrder()));
+      }
+    }
+    return false;
+  }
 }
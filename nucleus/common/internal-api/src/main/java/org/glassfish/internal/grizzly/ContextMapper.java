@@ -41,17 +41,26 @@
 package org.glassfish.internal.grizzly;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.glassfish.grizzly.http.server.HttpHandler;
 import org.glassfish.grizzly.http.server.naming.NamingContext;
+import org.glassfish.grizzly.http.server.util.AlternateDocBase;
 import org.glassfish.grizzly.http.server.util.Mapper;
 import org.jvnet.hk2.annotations.ContractsProvided;
 import org.jvnet.hk2.annotations.Service;
 
 /**
  * Extended that {@link Mapper} that prevent the WebContainer to unregister the current {@link Mapper} configuration.
+ * <p>
+ * Lookups may run concurrently with updates. {@link Mapper} replaces its host, context and wrapper arrays
+ * copy-on-write, but it also updates some fields in place (the nesting of a context list, the fields of a replaced
+ * context or wrapper) and none of its fields is volatile, so a concurrent lookup may see an update partially. Every
+ * update therefore invalidates the stamp returned by {@link #startLookup()}: a lookup whose stamp no longer
+ * validates must be discarded and done again.
  *
  * @author Jeanfrancois Arcand
  */
@@ -62,6 +71,10 @@ public class ContextMapper extends Mapper {
     protected HttpHandler adapter;
     // The id of the associated network-listener
     private String id;
+    // Write locked while the mapper is updated, guards updateDepth and updateStamp
+    private final StampedLock updateLock = new StampedLock();
+    private int updateDepth;
+    private long updateStamp;
 
     public ContextMapper() {
         this(Logger.getAnonymousLogger());
@@ -71,6 +84,75 @@ public class ContextMapper extends Mapper {
         this.logger = logger;
     }
 
+    /**
+     * Returns a stamp to validate a lookup done without any lock.
+     *
+     * @return the stamp, zero while the mapper is being updated
+     * @see #validateLookup(long)
+     */
+    public long startLookup() {
+        return updateLock.tryOptimisticRead();
+    }
+
+    /**
+     * Whether the mapper was not updated since the given stamp was obtained, in which case the results of the
+     * lookups done in the meantime are consistent.
+     *
+     * @param stamp the stamp returned by {@link #startLookup()}
+     */
+    public boolean validateLookup(final long stamp) {
+        return stamp != 0 && updateLock.validate(stamp);
+    }
+
+    /**
+     * Marks the start of an update, which may be nested in another one.
+     */
+    protected void beginUpdate() {
+        synchronized (updateLock) {
+            if (updateDepth++ == 0) {
+                // never blocks, the lock is only read optimistically
+                updateStamp = updateLock.writeLock();
+            }
+        }
+    }
+
+    /**
+     * Marks the end of an update, the lookups started before become invalid.
+     */
+    protected void endUpdate() {
+        synchronized (updateLock) {
+            if (--updateDepth == 0) {
+                updateLock.unlockWrite(updateStamp);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setPort(final int port) {
+        beginUpdate();
+        try {
+            super.setPort(port);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDefaultHostName(final String name) {
+        beginUpdate();
+        try {
+            super.setDefaultHostName(name);
+        } finally {
+            endUpdate();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -78,8 +160,13 @@ public class ContextMapper extends Mapper {
     public void addWrapper(final String hostName, final String contextPath, final String path,
         final Object wrapper, final boolean jspWildCard, final String servletName,
         final boolean isEmptyPathSpecial) {
-        super.addWrapper(hostName, contextPath, path, wrapper, jspWildCard,
-                servletName, isEmptyPathSpecial);
+        beginUpdate();
+        try {
+            super.addWrapper(hostName, contextPath, path, wrapper, jspWildCard,
+                    servletName, isEmptyPathSpecial);
+        } finally {
+            endUpdate();
+        }
         if (logger.isLoggable(Level.FINE)) {
             logger.log(Level.FINE, "Wrapper-Host: {0} contextPath {1} wrapper {2} "
                     + "path {3} jspWildcard {4} servletName {5} isEmptyPathSpecial {6}",
@@ -95,13 +182,32 @@ public class ContextMapper extends Mapper {
     public synchronized void addHost(final String name, final String[] aliases,
         final Object host) {
 
-        super.addHost(name, aliases, host);
+        beginUpdate();
+        try {
+            super.addHost(name, aliases, host);
+        } finally {
+            endUpdate();
+        }
         if (logger.isLoggable(Level.FINE)) {
             logger.log(Level.FINE, "Host-Host: {0} aliases {1} host {2}",
                     new Object[]{name, Arrays.toString(aliases), host});
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setContext(final String path, final String[] welcomeResources,
+        final NamingContext resources) {
+        beginUpdate();
+        try {
+            super.setContext(path, welcomeResources, resources);
+        } finally {
+            endUpdate();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -116,16 +222,159 @@ public class ContextMapper extends Mapper {
         // clean all the previously added information, specially the
         // MappingData.wrapper info as this information cannot apply
         // to this Container.
-        if (adapter != null && "org.apache.catalina.connector.CoyoteAdapter".equals(adapter.getClass().getName())) {
-            removeContext(hostName, path);
+        beginUpdate();
+        try {
+            if (adapter != null && "org.apache.catalina.connector.CoyoteAdapter".equals(adapter.getClass().getName())) {
+                removeContext(hostName, path);
+            }
+            super.addContext(hostName, path, context, welcomeResources, resources);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addContext(final String hostName, final String path, final Object context,
+        final String[] welcomeResources, final NamingContext resources,
+        final List<AlternateDocBase> alternateDocBases) {
+        beginUpdate();
+        try {
+            super.addContext(hostName, path, context, welcomeResources, resources,
+                    alternateDocBases);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeContext(final String hostName, final String path) {
+        beginUpdate();
+        try {
+            super.removeContext(hostName, path);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addWrapper(final String hostName, final String contextPath, final String path,
+        final Object wrapper) {
+        beginUpdate();
+        try {
+            super.addWrapper(hostName, contextPath, path, wrapper);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addWrapper(final String hostName, final String contextPath, final String path,
+        final Object wrapper, final boolean jspWildCard) {
+        beginUpdate();
+        try {
+            super.addWrapper(hostName, contextPath, path, wrapper, jspWildCard);
+        } finally {
+            endUpdate();
         }
-        super.addContext(hostName, path, context, welcomeResources, resources);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
+    public void addWrapper(final String path, final Object wrapper) {
+        beginUpdate();
+        try {
+            super.addWrapper(path, wrapper);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addWrapper(final String path, final Object wrapper, final boolean jspWildCard,
+        final boolean isEmptyPathSpecial) {
+        beginUpdate();
+        try {
+            super.addWrapper(path, wrapper, jspWildCard, isEmptyPathSpecial);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addWrapper(final String path, final Object wrapper, final boolean jspWildCard,
+        final String servletName, final boolean isEmptyPathSpecial) {
+        beginUpdate();
+        try {
+            super.addWrapper(path, wrapper, jspWildCard, servletName, isEmptyPathSpecial);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeWrapper(final String path) {
+        beginUpdate();
+        try {
+            super.removeWrapper(path);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeWrapper(final String hostName, final String contextPath, final String path) {
+        beginUpdate();
+        try {
+            super.removeWrapper(hostName, contextPath, path);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDefaultContextPath(final String hostName, final String defaultContextPath)
+        throws Exception {
+        beginUpdate();
+        try {
+            super.setDefaultContextPath(hostName, defaultContextPath);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * Leaves the host mapped, so unlike the other updates it does not invalidate running lookups.
+     */
+    @Override
     public synchronized void removeHost(final String name) {
         // Do let the WebContainer unconfigure us.
         if (logger.isLoggable(Level.FINE)) {
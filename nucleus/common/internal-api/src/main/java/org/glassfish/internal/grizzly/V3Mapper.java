@@ -126,10 +126,16 @@ public class V3Mapper extends ContextMapper {
         // clean all the previously added information, specially the 
         // MappingData.wrapper info as this information cannot apply
         // to this Container.
-        if (adapter != null && "org.apache.catalina.connector.CoyoteAdapter".equals(adapter.getClass().getName())) {
-            removeContext(hostName, path);
+        // A lookup running meanwhile is invalidated by the whole replacement.
+        beginUpdate();
+        try {
+            if (adapter != null && "org.apache.catalina.connector.CoyoteAdapter".equals(adapter.getClass().getName())) {
+                removeContext(hostName, path);
+            }
+
+            super.addContext(hostName, path, context, welcomeResources, resources);
+        } finally {
+            endUpdate();
         }
-        
-        super.addContext(hostName, path, context, welcomeResources, resources);
     }
 }
@@ -0,0 +1,141 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.internal.deployment;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import com.sun.enterprise.config.serverbeans.Application;
+import com.sun.enterprise.config.serverbeans.ServerTags;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeploymentOrderTest {
+
+    private final TreeSet<ApplicationOrderInfo> deployments =
+            new TreeSet<ApplicationOrderInfo>(DeploymentOrder.APPLICATION_COMPARATOR);
+
+    @Test
+    public void groupsFollowTheDeploymentOrder() {
+        add("web2", DeploymentType.USER, 200, false);
+        add("rar", DeploymentType.USER, 100, true);
+        add("web1", DeploymentType.USER, 100, false);
+        add("admin", DeploymentType.SYSTEM_PREFIX + "admin", 100, false);
+
+        assertEquals(Arrays.asList(
+                Arrays.asList("admin"),
+                Arrays.asList("rar"),
+                Arrays.asList("web1"),
+                Arrays.asList("web2")), groups());
+    }
+
+    @Test
+    public void applicationsWithTheSameTypeAndOrderShareAGroup() {
+        add("web1", DeploymentType.USER, 100, false);
+        add("rar1", DeploymentType.USER, 100, true);
+        add("web2", DeploymentType.USER, 100, false);
+        add("rar2", DeploymentType.USER, 100, true);
+        add("web3", DeploymentType.USER, 50, false);
+        add("admin", DeploymentType.SYSTEM_PREFIX + "admin", 100, false);
+        add("gui", DeploymentType.SYSTEM_PREFIX + "admin", 100, false);
+
+        // within a group, the applications keep their domain.xml order
+        assertEquals(Arrays.asList(
+                Arrays.asList("admin", "gui"),
+                Arrays.asList("rar1", "rar2"),
+                Arrays.asList("web3"),
+                Arrays.asList("web1", "web2")), groups());
+    }
+
+    @Test
+    public void noApplicationsMakeNoGroups() {
+        assertTrue(DeploymentOrder.getApplicationDeploymentGroups(deployments).isEmpty());
+    }
+
+    private void add(String name, String objectType, int deploymentOrder, boolean connector) {
+        deployments.add(new ApplicationOrderInfo(
+                application(name, objectType, deploymentOrder, connector), deployments.size()));
+    }
+
+    private List<List<String>> groups() {
+        List<List<String>> names = new ArrayList<List<String>>();
+        for (List<Application> group : DeploymentOrder.getApplicationDeploymentGroups(deployments)) {
+            List<String> groupNames = new ArrayList<String>();
+            for (Application app : group) {
+                groupNames.add(app.getName());
+            }
+            names.add(groupNames);
+        }
+        return names;
+    }
+
+    private static Application application(final String name, final String objectType,
+            final int deploymentOrder, final boolean connector) {
+        return (Application) Proxy.newProxyInstance(Application.class.getClassLoader(),
+                new Class<?>[] {Application.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String methodName = method.getName();
+                        if (methodName.equals("getName") || methodName.equals("toString")) {
+                            return name;
+                        } else if (methodName.equals("getObjectType")) {
+                            return objectType;
+                        } else if (methodName.equals("getDeploymentOrder")) {
+                            return String.valueOf(deploymentOrder);
+                        } else if (methodName.equals("isStandaloneModule")) {
+                            return connector;
+                        } else if (methodName.equals("containsSnifferType")) {
+                            return connector && ServerTags.CONNECTOR.equals(args[0]);
+                        } else if (methodName.equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        } else if (methodName.equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        throw new UnsupportedOperationException(methodName);
+                    }
+                });
+    }
+}
@@ -49,6 +49,12 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.inject.Inject;
@@ -98,6 +104,12 @@ public class ApplicationLoaderService implements org.glassfish.hk2.api.PreDestro
 
     final Logger logger = KernelLoggerInfo.getLogger();
 
+    /**
+     * Number of threads loading the applications at startup. The applications
+     * are loaded one after the other unless it is greater than 1.
+     */
+    public static final String STARTUP_THREADS_PROPERTY = "org.glassfish.deployment.startup.threads";
+
     // During the authentication service's PostConstruct the javax.security.auth.login.Configuration class is constructed.
     // During the Configuration initialization a static variable is set to the current thread's context class loader.
     // When applications are loaded via this (ApplicationLoaderService) the current thread's context class loader
@@ -236,11 +248,16 @@ public class ApplicationLoaderService implements org.glassfish.hk2.api.PreDestro
             }
         }
 
-        Iterator iter = DeploymentOrder.getApplicationDeployments();
-        while (iter.hasNext()) {
-          Application app = (Application)iter.next();
-          ApplicationRef appRef = server.getApplicationRef(app.getName());
-          processApplication(app, appRef);
+        int startupThreads = Integer.getInteger(STARTUP_THREADS_PROPERTY, 1);
+        if (startupThreads > 1) {
+            processApplicationsInParallel(startupThreads);
+        } else {
+            Iterator iter = DeploymentOrder.getApplicationDeployments();
+            while (iter.hasNext()) {
+              Application app = (Application)iter.next();
+              ApplicationRef appRef = server.getApplicationRef(app.getName());
+              processApplication(app, appRef);
+            }
         }
 
         // does the user want us to run a particular application
@@ -345,6 +362,74 @@ public class ApplicationLoaderService implements org.glassfish.hk2.api.PreDestro
     }
 
 
+    /**
+     * Loads the applications group by group, in deployment order: the system
+     * applications, the standalone resource adapters, then the other
+     * applications per deployment-order. The applications of a group other
+     * than the system applications do not depend on each other and are loaded
+     * concurrently.
+     *
+     * @param threads maximum number of applications loaded concurrently
+     */
+    private void processApplicationsInParallel(int threads) {
+        long operationStartTime = System.currentTimeMillis();
+
+        // resolves the services the applications depend on once for all the threads
+        initializeRuntimeDependencies();
+
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r);
+                t.setName("application-loader-" + index.incrementAndGet());
+                t.setContextClassLoader(contextClassLoader);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        int count = 0;
+        try {
+            for (List<Application> group : DeploymentOrder.getApplicationDeploymentGroups()) {
+                count += group.size();
+                if (group.size() == 1 || group.get(0).getObjectType().startsWith(DeploymentType.SYSTEM_PREFIX)) {
+                    for (Application app : group) {
+                        processApplication(app, server.getApplicationRef(app.getName()));
+                    }
+                    continue;
+                }
+
+                List<Future<?>> futures = new ArrayList<Future<?>>(group.size());
+                for (final Application app : group) {
+                    futures.add(executor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            processApplication(app, server.getApplicationRef(app.getName()));
+                        }
+                    }));
+                }
+                // the next group waits for all the applications of this group
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        logger.log(Level.SEVERE, KernelLoggerInfo.deployException, e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        logger.log(Level.SEVERE, KernelLoggerInfo.deployException, e);
+                        return;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        logger.log(Level.INFO, KernelLoggerInfo.loadingApplicationsInParallelTime, new Object[] {
+                count, threads, (System.currentTimeMillis() - operationStartTime)});
+    }
+
     public void processApplication(Application app, ApplicationRef appRef) {
 
         long operationStartTime = Calendar.getInstance().getTimeInMillis();
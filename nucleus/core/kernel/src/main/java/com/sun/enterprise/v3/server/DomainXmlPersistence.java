@@ -48,6 +48,8 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.xml.stream.XMLOutputFactory;
@@ -56,6 +58,7 @@ import javax.xml.stream.XMLStreamWriter;
 import org.glassfish.common.util.admin.ManagedFile;
 import org.glassfish.config.support.ConfigurationAccess;
 import org.glassfish.config.support.ConfigurationPersistence;
+import org.glassfish.config.support.DomainXmlSnapshot;
 import org.glassfish.hk2.api.PostConstruct;
 import org.glassfish.hk2.runlevel.RunLevel;
 import org.glassfish.internal.api.PostStartupRunLevel;
@@ -160,7 +163,7 @@ public class DomainXmlPersistence implements ConfigurationPersistence, Configura
             }
             // write to the temporary file
             XMLStreamWriter writer = null;
-            OutputStream fos = getOutputStream(f);
+            CheckedOutputStream fos = new CheckedOutputStream(getOutputStream(f), new CRC32());
             try {
                 writer = xmlFactory.createXMLStreamWriter(new BufferedOutputStream(fos));
                 IndentingXMLStreamWriter indentingXMLStreamWriter = new IndentingXMLStreamWriter(writer);
@@ -215,6 +218,7 @@ public class DomainXmlPersistence implements ConfigurationPersistence, Configura
                 logger.severe(msg);
                 throw new IOException(msg);
             }
+            saveSnapshot(doc, destination, fos.getChecksum().getValue());
         } catch(IOException e) {
             logger.log(Level.SEVERE, localStrings.getLocalString("ioexception",
                     "IOException while saving the configuration, changes not persisted"), e);
@@ -237,6 +241,23 @@ public class DomainXmlPersistence implements ConfigurationPersistence, Configura
         getDestination().setLastModified(System.currentTimeMillis());
     } 
 
+    /**
+     * Updates the snapshot of the configuration that is loaded instead of
+     * parsing domain.xml at the next startup. Must be called with the write
+     * lock held.
+     */
+    private void saveSnapshot(DomDocument doc, File destination, long checksum) {
+        if (!DomainXmlSnapshot.isEnabled()) {
+            return;
+        }
+        try {
+            DomainXmlSnapshot.write(doc, destination, checksum, DomainXmlSnapshot.getKey(env));
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not save the snapshot of " + destination, e);
+            DomainXmlSnapshot.delete(destination);
+        }
+    }
+
     protected void saved(File destination) {
         logger.fine("Configuration saved at " + destination);
     }
@@ -73,6 +73,13 @@ import org.glassfish.kernel.KernelLoggerInfo;
  * Container's mapper which maps {@link ByteBuffer} bytes representation to an  {@link HttpHandler}, {@link
  * ApplicationContainer} and ProtocolFilter chain. The mapping result is stored inside {@link MappingData} which
  * is eventually shared with the CoyoteAdapter, which is the entry point with the Catalina Servlet Container.
+ * <p>
+ * Requests are mapped without locking. The mapping state is an immutable {@link MappingState}, replaced and
+ * published through a volatile reference whenever an {@link HttpHandler} is registered or unregistered, and read
+ * once per request. A lookup may run concurrently with an update of the {@link ContextMapper} and see it partially,
+ * so it is only kept if the update stamp of the mapper still validates once it is done, and no container started
+ * configuring the mapper meanwhile. Otherwise it is done again with the read lock of the mapper lock obtained from
+ * the {@link GrizzlyService}, which waits for a container holding its write lock to complete the configuration.
  *
  * @author Jeanfrancois Arcand
  * @author Alexey Stashok
@@ -83,6 +90,8 @@ public class ContainerMapper extends ADBAwareHttpHandler {
     private static final Logger LOGGER = KernelLoggerInfo.getLogger();
     private final static String ROOT = "";
     private ContextMapper mapper;
+    private volatile MappingState state = new MappingState(null, false);
+    private final Object stateLock = new Object();
     private final GrizzlyListener listener;
     private String defaultHostName = "server";
     private final GrizzlyService grizzlyService;
@@ -130,6 +139,7 @@ public class ContainerMapper extends ADBAwareHttpHandler {
      */
     protected void setMapper(ContextMapper mapper) {
         this.mapper = mapper;
+        publishState(false);
     }
 
     /**
@@ -146,6 +156,7 @@ public class ContainerMapper extends ADBAwareHttpHandler {
                     new String[]{"index.html", "index.htm"}, null);
             // Container deployed have the right to override the default setting.
             Mapper.setAllowReplacement(true);
+            publishState(false);
         } finally {
             mapperLock.writeLock().unlock();
         }
@@ -185,82 +196,136 @@ public class ContainerMapper extends ADBAwareHttpHandler {
         }
     }
 
+    /**
+     * Publishes a new {@link MappingState} reflecting the current mapper and
+     * whether multiple adapters are registered.
+     *
+     * @param multipleAdapter true when an adapter is being registered
+     */
+    private void publishState(boolean multipleAdapter) {
+        synchronized (stateLock) {
+            if (multipleAdapter) {
+                mapMultipleAdapter = true;
+            }
+            state = new MappingState(mapper, mapMultipleAdapter);
+        }
+    }
+
     private Callable lookupHandler(final Request request,
             final Response response) throws CharConversionException, Exception {
-        MappingData mappingData;
-        
-        mapperLock.readLock().lock();
-        
-        try {
-            // If we have only one Adapter deployed, invoke that Adapter directly.
-            if (!mapMultipleAdapter) {
-                // Remove the MappingData as we might delegate the request
-                // to be serviced directly by the WebContainer
-                final HttpHandler httpHandler = mapper.getHttpHandler();
-                if (httpHandler != null) {
-                    request.setNote(MAPPING_DATA, null);
-//                    httpHandler.service(request, response);
-//                    return;
-                    return new HttpHandlerCallable(httpHandler,
-                            request, response);
+        // Only wait for a container which is (re)configuring the mapper, the
+        // published state is mapped without the read lock otherwise.
+        boolean locked = mapperLock.isWriteLocked();
+        while (true) {
+            if (locked) {
+                mapperLock.readLock().lock();
+            }
+            try {
+                final MappingState mappingState = state;
+                final ContextMapper contextMapper = mappingState.mapper;
+                final long stamp = contextMapper.startLookup();
+                if (stamp != 0) {
+                    Callable handler;
+                    try {
+                        handler = lookupHandler(request, response, mappingState);
+                    } catch (Exception e) {
+                        // an inconsistent lookup may fail in any way
+                        if (contextMapper.validateLookup(stamp)) {
+                            throw e;
+                        }
+                        handler = null;
+                    }
+                    if (handler != null && contextMapper.validateLookup(stamp)
+                            && (locked || !mapperLock.isWriteLocked())) {
+                        return handler;
+                    }
+                }
+            } finally {
+                if (locked) {
+                    mapperLock.readLock().unlock();
                 }
             }
+            // the mapper was updated during the lookup, or is being updated
+            locked = true;
+            Thread.yield();
+        }
+    }
 
-            final DataChunk decodedURI = request.getRequest()
-                    .getRequestURIRef().getDecodedRequestURIBC(isAllowEncodedSlash());
+    /**
+     * Looks up the handler of the request in the given mapping state, the
+     * result is only consistent if the mapper was not updated meanwhile.
+     */
+    private Callable lookupHandler(final Request request,
+            final Response response, final MappingState mappingState)
+            throws CharConversionException, Exception {
+        MappingData mappingData;
 
-            mappingData = request.getNote(MAPPING_DATA);
-            if (mappingData == null) {
-                mappingData = new MappingData();
-                request.setNote(MAPPING_DATA, mappingData);
-            } else {
-                mappingData.recycle();
+        // If we have only one Adapter deployed, invoke that Adapter directly.
+        if (!mappingState.mapMultipleAdapter) {
+            // Remove the MappingData as we might delegate the request
+            // to be serviced directly by the WebContainer
+            final HttpHandler httpHandler = mappingState.mapper.getHttpHandler();
+            if (httpHandler != null) {
+                request.setNote(MAPPING_DATA, null);
+//                httpHandler.service(request, response);
+//                return;
+                return new HttpHandlerCallable(httpHandler,
+                        request, response);
             }
-            HttpHandler httpHandler;
-
-            final CharChunk decodedURICC = decodedURI.getCharChunk();
-            final int semicolon = decodedURICC.indexOf(';', 0);
-
-            // Map the request without any trailling.
-            httpHandler = mapUriWithSemicolon(request, decodedURI,
-                    semicolon, mappingData);
-            if (httpHandler == null || httpHandler instanceof ContainerMapper) {
-                String ext = decodedURI.toString();
-                String type = "";
-                if (ext.lastIndexOf(".") > 0) {
-                    ext = "*" + ext.substring(ext.lastIndexOf("."));
-                    type = ext.substring(ext.lastIndexOf(".") + 1);
-                }
+        }
 
-                if (!MimeType.contains(type) && !"/".equals(ext)) {
-                    initializeFileURLPattern(ext);
-                    mappingData.recycle();
-                    httpHandler = mapUriWithSemicolon(request, decodedURI,
-                            semicolon, mappingData);
-                } else {
-//                    super.service(request, response);
-//                    return;
-                    return new SuperCallable(request, response);
-                }
-            }
+        final DataChunk decodedURI = request.getRequest()
+                .getRequestURIRef().getDecodedRequestURIBC(isAllowEncodedSlash());
 
-            if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.log(Level.FINE, "Request: {0} was mapped to Adapter: {1}",
-                        new Object[]{decodedURI.toString(), httpHandler});
+        mappingData = request.getNote(MAPPING_DATA);
+        if (mappingData == null) {
+            mappingData = new MappingData();
+            request.setNote(MAPPING_DATA, mappingData);
+        } else {
+            mappingData.recycle();
+        }
+        HttpHandler httpHandler;
+
+        final CharChunk decodedURICC = decodedURI.getCharChunk();
+        final int semicolon = decodedURICC.indexOf(';', 0);
+
+        // Map the request without any trailling.
+        httpHandler = mapUriWithSemicolon(mappingState.mapper, request,
+                decodedURI, semicolon, mappingData);
+        if (httpHandler == null || httpHandler instanceof ContainerMapper) {
+            String ext = decodedURI.toString();
+            String type = "";
+            if (ext.lastIndexOf(".") > 0) {
+                ext = "*" + ext.substring(ext.lastIndexOf("."));
+                type = ext.substring(ext.lastIndexOf(".") + 1);
             }
 
-            // The Adapter used for servicing static pages doesn't decode the
-            // request by default, hence do not pass the undecoded request.
-            if (httpHandler == null || httpHandler instanceof ContainerMapper) {
+            if (!MimeType.contains(type) && !"/".equals(ext)) {
+                initializeFileURLPattern(ext);
+                mappingData.recycle();
+                httpHandler = mapUriWithSemicolon(mappingState.mapper, request,
+                        decodedURI, semicolon, mappingData);
+            } else {
 //                super.service(request, response);
+//                return;
                 return new SuperCallable(request, response);
-            } else {
-//                httpHandler.service(request, response);
-                return new HttpHandlerCallable(httpHandler, request, response);
             }
-        } finally {
-            mapperLock.readLock().unlock();
-        }         
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Request: {0} was mapped to Adapter: {1}",
+                    new Object[]{decodedURI.toString(), httpHandler});
+        }
+
+        // The Adapter used for servicing static pages doesn't decode the
+        // request by default, hence do not pass the undecoded request.
+        if (httpHandler == null || httpHandler instanceof ContainerMapper) {
+//            super.service(request, response);
+            return new SuperCallable(request, response);
+        } else {
+//            httpHandler.service(request, response);
+            return new HttpHandlerCallable(httpHandler, request, response);
+        }
     }
     
     private void initializeFileURLPattern(String ext) {
@@ -281,7 +346,12 @@ public class ContainerMapper extends ADBAwareHttpHandler {
                     ((SnifferAdapter) httpHandler).initialize(sniffer, this);
                     ContextRootInfo c = new ContextRootInfo(httpHandler, null);
 
-                    mapperLock.readLock().unlock();
+                    // the read lock is only held when the request waited for
+                    // a container configuring the mapper
+                    final boolean readLocked = mapperLock.getReadHoldCount() > 0;
+                    if (readLocked) {
+                        mapperLock.readLock().unlock();
+                    }
                     mapperLock.writeLock().lock();
                     try {
                         for (String pattern : sniffer.getURLPatterns()) {
@@ -290,8 +360,11 @@ public class ContainerMapper extends ADBAwareHttpHandler {
                                         "*.jsp".equals(pattern) || "*.jspx".equals(pattern));
                             }
                         }
+                        publishState(false);
                     } finally {
-                        mapperLock.readLock().lock();
+                        if (readLocked) {
+                            mapperLock.readLock().lock();
+                        }
                         mapperLock.writeLock().unlock();
                     }
                     
@@ -301,11 +374,24 @@ public class ContainerMapper extends ADBAwareHttpHandler {
         }
     }
 
+    /**
+     * Maps the decodedURI with the current mapper, for handlers which map the
+     * request again outside of the lookup, like {@link SnifferAdapter} once
+     * its container is started.
+     *
+     * @see #mapUriWithSemicolon(ContextMapper, Request, DataChunk, int, MappingData)
+     */
+    final HttpHandler mapUriWithSemicolon(final Request req, final DataChunk decodedURI,
+            int semicolonPos, final MappingData mappingData) throws Exception {
+        return mapUriWithSemicolon(state.mapper, req, decodedURI, semicolonPos, mappingData);
+    }
+
     /**
      * Maps the decodedURI to the corresponding Adapter, considering that URI
      * may have a semicolon with extra data followed, which shouldn't be a part
      * of mapping process.
      *
+     * @param mapper the mapper of the {@link MappingState} of the request
      * @param req HTTP request
      * @param decodedURI URI
      * @param semicolonPos semicolon position. Might be <tt>0</tt> if position wasn't resolved yet (so it will be resolved in the method), or <tt>-1</tt> if there is no semicolon in the URI.
@@ -313,49 +399,42 @@ public class ContainerMapper extends ADBAwareHttpHandler {
      * @return
      * @throws Exception
      */
-    final HttpHandler mapUriWithSemicolon(final Request req,
-            final DataChunk decodedURI, int semicolonPos,
+    final HttpHandler mapUriWithSemicolon(final ContextMapper mapper,
+            final Request req, final DataChunk decodedURI, int semicolonPos,
             final MappingData mappingData) throws Exception {
 
-        mapperLock.readLock().lock();
+        final CharChunk charChunk = decodedURI.getCharChunk();
+        final int oldStart = charChunk.getStart();
+        final int oldEnd = charChunk.getEnd();
 
-        try {
-            final CharChunk charChunk = decodedURI.getCharChunk();
-            final int oldStart = charChunk.getStart();
-            final int oldEnd = charChunk.getEnd();
-
-            if (semicolonPos == 0) {
-                semicolonPos = decodedURI.indexOf(';', 0);
-            }
+        if (semicolonPos == 0) {
+            semicolonPos = decodedURI.indexOf(';', 0);
+        }
 
-            DataChunk localDecodedURI = decodedURI;
-            if (semicolonPos >= 0) {
-                charChunk.setEnd(semicolonPos);
-                // duplicate the URI path, because Mapper may corrupt the attributes,
-                // which follow the path
-                localDecodedURI = req.getNote(DATA_CHUNK);
-                if (localDecodedURI == null) {
-                    localDecodedURI = DataChunk.newInstance();
-                    req.setNote(DATA_CHUNK, localDecodedURI);
-                }
-                localDecodedURI.duplicate(decodedURI);
+        DataChunk localDecodedURI = decodedURI;
+        if (semicolonPos >= 0) {
+            charChunk.setEnd(semicolonPos);
+            // duplicate the URI path, because Mapper may corrupt the attributes,
+            // which follow the path
+            localDecodedURI = req.getNote(DATA_CHUNK);
+            if (localDecodedURI == null) {
+                localDecodedURI = DataChunk.newInstance();
+                req.setNote(DATA_CHUNK, localDecodedURI);
             }
+            localDecodedURI.duplicate(decodedURI);
+        }
 
 
-            try {
-                return map(req, localDecodedURI, mappingData);
-            } finally {
-                charChunk.setStart(oldStart);
-                charChunk.setEnd(oldEnd);
-            }
+        try {
+            return map(mapper, req, localDecodedURI, mappingData);
         } finally {
-            mapperLock.readLock().unlock();
+            charChunk.setStart(oldStart);
+            charChunk.setEnd(oldEnd);
         }
     }
 
-    HttpHandler map(final Request req, final DataChunk decodedURI,
-            MappingData mappingData) throws Exception {
-        
+    HttpHandler map(final ContextMapper mapper, final Request req,
+            final DataChunk decodedURI, MappingData mappingData) throws Exception {
         if (mappingData == null) {
             mappingData = req.getNote(MAPPING_DATA);
         }
@@ -389,7 +468,6 @@ public class ContainerMapper extends ADBAwareHttpHandler {
                     new Object[]{this, contextRoot, httpService, container, String.valueOf(listener.getPort())});
         }
 
-        mapMultipleAdapter = true;
         ContextRootInfo c = new ContextRootInfo(httpService, container);
         for (String host : vs) {
             mapper.addContext(host, contextRoot, c, new String[0], null);
@@ -399,6 +477,7 @@ public class ContainerMapper extends ADBAwareHttpHandler {
             }
              */
         }
+        publishState(true);
     }
 
     public void unregister(String contextRoot) {
@@ -409,6 +488,7 @@ public class ContainerMapper extends ADBAwareHttpHandler {
         for (String host : grizzlyService.hosts) {
             mapper.removeContext(host, contextRoot);
         }
+        publishState(false);
     }
 
     public void register(final Endpoint endpoint) {
@@ -416,7 +496,6 @@ public class ContainerMapper extends ADBAwareHttpHandler {
             LOGGER.log(Level.FINE, "MAPPER({0}) REGISTER endpoint: {1}", endpoint);
         }
 
-        mapMultipleAdapter = true;
         final String contextRoot = endpoint.getContextRoot();
         final Collection<String> vs = endpoint.getVirtualServers();
         
@@ -440,12 +519,26 @@ public class ContainerMapper extends ADBAwareHttpHandler {
             }
              */
         }
+        publishState(true);
     }
 
     public void unregister(final Endpoint endpoint) {
         unregister(endpoint.getContextRoot());
     }
 
+    /**
+     * Immutable mapping state, read once per request.
+     */
+    private static final class MappingState {
+        private final ContextMapper mapper;
+        private final boolean mapMultipleAdapter;
+
+        MappingState(final ContextMapper mapper, final boolean mapMultipleAdapter) {
+            this.mapper = mapper;
+            this.mapMultipleAdapter = mapMultipleAdapter;
+        }
+    }
+
     private final static class HttpHandlerCallable implements Callable {
         private final HttpHandler httpHandler;
         private final Request request;
@@ -40,8 +40,10 @@
 
 package com.sun.enterprise.v3.services.impl.monitor;
 
+import com.sun.enterprise.v3.services.impl.monitor.probes.ThreadPoolProbeProvider;
 import com.sun.enterprise.v3.services.impl.monitor.stats.ConnectionQueueStatsProvider;
 import com.sun.enterprise.v3.services.impl.monitor.stats.ThreadPoolStatsProvider;
+import org.glassfish.grizzly.config.ThreadPoolAutoTuner;
 import org.glassfish.grizzly.threadpool.AbstractThreadPool;
 import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
 import org.glassfish.grizzly.threadpool.ThreadPoolProbe;
@@ -50,7 +52,8 @@ import org.glassfish.grizzly.threadpool.ThreadPoolProbe;
  *
  * @author oleksiys
  */
-public class ThreadPoolMonitor implements ThreadPoolProbe {
+public class ThreadPoolMonitor implements ThreadPoolProbe,
+        ThreadPoolAutoTuner.AutoTuneProbe {
     private final GrizzlyMonitoring grizzlyMonitoring;
     private final String monitoringId;
 
@@ -141,4 +144,20 @@ public class ThreadPoolMonitor implements ThreadPoolProbe {
         grizzlyMonitoring.getConnectionQueueProbeProvider().onTaskQueueOverflowEvent(
                 monitoringId);
     }
+
+    @Override
+    public void onAutoTuneEvent(ThreadPoolAutoTuner autoTuner) {
+        final ThreadPoolProbeProvider probeProvider =
+                grizzlyMonitoring.getThreadPoolProbeProvider();
+        if (autoTuner.getDecision() != ThreadPoolAutoTuner.Decision.HOLD) {
+            probeProvider.setCoreThreadsEvent(monitoringId,
+                    autoTuner.getPoolName(), autoTuner.getCorePoolSize());
+            probeProvider.setMaxThreadsEvent(monitoringId,
+                    autoTuner.getPoolName(), autoTuner.getPoolSize());
+        }
+        probeProvider.autoTuneEvent(monitoringId, autoTuner.getPoolName(),
+                autoTuner.getDecision().name(), autoTuner.getReason(),
+                autoTuner.getQueueLatencyMillis(),
+                autoTuner.getCpuUtilization(), autoTuner.getBlockedRatio());
+    }
 }
@@ -100,4 +100,19 @@ public class ThreadPoolProbeProvider {
         @ProbeParam("monitoringId") String monitoringId,
         @ProbeParam("threadPoolName") String threadPoolName,
         @ProbeParam("threadId") long threadId) {}
+
+
+    /**
+     * Emits notification that the thread pool auto-tuner evaluated the load
+     * of the thread pool, and possibly resized it.
+     */
+    @Probe(name="autoTuneEvent")
+    public void autoTuneEvent(
+        @ProbeParam("monitoringId") String monitoringId,
+        @ProbeParam("threadPoolName") String threadPoolName,
+        @ProbeParam("decision") String decision,
+        @ProbeParam("reason") String reason,
+        @ProbeParam("queueLatencyMillis") long queueLatencyMillis,
+        @ProbeParam("cpuUtilization") int cpuUtilization,
+        @ProbeParam("blockedRatio") int blockedRatio) {}
 }
@@ -43,12 +43,15 @@ package com.sun.enterprise.v3.services.impl.monitor.stats;
 import org.glassfish.external.probe.provider.annotations.ProbeListener;
 import org.glassfish.external.probe.provider.annotations.ProbeParam;
 import org.glassfish.external.statistics.CountStatistic;
+import org.glassfish.external.statistics.StringStatistic;
 import org.glassfish.external.statistics.annotations.Reset;
 import org.glassfish.external.statistics.impl.CountStatisticImpl;
+import org.glassfish.external.statistics.impl.StringStatisticImpl;
 import org.glassfish.gmbal.AMXMetadata;
 import org.glassfish.gmbal.Description;
 import org.glassfish.gmbal.ManagedAttribute;
 import org.glassfish.gmbal.ManagedObject;
+import org.glassfish.grizzly.config.ThreadPoolAutoTuner;
 import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
 
 /**
@@ -69,6 +72,12 @@ public class ThreadPoolStatsProvider implements StatsProvider {
     protected final CountStatisticImpl currentThreadCount = new CountStatisticImpl("CurrentThreadCount", "count", "Provides the number of request processing threads currently in the listener thread pool");
     protected final CountStatisticImpl currentThreadsBusy = new CountStatisticImpl("CurrentThreadsBusy", "count", "Provides the number of request processing threads currently in use in the listener thread pool serving requests");
 
+    protected final StringStatisticImpl autoTuneDecision = new StringStatisticImpl("AutoTuneDecision", "String", "Provides the last decision of the thread pool auto-tuner and its cause");
+    protected final CountStatisticImpl autoTuneAdjustmentsCount = new CountStatisticImpl("AutoTuneAdjustments", "count", "Provides the number of times the thread pool auto-tuner resized the thread pool");
+    protected final CountStatisticImpl autoTuneQueueLatency = new CountStatisticImpl("AutoTuneQueueLatency", "millisecond", "Provides the average time the tasks waited in the queue, as last measured by the thread pool auto-tuner");
+    protected final CountStatisticImpl autoTuneCpuUtilization = new CountStatisticImpl("AutoTuneCpuUtilization", "percent", "Provides the CPU utilization of the process, as last measured by the thread pool auto-tuner, -1 if unknown");
+    protected final CountStatisticImpl autoTuneBlockedRatio = new CountStatisticImpl("AutoTuneBlockedRatio", "percent", "Provides the part of the running time of the tasks not spent on a CPU, as last measured by the thread pool auto-tuner, -1 if unknown");
+
     protected volatile ThreadPoolConfig threadPoolConfig;
 
     public ThreadPoolStatsProvider(String name) {
@@ -119,6 +128,36 @@ public class ThreadPoolStatsProvider implements StatsProvider {
         return currentThreadsBusy;
     }
 
+    @ManagedAttribute(id = "autotunedecision")
+    @Description("Provides the last decision of the thread pool auto-tuner and its cause")
+    public StringStatistic getAutoTuneDecision() {
+        return autoTuneDecision;
+    }
+
+    @ManagedAttribute(id = "autotuneadjustments")
+    @Description("Provides the number of times the thread pool auto-tuner resized the thread pool")
+    public CountStatistic getAutoTuneAdjustmentsCount() {
+        return autoTuneAdjustmentsCount;
+    }
+
+    @ManagedAttribute(id = "autotunequeuelatency")
+    @Description("Provides the average time the tasks waited in the queue, as last measured by the thread pool auto-tuner")
+    public CountStatistic getAutoTuneQueueLatency() {
+        return autoTuneQueueLatency;
+    }
+
+    @ManagedAttribute(id = "autotunecpuutilization")
+    @Description("Provides the CPU utilization of the process, as last measured by the thread pool auto-tuner, -1 if unknown")
+    public CountStatistic getAutoTuneCpuUtilization() {
+        return autoTuneCpuUtilization;
+    }
+
+    @ManagedAttribute(id = "autotuneblockedratio")
+    @Description("Provides the part of the running time of the tasks not spent on a CPU, as last measured by the thread pool auto-tuner, -1 if unknown")
+    public CountStatistic getAutoTuneBlockedRatio() {
+        return autoTuneBlockedRatio;
+    }
+
     @ProbeListener("glassfish:kernel:thread-pool:setMaxThreadsEvent")
     public void setMaxThreadsEvent(
             @ProbeParam("monitoringId") String monitoringId,
@@ -186,6 +225,27 @@ public class ThreadPoolStatsProvider implements StatsProvider {
         }
     }
 
+    @ProbeListener("glassfish:kernel:thread-pool:autoTuneEvent")
+    public void autoTuneEvent(
+            @ProbeParam("monitoringId") String monitoringId,
+            @ProbeParam("threadPoolName") String threadPoolName,
+            @ProbeParam("decision") String decision,
+            @ProbeParam("reason") String reason,
+            @ProbeParam("queueLatencyMillis") long queueLatencyMillis,
+            @ProbeParam("cpuUtilization") int cpuUtilization,
+            @ProbeParam("blockedRatio") int blockedRatio) {
+
+        if (name.equals(monitoringId)) {
+            if (!ThreadPoolAutoTuner.Decision.HOLD.name().equals(decision)) {
+                autoTuneAdjustmentsCount.increment();
+            }
+            autoTuneDecision.setCurrent(decision + " (" + reason + ")");
+            autoTuneQueueLatency.setCount(queueLatencyMillis);
+            autoTuneCpuUtilization.setCount(cpuUtilization);
+            autoTuneBlockedRatio.setCount(blockedRatio);
+        }
+    }
+
     @Reset
     public void reset() {
         if (threadPoolConfig != null) {
@@ -196,5 +256,6 @@ public class ThreadPoolStatsProvider implements StatsProvider {
         }
 
         totalExecutedTasksCount.setCount(0);
+        autoTuneAdjustmentsCount.setCount(0);
     }
 }
@@ -647,4 +647,9 @@ public class KernelLoggerInfo {
             level = "INFO")
     public static final String checkpointAutoResumeDone = LOGMSG_PREFIX + "-00096";
 
+    @LogMessageInfo(
+            message = "Loading {0} applications with {1} threads done in {2} ms",
+            level = "INFO")
+    public static final String loadingApplicationsInParallelTime = LOGMSG_PREFIX + "-00097";
+
 }
@@ -0,0 +1,210 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.v3.services.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Logger;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.ProcessingState;
+import org.glassfish.grizzly.http.Protocol;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.server.util.MappingData;
+import org.glassfish.grizzly.http.util.DataChunk;
+import org.glassfish.internal.grizzly.V3Mapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the request mapping done by {@link ContainerMapper} for
+ * small requests, with many threads mapping concurrently.
+ * <p>
+ * <code>lockFree</code> maps as {@link ContainerMapper} does, validating the
+ * update stamp of the mapper, while
+ * <code>readLock</code> additionally takes the read lock of the
+ * {@link GrizzlyService} mapper lock around every mapping, as it was done for
+ * every request before. Run it with at least as many threads as cores, e.g.
+ * <code>-t 64</code> on a 64 cores machine, to see the contention on the read
+ * lock.
+ * <p>
+ * Not run as part of the unit tests. Run it with the test classpath, e.g.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.sun.enterprise.v3.services.impl.ContainerMapperBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(32)
+@Fork(1)
+public class ContainerMapperBenchmark {
+
+    private static final String HOST = "server";
+    private static final int CONTEXTS = 20;
+
+    @Param({"lockFree", "readLock"})
+    public String locking;
+
+    private ContainerMapper containerMapper;
+    private V3Mapper mapper;
+    private Lock readLock;
+
+    @Setup
+    public void setUp() {
+        GrizzlyService grizzlyService = new GrizzlyService();
+        grizzlyService.hosts.add(HOST);
+        readLock = grizzlyService.obtainMapperLock().readLock();
+
+        mapper = new V3Mapper(Logger.getAnonymousLogger());
+        mapper.setPort(8080);
+        containerMapper = new ContainerMapper(grizzlyService, null);
+        containerMapper.setMapper(mapper);
+        containerMapper.setDefaultHost(HOST);
+        containerMapper.configureMapper();
+
+        Collection<String> virtualServers = Collections.singletonList(HOST);
+        for (int i = 0; i < CONTEXTS; i++) {
+            containerMapper.register("/app" + i, virtualServers, new NoopHttpHandler(), null);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SmallRequest {
+        private Request request;
+        private DataChunk decodedURI;
+        private final MappingData mappingData = new MappingData();
+
+        @Setup
+        public void setUp() throws Exception {
+            HttpRequestPacket packet = new SmallRequestPacket();
+            packet.setMethod(Method.GET);
+            packet.setRequestURI("/app" + (CONTEXTS / 2) + "/index.html");
+            packet.setProtocol(Protocol.HTTP_1_1);
+            request = new PacketRequest(packet);
+            decodedURI = packet.getRequestURIRef().getDecodedRequestURIBC();
+        }
+    }
+
+    @Benchmark
+    public HttpHandler map(SmallRequest small) throws Exception {
+        small.mappingData.recycle();
+        if ("readLock".equals(locking)) {
+            readLock.lock();
+            try {
+                return containerMapper.mapUriWithSemicolon(mapper, small.request,
+                        small.decodedURI, -1, small.mappingData);
+            } finally {
+                readLock.unlock();
+            }
+        }
+        long stamp = mapper.startLookup();
+        HttpHandler httpHandler = containerMapper.mapUriWithSemicolon(mapper,
+                small.request, small.decodedURI, -1, small.mappingData);
+        if (!mapper.validateLookup(stamp)) {
+            throw new IllegalStateException("Mapper updated during the benchmark");
+        }
+        return httpHandler;
+    }
+
+    /**
+     * GET request for the default host, which isn't bound to a connection.
+     */
+    private static class SmallRequestPacket extends HttpRequestPacket {
+        private final ProcessingState processingState = new ProcessingState();
+
+        @Override
+        protected void doParseHostHeader() {
+            serverNameRaw().setString(HOST);
+        }
+
+        @Override
+        public ProcessingState getProcessingState() {
+            return processingState;
+        }
+    }
+
+    /**
+     * {@link Request} wrapping a packet, without a connection.
+     */
+    private static class PacketRequest extends Request {
+
+        PacketRequest(HttpRequestPacket packet) {
+            super(null);
+            request = packet;
+        }
+    }
+
+    private static class NoopHttpHandler extends HttpHandler {
+
+        @Override
+        public void service(Request request, Response response) {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ContainerMapperBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
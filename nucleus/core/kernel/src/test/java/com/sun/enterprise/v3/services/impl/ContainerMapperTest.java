@@ -0,0 +1,270 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.v3.services.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Logger;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.ProcessingState;
+import org.glassfish.grizzly.http.Protocol;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.server.util.MappingData;
+import org.glassfish.grizzly.http.util.DataChunk;
+import org.glassfish.internal.grizzly.V3Mapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Requests mapped by {@link ContainerMapper} while applications are
+ * deployed and undeployed.
+ */
+public class ContainerMapperTest {
+
+    private static final String HOST = "server";
+
+    private static final ThreadLocal<HttpHandler> SERVED = new ThreadLocal<HttpHandler>();
+
+    private GrizzlyService grizzlyService;
+    private TestMapper mapper;
+    private ContainerMapper containerMapper;
+    private final Collection<String> virtualServers = Collections.singletonList(HOST);
+
+    @Before
+    public void setUp() {
+        grizzlyService = new GrizzlyService();
+        grizzlyService.hosts.add(HOST);
+        mapper = new TestMapper();
+        mapper.setPort(8080);
+        containerMapper = new ContainerMapper(grizzlyService, null);
+        containerMapper.setMapper(mapper);
+        containerMapper.setDefaultHost(HOST);
+        containerMapper.configureMapper();
+    }
+
+    @Test
+    public void requestsAreMappedDuringDeployments() throws Exception {
+        final HttpHandler stable = new NamedHandler("stable");
+        containerMapper.register("/stable", virtualServers, stable, null);
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger deployments = new AtomicInteger();
+        Thread deployer = new Thread() {
+            public void run() {
+                HttpHandler other = new NamedHandler("other");
+                for (int i = 0; !done.get(); i++) {
+                    String contextRoot = "/app" + (i % 10);
+                    containerMapper.register(contextRoot, virtualServers, other, null);
+                    // a nested context changes the nesting of the contexts
+                    containerMapper.register("/stable/nested", virtualServers, other, null);
+                    containerMapper.register("/stable", virtualServers, stable, null);
+                    containerMapper.unregister("/stable/nested");
+                    containerMapper.unregister(contextRoot);
+                    deployments.incrementAndGet();
+                }
+            }
+        };
+        deployer.start();
+
+        int threads = 4;
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch mapped = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            if (service("/stable/index.html") != stable) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        mapped.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue(mapped.await(60, TimeUnit.SECONDS));
+        done.set(true);
+        deployer.join();
+
+        assertEquals(0, errors.get());
+        assertTrue(deployments.get() > 0);
+    }
+
+    @Test
+    public void lookupIsRedoneWhenMapperIsUpdatedMeanwhile() throws Exception {
+        containerMapper.register("/app", virtualServers, new NamedHandler("old"), null);
+        final HttpHandler redeployed = new NamedHandler("new");
+        mapper.duringNextMap = new Runnable() {
+            public void run() {
+                containerMapper.unregister("/app");
+                containerMapper.register("/app", virtualServers, redeployed, null);
+            }
+        };
+
+        assertSame(redeployed, service("/app/index.html"));
+        assertEquals(2, mapper.maps.get());
+    }
+
+    @Test
+    public void requestWaitsForContainerConfiguringMapper() throws Exception {
+        containerMapper.register("/app", virtualServers, new NamedHandler("old"), null);
+        final HttpHandler redeployed = new NamedHandler("new");
+        final HttpHandler[] served = new HttpHandler[1];
+        Lock writeLock = grizzlyService.obtainMapperLock().writeLock();
+
+        Thread request;
+        writeLock.lock();
+        try {
+            containerMapper.unregister("/app");
+            request = new Thread() {
+                public void run() {
+                    try {
+                        served[0] = service("/app/index.html");
+                    } catch (Exception e) {
+                        // served stays null
+                    }
+                }
+            };
+            request.start();
+            request.join(200);
+            assertTrue(request.isAlive());
+            containerMapper.register("/app", virtualServers, redeployed, null);
+        } finally {
+            writeLock.unlock();
+        }
+        request.join();
+        assertSame(redeployed, served[0]);
+    }
+
+    /**
+     * Services a GET request for the given URI.
+     *
+     * @return the handler which serviced the request
+     */
+    private HttpHandler service(String uri) throws Exception {
+        HttpRequestPacket packet = new TestRequestPacket();
+        packet.setMethod(Method.GET);
+        packet.setRequestURI(uri);
+        packet.setProtocol(Protocol.HTTP_1_1);
+        SERVED.remove();
+        containerMapper.service(new PacketRequest(packet), null);
+        return SERVED.get();
+    }
+
+    /**
+     * Mapper which runs an update in the middle of its next lookup.
+     */
+    private static class TestMapper extends V3Mapper {
+        final AtomicInteger maps = new AtomicInteger();
+        volatile Runnable duringNextMap;
+
+        TestMapper() {
+            super(Logger.getAnonymousLogger());
+        }
+
+        @Override
+        public void map(DataChunk host, DataChunk uri, MappingData mappingData)
+                throws Exception {
+            maps.incrementAndGet();
+            super.map(host, uri, mappingData);
+            Runnable update = duringNextMap;
+            if (update != null) {
+                duringNextMap = null;
+                update.run();
+            }
+        }
+    }
+
+    /**
+     * GET request for the default host, which isn't bound to a connection.
+     */
+    private static class TestRequestPacket extends HttpRequestPacket {
+        private final ProcessingState processingState = new ProcessingState();
+
+        @Override
+        protected void doParseHostHeader() {
+            serverNameRaw().setString(HOST);
+        }
+
+        @Override
+        public ProcessingState getProcessingState() {
+            return processingState;
+        }
+    }
+
+    /**
+     * {@link Request} wrapping a packet, without a connection.
+     */
+    private static class PacketRequest extends Request {
+
+        PacketRequest(HttpRequestPacket packet) {
+            super(null);
+            request = packet;
+        }
+    }
+
+    private static class NamedHandler extends HttpHandler {
+
+        NamedHandler(String name) {
+            super(name);
+        }
+
+        @Override
+        public void service(Request request, Response response) {
+            SERVED.set(this);
+        }
+    }
+}
@@ -47,6 +47,12 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.text.FieldPosition;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -54,6 +60,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.ResourceBundle;
 import java.util.Vector;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -84,6 +91,7 @@ import com.sun.appserv.server.util.Version;
 import com.sun.common.util.logging.BooleanLatch;
 import com.sun.enterprise.admin.monitor.callflow.Agent;
 import com.sun.enterprise.module.bootstrap.EarlyLogHandler;
+import com.sun.enterprise.server.logging.logviewer.backend.LogIndex;
 import com.sun.enterprise.util.LocalStringManagerImpl;
 import com.sun.enterprise.util.io.FileUtils;
 import com.sun.enterprise.v3.logging.AgentFormatterDelegate;
@@ -142,6 +150,20 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
 
     private BlockingQueue<LogRecord> pendingRecords = new ArrayBlockingQueue<LogRecord>(5000);
 
+    // When a ring buffer size is configured, the records are handed to the
+    // pump through a pre-allocated ring buffer instead of pendingRecords.
+    // The pump encodes them into a reusable buffer and writes each batch to
+    // the metered output stream, flushing it once per batch.
+    private static final int RING_BUFFER_BATCH_SIZE = 512;
+    private static final int ENCODE_BUFFER_SIZE = 64 * 1024;
+
+    private LogRecordRingBuffer ringBuffer;
+    private LogRecord[] ringBufferBatch;
+    private ByteBuffer encodeBuffer;
+    private CharsetEncoder encoder;
+    private String encoderEncoding;
+    private long reportedDroppedRecords;
+
     // Rotation can be done in 3 ways
     // 1. Based on the Size: Rotate when some Threshold number of bytes are 
     //    written to server.log
@@ -252,6 +274,8 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
             currentgffileHandlerFormatter = "com.sun.enterprise.server.logging.UniformLogFormatter";
         }
 
+        initializeRingBuffer(manager, cname);
+
         // start the Queue consumer thread.
         initializePump();
         
@@ -532,17 +556,88 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
         }        
     }
     
+    /**
+     * Reads the ring buffer attributes. The ring buffer is used instead of
+     * the blocking queue when ringBufferSize is greater than 0.
+     */
+    private void initializeRingBuffer(LogManager manager, String cname) {
+        int size = 0;
+        String propValue = manager.getProperty(cname + ".ringBufferSize");
+        if (propValue != null) {
+            try {
+                size = Integer.parseInt(propValue);
+            } catch (NumberFormatException e) {
+                logInvalidAttributeValue(propValue, "ringBufferSize");
+            }
+        }
+        if (size <= 0) {
+            return;
+        }
+
+        LogRecordRingBuffer.OverflowPolicy policy = LogRecordRingBuffer.OverflowPolicy.BLOCK;
+        propValue = manager.getProperty(cname + ".overflowPolicy");
+        if (propValue != null) {
+            try {
+                policy = LogRecordRingBuffer.OverflowPolicy.valueOf(propValue.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                logInvalidAttributeValue(propValue, "overflowPolicy");
+            }
+        }
+
+        int sampleRate = 10;
+        propValue = manager.getProperty(cname + ".overflowSampleRate");
+        if (propValue != null) {
+            try {
+                sampleRate = Integer.parseInt(propValue);
+            } catch (NumberFormatException e) {
+                logInvalidAttributeValue(propValue, "overflowSampleRate");
+            }
+        }
+        enableRingBuffer(size, policy, sampleRate);
+    }
+
+    private void logInvalidAttributeValue(String value, String attribute) {
+        LogRecord lr = new LogRecord(Level.WARNING, LogFacade.INVALID_ATTRIBUTE_VALUE);
+        lr.setParameters(new Object[]{value, attribute});
+        lr.setResourceBundle(ResourceBundle.getBundle(LogFacade.LOGGING_RB_NAME));
+        lr.setThreadID((int) Thread.currentThread().getId());
+        lr.setLoggerName(LogFacade.LOGGING_LOGGER_NAME);
+        EarlyLogHandler.earlyMessages.add(lr);
+    }
+
+    /**
+     * Publishes the records through a ring buffer of the given size. Must be
+     * called before the pump is started.
+     */
+    void enableRingBuffer(int size, LogRecordRingBuffer.OverflowPolicy policy, int sampleRate) {
+        ringBuffer = new LogRecordRingBuffer(size, policy, sampleRate);
+        ringBufferBatch = new LogRecord[Math.min(ringBuffer.capacity(), RING_BUFFER_BATCH_SIZE)];
+        encodeBuffer = ByteBuffer.allocate(ENCODE_BUFFER_SIZE);
+    }
+
     void initializePump() {
         pump = new Thread() {
             public void run() {
                 while (!done.isSignalled()) {
                     try {
-                        log();
+                        if (ringBuffer != null) {
+                            logFromRingBuffer();
+                        } else {
+                            log();
+                        }
                     } catch (Exception e) {
                         // GLASSFISH-19125
                         // Continue the loop without exiting
                     }
                 }
+                if (ringBuffer != null) {
+                    try {
+                        while (writeRingBufferBatch() > 0) {
+                        }
+                    } catch (Exception e) {
+                        // shutting down, the remaining records are lost
+                    }
+                }
             }
         };
         pump.setDaemon(true);
@@ -555,6 +650,19 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
             LogFacade.LOGGING_LOGGER.fine("Logger handler killed");            
         }
         done.tryReleaseShared(1);
+
+        if (ringBuffer != null) {
+            // the pump writes the records left in the ring buffer before
+            // exiting. It is woken up rather than interrupted, an interrupt
+            // would close the file channel under the final writes.
+            ringBuffer.wakeUpConsumer();
+            try {
+                pump.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
         pump.interrupt();
 
         // drain and return
@@ -615,7 +723,7 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
     /**
      * A package private method to set the limit for File Rotation.
      */
-    private synchronized void setLimitForRotation(int rotationLimitInBytes) {
+    synchronized void setLimitForRotation(int rotationLimitInBytes) {
         limitForFileRotation = rotationLimitInBytes;
     }
 
@@ -768,6 +876,13 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
                                             .toString());
                                     boolean renameSuccess = oldFile
                                             .renameTo(rotatedFile);
+                                    // The index of the log viewer follows the
+                                    // log file, it is rebuilt if it cannot.
+                                    File indexFile = LogIndex.getIndexFile(oldFile);
+                                    if (indexFile.exists() && !(renameSuccess
+                                            && indexFile.renameTo(LogIndex.getIndexFile(rotatedFile)))) {
+                                        indexFile.delete();
+                                    }
                                     if (!renameSuccess) {
                                         // If we don't succeed with file rename which
                                         // most likely can happen on Windows because
@@ -850,6 +965,116 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
 
     }
 
+    /**
+     * Retrieves the LogRecords from the ring buffer, or waits for one to be
+     * published, and stores them in the file.
+     */
+    void logFromRingBuffer() throws IOException {
+        if (writeRingBufferBatch() == 0) {
+            ringBuffer.await();
+        }
+    }
+
+    /**
+     * Formats and writes the records available in the ring buffer, preceded
+     * by a warning when records were dropped since the last batch.
+     *
+     * @return the number of records taken from the ring buffer.
+     */
+    private int writeRingBufferBatch() throws IOException {
+        int count = ringBuffer.fetch(ringBufferBatch);
+        long dropped = ringBuffer.getDroppedCount();
+        if (count == 0 && dropped == reportedDroppedRecords) {
+            return 0;
+        }
+        synchronized (rotationLock) {
+            try {
+                if (meter != null) {
+                    updateEncoder();
+                    if (dropped != reportedDroppedRecords) {
+                        LogRecord lr = new LogRecord(Level.WARNING, LogFacade.LOG_RECORDS_DROPPED);
+                        lr.setParameters(new Object[]{dropped - reportedDroppedRecords});
+                        lr.setResourceBundle(LogFacade.LOGGING_LOGGER.getResourceBundle());
+                        lr.setThreadID((int) Thread.currentThread().getId());
+                        lr.setLoggerName(LogFacade.LOGGING_LOGGER_NAME);
+                        reportedDroppedRecords = dropped;
+                        encode(lr);
+                    }
+                    for (int i = 0; i < count; i++) {
+                        encode(ringBufferBatch[i]);
+                    }
+                    writeEncodeBuffer();
+                    meter.flush();
+                }
+            } finally {
+                for (int i = 0; i < count; i++) {
+                    ringBufferBatch[i] = null;
+                }
+                ringBuffer.release(count);
+            }
+        }
+
+        if ((rotationRequested.get())
+                || ((limitForFileRotation > 0)
+                && (meter.written >= limitForFileRotation))) {
+            synchronized (rotationLock) {
+                rotate();
+                rotationRequested.set(false);
+            }
+        }
+        return count;
+    }
+
+    private void updateEncoder() {
+        String encoding = getEncoding();
+        if (encoder == null || (encoding == null ? encoderEncoding != null : !encoding.equals(encoderEncoding))) {
+            Charset charset = (encoding == null) ? Charset.defaultCharset() : Charset.forName(encoding);
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encoderEncoding = encoding;
+        }
+    }
+
+    private void encode(LogRecord record) throws IOException {
+        if (!isLoggable(record)) {
+            return;
+        }
+        String msg;
+        try {
+            msg = getFormatter().format(record);
+        } catch (Exception ex) {
+            reportError(null, ex, ErrorManager.FORMAT_FAILURE);
+            return;
+        }
+        CharBuffer chars = CharBuffer.wrap(msg);
+        while (encoder.encode(chars, encodeBuffer, true) == CoderResult.OVERFLOW) {
+            writeEncodeBuffer();
+        }
+        encoder.reset();
+    }
+
+    private void writeEncodeBuffer() throws IOException {
+        // through the metered stream, which counts the bytes for the rotation
+        meter.write(encodeBuffer.array(), encodeBuffer.arrayOffset(), encodeBuffer.position());
+        encodeBuffer.clear();
+    }
+
+    /**
+     * @return the number of records waiting to be written to the file.
+     */
+    public int getPendingRecordCount() {
+        return (ringBuffer != null) ? ringBuffer.size() : pendingRecords.size();
+    }
+
+    /**
+     * @return the number of records dropped because the ring buffer was
+     * full, always 0 when the ring buffer is not used.
+     */
+    public long getDroppedRecordCount() {
+        return (ringBuffer != null) ? ringBuffer.getDroppedCount() : 0;
+    }
+
     /**
      * Publishes the logrecord storing it in our queue
      */
@@ -859,6 +1084,16 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
         if (done.isSignalled()) {
             return;
         }
+
+        if (ringBuffer != null) {
+            // the record is copied into a pre-allocated GFLogRecord
+            ringBuffer.publish(record, Thread.currentThread().getName());
+            Formatter formatter = this.getFormatter();
+            if (!(formatter instanceof LogEventBroadcaster)) {
+                informLogEventListeners(new LogEventImpl(record));
+            }
+            return;
+        }
         
         // JUL LogRecord does not capture thread-name. Create a wrapper to
         // capture the name of the logging thread so that a formatter can
@@ -62,7 +62,16 @@ public class GFLogRecord extends LogRecord {
         
     public GFLogRecord(LogRecord record) {
         this(record.getLevel(), record.getMessage());
-        
+        copy(record);
+    }
+
+    /**
+     * Overwrites the attributes of this record with the ones of the given
+     * record, so that a record can be reused.
+     */
+    void copy(LogRecord record) {
+        this.setLevel(record.getLevel());
+        this.setMessage(record.getMessage());
         this.setLoggerName(record.getLoggerName());
         this.setMillis(record.getMillis());
         this.setParameters(record.getParameters());
@@ -73,6 +82,8 @@ public class GFLogRecord extends LogRecord {
         this.setSourceMethodName(record.getSourceMethodName());
         this.setThreadID(record.getThreadID());
         this.setThrown(record.getThrown());
+        this.threadName = (record instanceof GFLogRecord)
+                ? ((GFLogRecord) record).threadName : null;
     }
 
     public String getThreadName() {
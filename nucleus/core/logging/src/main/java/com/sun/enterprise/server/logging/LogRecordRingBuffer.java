@@ -0,0 +1,251 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.server.logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Multi-producer, single-consumer ring buffer of log records, used by
+ * GFFileHandler in place of its blocking queue when a ring buffer size is
+ * configured.
+ * <p>
+ * The slots and their records are allocated once. A producer claims a
+ * sequence number with a compare-and-set, copies the record into the
+ * record of the slot, and publishes the slot by writing its sequence
+ * number. The consumer reads the published slots in order and releases
+ * them once the records are written out. No lock is taken on either side.
+ * <p>
+ * When the buffer is full, the {@link OverflowPolicy} decides whether the
+ * producer waits for room or the record is dropped.
+ */
+class LogRecordRingBuffer {
+
+    /**
+     * What to do with a record published while the buffer is full.
+     */
+    enum OverflowPolicy {
+        /** Wait until the consumer frees a slot. */
+        BLOCK,
+        /** Drop the record and count it. */
+        DROP,
+        /**
+         * Once the buffer is three quarters full, keep only one record out
+         * of the sample rate, and all the records of level WARNING and
+         * above as long as there is room. Dropped records are counted.
+         */
+        SAMPLE
+    }
+
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long CONSUMER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final GFLogRecord[] records;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final int sampleThreshold;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleRate;
+
+    private volatile Thread consumer;
+    private volatile boolean consumerParked;
+
+    /**
+     * @param size the number of slots, rounded up to a power of two.
+     * @param overflowPolicy what to do when the buffer is full.
+     * @param sampleRate with the SAMPLE policy, one record out of sampleRate
+     * is kept once the buffer is three quarters full.
+     */
+    LogRecordRingBuffer(int size, OverflowPolicy overflowPolicy, int sampleRate) {
+        int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+        records = new GFLogRecord[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            records[i] = new GFLogRecord(Level.INFO, null);
+            published.set(i, -1);
+        }
+        mask = capacity - 1;
+        sampleThreshold = capacity - capacity / 4;
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * Copies the record into the buffer.
+     *
+     * @return false if the record was dropped.
+     */
+    boolean publish(LogRecord record, String threadName) {
+        long sequence = claim(record.getLevel());
+        if (sequence < 0) {
+            dropped.increment();
+            return false;
+        }
+        int index = (int) (sequence & mask);
+        try {
+            GFLogRecord slot = records[index];
+            slot.copy(record);
+            slot.setThreadName(threadName);
+        } finally {
+            published.set(index, sequence);
+        }
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    private long claim(Level level) {
+        boolean sampled = false;
+        while (true) {
+            long sequence = claimed.get();
+            long depth = sequence - consumed.get();
+            if (overflowPolicy == OverflowPolicy.SAMPLE && depth >= sampleThreshold && !sampled
+                    && level.intValue() < Level.WARNING.intValue()) {
+                if (sampleCounter.incrementAndGet() % sampleRate != 0) {
+                    return -1;
+                }
+                sampled = true;
+            }
+            if (depth > mask) {
+                if (overflowPolicy != OverflowPolicy.BLOCK) {
+                    return -1;
+                }
+                LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+                continue;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * Fills the batch with the records published after the last released
+     * one, in order, without releasing them. Only called by the consumer.
+     *
+     * @return the number of records.
+     */
+    int fetch(LogRecord[] batch) {
+        long next = consumed.get();
+        int count = 0;
+        while (count < batch.length) {
+            int index = (int) ((next + count) & mask);
+            if (published.get(index) != next + count) {
+                break;
+            }
+            batch[count++] = records[index];
+        }
+        return count;
+    }
+
+    /**
+     * Releases the slots of the records fetched last, for reuse by the
+     * producers. Only called by the consumer.
+     */
+    void release(int count) {
+        long next = consumed.get();
+        for (int i = 0; i < count; i++) {
+            // do not keep the parameters and exceptions reachable until the
+            // slot is reused
+            GFLogRecord record = records[(int) ((next + i) & mask)];
+            record.setParameters(null);
+            record.setThrown(null);
+        }
+        consumed.set(next + count);
+    }
+
+    /**
+     * Waits until a record is published, or the timeout elapsed, or the
+     * consumer is interrupted. Only called by the consumer.
+     */
+    void await() {
+        consumer = Thread.currentThread();
+        consumerParked = true;
+        try {
+            long next = consumed.get();
+            if (published.get((int) (next & mask)) != next) {
+                LockSupport.parkNanos(this, CONSUMER_PARK_NANOS);
+            }
+        } finally {
+            consumerParked = false;
+        }
+    }
+
+    /**
+     * Wakes up the consumer waiting in {@link #await()}, if any.
+     */
+    void wakeUpConsumer() {
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return the number of records waiting to be written.
+     */
+    int size() {
+        return (int) Math.max(0, claimed.get() - consumed.get());
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the number of records dropped since the buffer was created.
+     */
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+}
@@ -148,7 +148,10 @@ public class SetLogAttributes implements AdminCommand {
             "com.sun.enterprise.server.logging.GFFileHandler.rotationOnDateChange",
             "com.sun.enterprise.server.logging.GFFileHandler.logFormatDateFormat",
             "com.sun.enterprise.server.logging.GFFileHandler.excludeFields",
-            "com.sun.enterprise.server.logging.GFFileHandler.multiLineMode"};
+            "com.sun.enterprise.server.logging.GFFileHandler.multiLineMode",
+            "com.sun.enterprise.server.logging.GFFileHandler.ringBufferSize",
+            "com.sun.enterprise.server.logging.GFFileHandler.overflowPolicy",
+            "com.sun.enterprise.server.logging.GFFileHandler.overflowSampleRate"};
 
     final private static LocalStringManagerImpl localStrings = new LocalStringManagerImpl(SetLogLevel.class);
 
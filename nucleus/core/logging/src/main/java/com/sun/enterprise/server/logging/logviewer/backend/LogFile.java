@@ -41,7 +41,6 @@
 package com.sun.enterprise.server.logging.logviewer.backend;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -55,9 +54,6 @@ import java.util.TreeMap;
 import java.util.logging.Level;
 
 import com.sun.enterprise.server.logging.LogFacade;
-import com.sun.enterprise.server.logging.parser.LogParser;
-import com.sun.enterprise.server.logging.parser.LogParserFactory;
-import com.sun.enterprise.server.logging.parser.LogParserListener;
 import com.sun.enterprise.server.logging.parser.ParsedLogRecord;
 
 
@@ -68,6 +64,10 @@ import com.sun.enterprise.server.logging.parser.ParsedLogRecord;
  * getIndexSize() returns the number of records between each index.
  * getLastIndexNumber returns the last index.</P>
  *
+ * <P>The records are located with a LogIndex, kept up-to-date with the
+ * log file, which also allows to only read the records matching a query
+ * on their time, level, logger name or message id.</P>
+ *
  * @AUTHOR: Hemanth Puttaswamy and Ken Paulsen
  * <p/>
  * <P>This class also contains an inner class for storing LogEntry
@@ -85,7 +85,6 @@ public class LogFile implements java.io.Serializable {
      */
     public LogFile(String name) {
         _logFileName = name;
-        _recordIdx.add(Long.valueOf(0));
     }
 
     /**
@@ -110,132 +109,90 @@ public class LogFile implements java.io.Serializable {
             return null;
         }
 
-        // Open the file at the desired starting Record
-        final long recordsToIgnore = (startingRecord % getIndexSize());
-        BufferedReader reader = getFilePosition(startingRecord - recordsToIgnore);
         final List results = new ArrayList();
-        if (reader == null) {
-            return results;
-        }
         try {
-            
-            File logFile = new File(getLogFileName());
-            LogParser logParser = LogParserFactory.getInstance().createLogParser(logFile );
-            logParser.parseLog(reader, new LogParserListener() {
-
-                long counter = 0;
-
-                @Override
-                public void outputSummary(BufferedWriter writer, Object... objects)
-                        throws IOException {
-                }
-                
-                @Override
-                public void foundLogRecord(long position, ParsedLogRecord logRecord) {
-                    counter++;
-                    if (counter <= recordsToIgnore) {
-                        return;
-                    }
-                    if (results.size() < maxRecords) {
-                        LogEntry entry = new LogEntry(logRecord.getFormattedLogRecord(),
-                                startingRecord + results.size());                    
-                        entry.setLoggedDateTime(new Date(logRecord.getTimeMillis()));
-                        entry.setLoggedLevel(logRecord.getLevel());
-                        entry.setLoggedLoggerName(logRecord.getLogger());
-                        entry.setLoggedMessage(logRecord.getMessage());
-                        entry.setLoggedNameValuePairs(logRecord.getSupplementalAttributes().toString());
-                        entry.setLoggedProduct(logRecord.getComponentId());
-                        entry.setMessageId(logRecord.getMessageId());                        
-                        results.add(entry);
+            LogIndex index = getLogIndex();
+            index.update();
+            LogIndex.Reader reader = index.openReader();
+            try {
+                for (long recordNumber = startingRecord; results.size() < maxRecords; recordNumber++) {
+                    ParsedLogRecord logRecord = reader.read(recordNumber);
+                    if (logRecord == null) {
+                        break;
                     }
+                    results.add(createLogEntry(logRecord, recordNumber));
                 }
-                
-                @Override
-                public void close() throws IOException {                    
-                }
-            });
+            } finally {
+                reader.close();
+            }
         } catch (Exception ex) {
             throw new RuntimeException(ex);
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException ex) {
-                }
-            }
         }
 
         // Return the results
         return results;
     }
 
-
     /**
-     * This method builds the file index in the beginning.  The index is for
-     * the beginning of every record after the size specified by '_indexSize'
-     * variable.
+     * This method returns the records matching the query, from the given
+     * record number in the given direction.  Only the records matching the
+     * indexed fields of the query are read from the file and passed to the
+     * filter.  It will return up to "maxRecords" records accepted by the
+     * filter, in the order they were found.
+     *
+     * @param    startingRecord    The starting point to search for LogEntries
+     * @param    forward    True to search forward, false to search backward
+     * @param    maxRecords    The maximum number of records to return
+     * @param    query    The query on the indexed fields
+     * @param    filter    The filter of the records matching the query, or null
      */
-    private synchronized void buildLogFileIndex() {
-        // Open the file and skip to the where we left off
-        final long startPos = (Long) _recordIdx.get(_recordIdx.size() - 1);
-        final long localIndexSize = getIndexSize();
-        BufferedReader reader = getLogFileReader(startPos);
+    public List getLogEntries(long startingRecord, boolean forward, long maxRecords,
+            LogIndex.Query query, LogEntryFilter filter) {
+        List results = new ArrayList();
         try {
-            File logFile = new File(getLogFileName());
-            LogParser logParser = LogParserFactory.getInstance().createLogParser(logFile);
-            if (logParser != null) {
-                logParser.parseLog(reader, new LogParserListener() {
-                    
-                    long recordNumber = (_recordIdx.size() - 1) * localIndexSize;
-
-                    @Override
-                    public void outputSummary(BufferedWriter writer, Object... objects)
-                            throws IOException {
+            LogIndex index = getLogIndex();
+            index.update();
+            LogIndex.Reader reader = index.openReader();
+            try {
+                long recordNumber = index.find(query, startingRecord, forward);
+                while (recordNumber >= 0 && results.size() < maxRecords) {
+                    ParsedLogRecord logRecord = reader.read(recordNumber);
+                    if (logRecord == null) {
+                        break;
                     }
-                    
-                    @Override
-                    public void foundLogRecord(long position, ParsedLogRecord object) {                    
-                        long modIndex = recordNumber % localIndexSize;
-                        if (modIndex == 0) {
-                            _recordIdx.add((Long)(startPos+position));
-                        }
-                        recordNumber++;
-                    }
-                    
-                    @Override
-                    public void close() throws IOException {                    
+                    LogEntry entry = createLogEntry(logRecord, recordNumber);
+                    if (filter == null || filter.accept(entry)) {
+                        results.add(entry);
                     }
-                });                
+                    recordNumber = index.find(query,
+                            forward ? recordNumber + 1 : recordNumber - 1, forward);
+                }
+            } finally {
+                reader.close();
             }
         } catch (Exception ex) {
             throw new RuntimeException(ex);
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException ex) {
-                }
-            }
         }
+        return results;
     }
 
-    /**
-     * This method returns the file position given the record number.
-     *
-     * @return The file position.
-     * @param    recordNumber    The Record Number
-     */
-    private BufferedReader getFilePosition(long recordNumber) {
-        // The index is stored from the second slot. i.e., if there
-        // are 100 records and the index will be on 20, 40, 60, 80, 100
-        // if the _indexSize is 20. We don't store '0' hence we subtract
-        // from 1 to get the right index
-        int index = (int) (recordNumber / getIndexSize());
-        if (index > _recordIdx.size()-1) {
-            return null;
+    private LogEntry createLogEntry(ParsedLogRecord logRecord, long recordNumber) {
+        LogEntry entry = new LogEntry(logRecord.getFormattedLogRecord(), recordNumber);
+        entry.setLoggedDateTime(new Date(logRecord.getTimeMillis()));
+        entry.setLoggedLevel(logRecord.getLevel());
+        entry.setLoggedLoggerName(logRecord.getLogger());
+        entry.setLoggedMessage(logRecord.getMessage());
+        entry.setLoggedNameValuePairs(logRecord.getSupplementalAttributes().toString());
+        entry.setLoggedProduct(logRecord.getComponentId());
+        entry.setMessageId(logRecord.getMessageId());
+        return entry;
+    }
+
+    private synchronized LogIndex getLogIndex() {
+        if (_logIndex == null) {
+            _logIndex = new LogIndex(new File(getLogFileName()));
         }
-        Long filePosition = (Long) _recordIdx.get(index);
-        return getLogFileReader(filePosition);
+        return _logIndex;
     }
 
     /**
@@ -283,8 +240,13 @@ public class LogFile implements java.io.Serializable {
      * will ensure that the indexes are up-to-date.
      */
     public long getLastIndexNumber() {
-        buildLogFileIndex();
-        return _recordIdx.size() - 1;
+        LogIndex index = getLogIndex();
+        try {
+            index.update();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return index.size() / getIndexSize();
     }
 
     /**
@@ -294,6 +256,13 @@ public class LogFile implements java.io.Serializable {
         return _indexSize;
     }
 
+    /**
+     * Filter of the LogEntries returned by a query.
+     */
+    public interface LogEntryFilter {
+        boolean accept(LogEntry entry);
+    }
+
     /**
      * Class to manage LogEntry information
      */
@@ -445,6 +414,6 @@ public class LogFile implements java.io.Serializable {
     
     private long _indexSize = 10;
     private String _logFileName = null;
-    private List _recordIdx   = new ArrayList();
+    private transient LogIndex _logIndex = null;
     
 }
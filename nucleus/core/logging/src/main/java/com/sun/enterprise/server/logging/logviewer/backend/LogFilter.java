@@ -480,100 +480,31 @@ public class LogFilter {
      * Internal method that will be called from getLogRecordsUsingQuery()
      */
     protected AttributeList fetchRecordsUsingQuery(
-            LogFile logFile, long startingRecord, boolean next, boolean forward,
-            long requestedCount, Date fromDate, Date toDate, String logLevel,
-            boolean onlyLevel, List listOfModules, Properties nameValueMap, String anySearch) {
-        // If !next, then set to search in reverse
-        boolean origForward = forward;
-        if (next) {
-            startingRecord++;
-            forward = true;
-        } else {
-            forward = false;
-        }
-
-        // Setup forward/reverse stuff
-        int inc = 1;
-        int start = 0;  // depends on length of results (for reverse)
-        int end = -1;   // depends on length of results (for forward)
-        long searchChunkIncrement = requestedCount;
-        if (!forward) {
-            inc = -1;
-            // Move back to find records before the startingRecord
-            // -1 because we still want to see the starting record (only if in
-            // "next" mode)
-            startingRecord -=
-                    ((next) ? (searchChunkIncrement - 1) : (searchChunkIncrement));
-            if (startingRecord < 0) {
-                // Don't go past the original startingRecord
-                searchChunkIncrement += startingRecord;
-                startingRecord = 0;
-            }
-        }
-
+            final LogFile logFile, long startingRecord, boolean next, boolean forward,
+            long requestedCount, final Date fromDate, final Date toDate, final String logLevel,
+            final boolean onlyLevel, final List listOfModules, final Properties nameValueMap,
+            final String anySearch) {
         // Make sure the module names are correct
         //updateModuleList(listOfModules);
 
-        // Keep pulling records to search through until we get enough matches
-        List results = new ArrayList();
-        List records = null;
-        LogFile.LogEntry entry = null;
-        while (results.size() < requestedCount) {
-            // The following will always return unfiltered forward records
-            records = logFile.getLogEntries(
-                    startingRecord, searchChunkIncrement);
-            if (records == null) {
-                break;
-            }
-
-            // Determine end/start
-            if (forward) {
-                end = records.size();
-            } else {
-                start = records.size() - 1;
-            }
-
-            // Loop through the records, filtering and storing the matches
-            for (int count = start;
-                 (count != end) && (results.size() < requestedCount);
-                 count += inc) {
-                entry = (LogFile.LogEntry) records.get(count);
-                if (allChecks(entry, fromDate, toDate, logLevel, onlyLevel,
-                        listOfModules, nameValueMap, anySearch)) {
-                    results.add(entry);
-                }
-            }
-
-            // Update startingRecord / searchChunkIncrement & check for finish
-            if (forward) {
-                // If the record size is smaller than requested, then there
-                // are no more records.
-                if (records.size() < searchChunkIncrement) {
-                    break;
-                }
-
-                // Get starting record BEFORE updating searchChunkIncrement to
-                // skip all the records we already saw
-                startingRecord += searchChunkIncrement * inc;
-                searchChunkIncrement = requestedCount - results.size();
-            } else {
-                // If we already searched from 0, then there are no more
-                if (startingRecord == 0) {
-                    break;
-                }
-
-                // Get starting record AFTER updating searchChunkIncrement
-                searchChunkIncrement = requestedCount - results.size();
-                startingRecord += searchChunkIncrement * inc;
-                if (startingRecord < 1) {
-                    searchChunkIncrement += startingRecord;
-                    startingRecord = 0;
-                }
-            }
-        }
+        // The index only returns the records matching the date, level and
+        // module of the query, allChecks() is still applied to them for the
+        // name value pairs and the message data. If !next, then search in
+        // reverse from the record before startingRecord.
+        LogIndex.Query query = new LogIndex.Query(fromDate, toDate, logLevel,
+                onlyLevel, listOfModules, null);
+        List results = logFile.getLogEntries(
+                next ? startingRecord + 1 : startingRecord - 1, next, requestedCount, query,
+                new LogFile.LogEntryFilter() {
+                    @Override
+                    public boolean accept(LogFile.LogEntry entry) {
+                        return allChecks(entry, fromDate, toDate, logLevel, onlyLevel,
+                                listOfModules, nameValueMap, anySearch);
+                    }
+                });
 
         // Deal with previous&forward or next&reverse
-        if (next ^ origForward) {
+        if (next ^ forward) {
             List reversedResults = new ArrayList();
             // Reverse the results
             for (int count = results.size() - 1; count > -1; count--) {
@@ -0,0 +1,920 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.server.logging.logviewer.backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import com.sun.enterprise.server.logging.LogFacade;
+import com.sun.enterprise.server.logging.parser.LogParser;
+import com.sun.enterprise.server.logging.parser.LogParserException;
+import com.sun.enterprise.server.logging.parser.LogParserFactory;
+import com.sun.enterprise.server.logging.parser.LogParserListener;
+import com.sun.enterprise.server.logging.parser.ParsedLogRecord;
+import com.sun.enterprise.server.logging.parser.RawLogParser;
+
+/**
+ * <P>Index of the records of a log file, used by LogFile to find and read
+ * records without parsing the whole file for every query.</P>
+ *
+ * <P>For every record the index keeps its offset in the file, its time,
+ * level, logger name and message id, and for every logger name and message
+ * id the list of its records. Every update only parses the bytes appended
+ * to the log file since the previous one. The index is saved next to the
+ * log file, in server.log.idx for server.log, so that it is not rebuilt
+ * when the server restarts, and GFFileHandler renames it along with the log
+ * file when rotating. The log file is read through windows filled with
+ * positional reads, rather than mapped in memory: a mapping would keep the
+ * file from being renamed or truncated by the rotation on some platforms,
+ * such as Windows, until it is garbage collected.</P>
+ *
+ * <P>The last record of the log file may still grow, it is kept in memory
+ * only and parsed again by the next update.</P>
+ */
+public class LogIndex {
+
+    public static final String INDEX_FILE_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x474c4958;
+    private static final int VERSION = 1;
+
+    private static final int TAG_STRING = 'S';
+    private static final int TAG_RECORD = 'R';
+    private static final int TAG_CHECKPOINT = 'C';
+
+    private static final int WINDOW_SIZE = 1024 * 1024;
+    private static final int RECORD_START_PROBE_SIZE = 64;
+    private static final int MAX_STRING_LENGTH = 1024;
+    private static final int UNKNOWN_LEVEL = Integer.MIN_VALUE;
+
+    private final File logFile;
+    private final File indexFile;
+    private final Charset charset = Charset.defaultCharset();
+    private LogParser parser;
+    private boolean loaded;
+
+    // level names, logger names and message ids, referenced by their position
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    private final Map<String, Integer> levelValues = new HashMap<String, Integer>();
+
+    private int size;
+    private long[] offsets = new long[1024];
+    private long[] times = new long[1024];
+    private int[] levels = new int[1024];
+    private int[] loggers = new int[1024];
+    private int[] messageIds = new int[1024];
+    private final Map<Integer, Postings> loggerPostings = new HashMap<Integer, Postings>();
+    private final Map<Integer, Postings> messageIdPostings = new HashMap<Integer, Postings>();
+    private boolean sortedByTime = true;
+
+    // length of the log file covered by the records
+    private long indexedLength;
+
+    // the records before closedSize are complete and saved in the index file,
+    // they end at closedLength
+    private int closedSize;
+    private long closedLength;
+    private int lastClosedHash;
+    private int savedStrings;
+    private boolean rewriteIndexFile = true;
+
+    // reused by the updates
+    private ByteBuffer scanWindow;
+
+    private int lastRecordHash;
+    private int previousRecordHash;
+
+    public LogIndex(File logFile) {
+        this.logFile = logFile;
+        this.indexFile = getIndexFile(logFile);
+    }
+
+    /**
+     * @return the file in which the index of the given log file is saved.
+     */
+    public static File getIndexFile(File logFile) {
+        return new File(logFile.getPath() + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Indexes the records appended to the log file since the last update.
+     * The index is rebuilt when the log file was rotated or truncated.
+     */
+    public synchronized void update() throws IOException {
+        if (!loaded) {
+            load();
+            loaded = true;
+        }
+        long length = logFile.length();
+        if (length < indexedLength || !isValid()) {
+            reset();
+        }
+        if (length == indexedLength) {
+            return;
+        }
+        if (parser == null) {
+            if (length == 0) {
+                return;
+            }
+            try {
+                parser = LogParserFactory.getInstance().createLogParser(logFile);
+            } catch (LogParserException e) {
+                throw new IOException(e);
+            }
+        }
+        truncate(closedSize);
+        scan(closedLength, length);
+        save();
+    }
+
+    /**
+     * @return the number of indexed records.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Finds the first record matching the query from the given record, in
+     * the given direction.
+     *
+     * @return the record number, or -1 if no record matches.
+     */
+    public synchronized long find(Query query, long from, boolean forward) {
+        if (forward) {
+            from = Math.max(0, from);
+            if (from >= size) {
+                return -1;
+            }
+        } else {
+            from = Math.min(from, size - 1);
+            if (from < 0) {
+                return -1;
+            }
+        }
+        query.resolve(this);
+        int start = (int) from;
+        if (query.candidates == null) {
+            if (forward) {
+                for (int i = Math.max(start, query.lo); i < query.hi; i++) {
+                    if (query.matches(i)) {
+                        return i;
+                    }
+                }
+            } else {
+                for (int i = Math.min(start, query.hi - 1); i >= query.lo; i--) {
+                    if (query.matches(i)) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        int pos = Arrays.binarySearch(query.candidates, 0, query.candidateCount, start);
+        if (forward) {
+            for (int i = (pos >= 0) ? pos : -pos - 1; i < query.candidateCount; i++) {
+                if (query.matches(query.candidates[i])) {
+                    return query.candidates[i];
+                }
+            }
+        } else {
+            for (int i = (pos >= 0) ? pos : -pos - 2; i >= 0; i--) {
+                if (query.matches(query.candidates[i])) {
+                    return query.candidates[i];
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Opens a reader of the indexed records, to be closed by the caller.
+     */
+    public Reader openReader() throws IOException {
+        return new Reader();
+    }
+
+    private void scan(long start, long length) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long windowStart = start;
+            ByteBuffer window = read(channel, scanWindow, windowStart, length, WINDOW_SIZE);
+            long recordStart = -1;
+            long lineStart = start;
+            while (lineStart < length) {
+                long lineEnd = endOfLine(window, windowStart, lineStart);
+                if (lineEnd < 0 && windowStart + window.limit() < length) {
+                    // the line goes beyond the window, read a new one from the
+                    // start of the record so that it can be parsed
+                    long from = (recordStart >= 0) ? recordStart : lineStart;
+                    long windowSize = (from == windowStart) ? 2L * window.limit() : WINDOW_SIZE;
+                    windowStart = from;
+                    window = read(channel, window, windowStart, length, windowSize);
+                    continue;
+                }
+                if (lineEnd < 0) {
+                    lineEnd = length;
+                }
+                if (isRecordStart(window, (int) (lineStart - windowStart), (int) (lineEnd - lineStart))) {
+                    if (recordStart >= 0) {
+                        addRecord(window, windowStart, recordStart, lineStart);
+                    }
+                    recordStart = lineStart;
+                }
+                lineStart = lineEnd;
+            }
+            if (recordStart >= 0) {
+                addRecord(window, windowStart, recordStart, length);
+            }
+            scanWindow = window;
+            indexedLength = length;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Reads a window of the file, in the given buffer if it is large enough.
+     *
+     * @return the window, from position 0 to its limit.
+     * @throws EOFException if the file was truncated meanwhile.
+     */
+    private static ByteBuffer read(FileChannel channel, ByteBuffer buffer, long from, long length,
+            long windowSize) throws IOException {
+        int size = (int) Math.min(Math.min(length - from, windowSize), Integer.MAX_VALUE);
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+        }
+        buffer.clear();
+        buffer.limit(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, from + buffer.position()) < 0) {
+                throw new EOFException("Log file truncated while reading it");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return the position following the end of the line, or -1 if the line
+     * does not end in the window.
+     */
+    private static long endOfLine(ByteBuffer window, long windowStart, long lineStart) {
+        for (int i = (int) (lineStart - windowStart); i < window.limit(); i++) {
+            if (window.get(i) == '\n') {
+                return windowStart + i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isRecordStart(ByteBuffer window, int lineStart, int lineLength) {
+        if (!(parser instanceof RawLogParser)
+                && (lineLength == 0 || window.get(lineStart) != '[')) {
+            return false;
+        }
+        int length = Math.min(lineLength, RECORD_START_PROBE_SIZE);
+        while (length > 0 && (window.get(lineStart + length - 1) == '\n'
+                || window.get(lineStart + length - 1) == '\r')) {
+            length--;
+        }
+        String probe = decode(window, lineStart, lineStart + length);
+        return LogParserFactory.getInstance().isLogRecordStart(parser, probe);
+    }
+
+    private String decode(ByteBuffer window, int start, int end) {
+        ByteBuffer bytes = window.duplicate();
+        bytes.limit(end);
+        bytes.position(start);
+        return charset.decode(bytes).toString();
+    }
+
+    private void addRecord(ByteBuffer window, long windowStart, long start, long end) {
+        String text = decode(window, (int) (start - windowStart), (int) (end - windowStart));
+        ParsedLogRecord record = parse(text);
+        if (record == null) {
+            return;
+        }
+        long time;
+        try {
+            time = record.getTimeMillis();
+        } catch (NumberFormatException e) {
+            time = 0L;
+        }
+        add(start, time, intern(record.getLevel()), intern(record.getLogger()),
+                intern(record.getMessageId()));
+        previousRecordHash = lastRecordHash;
+        lastRecordHash = text.hashCode();
+    }
+
+    private ParsedLogRecord parse(String text) {
+        final ParsedLogRecord[] result = new ParsedLogRecord[1];
+        try {
+            parser.parseLog(new BufferedReader(new StringReader(text)), new LogParserListener() {
+
+                @Override
+                public void foundLogRecord(long position, ParsedLogRecord object) {
+                    if (result[0] == null) {
+                        result[0] = object;
+                    }
+                }
+
+                @Override
+                public void outputSummary(BufferedWriter writer, Object... objects)
+                        throws IOException {
+                }
+
+                @Override
+                public void close() throws IOException {
+                }
+            });
+        } catch (Exception e) {
+            if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) {
+                LogFacade.LOGGING_LOGGER.log(Level.FINE, "Skipping log record that could not be parsed in "
+                        + logFile, e);
+            }
+        }
+        return result[0];
+    }
+
+    private int intern(String value) {
+        if (value == null) {
+            value = "";
+        } else {
+            value = value.trim();
+            if (value.length() > MAX_STRING_LENGTH) {
+                value = "";
+            }
+        }
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = addString(value);
+        }
+        return id;
+    }
+
+    private int addString(String value) {
+        int id = strings.size();
+        strings.add(value);
+        if (!stringIds.containsKey(value)) {
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    private void add(long offset, long time, int level, int logger, int messageId) {
+        if (size == offsets.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            times = Arrays.copyOf(times, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            loggers = Arrays.copyOf(loggers, capacity);
+            messageIds = Arrays.copyOf(messageIds, capacity);
+        }
+        if (size > 0 && time < times[size - 1]) {
+            sortedByTime = false;
+        }
+        offsets[size] = offset;
+        times[size] = time;
+        levels[size] = level;
+        loggers[size] = logger;
+        messageIds[size] = messageId;
+        postings(loggerPostings, logger).add(size);
+        postings(messageIdPostings, messageId).add(size);
+        size++;
+    }
+
+    private static Postings postings(Map<Integer, Postings> postings, int id) {
+        Postings list = postings.get(id);
+        if (list == null) {
+            list = new Postings();
+            postings.put(id, list);
+        }
+        return list;
+    }
+
+    /**
+     * Removes the records from the given record number.
+     */
+    private void truncate(int newSize) {
+        while (size > newSize) {
+            size--;
+            loggerPostings.get(loggers[size]).removeLast();
+            messageIdPostings.get(messageIds[size]).removeLast();
+        }
+        indexedLength = closedLength;
+    }
+
+    private void reset() {
+        strings.clear();
+        stringIds.clear();
+        loggerPostings.clear();
+        messageIdPostings.clear();
+        size = 0;
+        sortedByTime = true;
+        indexedLength = 0;
+        closedSize = 0;
+        closedLength = 0;
+        lastClosedHash = 0;
+        savedStrings = 0;
+        rewriteIndexFile = true;
+        parser = null;
+    }
+
+    /**
+     * Checks that the last complete record is still at the same place in the
+     * log file, which is not the case once the log file was rotated.
+     */
+    private boolean isValid() throws IOException {
+        if (closedSize == 0) {
+            return true;
+        }
+        long start = offsets[closedSize - 1];
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            if (file.length() < closedLength) {
+                return false;
+            }
+            byte[] bytes = new byte[(int) (closedLength - start)];
+            file.seek(start);
+            file.readFully(bytes);
+            return new String(bytes, charset).hashCode() == lastClosedHash;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Saves the complete records, all but the last one, to the index file.
+     */
+    private void save() {
+        int newClosedSize = size - 1;
+        if (newClosedSize <= closedSize) {
+            return;
+        }
+        long newClosedLength = offsets[newClosedSize];
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(indexFile, !rewriteIndexFile)));
+            try {
+                int fromString = savedStrings;
+                int fromRecord = closedSize;
+                if (rewriteIndexFile) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    fromString = 0;
+                    fromRecord = 0;
+                }
+                for (int i = fromString; i < strings.size(); i++) {
+                    out.write(TAG_STRING);
+                    out.writeUTF(strings.get(i));
+                }
+                for (int i = fromRecord; i < newClosedSize; i++) {
+                    out.write(TAG_RECORD);
+                    out.writeLong(offsets[i]);
+                    out.writeLong(times[i]);
+                    out.writeInt(levels[i]);
+                    out.writeInt(loggers[i]);
+                    out.writeInt(messageIds[i]);
+                }
+                out.write(TAG_CHECKPOINT);
+                out.writeLong(newClosedLength);
+                out.writeInt(previousRecordHash);
+            } finally {
+                out.close();
+            }
+            savedStrings = strings.size();
+            rewriteIndexFile = false;
+        } catch (IOException e) {
+            // the index is kept in memory only
+            rewriteIndexFile = true;
+            if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) {
+                LogFacade.LOGGING_LOGGER.log(Level.FINE, "Could not save the log index " + indexFile, e);
+            }
+        }
+        closedSize = newClosedSize;
+        closedLength = newClosedLength;
+        lastClosedHash = previousRecordHash;
+    }
+
+    /**
+     * Loads the records saved up to the last checkpoint of the index file.
+     */
+    private void load() {
+        if (!indexFile.isFile()) {
+            return;
+        }
+        int committedSize = 0;
+        int committedStrings = 0;
+        long committedLength = 0;
+        int committedHash = 0;
+        boolean complete = false;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Unknown log index format");
+                }
+                while (true) {
+                    int tag = in.read();
+                    if (tag < 0) {
+                        complete = true;
+                        break;
+                    }
+                    switch (tag) {
+                    case TAG_STRING:
+                        addString(in.readUTF());
+                        break;
+                    case TAG_RECORD:
+                        long offset = in.readLong();
+                        long time = in.readLong();
+                        int level = checkId(in.readInt());
+                        int logger = checkId(in.readInt());
+                        int messageId = checkId(in.readInt());
+                        add(offset, time, level, logger, messageId);
+                        break;
+                    case TAG_CHECKPOINT:
+                        committedLength = in.readLong();
+                        committedHash = in.readInt();
+                        committedSize = size;
+                        committedStrings = strings.size();
+                        break;
+                    default:
+                        throw new IOException("Corrupted log index " + indexFile);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (EOFException e) {
+            // the end of the file was not completely written, use the last checkpoint
+        } catch (IOException e) {
+            if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) {
+                LogFacade.LOGGING_LOGGER.log(Level.FINE, "Could not load the log index " + indexFile, e);
+            }
+            reset();
+            return;
+        }
+        truncate(committedSize);
+        while (strings.size() > committedStrings) {
+            String value = strings.remove(strings.size() - 1);
+            if (stringIds.get(value) == strings.size()) {
+                stringIds.remove(value);
+            }
+        }
+        closedSize = size;
+        closedLength = committedLength;
+        indexedLength = committedLength;
+        lastClosedHash = committedHash;
+        savedStrings = strings.size();
+        rewriteIndexFile = !complete || committedSize == 0;
+    }
+
+    private int checkId(int id) throws IOException {
+        if (id < 0 || id >= strings.size()) {
+            throw new IOException("Corrupted log index " + indexFile);
+        }
+        return id;
+    }
+
+    private long endOf(int record) {
+        return (record + 1 < size) ? offsets[record + 1] : indexedLength;
+    }
+
+    private int levelValue(int level) {
+        String name = strings.get(level);
+        Integer value = levelValues.get(name);
+        if (value == null) {
+            try {
+                value = Level.parse(name).intValue();
+            } catch (Exception e) {
+                value = UNKNOWN_LEVEL;
+            }
+            levelValues.put(name, value);
+        }
+        return value;
+    }
+
+    /**
+     * Query on the indexed fields of the records. A query caches what it
+     * looked up in the index it was last run on, it must not be shared
+     * between threads.
+     */
+    public static class Query {
+
+        private final long fromTime;
+        private final long toTime;
+        private final String level;
+        private final boolean onlyLevel;
+        private final int queryLevelValue;
+        private final String[] loggerNames;
+        private final String[] messageIdNames;
+
+        private LogIndex index;
+        private int resolvedSize = -1;
+        private int[] loggerIds;
+        private int[] messageIdIds;
+        private int[] candidates;
+        private int candidateCount;
+        private int lo;
+        private int hi;
+
+        /**
+         * @param fromDate the lower bound date, or null
+         * @param toDate the upper bound date, or null. The time range is only
+         * used if both bounds are given.
+         * @param level the minimum level, or the level when onlyLevel is true,
+         * or null
+         * @param onlyLevel true to only match the given level
+         * @param loggerNames the logger names to match, or null or empty
+         * @param messageIds the message ids to match, or null or empty
+         */
+        public Query(Date fromDate, Date toDate, String level, boolean onlyLevel,
+                Collection<?> loggerNames, Collection<?> messageIds) {
+            if (fromDate != null && toDate != null) {
+                fromTime = fromDate.getTime();
+                toTime = toDate.getTime();
+            } else {
+                fromTime = Long.MIN_VALUE;
+                toTime = Long.MAX_VALUE;
+            }
+            this.level = (level == null) ? null : level.trim();
+            this.onlyLevel = onlyLevel;
+            int value = UNKNOWN_LEVEL;
+            if (level != null && !onlyLevel) {
+                try {
+                    value = Level.parse(level).intValue();
+                } catch (Exception e) {
+                    // all the levels match, as in LogFilter.levelCheck()
+                }
+            }
+            queryLevelValue = value;
+            this.loggerNames = toArray(loggerNames);
+            this.messageIdNames = toArray(messageIds);
+        }
+
+        private String[] toArray(Collection<?> values) {
+            if (values == null || values.isEmpty()) {
+                return null;
+            }
+            String[] array = new String[values.size()];
+            Iterator<?> iterator = values.iterator();
+            for (int i = 0; i < array.length; i++) {
+                array[i] = String.valueOf(iterator.next()).trim();
+            }
+            return array;
+        }
+
+        /**
+         * Looks up the ids of the query strings and the candidate records in
+         * the given index. Must be called with the lock of the index held.
+         */
+        private void resolve(LogIndex index) {
+            if (this.index == index && resolvedSize == index.size) {
+                return;
+            }
+            this.index = index;
+            resolvedSize = index.size;
+            loggerIds = ids(loggerNames);
+            messageIdIds = ids(messageIdNames);
+            candidates = null;
+            candidateCount = 0;
+            if (loggerIds != null) {
+                collectCandidates(loggerIds, index.loggerPostings);
+            } else if (messageIdIds != null) {
+                collectCandidates(messageIdIds, index.messageIdPostings);
+            }
+
+            lo = 0;
+            hi = index.size;
+            if (index.sortedByTime && fromTime != Long.MIN_VALUE) {
+                lo = firstRecordAfter(fromTime - 1);
+                hi = firstRecordAfter(toTime);
+            }
+        }
+
+        private int[] ids(String[] names) {
+            if (names == null) {
+                return null;
+            }
+            int[] ids = new int[names.length];
+            int count = 0;
+            for (String name : names) {
+                Integer id = index.stringIds.get(name);
+                if (id != null) {
+                    ids[count++] = id;
+                }
+            }
+            return Arrays.copyOf(ids, count);
+        }
+
+        private void collectCandidates(int[] ids, Map<Integer, Postings> postings) {
+            int count = 0;
+            for (int id : ids) {
+                Postings list = postings.get(id);
+                if (list != null) {
+                    count += list.size;
+                }
+            }
+            candidates = new int[count];
+            for (int id : ids) {
+                Postings list = postings.get(id);
+                if (list != null) {
+                    System.arraycopy(list.records, 0, candidates, candidateCount, list.size);
+                    candidateCount += list.size;
+                }
+            }
+            if (ids.length > 1) {
+                Arrays.sort(candidates, 0, candidateCount);
+            }
+        }
+
+        private int firstRecordAfter(long time) {
+            int low = 0;
+            int high = index.size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (index.times[mid] <= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private boolean matches(int record) {
+            if (record < lo || record >= hi) {
+                return false;
+            }
+            long time = index.times[record];
+            if (time < fromTime || time > toTime) {
+                return false;
+            }
+            if (loggerIds != null && !contains(loggerIds, index.loggers[record])) {
+                return false;
+            }
+            if (messageIdIds != null && !contains(messageIdIds, index.messageIds[record])) {
+                return false;
+            }
+            if (level != null) {
+                if (onlyLevel) {
+                    return index.strings.get(index.levels[record]).equals(level);
+                }
+                int value = index.levelValue(index.levels[record]);
+                if (queryLevelValue != UNKNOWN_LEVEL && value != UNKNOWN_LEVEL
+                        && value < queryLevelValue) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean contains(int[] ids, int id) {
+            for (int i : ids) {
+                if (i == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reads the indexed records through a window of the log file, read again
+     * as needed.
+     */
+    public class Reader implements Closeable {
+
+        private final RandomAccessFile file;
+        private ByteBuffer window;
+        private long windowStart;
+        private boolean windowValid;
+
+        private Reader() throws IOException {
+            file = new RandomAccessFile(logFile, "r");
+        }
+
+        /**
+         * @return the parsed record, or null if there is no such record.
+         */
+        public ParsedLogRecord read(long recordNumber) throws IOException {
+            long start;
+            long end;
+            synchronized (LogIndex.this) {
+                if (recordNumber < 0 || recordNumber >= size) {
+                    return null;
+                }
+                start = offsets[(int) recordNumber];
+                end = endOf((int) recordNumber);
+            }
+            if (!windowValid || start < windowStart || end > windowStart + window.limit()) {
+                FileChannel channel = file.getChannel();
+                long length = channel.size();
+                if (end > length) {
+                    return null;
+                }
+                windowValid = false;
+                try {
+                    window = LogIndex.read(channel, window, start, length, Math.max(WINDOW_SIZE, end - start));
+                } catch (EOFException e) {
+                    return null;
+                }
+                windowStart = start;
+                windowValid = true;
+            }
+            synchronized (LogIndex.this) {
+                return parse(decode(window, (int) (start - windowStart), (int) (end - windowStart)));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            windowValid = false;
+            file.close();
+        }
+    }
+
+    private static final class Postings {
+        private int[] records = new int[4];
+        private int size;
+
+        void add(int record) {
+            if (size == records.length) {
+                records = Arrays.copyOf(records, size * 2);
+            }
+            records[size++] = record;
+        }
+
+        void removeLast() {
+            size--;
+        }
+    }
+}
@@ -106,6 +106,20 @@ public class LogParserFactory {
         }        
     }
     
+    /**
+     * Tells whether the given line starts a new log record in a log parsed
+     * by the given parser. Lines that do not start a record belong to the
+     * record started before them.
+     */
+    public boolean isLogRecordStart(LogParser parser, String line) {
+        if (parser instanceof UniformLogParser) {
+            return line.startsWith(UniformLogParser.LOG_RECORD_BEGIN_MARKER);
+        } else if (parser instanceof ODLLogParser) {
+            return odlDateFormatPattern.matcher(line).matches();
+        }
+        return true;
+    }
+
     Pattern getODLDateFormatPattern() {
         return odlDateFormatPattern;    
     }
@@ -0,0 +1,210 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.server.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+/**
+ * Tests the ring buffer used by GFFileHandler.
+ */
+public class LogRecordRingBufferTest {
+
+    private static LogRecord record(Level level, String msg) {
+        return new LogRecord(level, msg);
+    }
+
+    @Test
+    public void recordsAreFetchedInOrder() {
+        LogRecordRingBuffer buffer = new LogRecordRingBuffer(8,
+                LogRecordRingBuffer.OverflowPolicy.BLOCK, 1);
+        LogRecord[] batch = new LogRecord[8];
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(buffer.publish(record(Level.INFO, "msg " + i), "thread"));
+            }
+            assertEquals(5, buffer.size());
+            assertEquals(5, buffer.fetch(batch));
+            for (int i = 0; i < 5; i++) {
+                assertEquals("msg " + i, batch[i].getMessage());
+                assertEquals("thread", ((GFLogRecord) batch[i]).getThreadName());
+            }
+            buffer.release(5);
+            assertEquals(0, buffer.size());
+            assertEquals(0, buffer.fetch(batch));
+        }
+    }
+
+    @Test
+    public void dropPolicyCountsDroppedRecords() {
+        LogRecordRingBuffer buffer = new LogRecordRingBuffer(4,
+                LogRecordRingBuffer.OverflowPolicy.DROP, 1);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.publish(record(Level.INFO, "msg " + i), "thread"));
+        }
+        assertFalse(buffer.publish(record(Level.INFO, "msg 4"), "thread"));
+        assertFalse(buffer.publish(record(Level.SEVERE, "msg 5"), "thread"));
+        assertEquals(2, buffer.getDroppedCount());
+        assertEquals(4, buffer.size());
+    }
+
+    @Test
+    public void samplePolicyKeepsWarnings() {
+        LogRecordRingBuffer buffer = new LogRecordRingBuffer(16,
+                LogRecordRingBuffer.OverflowPolicy.SAMPLE, 4);
+        for (int i = 0; i < 12; i++) {
+            assertTrue(buffer.publish(record(Level.INFO, "msg " + i), "thread"));
+        }
+        int kept = 0;
+        for (int i = 0; i < 8; i++) {
+            if (buffer.publish(record(Level.FINE, "sampled " + i), "thread")) {
+                kept++;
+            }
+        }
+        assertEquals(2, kept);
+        assertTrue(buffer.publish(record(Level.WARNING, "warning"), "thread"));
+        assertEquals(6, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void blockPolicyWaitsForTheConsumer() throws Exception {
+        final LogRecordRingBuffer buffer = new LogRecordRingBuffer(4,
+                LogRecordRingBuffer.OverflowPolicy.BLOCK, 1);
+        final int total = 10000;
+        Thread[] producers = new Thread[4];
+        for (int p = 0; p < producers.length; p++) {
+            producers[p] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < total / 4; i++) {
+                        buffer.publish(record(Level.INFO, "msg"), getName());
+                    }
+                }
+            };
+            producers[p].start();
+        }
+        LogRecord[] batch = new LogRecord[4];
+        int consumed = 0;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (consumed < total && System.currentTimeMillis() < deadline) {
+            int count = buffer.fetch(batch);
+            if (count == 0) {
+                buffer.await();
+            }
+            buffer.release(count);
+            consumed += count;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertEquals(total, consumed);
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void fileHandlerWritesThroughTheRingBuffer() throws Exception {
+        File testLog = testLogFile("test-ring-buffer.log");
+
+        GFFileHandler handler = new GFFileHandler();
+        handler.changeFileName(testLog);
+        handler.setFormatter(new UniformLogFormatter());
+        handler.enableRingBuffer(64, LogRecordRingBuffer.OverflowPolicy.BLOCK, 1);
+        // published before the pump starts, so that the pump writes them
+        // while the handler is being destroyed
+        for (int i = 0; i < 60; i++) {
+            handler.publish(record(Level.INFO, "ring buffer message " + i));
+        }
+        handler.initializePump();
+        handler.preDestroy();
+        handler.close();
+
+        String content = new String(Files.readAllBytes(testLog.toPath()), Charset.defaultCharset());
+        for (int i = 0; i < 60; i++) {
+            assertTrue("message " + i, content.contains("ring buffer message " + i + "|"));
+        }
+        assertEquals(0, handler.getPendingRecordCount());
+    }
+
+    @Test
+    public void ringBufferWritesAreCountedForRotation() throws Exception {
+        File testLog = testLogFile("test-ring-buffer-rotation.log");
+
+        GFFileHandler handler = new GFFileHandler();
+        handler.changeFileName(testLog);
+        handler.setFormatter(new UniformLogFormatter());
+        handler.setLimitForRotation(2000);
+        handler.enableRingBuffer(64, LogRecordRingBuffer.OverflowPolicy.BLOCK, 1);
+        handler.initializePump();
+        for (int i = 0; i < 100; i++) {
+            handler.publish(record(Level.INFO, "ring buffer message " + i));
+        }
+        handler.preDestroy();
+        handler.close();
+
+        File[] rotated = testLog.getParentFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(testLog.getName() + "_");
+            }
+        });
+        assertTrue(rotated.length > 0);
+        for (File file : rotated) {
+            file.delete();
+        }
+    }
+
+    private static File testLogFile(String name) {
+        File basePath = new File(System.getProperty("user.dir"), "target");
+        basePath.mkdirs();
+        File testLog = new File(basePath, name);
+        testLog.delete();
+        return testLog;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.server.logging.logviewer.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.enterprise.server.logging.parser.LogParser;
+import com.sun.enterprise.server.logging.parser.LogParserFactory;
+import com.sun.enterprise.server.logging.parser.LogParserListener;
+import com.sun.enterprise.server.logging.parser.ParsedLogRecord;
+
+/**
+ * Checks that the records found through the LogIndex are the ones found by
+ * parsing the whole log file.
+ */
+public class LogIndexTest {
+
+    private static final String BASE_PATH = System.getProperty("user.dir")
+            + File.separator + "target" + File.separator + "log-index-test";
+
+    private File logFile;
+    private byte[] content;
+
+    @Before
+    public void copyLogFile() throws IOException {
+        File dir = new File(BASE_PATH);
+        dir.mkdirs();
+        logFile = new File(dir, "server.log");
+        logFile.delete();
+        LogIndex.getIndexFile(logFile).delete();
+        InputStream in = LogParser.class.getResourceAsStream("uniform-server.log");
+        try {
+            content = readFully(in);
+        } finally {
+            in.close();
+        }
+        write(content, 0, content.length, false);
+    }
+
+    @Test
+    public void indexedRecordsMatchTheParsedRecords() throws Exception {
+        List<ParsedLogRecord> parsed = parse(logFile);
+        List entries = new LogFile(logFile.getPath()).getLogEntries(0, Integer.MAX_VALUE);
+        assertEquals(parsed.size(), entries.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            LogFile.LogEntry entry = (LogFile.LogEntry) entries.get(i);
+            assertEquals(i, entry.getRecordNumber());
+            assertEquals(parsed.get(i).getMessage(), entry.getLoggedMessage());
+            assertEquals(parsed.get(i).getLevel(), entry.getLoggedLevel());
+        }
+        assertTrue(LogIndex.getIndexFile(logFile).isFile());
+    }
+
+    @Test
+    public void queriesReturnTheMatchingRecords() throws Exception {
+        List<ParsedLogRecord> parsed = parse(logFile);
+        LogFile file = new LogFile(logFile.getPath());
+
+        List<Long> expected = new ArrayList<Long>();
+        for (int i = 0; i < parsed.size(); i++) {
+            if ("WARNING".equals(parsed.get(i).getLevel())) {
+                expected.add(Long.valueOf(i));
+            }
+        }
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, recordNumbers(file.getLogEntries(0, true, Integer.MAX_VALUE,
+                new LogIndex.Query(null, null, "WARNING", true, null, null), null)));
+
+        String logger = "javax.enterprise.web";
+        expected.clear();
+        for (int i = 0; i < parsed.size(); i++) {
+            if (logger.equals(parsed.get(i).getLogger())) {
+                expected.add(Long.valueOf(i));
+            }
+        }
+        assertTrue(expected.size() > 1);
+        Collections.reverse(expected);
+        assertEquals(expected, recordNumbers(file.getLogEntries(Integer.MAX_VALUE, false,
+                Integer.MAX_VALUE, new LogIndex.Query(null, null, "INFO", false,
+                        Arrays.asList(logger), null), null)));
+
+        expected.clear();
+        for (int i = 0; i < parsed.size(); i++) {
+            if ("AS-WEB-00022".equals(parsed.get(i).getMessageId())) {
+                expected.add(Long.valueOf(i));
+            }
+        }
+        assertTrue(expected.size() > 1);
+        assertEquals(expected.subList(1, expected.size()), recordNumbers(file.getLogEntries(
+                expected.get(0) + 1, true, Integer.MAX_VALUE, new LogIndex.Query(null, null,
+                        null, false, null, Arrays.asList("AS-WEB-00022")), null)));
+    }
+
+    @Test
+    public void indexIsUpdatedIncrementallyAndReloaded() throws Exception {
+        int half = content.length / 2;
+        write(content, 0, half, false);
+        LogIndex index = new LogIndex(logFile);
+        index.update();
+        int halfSize = index.size();
+        assertTrue(halfSize > 0);
+
+        write(content, half, content.length - half, true);
+        index.update();
+        int size = parse(logFile).size();
+        assertEquals(size, index.size());
+        assertEquals(0, new LogFile(logFile.getPath()).getLogEntries(0, true, Integer.MAX_VALUE,
+                new LogIndex.Query(null, null, "SEVERE", true, null, null),
+                new LogFile.LogEntryFilter() {
+                    @Override
+                    public boolean accept(LogFile.LogEntry entry) {
+                        return !"SEVERE".equals(entry.getLoggedLevel());
+                    }
+                }).size());
+
+        LogIndex reloaded = new LogIndex(logFile);
+        reloaded.update();
+        assertEquals(size, reloaded.size());
+
+        // a rotated log file is indexed again
+        write(content, 0, half, false);
+        reloaded.update();
+        assertEquals(halfSize, reloaded.size());
+    }
+
+    @Test
+    public void recordsSpanningSeveralWindowsAreRead() throws Exception {
+        // a few windows of the log file
+        for (int i = 1; i < 50; i++) {
+            write(content, 0, content.length, true);
+        }
+        List<ParsedLogRecord> parsed = parse(logFile);
+        LogIndex index = new LogIndex(logFile);
+        index.update();
+        assertEquals(parsed.size(), index.size());
+
+        LogIndex.Reader reader = index.openReader();
+        try {
+            // backwards, so that every window is read again
+            for (int i = parsed.size() - 1; i >= 0; i -= 97) {
+                assertEquals(parsed.get(i).getMessage(), reader.read(i).getMessage());
+            }
+            assertNull(reader.read(parsed.size()));
+        } finally {
+            reader.close();
+        }
+        // the log file is not held by the index
+        assertTrue(logFile.delete());
+    }
+
+    private List<Long> recordNumbers(List entries) {
+        List<Long> numbers = new ArrayList<Long>();
+        for (Object entry : entries) {
+            numbers.add(((LogFile.LogEntry) entry).getRecordNumber());
+        }
+        return numbers;
+    }
+
+    private static List<ParsedLogRecord> parse(File file) throws Exception {
+        final List<ParsedLogRecord> records = new ArrayList<ParsedLogRecord>();
+        LogParser parser = LogParserFactory.getInstance().createLogParser(file);
+        parser.parseLog(new BufferedReader(new FileReader(file)), new LogParserListener() {
+
+            @Override
+            public void foundLogRecord(long position, ParsedLogRecord object) {
+                records.add(object);
+            }
+
+            @Override
+            public void outputSummary(BufferedWriter writer, Object... objects) {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return records;
+    }
+
+    private void write(byte[] bytes, int offset, int length, boolean append) throws IOException {
+        OutputStream out = new FileOutputStream(logFile, append);
+        try {
+            out.write(bytes, offset, length);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
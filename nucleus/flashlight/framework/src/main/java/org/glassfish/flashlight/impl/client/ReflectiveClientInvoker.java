@@ -40,18 +40,35 @@
 
 package org.glassfish.flashlight.impl.client;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import org.glassfish.flashlight.client.ProbeClientInvoker;
 import org.glassfish.flashlight.impl.core.ComputedParamsHandlerManager;
 import org.glassfish.flashlight.provider.FlashlightProbe;
 
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.HashMap;
 import org.glassfish.flashlight.FlashlightUtils;
 
+/**
+ * Invokes a listener method with the arguments of a probe.
+ * <p>
+ * Unless the listener uses computed parameters or varargs, the listener method
+ * is called through a method handle bound to the listener when the invoker is
+ * created: it picks, reorders and unboxes the probe arguments itself, so no
+ * array is allocated and no access check is done per event. Reflection is
+ * only used when the method handle cannot be created, and for the events
+ * whose arguments do not match the listener method. The arguments are checked
+ * before the method handle is called, so that an exception thrown by the
+ * listener is never taken for a mismatch and the listener is called once.
+ */
 public class ReflectiveClientInvoker
         implements ProbeClientInvoker {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
     private int id;
     private Object target;
     private Method method;
@@ -61,9 +78,19 @@ public class ReflectiveClientInvoker
     boolean useProbeArgs;
     Class[] methodParamTypes;
     boolean emittedOneMessage = false;
+    // takes the probe arguments as an Object[], null if reflection is used
+    private final MethodHandle handle;
+    // the listener parameter types, primitives being boxed
+    private final Class<?>[] boxedParamTypes;
+    private final int probeParamCount;
 
     public ReflectiveClientInvoker(int id, Object target, Method method,
             String[] clientParamNames, FlashlightProbe probe) {
+        this(id, target, method, clientParamNames, probe, true);
+    }
+
+    /* package */ ReflectiveClientInvoker(int id, Object target, Method method,
+            String[] clientParamNames, FlashlightProbe probe, boolean useMethodHandle) {
         this.id = id;
         this.target = target;
         this.method = method;
@@ -100,6 +127,35 @@ public class ReflectiveClientInvoker
                 }
             }
         }
+        probeParamCount = probeParamNames.length;
+        boxedParamTypes = new Class<?>[methodParamTypes.length];
+        for (int index = 0; index < methodParamTypes.length; index++) {
+            boxedParamTypes[index] = MethodType.methodType(methodParamTypes[index]).wrap().returnType();
+        }
+        handle = useMethodHandle ? createHandle(probeParamCount) : null;
+    }
+
+    private MethodHandle createHandle(int probeParamCount) {
+        if (hasComputedParams || method.isVarArgs()) {
+            return null;
+        }
+        try {
+            MethodHandle mh = LOOKUP.unreflect(method);
+            if (!Modifier.isStatic(method.getModifiers())) {
+                mh = mh.bindTo(target);
+            }
+            mh = mh.asType(MethodType.genericMethodType(paramNames.length).changeReturnType(void.class));
+            if (!useProbeArgs || paramNames.length != probeParamCount) {
+                mh = MethodHandles.permuteArguments(mh,
+                        MethodType.genericMethodType(probeParamCount).changeReturnType(void.class),
+                        probeIndices);
+            }
+            return mh.asSpreader(Object[].class, probeParamCount);
+        }
+        catch (Exception e) {
+            // e.g. the listener class is not accessible, use reflection
+            return null;
+        }
     }
 
     @Override
@@ -112,6 +168,7 @@ public class ReflectiveClientInvoker
         sb.append("probeIndices=").append(Arrays.toString(probeIndices)).append('\n');
         sb.append("useProbeArgs=").append(useProbeArgs).append('\n');
         sb.append("hasComputedParams=").append(hasComputedParams).append('\n');
+        sb.append("methodHandle=").append(handle != null).append('\n');
         return sb.toString();
     }
 
@@ -119,10 +176,26 @@ public class ReflectiveClientInvoker
         return id;
     }
 
+    /* package */ boolean isMethodHandleUsed() {
+        return handle != null;
+    }
+
     public void invoke(Object[] args) {
         if (!FlashlightUtils.isMonitoringEnabled())
             return;
 
+        // arguments that do not match the listener method go through
+        // reflection, see matchupArgs()
+        if (handle != null && handleAccepts(args)) {
+            try {
+                handle.invokeExact(args);
+            }
+            catch (Throwable t) {
+                logOnce(t);
+            }
+            return;
+        }
+
         try {
             if (useProbeArgs) {
                 //We can use the args as it is
@@ -156,16 +229,39 @@ public class ReflectiveClientInvoker
                 methodInvoke(args);
         }
         catch (Exception ex) {
-            if (!emittedOneMessage) {
-                // Only do this one time!
-                emittedOneMessage = true;
-                StringBuilder sb = new StringBuilder();
-                sb.append(getClass().getName()).append('\n').append(ex).append('\n');
-                sb.append("CAUSE:  ").append(ex.getCause()).append('\n');
-                sb.append(this);
-                System.out.println(sb.toString());
+            logOnce(ex);
+        }
+    }
+
+    /**
+     * Whether the method handle can be called with the probe arguments
+     * without a conversion failure: each of the arguments passed to the
+     * listener must be an instance of its parameter type, without the
+     * widening done by reflection.
+     */
+    private boolean handleAccepts(Object[] args) {
+        if (args == null || args.length != probeParamCount) {
+            return false;
+        }
+        for (int i = 0; i < probeIndices.length; i++) {
+            Object arg = args[probeIndices[i]];
+            if (arg == null ? methodParamTypes[i].isPrimitive() : !boxedParamTypes[i].isInstance(arg)) {
+                return false;
             }
         }
+        return true;
+    }
+
+    private void logOnce(Throwable ex) {
+        if (!emittedOneMessage) {
+            // Only do this one time!
+            emittedOneMessage = true;
+            StringBuilder sb = new StringBuilder();
+            sb.append(getClass().getName()).append('\n').append(ex).append('\n');
+            sb.append("CAUSE:  ").append(ex.getCause()).append('\n');
+            sb.append(this);
+            System.out.println(sb.toString());
+        }
     }
 
     private void methodInvoke(Object[] args) throws IllegalAccessException,
@@ -172,36 +172,40 @@ public class FlashlightProbe
             parent.fireProbe(params);
         }
 
-        int sz = invokerList.size();
+        ProbeClientInvoker[] current = invokerList;
 
-        for (int i=0; i<sz; i++) {
-            ProbeClientInvoker invoker = invokerList.get(i);
-            if(invoker != null) {
-                invoker.invoke(params);
-            }
+        for (int i=0; i<current.length; i++) {
+            current[i].invoke(params);
         } 
     }
 
+    /**
+     * @return the states to pass to {@link #fireProbeAfter} or {@link #fireProbeOnException},
+     *      null if no stateful listener was invoked
+     */
     public ArrayList<ProbeInvokeState> fireProbeBefore(Object[] params) {
         if(!listenerEnabled.get()) {
             return null;
         }
 
-        ArrayList<ProbeInvokeState> probeInvokeStates = new ArrayList<ProbeInvokeState> (); 
+        ArrayList<ProbeInvokeState> probeInvokeStates = null;
         
         if (parent != null) {
-            ArrayList <ProbeInvokeState> parentStates = parent.fireProbeBefore(params);
-            probeInvokeStates.addAll(parentStates);
+            probeInvokeStates = parent.fireProbeBefore(params);
         }
 
-        int sz = invokerList.size();
+        ProbeClientInvoker[] current = invokerList;
+        if (current.length == 0) {
+            return probeInvokeStates;
+        }
+        if (probeInvokeStates == null) {
+            probeInvokeStates = new ArrayList<ProbeInvokeState>(current.length);
+        }
 
-        for (int i=0; i<sz; i++) {
-            StatefulProbeClientInvoker invoker = (StatefulProbeClientInvoker) invokerList.get(i);
-            if(invoker != null) {
-                probeInvokeStates.add(new ProbeInvokeState(invoker.getId(),
-                                               invoker.invokeBefore(params)));
-            }
+        for (int i=0; i<current.length; i++) {
+            StatefulProbeClientInvoker invoker = (StatefulProbeClientInvoker) current[i];
+            probeInvokeStates.add(new ProbeInvokeState(invoker.getId(),
+                                           invoker.invokeBefore(params)));
         } 
         
         return probeInvokeStates;
@@ -216,16 +220,14 @@ public class FlashlightProbe
             parent.fireProbeAfter(returnValue, states);
         }
 
-        int sz = invokerList.size();
+        ProbeClientInvoker[] current = invokerList;
 
         int stateIndex = -1;
-        for (int i=0; i<sz; i++) {
-            StatefulProbeClientInvoker invoker = (StatefulProbeClientInvoker)invokerList.get(i);
-            if(invoker != null) {
-                stateIndex = findStateIndex(invoker.getId(), states);
-                if (stateIndex >= 0)
-                    invoker.invokeAfter(states.get(stateIndex).getState(), returnValue);
-            }
+        for (int i=0; i<current.length; i++) {
+            StatefulProbeClientInvoker invoker = (StatefulProbeClientInvoker) current[i];
+            stateIndex = findStateIndex(invoker.getId(), states);
+            if (stateIndex >= 0)
+                invoker.invokeAfter(states.get(stateIndex).getState(), returnValue);
         } 
     }
     
@@ -238,16 +240,14 @@ public class FlashlightProbe
             parent.fireProbeOnException(exceptionValue, states);
         }
 
-        int sz = invokerList.size();
+        ProbeClientInvoker[] current = invokerList;
 
         int stateIndex = -1;
-        for (int i=0; i<sz; i++) {
-            StatefulProbeClientInvoker invoker = (StatefulProbeClientInvoker)invokerList.get(i);
-            if(invoker != null) {
-                stateIndex = findStateIndex(invoker.getId(), states);
-                if (stateIndex >= 0)
-                    invoker.invokeOnException(states.get(stateIndex).getState(), exceptionValue);
-            }
+        for (int i=0; i<current.length; i++) {
+            StatefulProbeClientInvoker invoker = (StatefulProbeClientInvoker) current[i];
+            stateIndex = findStateIndex(invoker.getId(), states);
+            if (stateIndex >= 0)
+                invoker.invokeOnException(states.get(stateIndex).getState(), exceptionValue);
         } 
     }
     
@@ -377,7 +377,7 @@ public class FlashlightProbe
             }
         }
 
-        invokerList = invList;
+        invokerList = invList.toArray(new ProbeClientInvoker[invList.size()]);
     }
 
     private int findStateIndex(int invokerId, ArrayList <ProbeInvokeState> states) {
@@ -416,7 +416,8 @@ public class FlashlightProbe
     private String probeProviderName;
     private String[] probeParamNames;
     private Class[] paramTypes;
-    private volatile List<ProbeClientInvoker> invokerList = new ArrayList(2);
+    // copied on write, iterated without locking when the probe fires
+    private volatile ProbeClientInvoker[] invokerList = new ProbeClientInvoker[0];
     private String providerJavaMethodName;
     private AtomicBoolean listenerEnabled = new AtomicBoolean(false);
     private String probeDesc;
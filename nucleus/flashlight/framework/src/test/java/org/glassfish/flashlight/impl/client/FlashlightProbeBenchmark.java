@@ -0,0 +1,153 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.flashlight.impl.client;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.glassfish.flashlight.provider.FlashlightProbe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the dispatch of a probe event to its listeners, for each
+ * probe arity, through method handles or through reflection.
+ * <p>
+ * The listener takes the probe arguments in the reverse order, so the
+ * arguments are reordered for every event as they often are in the
+ * monitoring listeners.
+ * <p>
+ * Not run as part of the unit tests. Run it with the test classpath, e.g.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.glassfish.flashlight.impl.client.FlashlightProbeBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlashlightProbeBenchmark {
+
+    @Param({"0", "1", "2", "4"})
+    public int arity;
+
+    @Param({"true", "false"})
+    public boolean methodHandle;
+
+    @Param({"1", "3"})
+    public int listeners;
+
+    private FlashlightProbe probe;
+    private Object[] args;
+
+    public static class Listener {
+        long events;
+
+        public void event0() {
+            events++;
+        }
+
+        public void event1(String a) {
+            events++;
+        }
+
+        public void event2(int b, String a) {
+            events += b;
+        }
+
+        public void event4(long d, String c, int b, String a) {
+            events += b + d;
+        }
+    }
+
+    private static final Class[] TYPES = {String.class, int.class, String.class, long.class};
+    private static final Object[] VALUES = {"request", 200, "/index.html", 42L};
+
+    @Setup
+    public void setUp() throws Exception {
+        ReflectiveClientInvokerTest.initializeFlashlight();
+
+        String[] names = new String[arity];
+        Class[] types = new Class[arity];
+        args = new Object[arity];
+        String[] clientNames = new String[arity];
+        Class[] clientTypes = new Class[arity];
+        for (int i = 0; i < arity; i++) {
+            names[i] = "p" + i;
+            types[i] = TYPES[i];
+            args[i] = VALUES[i];
+            clientNames[arity - 1 - i] = names[i];
+            clientTypes[arity - 1 - i] = types[i];
+        }
+        probe = ReflectiveClientInvokerTest.createProbe(names, types);
+        Method method = Listener.class.getMethod("event" + arity, clientTypes);
+        for (int i = 0; i < listeners; i++) {
+            probe.addInvoker(new ReflectiveClientInvoker(i + 1, new Listener(), method,
+                    clientNames, probe, methodHandle));
+        }
+    }
+
+    @Benchmark
+    public void fireProbe() {
+        probe.fireProbe(args);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(FlashlightProbeBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
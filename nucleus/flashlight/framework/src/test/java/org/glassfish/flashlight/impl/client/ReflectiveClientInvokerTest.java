@@ -0,0 +1,180 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.flashlight.impl.client;
+
+import com.sun.enterprise.config.serverbeans.MonitoringService;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import org.glassfish.flashlight.FlashlightUtils;
+import org.glassfish.flashlight.provider.FlashlightProbe;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReflectiveClientInvokerTest {
+
+    private static int nextId;
+
+    /**
+     * Enables monitoring, which is checked by the invokers.
+     */
+    static void initializeFlashlight() {
+        MonitoringService config = (MonitoringService) Proxy.newProxyInstance(
+                MonitoringService.class.getClassLoader(), new Class[]{MonitoringService.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getMonitoringEnabled")) {
+                            return "true";
+                        }
+                        if (method.getName().equals("getDtraceEnabled")) {
+                            return "false";
+                        }
+                        return null;
+                    }
+                });
+        FlashlightUtils.initialize(
+                ServiceLocatorFactory.getInstance().create("flashlight-test"), config);
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        initializeFlashlight();
+    }
+
+    static FlashlightProbe createProbe(String[] names, Class[] types) {
+        return new FlashlightProbe(++nextId, Object.class, "glassfish", "test",
+                "provider", "probe" + nextId, names, types,
+                false, false, false, false, false, new String[0]);
+    }
+
+    public static class Listener {
+        String name;
+        int count;
+        int calls;
+
+        public void onEvent(String name, int count) {
+            this.name = name;
+            this.count = count;
+            calls++;
+        }
+    }
+
+    private static Method onEvent() throws Exception {
+        return Listener.class.getMethod("onEvent", String.class, int.class);
+    }
+
+    @Test
+    public void listenerArgumentsArePickedFromTheProbeArguments() throws Exception {
+        FlashlightProbe probe = createProbe(new String[]{"count", "name", "extra"},
+                new Class[]{int.class, String.class, long.class});
+        Listener listener = new Listener();
+        ReflectiveClientInvoker invoker = new ReflectiveClientInvoker(1, listener, onEvent(),
+                new String[]{"name", "count"}, probe);
+        assertTrue(invoker.isMethodHandleUsed());
+        probe.addInvoker(invoker);
+
+        probe.fireProbe(new Object[]{3, "first", 5L});
+        assertEquals("first", listener.name);
+        assertEquals(3, listener.count);
+
+        // not an Integer, reflection widens it
+        probe.fireProbe(new Object[]{(short) 4, "second", 5L});
+        assertEquals("second", listener.name);
+        assertEquals(4, listener.count);
+        assertEquals(2, listener.calls);
+    }
+
+    @Test
+    public void methodHandleAndReflectionGiveTheSameArguments() throws Exception {
+        FlashlightProbe probe = createProbe(new String[]{"name", "count"},
+                new Class[]{String.class, int.class});
+        Listener viaHandle = new Listener();
+        Listener viaReflection = new Listener();
+        probe.addInvoker(new ReflectiveClientInvoker(2, viaHandle, onEvent(),
+                new String[]{"name", "count"}, probe, true));
+        probe.addInvoker(new ReflectiveClientInvoker(3, viaReflection, onEvent(),
+                new String[]{"name", "count"}, probe, false));
+
+        probe.fireProbe(new Object[]{"event", 7});
+        assertEquals("event", viaHandle.name);
+        assertEquals(7, viaHandle.count);
+        assertEquals("event", viaReflection.name);
+        assertEquals(7, viaReflection.count);
+    }
+
+    public static class FailingListener {
+        int calls;
+
+        public void onEvent(String name, int count) {
+            calls++;
+            if (count == 1) {
+                throw new ClassCastException("thrown by the listener");
+            }
+            throw new IllegalArgumentException("thrown by the listener");
+        }
+    }
+
+    @Test
+    public void listenerThrowingIsCalledOnce() throws Exception {
+        FlashlightProbe probe = createProbe(new String[]{"name", "count"},
+                new Class[]{String.class, int.class});
+        FailingListener listener = new FailingListener();
+        ReflectiveClientInvoker invoker = new ReflectiveClientInvoker(4, listener,
+                FailingListener.class.getMethod("onEvent", String.class, int.class),
+                new String[]{"name", "count"}, probe);
+        assertTrue(invoker.isMethodHandleUsed());
+        probe.addInvoker(invoker);
+
+        probe.fireProbe(new Object[]{"event", 1});
+        assertEquals(1, listener.calls);
+        probe.fireProbe(new Object[]{"event", 2});
+        assertEquals(2, listener.calls);
+    }
+
+    @Test
+    public void noStatesWithoutStatefulListeners() {
+        FlashlightProbe probe = createProbe(new String[0], new Class[0]);
+        assertNull(probe.fireProbeBefore(new Object[0]));
+    }
+}
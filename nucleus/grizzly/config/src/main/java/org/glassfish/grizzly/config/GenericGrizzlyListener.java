@@ -137,6 +137,8 @@ public class GenericGrizzlyListener implements GrizzlyListener {
     protected NIOTransport transport;
     protected FilterChain rootFilterChain;
     private volatile ExecutorService workerExecutorService;
+    private volatile ThreadPoolAutoTuner threadPoolAutoTuner;
+    private volatile long threadPoolAutoTuneIntervalMillis;
     private volatile ExecutorService auxExecutorService;
     private volatile DelayedExecutor delayedExecutor;
     private volatile long transactionTimeoutMillis = -1;
@@ -185,11 +187,21 @@ public class GenericGrizzlyListener implements GrizzlyListener {
         startDelayedExecutor();
         ((SocketBinder) transport).bind(new InetSocketAddress(address, port));
         transport.start();
+        final ThreadPoolAutoTuner autoTuner = threadPoolAutoTuner;
+        if (autoTuner != null) {
+            autoTuner.start((GrizzlyExecutorService) workerExecutorService,
+                    threadPoolAutoTuneIntervalMillis);
+        }
     }
 
     @Override
     public void stop() throws IOException {
         stopDelayedExecutor();
+        final ThreadPoolAutoTuner autoTuner = threadPoolAutoTuner;
+        threadPoolAutoTuner = null;
+        if (autoTuner != null) {
+            autoTuner.stop();
+        }
         final NIOTransport localTransport = transport;
         transport = null;
         if (localTransport != null) {
@@ -570,7 +582,16 @@ public class GenericGrizzlyListener implements GrizzlyListener {
             final ThreadPool threadPool) {
         
         final String classname = threadPool.getClassname();
-        if (classname != null &&
+        final boolean virtualThreads =
+                ThreadPool.VIRTUAL_THREAD_POOL_CLASS_NAME.equals(classname);
+        if (virtualThreads) {
+            if (!VirtualThreadPool.isSupported()) {
+                LOGGER.log(Level.WARNING,
+                        "Virtual threads are not supported by this JVM, the "
+                        + "thread-pool {0} uses platform threads",
+                        threadPool.getName());
+            }
+        } else if (classname != null &&
                 !ThreadPool.DEFAULT_THREAD_POOL_CLASS_NAME.equals(classname)) {
             
             // Use custom thread pool
@@ -605,9 +626,15 @@ public class GenericGrizzlyListener implements GrizzlyListener {
         }
             
         try {
-            // Use standard Grizzly thread pool
-            workerExecutorService = GrizzlyExecutorService.createInstance(
-                    configureThreadPoolConfig(networkListener, threadPool));
+            final ThreadPoolConfig poolConfig =
+                    configureThreadPoolConfig(networkListener, threadPool);
+            if (virtualThreads && VirtualThreadPool.isSupported()) {
+                workerExecutorService = new VirtualThreadPool(poolConfig);
+            } else {
+                // Use standard Grizzly thread pool
+                threadPoolAutoTuner = configureThreadPoolAutoTuner(threadPool, poolConfig);
+                workerExecutorService = GrizzlyExecutorService.createInstance(poolConfig);
+            }
             transport.setWorkerThreadPool(workerExecutorService);
         } catch (NumberFormatException ex) {
             LOGGER.log(Level.WARNING, "Invalid thread-pool attribute", ex);
@@ -643,6 +670,47 @@ public class GenericGrizzlyListener implements GrizzlyListener {
         return poolConfig;
     }
 
+    /**
+     * Creates the {@link ThreadPoolAutoTuner} of the thread pool if the
+     * thread-pool has the {@link ThreadPoolAutoTuner#AUTO_TUNE_PROPERTY}
+     * property set, and adds it to the probes of the pool configuration.
+     *
+     * @return the auto-tuner, or null if the thread pool isn't auto-tuned
+     */
+    protected ThreadPoolAutoTuner configureThreadPoolAutoTuner(final ThreadPool threadPool,
+                                                               final ThreadPoolConfig poolConfig) {
+        if (!Boolean.parseBoolean(threadPool.getPropertyValue(
+                ThreadPoolAutoTuner.AUTO_TUNE_PROPERTY))) {
+            return null;
+        }
+        try {
+            final int minThreads = Integer.parseInt(threadPool.getPropertyValue(
+                    ThreadPoolAutoTuner.MIN_THREADS_PROPERTY,
+                    threadPool.getMinThreadPoolSize()));
+            final int maxThreads = Integer.parseInt(threadPool.getPropertyValue(
+                    ThreadPoolAutoTuner.MAX_THREADS_PROPERTY,
+                    threadPool.getMaxThreadPoolSize()));
+            final long targetQueueLatency = Long.parseLong(threadPool.getPropertyValue(
+                    ThreadPoolAutoTuner.TARGET_QUEUE_LATENCY_PROPERTY,
+                    Long.toString(ThreadPoolAutoTuner.DEFAULT_TARGET_QUEUE_LATENCY_MILLIS)));
+            final int cpuThreshold = Integer.parseInt(threadPool.getPropertyValue(
+                    ThreadPoolAutoTuner.CPU_THRESHOLD_PROPERTY,
+                    Integer.toString(ThreadPoolAutoTuner.DEFAULT_CPU_THRESHOLD)));
+            final int interval = Integer.parseInt(threadPool.getPropertyValue(
+                    ThreadPoolAutoTuner.INTERVAL_PROPERTY,
+                    Integer.toString(ThreadPoolAutoTuner.DEFAULT_INTERVAL_SECONDS)));
+            final ThreadPoolAutoTuner autoTuner = new ThreadPoolAutoTuner(poolConfig,
+                    minThreads, maxThreads, targetQueueLatency, cpuThreshold);
+            poolConfig.getInitialMonitoringConfig().addProbes(autoTuner);
+            threadPoolAutoTuneIntervalMillis = TimeUnit.SECONDS.toMillis(Math.max(1, interval));
+            return autoTuner;
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Thread-pool " + threadPool.getName()
+                    + " is not auto-tuned", e);
+            return null;
+        }
+    }
+
     private DelayedExecutor obtainDelayedExecutor() {
         if (delayedExecutor != null) {
             return delayedExecutor;
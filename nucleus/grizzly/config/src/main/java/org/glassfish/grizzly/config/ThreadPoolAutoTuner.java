@@ -0,0 +1,620 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.monitoring.DefaultMonitoringConfig;
+import org.glassfish.grizzly.threadpool.AbstractThreadPool;
+import org.glassfish.grizzly.threadpool.GrizzlyExecutorService;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.glassfish.grizzly.threadpool.ThreadPoolProbe;
+
+/**
+ * Resizes a {@link GrizzlyExecutorService} at runtime, within configured
+ * bounds, from what its {@link ThreadPoolProbe} events and the JVM tell about
+ * the load. It is enabled with the {@link #AUTO_TUNE_PROPERTY} property of a
+ * thread-pool, the other properties defined here set its bounds and targets.
+ * <p>
+ * The auto-tuner is a probe of the pool, counting the tasks queued, dequeued
+ * and completed together with the sums of their timestamps, from which the
+ * time spent waiting in the queue and running by all the tasks of an interval
+ * are computed without tracking the tasks one by one. At every interval it
+ * measures
+ * <ul>
+ * <li>the queue latency, the average time the tasks waited for a thread,</li>
+ * <li>the CPU utilization of the process, and the part of it used by the
+ * worker threads,</li>
+ * <li>the blocked ratio, the part of the running time of the tasks not spent
+ * on a CPU by the worker threads, that is blocked in I/O, on locks, or waiting
+ * for a processor,</li>
+ * </ul>
+ * and changes the max pool size, the limit, as follows:
+ * <ul>
+ * <li>when the CPU is saturated, mostly by the worker threads, more threads
+ * only add contention: the limit is decreased by the ratio of the CPU
+ * threshold to the CPU utilization, but not below the number of processors,</li>
+ * <li>when the queue latency is above the target, or the queue overflowed,
+ * while the threads are saturated and the CPU isn't, the limit is increased
+ * by the gradient of the queue latency to the target, at least by a tenth
+ * and at most doubled. It is not increased by more than one thread above the
+ * size which would bring the CPU to the threshold given the blocked ratio,
+ * processors * threshold / (1 - blocked ratio),</li>
+ * <li>when the queue latency is below half the target and less than half the
+ * threads are busy for {@value #SHRINK_EVALUATIONS} evaluations in a row, the
+ * limit is halved, keeping twice the average number of busy threads of the
+ * last interval.</li>
+ * </ul>
+ * The CPU utilization and the blocked ratio are unknown when the JVM doesn't
+ * measure the process and thread CPU times, the CPU then being assumed used by
+ * the worker threads, and the growth not being capped.
+ * <p>
+ * A new size is applied with {@link GrizzlyExecutorService#reconfigure}, which
+ * is not a resize: it creates a new pool with new worker threads, moves the
+ * queued tasks to it and shuts the previous pool down, its threads exiting
+ * once their current task is done. Every resize thus costs the creation of up
+ * to core pool size threads, and briefly runs the old and the new threads
+ * side by side. The auto-tuner therefore resizes in large steps and rarely:
+ * it grows at once when the pool is saturated, since the tasks are delayed,
+ * but only shrinks after a sustained underuse, and the interval shouldn't be
+ * too short. The core
+ * pool size follows the limit when it was equal to the max pool size (fixed
+ * thread pool), otherwise it is kept, capped by the limit. After every
+ * evaluation the probes of the pool implementing {@link AutoTuneProbe} are
+ * notified, to expose the decisions to monitoring.
+ */
+public class ThreadPoolAutoTuner extends ThreadPoolProbe.Adapter {
+    /**
+     * Name of the thread-pool property enabling the auto-tuning, false by default.
+     */
+    public static final String AUTO_TUNE_PROPERTY = "auto-tune";
+    /**
+     * Name of the thread-pool property with the lowest max pool size, the
+     * min-thread-pool-size by default.
+     */
+    public static final String MIN_THREADS_PROPERTY = "auto-tune-min-threads";
+    /**
+     * Name of the thread-pool property with the highest max pool size, the
+     * max-thread-pool-size by default.
+     */
+    public static final String MAX_THREADS_PROPERTY = "auto-tune-max-threads";
+    /**
+     * Name of the thread-pool property with the target queue latency in
+     * milliseconds.
+     */
+    public static final String TARGET_QUEUE_LATENCY_PROPERTY = "auto-tune-target-queue-latency-millis";
+    /**
+     * Name of the thread-pool property with the CPU utilization, in percent,
+     * above which the CPU is considered saturated.
+     */
+    public static final String CPU_THRESHOLD_PROPERTY = "auto-tune-cpu-threshold";
+    /**
+     * Name of the thread-pool property with the interval between two
+     * evaluations, in seconds.
+     */
+    public static final String INTERVAL_PROPERTY = "auto-tune-interval-seconds";
+
+    public static final long DEFAULT_TARGET_QUEUE_LATENCY_MILLIS = 50;
+    public static final int DEFAULT_CPU_THRESHOLD = 90;
+    public static final int DEFAULT_INTERVAL_SECONDS = 5;
+
+    public enum Decision {
+        HOLD, GROW, SHRINK
+    }
+
+    /**
+     * Probe notified of the evaluations of the pool.
+     */
+    public interface AutoTuneProbe {
+        /**
+         * Called after every evaluation, from the auto-tuner thread.
+         *
+         * @param autoTuner the auto-tuner, whose getters describe the evaluation
+         */
+        void onAutoTuneEvent(ThreadPoolAutoTuner autoTuner);
+    }
+
+    private static final Logger LOGGER = Grizzly.logger(ThreadPoolAutoTuner.class);
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    // share of the threads busy for the pool to be saturated
+    private static final double SATURATED = 0.9;
+    // share of the threads busy under which the pool is underused
+    private static final double UNDERUSED = 0.5;
+    // part of the CPU used by the worker threads above which they saturate it
+    private static final double CPU_BOUND = 0.5;
+    private static final double MAX_GRADIENT = 2.0;
+    private static final double MIN_GRADIENT = 0.5;
+    // smallest growth, as a share of the limit
+    private static final double MIN_GROWTH = 0.1;
+    // evaluations in a row with the threads underused before shrinking
+    static final int SHRINK_EVALUATIONS = 3;
+
+    private final String poolName;
+    private final DefaultMonitoringConfig<ThreadPoolProbe> monitoringConfig;
+    private final boolean fixedSize;
+    private final int corePoolSize;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final long targetQueueLatencyNanos;
+    private final double cpuThreshold;
+
+    private final LongAdder queuedCount = new LongAdder();
+    private final LongAdder queuedTime = new LongAdder();
+    private final LongAdder dequeuedCount = new LongAdder();
+    private final LongAdder dequeuedTime = new LongAdder();
+    private final LongAdder finishedCount = new LongAdder();
+    private final LongAdder finishedTime = new LongAdder();
+    private final LongAdder overflowCount = new LongAdder();
+    private final LongAdder releasedCpuTime = new LongAdder();
+    private final Set<Thread> workers =
+            Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+    // state of the previous evaluation, only used by the auto-tuner thread
+    private boolean sampled;
+    private long lastTime;
+    private long lastDequeued;
+    private long lastOverflows;
+    private long lastQueueArea;
+    private long lastBusyArea;
+    private long lastProcessCpuTime;
+    private long lastWorkersCpuTime;
+    private int underusedEvaluations;
+
+    private volatile int limit;
+    private volatile Decision decision = Decision.HOLD;
+    private volatile String reason = "not evaluated yet";
+    private volatile long queueLatencyNanos;
+    private volatile double cpuUtilization = -1;
+    private volatile double blockedRatio = -1;
+    private volatile long adjustments;
+
+    private GrizzlyExecutorService executor;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates the auto-tuner of a pool, which has to be added to the probes of
+     * config before the pool is created from it. The sizes of config are
+     * brought within the bounds.
+     *
+     * @param config                   configuration of the pool
+     * @param minPoolSize              lowest max pool size
+     * @param maxPoolSize              highest max pool size
+     * @param targetQueueLatencyMillis queue latency above which the pool grows
+     * @param cpuThresholdPercent      CPU utilization above which the CPU is saturated
+     */
+    public ThreadPoolAutoTuner(final ThreadPoolConfig config,
+            final int minPoolSize, final int maxPoolSize,
+            final long targetQueueLatencyMillis, final int cpuThresholdPercent) {
+        if (minPoolSize < 1 || maxPoolSize < minPoolSize) {
+            throw new IllegalArgumentException("Invalid auto-tune bounds: "
+                    + minPoolSize + " to " + maxPoolSize);
+        }
+        if (targetQueueLatencyMillis <= 0 || cpuThresholdPercent <= 0) {
+            throw new IllegalArgumentException("Invalid auto-tune targets: "
+                    + targetQueueLatencyMillis + "ms, " + cpuThresholdPercent + "%");
+        }
+        poolName = config.getPoolName();
+        monitoringConfig = config.getInitialMonitoringConfig();
+        fixedSize = config.getCorePoolSize() == config.getMaxPoolSize();
+        corePoolSize = config.getCorePoolSize();
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        targetQueueLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetQueueLatencyMillis);
+        cpuThreshold = cpuThresholdPercent / 100.0;
+
+        limit = clamp(config.getMaxPoolSize());
+        config.setCorePoolSize(getCorePoolSize()).setMaxPoolSize(limit);
+    }
+
+    /**
+     * Starts evaluating the pool periodically.
+     *
+     * @param executor       the pool created from the configuration
+     * @param intervalMillis interval between two evaluations
+     */
+    public synchronized void start(final GrizzlyExecutorService executor,
+            final long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        this.executor = executor;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, poolName + "-autotuner");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    evaluate();
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING,
+                            "Thread pool " + poolName + " auto-tuning failed", e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            executor = null;
+        }
+    }
+
+    @Override
+    public void onThreadAllocateEvent(AbstractThreadPool threadPool, Thread thread) {
+        workers.add(thread);
+    }
+
+    @Override
+    public void onThreadReleaseEvent(AbstractThreadPool threadPool, Thread thread) {
+        if (workers.remove(thread)) {
+            // still running the release, so its CPU time can be read
+            final long cpuTime = getThreadCpuTime(thread);
+            if (cpuTime > 0) {
+                releasedCpuTime.add(cpuTime);
+            }
+        }
+    }
+
+    @Override
+    public void onTaskQueueEvent(AbstractThreadPool threadPool, Runnable task) {
+        queuedTime.add(nanoTime());
+        queuedCount.increment();
+    }
+
+    @Override
+    public void onTaskDequeueEvent(AbstractThreadPool threadPool, Runnable task) {
+        dequeuedTime.add(nanoTime());
+        dequeuedCount.increment();
+    }
+
+    @Override
+    public void onTaskCancelEvent(AbstractThreadPool threadPool, Runnable task) {
+        onTaskFinished();
+    }
+
+    @Override
+    public void onTaskCompleteEvent(AbstractThreadPool threadPool, Runnable task) {
+        onTaskFinished();
+    }
+
+    @Override
+    public void onTaskQueueOverflowEvent(AbstractThreadPool threadPool) {
+        overflowCount.increment();
+    }
+
+    private void onTaskFinished() {
+        finishedTime.add(nanoTime());
+        finishedCount.increment();
+    }
+
+    /**
+     * Measures the load since the previous evaluation and resizes the pool
+     * accordingly. The first evaluation only takes the initial measures.
+     *
+     * @return the decision taken
+     */
+    Decision evaluate() {
+        final long now = nanoTime();
+        final long queued = queuedCount.sum();
+        final long dequeued = dequeuedCount.sum();
+        final long finished = finishedCount.sum();
+        final long overflows = overflowCount.sum();
+        final long dequeuedSum = dequeuedTime.sum();
+        // time spent in the queue, resp. running, by all the tasks so far,
+        // the ones still queued or running being counted until now. The
+        // products and sums may overflow, their differences don't.
+        final long queueArea = dequeuedSum + now * (queued - dequeued) - queuedTime.sum();
+        final long busyArea = finishedTime.sum() + now * (dequeued - finished) - dequeuedSum;
+        final long processCpuTime = getProcessCpuTime();
+        final long workersCpuTime = getWorkersCpuTime();
+
+        if (!sampled || now - lastTime <= 0) {
+            sampled = true;
+            updateSample(now, dequeued, overflows, queueArea, busyArea,
+                    processCpuTime, workersCpuTime);
+            return decision;
+        }
+
+        final long interval = now - lastTime;
+        final long tasks = dequeued - lastDequeued;
+        final long waiting = Math.max(0, queued - dequeued);
+        final long queueTime = Math.max(0, queueArea - lastQueueArea);
+        final long busyTime = Math.max(0, busyArea - lastBusyArea);
+        final double busy = (double) busyTime / interval;
+        final boolean overflowed = overflows != lastOverflows;
+
+        queueLatencyNanos = tasks > 0 ? queueTime / tasks
+                : waiting > 0 ? queueTime / waiting : 0;
+        cpuUtilization = processCpuTime >= 0 && lastProcessCpuTime >= 0
+                ? ratio(processCpuTime - lastProcessCpuTime,
+                        (double) interval * getAvailableProcessors())
+                : -1;
+        final boolean workersMeasured = workersCpuTime >= 0 && lastWorkersCpuTime >= 0;
+        final double workersCpuUtilization = workersMeasured
+                ? ratio(workersCpuTime - lastWorkersCpuTime,
+                        (double) interval * getAvailableProcessors())
+                : 1;
+        blockedRatio = workersMeasured
+                ? busyTime == 0 ? 0 : 1 - ratio(workersCpuTime - lastWorkersCpuTime, busyTime)
+                : -1;
+        updateSample(now, dequeued, overflows, queueArea, busyArea,
+                processCpuTime, workersCpuTime);
+
+        final int current = limit;
+        final boolean cpuSaturated = cpuUtilization >= cpuThreshold;
+        int target = current;
+        boolean underused = false;
+        final String cause;
+        if (cpuSaturated && workersCpuUtilization >= cpuUtilization * CPU_BOUND) {
+            cause = "CPU saturated by the worker threads";
+            final double gradient = Math.max(MIN_GRADIENT, cpuThreshold / cpuUtilization);
+            target = Math.min(current,
+                    Math.max(getAvailableProcessors(), (int) (current * gradient)));
+        } else if (cpuSaturated) {
+            cause = "CPU saturated";
+        } else if ((overflowed || queueLatencyNanos > targetQueueLatencyNanos)
+                && busy >= current * SATURATED) {
+            cause = overflowed ? "queue overflow" : "queue latency above target";
+            final double gradient = overflowed ? MAX_GRADIENT
+                    : Math.min(MAX_GRADIENT, (double) queueLatencyNanos / targetQueueLatencyNanos);
+            target = Math.max((int) Math.ceil(current * gradient),
+                    current + (int) (current * MIN_GROWTH));
+            if (blockedRatio >= 0 && blockedRatio < 1) {
+                target = Math.min(target, (int) Math.ceil(
+                        getAvailableProcessors() * cpuThreshold / (1 - blockedRatio)));
+            }
+            target = Math.max(current + 1, target);
+        } else if (queueLatencyNanos <= targetQueueLatencyNanos / 2
+                && busy < current * UNDERUSED) {
+            cause = "threads underused";
+            underused = true;
+            if (++underusedEvaluations >= SHRINK_EVALUATIONS) {
+                target = Math.max((int) Math.ceil(busy / UNDERUSED), current / 2);
+            }
+        } else {
+            cause = "queue latency within target";
+        }
+        target = clamp(target);
+
+        final Decision newDecision = target > current ? Decision.GROW
+                : target < current ? Decision.SHRINK : Decision.HOLD;
+        if (!underused || newDecision != Decision.HOLD) {
+            underusedEvaluations = 0;
+        }
+        if (newDecision != Decision.HOLD) {
+            limit = target;
+            adjustments++;
+            resize(getCorePoolSize(), target);
+        }
+        decision = newDecision;
+        reason = cause;
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Thread pool {0}: {1} from {2} to {3} threads ({4}), "
+                    + "queue latency {5}ms, CPU {6}%, blocked {7}%",
+                    new Object[] {poolName, newDecision, current, target, cause,
+                    getQueueLatencyMillis(), getCpuUtilization(), getBlockedRatio()});
+        }
+        for (ThreadPoolProbe probe : monitoringConfig.getProbes()) {
+            if (probe instanceof AutoTuneProbe) {
+                ((AutoTuneProbe) probe).onAutoTuneEvent(this);
+            }
+        }
+        return newDecision;
+    }
+
+    private void updateSample(final long now, final long dequeued,
+            final long overflows, final long queueArea, final long busyArea,
+            final long processCpuTime, final long workersCpuTime) {
+        lastTime = now;
+        lastDequeued = dequeued;
+        lastOverflows = overflows;
+        lastQueueArea = queueArea;
+        lastBusyArea = busyArea;
+        lastProcessCpuTime = processCpuTime;
+        lastWorkersCpuTime = workersCpuTime;
+    }
+
+    private static double ratio(final double value, final double total) {
+        return Math.min(1, Math.max(0, value / total));
+    }
+
+    private int clamp(final int size) {
+        return Math.min(maxPoolSize, Math.max(minPoolSize, size));
+    }
+
+    /**
+     * @return the CPU time of all the worker threads so far, or -1 if unknown
+     */
+    private long getWorkersCpuTime() {
+        long total = releasedCpuTime.sum();
+        boolean measured = workers.isEmpty();
+        for (Thread worker : workers) {
+            final long cpuTime = getThreadCpuTime(worker);
+            if (cpuTime >= 0) {
+                total += cpuTime;
+                measured = true;
+            }
+        }
+        return measured ? total : -1;
+    }
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    int getAvailableProcessors() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return the CPU time of the process, or -1 if unknown
+     */
+    long getProcessCpuTime() {
+        // the attribute of com.sun.management.OperatingSystemMXBean, which
+        // isn't visible from all the class loaders
+        try {
+            final Object cpuTime = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                    new ObjectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME),
+                    "ProcessCpuTime");
+            return cpuTime instanceof Long ? (Long) cpuTime : -1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the CPU time of the thread, or -1 if unknown
+     */
+    long getThreadCpuTime(final Thread thread) {
+        return THREADS.isThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()
+                ? THREADS.getThreadCpuTime(thread.getId()) : -1;
+    }
+
+    void resize(final int newCorePoolSize, final int newMaxPoolSize) {
+        final GrizzlyExecutorService localExecutor;
+        synchronized (this) {
+            localExecutor = executor;
+        }
+        if (localExecutor != null) {
+            localExecutor.reconfigure(localExecutor.getConfiguration()
+                    .setCorePoolSize(newCorePoolSize)
+                    .setMaxPoolSize(newMaxPoolSize));
+        }
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    /**
+     * @return the current max pool size
+     */
+    public int getPoolSize() {
+        return limit;
+    }
+
+    /**
+     * @return the current core pool size
+     */
+    public int getCorePoolSize() {
+        return fixedSize ? limit : Math.min(corePoolSize, limit);
+    }
+
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * @return the decision of the last evaluation
+     */
+    public Decision getDecision() {
+        return decision;
+    }
+
+    /**
+     * @return the cause of the decision of the last evaluation
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the number of times the pool was resized
+     */
+    public long getAdjustments() {
+        return adjustments;
+    }
+
+    /**
+     * @return the average time the tasks waited in the queue during the last
+     * interval
+     */
+    public long getQueueLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(queueLatencyNanos);
+    }
+
+    /**
+     * @return the CPU utilization of the process during the last interval in
+     * percent, or -1 if unknown
+     */
+    public int getCpuUtilization() {
+        return percent(cpuUtilization);
+    }
+
+    /**
+     * @return the part of the running time of the tasks the worker threads
+     * were not on a CPU during the last interval, in percent, or -1 if unknown
+     */
+    public int getBlockedRatio() {
+        return percent(blockedRatio);
+    }
+
+    private static int percent(final double ratio) {
+        return ratio < 0 ? -1 : (int) Math.round(ratio * 100);
+    }
+}
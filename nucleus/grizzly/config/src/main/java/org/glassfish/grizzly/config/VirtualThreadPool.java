@@ -0,0 +1,245 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.config;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.threadpool.AbstractThreadPool;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.glassfish.grizzly.threadpool.ThreadPoolProbe;
+import org.glassfish.grizzly.utils.DelayedExecutor;
+
+/**
+ * Thread pool running the tasks on virtual threads, available when the JVM
+ * supports them (JDK 21 or later), see {@link #isSupported()}. It is used for
+ * the thread-pools whose classname is
+ * {@link org.glassfish.grizzly.config.dom.ThreadPool#VIRTUAL_THREAD_POOL_CLASS_NAME}.
+ * <p>
+ * As virtual threads are cheap, the max pool size isn't a number of threads
+ * but the number of tasks running concurrently, which may be set in the
+ * thousands for applications blocking on I/O. Tasks submitted above this limit
+ * wait in a queue bounded by the queue limit, without a thread. A virtual
+ * thread runs the queued tasks after its own one, and terminates when the
+ * queue is empty.
+ * <p>
+ * Being an {@link AbstractThreadPool}, the probes of the
+ * {@link ThreadPoolConfig} are notified as for the other Grizzly thread pools,
+ * with a thread allocated and released for every virtual thread, and the
+ * thread running a task beyond the transaction timeout is interrupted by the
+ * transaction monitor {@link DelayedExecutor}.
+ * <p>
+ * A virtual thread blocking while it holds a monitor, in a
+ * <code>synchronized</code> block or in {@link Object#wait()}, pins its carrier
+ * thread, and there are only as many carriers as processors. The request paths
+ * doing so are:
+ * <ul>
+ * <li><code>com.sun.enterprise.resource.pool.ConnectionPool</code> waiting for
+ * a connection of an exhausted pool with the default wait queue, in
+ * <code>PoolWaitQueue.waitForResource</code>, so connection pools shouldn't be
+ * much smaller than the concurrency limit (<code>HandOffPoolWaitQueue</code>
+ * parks its waiters instead),</li>
+ * <li><code>com.sun.gjc.spi.ManagedConnectionImpl</code> handing out a
+ * connection whose statement cache is being warmed up, where
+ * <code>StatementCacheWarmUp.cancel()</code> waits in <code>wait()</code>
+ * for the statement being prepared in the background,</li>
+ * <li><code>org.apache.catalina.core.StandardWrapper</code> allocating
+ * instances of <code>SingleThreadModel</code> servlets in
+ * <code>instancePool.wait()</code>,</li>
+ * <li>JDBC drivers doing their socket I/O in <code>synchronized</code>
+ * methods.</li>
+ * </ul>
+ * Pinned threads are reported with <code>-Djdk.tracePinnedThreads=full</code>.
+ */
+public class VirtualThreadPool extends AbstractThreadPool {
+    private static final Method OF_VIRTUAL = getOfVirtualMethod();
+
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final Semaphore permits;
+
+    /**
+     * @param config configuration of the pool, whose thread factory is
+     *               replaced by a virtual thread factory
+     * @throws IllegalStateException if virtual threads are not supported
+     */
+    public VirtualThreadPool(final ThreadPoolConfig config) {
+        super(config.setThreadFactory(createThreadFactory(config.getPoolName())));
+        permits = new Semaphore(config.getMaxPoolSize());
+        final ThreadPoolProbe[] probes = monitoringConfig.getProbesUnsafe();
+        if (probes != null) {
+            for (ThreadPoolProbe probe : probes) {
+                probe.onThreadPoolStartEvent(this);
+            }
+        }
+    }
+
+    /**
+     * @return whether the JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    private static Method getOfVirtualMethod() {
+        try {
+            return Thread.class.getMethod("ofVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the factory with <code>Thread.ofVirtual().name(name, 0).factory()</code>,
+     * by reflection as it is not available on all the supported JVMs.
+     */
+    private static ThreadFactory createThreadFactory(final String poolName) {
+        if (OF_VIRTUAL == null) {
+            throw new IllegalStateException("Virtual threads are not supported by this JVM");
+        }
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, (poolName == null ? "virtual" : poolName) + '-', 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            throw new IllegalStateException("Can not create the virtual thread factory", e);
+        }
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        if (task == null) {
+            throw new IllegalArgumentException("Runnable task is null");
+        }
+        if (!running) {
+            throw new RejectedExecutionException("ThreadPool is not running");
+        }
+
+        onTaskQueued(task);
+        if (permits.tryAcquire()) {
+            start(task);
+            return;
+        }
+
+        final int limit = config.getQueueLimit();
+        final int size = queueSize.incrementAndGet();
+        if (limit >= 0 && size > limit) {
+            queueSize.decrementAndGet();
+            onTaskQueueOverflow();
+            throw new RejectedExecutionException(
+                    "The thread pool's task queue is full, limit: " + limit);
+        }
+        queue.offer(task);
+        if (size == 1) {
+            onMaxNumberOfThreadsReached();
+        }
+
+        // all the threads may have found the queue empty before the offer
+        if (permits.tryAcquire()) {
+            start(null);
+        }
+    }
+
+    private void start(final Runnable task) {
+        final VirtualWorker worker = new VirtualWorker(task);
+        synchronized (stateLock) {
+            startWorker(worker);
+        }
+    }
+
+    /**
+     * Returns the next queued task, or poison when the queue is empty, the
+     * permit of the calling thread being then released.
+     */
+    private Runnable nextTask() {
+        while (true) {
+            final Runnable task = queue.poll();
+            if (task != null) {
+                queueSize.decrementAndGet();
+                return task;
+            }
+
+            permits.release();
+            // a task queued before the release might be left without thread
+            if (queue.isEmpty() || !permits.tryAcquire()) {
+                return poison;
+            }
+        }
+    }
+
+    @Override
+    public Queue<Runnable> getQueue() {
+        return queue;
+    }
+
+    /**
+     * Threads terminate when the queue is empty, they don't need to be
+     * poisoned.
+     */
+    @Override
+    protected void poisonAll() {
+    }
+
+    private final class VirtualWorker extends Worker {
+        private Runnable task;
+
+        VirtualWorker(final Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        protected Runnable getTask() {
+            final Runnable first = task;
+            if (first != null) {
+                task = null;
+                return first;
+            }
+            return nextTask();
+        }
+    }
+}
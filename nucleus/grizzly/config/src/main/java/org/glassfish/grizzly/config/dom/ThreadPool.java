@@ -55,6 +55,12 @@ import java.util.List;
 public interface ThreadPool extends ConfigBeanProxy, PropertyBag {
     String DEFAULT_THREAD_POOL_CLASS_NAME =
             "org.glassfish.grizzly.threadpool.GrizzlyExecutorService";
+    /**
+     * Classname running the tasks on virtual threads, the max thread pool size
+     * being then the number of tasks running concurrently.
+     */
+    String VIRTUAL_THREAD_POOL_CLASS_NAME =
+            "org.glassfish.grizzly.config.VirtualThreadPool";
     
     int IDLE_THREAD_TIMEOUT = 900;
     int MAX_QUEUE_SIZE = 4096;
@@ -0,0 +1,394 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.glassfish.grizzly.config.ThreadPoolAutoTuner.Decision;
+import org.glassfish.grizzly.threadpool.GrizzlyExecutorService;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link ThreadPoolAutoTuner} against a simulated thread pool, whose
+ * load shifts between phases, and against a Grizzly pool.
+ */
+public class ThreadPoolAutoTunerTest {
+    private static final int PROCESSORS = 4;
+
+    private static ThreadPoolConfig config(int size) {
+        return ThreadPoolConfig.defaultConfig().copy()
+                .setPoolName("test-pool")
+                .setCorePoolSize(size)
+                .setMaxPoolSize(size);
+    }
+
+    @Test
+    public void followsLoadShiftsOfBlockingTasks() {
+        final SimulatedPool pool = new SimulatedPool(config(10), 2, 200);
+
+        // 20ms tasks, blocked 95% of the time, 1 busy thread on average
+        pool.run(0.05, 20, 0.05, 30);
+        assertTrue("pool size " + pool.getPoolSize(), pool.getPoolSize() <= 4);
+        assertEquals(Decision.HOLD, pool.getDecision());
+
+        // 40 busy threads on average, 2 processors used
+        pool.run(2, 20, 0.05, 30);
+        assertTrue("pool size " + pool.getPoolSize(), pool.getPoolSize() >= 40);
+        assertTrue(pool.getQueueLatencyMillis() < 50);
+        assertTrue(pool.getBlockedRatio() >= 90);
+        final int peak = pool.getPoolSize();
+
+        pool.run(0.05, 20, 0.05, 60);
+        assertTrue("pool size " + pool.getPoolSize(), pool.getPoolSize() <= 4);
+        assertTrue(pool.getAdjustments() > 2);
+        assertTrue(peak <= 200);
+    }
+
+    @Test
+    public void shrinksWhenCpuIsSaturated() {
+        final SimulatedPool pool = new SimulatedPool(config(16), 1, 64);
+
+        // 5ms tasks on a CPU, needing 7.5 processors
+        pool.run(1.5, 5, 1, 20);
+        assertEquals(PROCESSORS, pool.getPoolSize());
+        assertEquals(Decision.HOLD, pool.getDecision());
+        assertEquals(100, pool.getCpuUtilization());
+        assertTrue(pool.maxSize <= 16);
+    }
+
+    @Test
+    public void staysWithinBounds() {
+        final SimulatedPool pool = new SimulatedPool(config(5), 8, 32);
+        assertEquals(8, pool.getPoolSize());
+        assertEquals(8, pool.getCorePoolSize());
+
+        // 100 busy threads needed
+        pool.run(5, 20, 0.05, 5);
+        assertEquals(32, pool.getPoolSize());
+        assertEquals(32, pool.getCorePoolSize());
+        assertEquals(Decision.HOLD, pool.getDecision());
+        assertEquals("queue latency above target", pool.getReason());
+
+        pool.run(0, 20, 0.05, 60);
+        assertEquals(8, pool.getPoolSize());
+    }
+
+    @Test
+    public void keepsCoreSizeOfSyncPool() {
+        final SimulatedPool pool = new SimulatedPool(config(10).setCorePoolSize(4), 2, 50);
+        pool.run(2, 20, 0.05, 20);
+        assertTrue(pool.getPoolSize() >= 40);
+        assertEquals(4, pool.getCorePoolSize());
+        assertEquals(4, pool.coreSize);
+    }
+
+    @Test
+    public void notifiesAutoTuneProbes() {
+        final ThreadPoolConfig config = config(10);
+        final List<Decision> decisions = new ArrayList<Decision>();
+        config.getInitialMonitoringConfig().addProbes(new AutoTuneProbeAdapter(decisions));
+        final SimulatedPool pool = new SimulatedPool(config, 2, 20);
+
+        pool.run(2, 20, 0.05, 5);
+        assertEquals(5, decisions.size());
+        assertEquals(Decision.GROW, decisions.get(0));
+        assertEquals(20, pool.getPoolSize());
+    }
+
+    @Test
+    public void shrinksOnlyAfterSustainedUnderuse() {
+        final SimulatedPool pool = new SimulatedPool(config(40), 2, 64);
+
+        pool.run(0.05, 20, 0.05, ThreadPoolAutoTuner.SHRINK_EVALUATIONS - 1);
+        assertEquals(40, pool.getPoolSize());
+        assertEquals(0, pool.getAdjustments());
+
+        pool.run(0.05, 20, 0.05, 1);
+        assertEquals(Decision.SHRINK, pool.getDecision());
+        assertEquals(20, pool.getPoolSize());
+
+        // the underuse has to last again before the next shrink
+        pool.run(0.05, 20, 0.05, ThreadPoolAutoTuner.SHRINK_EVALUATIONS - 1);
+        assertEquals(20, pool.getPoolSize());
+        assertEquals(1, pool.getAdjustments());
+    }
+
+    @Test
+    public void fewResizesUnderVaryingLoad() {
+        final SimulatedPool pool = new SimulatedPool(config(10), 2, 200);
+        pool.run(1, 20, 0.05, 30);
+        final long adjustments = pool.getAdjustments();
+
+        // load alternating between 16 and 24 busy threads
+        for (int i = 0; i < 10; i++) {
+            pool.run(0.8, 20, 0.05, 2);
+            pool.run(1.2, 20, 0.05, 2);
+        }
+        assertTrue("adjustments " + (pool.getAdjustments() - adjustments),
+                pool.getAdjustments() - adjustments <= 4);
+    }
+
+    @Test
+    public void resizesGrizzlyPool() throws Exception {
+        final ThreadPoolConfig config = config(2);
+        final ThreadPoolAutoTuner autoTuner = new ThreadPoolAutoTuner(config, 2, 16, 1, 100);
+        config.getInitialMonitoringConfig().addProbes(autoTuner);
+        final GrizzlyExecutorService executor = GrizzlyExecutorService.createInstance(config);
+        // evaluated by the test only
+        autoTuner.start(executor, TimeUnit.HOURS.toMillis(1));
+        try {
+            // the first measure of the process CPU time may take a while
+            autoTuner.evaluate();
+            autoTuner.evaluate();
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch started = new CountDownLatch(4);
+            final CountDownLatch finished = new CountDownLatch(10);
+            for (int i = 0; i < 10; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        finished.countDown();
+                    }
+                });
+            }
+            Thread.sleep(200);
+
+            assertEquals(Decision.GROW, autoTuner.evaluate());
+            final int grown = autoTuner.getPoolSize();
+            assertTrue("pool size " + grown, grown > 2);
+            assertEquals(grown, executor.getConfiguration().getMaxPoolSize());
+            assertEquals(grown, executor.getConfiguration().getCorePoolSize());
+            // the queued tasks moved to the new pool, the tasks of the
+            // previous pool still running
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            release.countDown();
+            assertTrue(finished.await(10, TimeUnit.SECONDS));
+            // ends the interval in which the tasks ran
+            autoTuner.evaluate();
+            final int busySize = autoTuner.getPoolSize();
+            Thread.sleep(100);
+
+            for (int i = 1; i < ThreadPoolAutoTuner.SHRINK_EVALUATIONS; i++) {
+                assertEquals(Decision.HOLD, autoTuner.evaluate());
+            }
+            assertEquals(Decision.SHRINK, autoTuner.evaluate());
+            assertTrue(autoTuner.getPoolSize() < busySize);
+            assertEquals(autoTuner.getPoolSize(), executor.getConfiguration().getMaxPoolSize());
+
+            final CountDownLatch done = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            autoTuner.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class AutoTuneProbeAdapter
+            extends org.glassfish.grizzly.threadpool.ThreadPoolProbe.Adapter
+            implements ThreadPoolAutoTuner.AutoTuneProbe {
+        private final List<Decision> decisions;
+
+        AutoTuneProbeAdapter(List<Decision> decisions) {
+            this.decisions = decisions;
+        }
+
+        @Override
+        public void onAutoTuneEvent(ThreadPoolAutoTuner autoTuner) {
+            decisions.add(autoTuner.getDecision());
+        }
+    }
+
+    /**
+     * Thread pool simulated in steps of 1ms, notifying the auto-tuner as a
+     * Grizzly pool notifies its probes. The running tasks are slowed down when
+     * they need more than the processors.
+     */
+    private static final class SimulatedPool extends ThreadPoolAutoTuner {
+        private static final long STEP = TimeUnit.MILLISECONDS.toNanos(1);
+        private static final int STEPS_PER_EVALUATION = 1000;
+
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+        private final List<Worker> workers = new ArrayList<Worker>();
+        private final Map<Thread, Worker> threads = new IdentityHashMap<Thread, Worker>();
+        private long now;
+        private double arrivals;
+        private long processCpuTime;
+        int coreSize;
+        int maxSize;
+
+        SimulatedPool(ThreadPoolConfig config, int minPoolSize, int maxPoolSize) {
+            super(config, minPoolSize, maxPoolSize, 50, 90);
+            resize(config.getCorePoolSize(), config.getMaxPoolSize());
+            evaluate();
+        }
+
+        /**
+         * @param rate       tasks submitted per millisecond
+         * @param duration   duration of a task in milliseconds
+         * @param cpuShare   part of the duration spent on a CPU
+         * @param seconds    number of evaluations
+         */
+        void run(double rate, double duration, double cpuShare, int seconds) {
+            for (int i = 0; i < seconds; i++) {
+                for (int j = 0; j < STEPS_PER_EVALUATION; j++) {
+                    step(rate, duration, cpuShare);
+                }
+                evaluate();
+            }
+        }
+
+        private void step(double rate, double duration, double cpuShare) {
+            for (arrivals += rate; arrivals >= 1; arrivals--) {
+                final Runnable task = new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                };
+                queue.add(task);
+                onTaskQueueEvent(null, task);
+            }
+
+            int running = 0;
+            for (int i = 0; i < workers.size(); i++) {
+                final Worker worker = workers.get(i);
+                if (worker.task == null && i < maxSize && !queue.isEmpty()) {
+                    worker.task = queue.poll();
+                    worker.remaining = duration;
+                    onTaskDequeueEvent(null, worker.task);
+                }
+                if (worker.task != null) {
+                    running++;
+                }
+            }
+
+            final double demand = running * cpuShare;
+            final double speed = demand > PROCESSORS ? PROCESSORS / demand : 1;
+            now += STEP;
+            for (Worker worker : workers) {
+                if (worker.task != null) {
+                    worker.remaining -= speed;
+                    final long cpuTime = (long) (STEP * cpuShare * speed);
+                    worker.cpuTime += cpuTime;
+                    processCpuTime += cpuTime;
+                    if (worker.remaining <= 0) {
+                        onTaskCompleteEvent(null, worker.task);
+                        worker.task = null;
+                    }
+                }
+            }
+            releaseIdleWorkers();
+        }
+
+        private void releaseIdleWorkers() {
+            for (int i = workers.size() - 1; i >= maxSize; i--) {
+                final Worker worker = workers.get(i);
+                if (worker.task == null) {
+                    workers.remove(i);
+                    onThreadReleaseEvent(null, worker.thread);
+                    threads.remove(worker.thread);
+                }
+            }
+        }
+
+        @Override
+        long nanoTime() {
+            return now;
+        }
+
+        @Override
+        int getAvailableProcessors() {
+            return PROCESSORS;
+        }
+
+        @Override
+        long getProcessCpuTime() {
+            return processCpuTime;
+        }
+
+        @Override
+        long getThreadCpuTime(Thread thread) {
+            final Worker worker = threads.get(thread);
+            return worker == null ? -1 : worker.cpuTime;
+        }
+
+        @Override
+        void resize(int newCorePoolSize, int newMaxPoolSize) {
+            assertTrue(newCorePoolSize <= newMaxPoolSize);
+            coreSize = newCorePoolSize;
+            maxSize = newMaxPoolSize;
+            while (workers.size() < newMaxPoolSize) {
+                final Worker worker = new Worker();
+                workers.add(worker);
+                threads.put(worker.thread, worker);
+                onThreadAllocateEvent(null, worker.thread);
+            }
+        }
+    }
+
+    private static final class Worker {
+        // never started, only identifies the worker
+        private final Thread thread = new Thread();
+        private Runnable task;
+        private double remaining;
+        private long cpuTime;
+    }
+}
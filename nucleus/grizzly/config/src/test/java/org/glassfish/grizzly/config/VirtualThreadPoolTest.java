@@ -0,0 +1,228 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.glassfish.grizzly.threadpool.AbstractThreadPool;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.glassfish.grizzly.threadpool.ThreadPoolProbe;
+import org.glassfish.grizzly.utils.DelayedExecutor;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link VirtualThreadPool}, skipped on JVMs without virtual threads.
+ */
+public class VirtualThreadPoolTest {
+    private VirtualThreadPool pool;
+
+    @Before
+    public void checkSupported() {
+        Assume.assumeTrue(VirtualThreadPool.isSupported());
+    }
+
+    @After
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ThreadPoolConfig config(int maxConcurrency, int queueLimit) {
+        return ThreadPoolConfig.defaultConfig().copy()
+                .setPoolName("test-pool")
+                .setMaxPoolSize(maxConcurrency)
+                .setQueueLimit(queueLimit);
+    }
+
+    @Test
+    public void concurrencyIsLimited() throws Exception {
+        pool = new VirtualThreadPool(config(4, -1));
+        final int tasks = 100;
+        final CountDownLatch done = new CountDownLatch(tasks);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger platformThreads = new AtomicInteger();
+        for (int i = 0; i < tasks; i++) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    int max;
+                    while ((max = maxRunning.get()) < current
+                            && !maxRunning.compareAndSet(max, current)) {
+                    }
+                    if (!Thread.currentThread().getName().startsWith("test-pool-")) {
+                        platformThreads.incrementAndGet();
+                    }
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue("max running " + maxRunning.get(), maxRunning.get() <= 4);
+        assertEquals(0, platformThreads.get());
+        assertEquals(0, pool.getQueue().size());
+    }
+
+    @Test
+    public void tasksAboveTheQueueLimitAreRejected() throws Exception {
+        final AtomicInteger overflows = new AtomicInteger();
+        ThreadPoolConfig config = config(1, 1);
+        config.getInitialMonitoringConfig().addProbes(new ThreadPoolProbe.Adapter() {
+            @Override
+            public void onTaskQueueOverflowEvent(AbstractThreadPool threadPool) {
+                overflows.incrementAndGet();
+            }
+        });
+        pool = new VirtualThreadPool(config);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        };
+        pool.execute(task);
+        pool.execute(task);
+        try {
+            pool.execute(task);
+            fail("The task should have been rejected");
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(1, overflows.get());
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void probesAreNotified() throws Exception {
+        final AtomicInteger allocated = new AtomicInteger();
+        final AtomicInteger released = new AtomicInteger();
+        final AtomicInteger dequeued = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        final CountDownLatch allReleased = new CountDownLatch(1);
+        ThreadPoolConfig config = config(2, -1);
+        config.getInitialMonitoringConfig().addProbes(new ThreadPoolProbe.Adapter() {
+            @Override
+            public void onThreadAllocateEvent(AbstractThreadPool threadPool, Thread thread) {
+                allocated.incrementAndGet();
+            }
+
+            @Override
+            public void onThreadReleaseEvent(AbstractThreadPool threadPool, Thread thread) {
+                if (released.incrementAndGet() == allocated.get() && completed.get() == 10) {
+                    allReleased.countDown();
+                }
+            }
+
+            @Override
+            public void onTaskDequeueEvent(AbstractThreadPool threadPool, Runnable task) {
+                dequeued.incrementAndGet();
+            }
+
+            @Override
+            public void onTaskCompleteEvent(AbstractThreadPool threadPool, Runnable task) {
+                completed.incrementAndGet();
+            }
+        });
+        pool = new VirtualThreadPool(config);
+        for (int i = 0; i < 10; i++) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+        }
+        assertTrue(allReleased.await(10, TimeUnit.SECONDS));
+        assertEquals(10, dequeued.get());
+        assertEquals(10, completed.get());
+        assertTrue(allocated.get() >= 1);
+    }
+
+    @Test
+    public void transactionTimeoutInterruptsTheTask() throws Exception {
+        ExecutorService expirer = Executors.newCachedThreadPool();
+        DelayedExecutor delayedExecutor = new DelayedExecutor(expirer, 50, TimeUnit.MILLISECONDS);
+        delayedExecutor.start();
+        try {
+            pool = new VirtualThreadPool(config(1, -1)
+                    .setTransactionTimeout(delayedExecutor, 200, TimeUnit.MILLISECONDS));
+            final CountDownLatch interrupted = new CountDownLatch(1);
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(30000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                }
+            });
+            assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        } finally {
+            delayedExecutor.stop();
+            delayedExecutor.destroy();
+            expirer.shutdownNow();
+        }
+    }
+}
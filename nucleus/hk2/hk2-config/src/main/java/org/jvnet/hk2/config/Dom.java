@@ -60,6 +60,7 @@ import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 
 import java.beans.PropertyVetoException;
+import java.io.IOException;
 import java.lang.reflect.*;
 import java.lang.annotation.Annotation;
 import java.security.AccessController;
@@ -424,6 +425,13 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
             attributes = Collections.emptyMap();
     }
 
+    /**
+     * Sets the attributes read from a {@link DomSnapshot}.
+     */
+    /*package*/ void fillAttributes(Map<String,String> values) {
+        attributes.putAll(values);
+    }
+
     /**
      * Where was this {@link Dom} loaded from?
      */
@@ -1320,6 +1328,33 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
         w.writeEndElement();
     }
 
+    /**
+     * Writes back this element to a snapshot, the same way
+     * {@link #writeTo(String, XMLStreamWriter)} writes it to XML.
+     */
+    /*package*/ void writeTo(String tagName, DomSnapshot.Writer w) throws IOException {
+        if(tagName==null)
+            tagName = model.tagName;
+        if(tagName==null)
+            throw new IllegalArgumentException("Trying t write a local element "+this+" w/o a tag name");
+
+        if (! writeToXml)  {
+            return;
+        }
+        w.startElement(tagName, attributesToWrite());
+
+        List<Child> localChildren = new ArrayList<Child>(children);
+        for (Child c : localChildren) {
+            if (c instanceof NodeChild) {
+                ((NodeChild) c).dom.writeTo(c.name, w);
+            } else {
+                w.leaf(c.name, ((LeafChild) c).value);
+            }
+        }
+
+        w.endElement();
+    }
+
     public void release() {
         if (domDescriptor != null) { // children added via createProxy are not registered in serviceLocator
             ServiceLocatorUtilities.removeOneDescriptor(getHabitat(), domDescriptor, true);
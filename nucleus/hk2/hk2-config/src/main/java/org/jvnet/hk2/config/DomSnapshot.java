@@ -0,0 +1,301 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.config;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a {@link DomDocument}, which populates a document
+ * without parsing XML.
+ *
+ * <p>
+ * A snapshot holds what {@link DomDocument#writeTo(javax.xml.stream.XMLStreamWriter)}
+ * writes, and is read back the way {@link ConfigParser} handles the elements of
+ * the XML document. Element and attribute names are written once and then
+ * referred to by index.
+ *
+ * <p>
+ * The whole snapshot is decoded and checked against the {@link ConfigModel}s
+ * before any {@link Dom} is created, so a snapshot which doesn't match the
+ * models, e.g. after an upgrade, leaves the document untouched and the caller
+ * can parse the XML document instead.
+ */
+public final class DomSnapshot {
+
+    private static final int MAGIC = 0x484b3253;    // "HK2S"
+    private static final int VERSION = 1;
+
+    private static final int END = 0;
+    private static final int ELEMENT = 1;
+    private static final int LEAF = 2;
+
+    private DomSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot of a whole document.
+     *
+     * @param document the document to write
+     * @param out receives the snapshot
+     */
+    public static void write(DomDocument document, DataOutput out) throws IOException {
+        if (document.root == null) {
+            throw new IOException("Document has no root element");
+        }
+        Writer w = new Writer(out);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        document.root.writeTo(null, w);
+        out.writeByte(END);
+    }
+
+    /**
+     * Populates a document from its snapshot.
+     *
+     * @param document the document to populate, which must not have a root yet
+     * @param in the snapshot
+     * @throws IOException if the snapshot is corrupted or doesn't match the
+     *      models of the document, in which case the document is unchanged
+     */
+    public static void read(DomDocument document, DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a snapshot of version " + VERSION);
+        }
+        Reader r = new Reader(in);
+        if (in.readByte() != ELEMENT) {
+            throw new IOException("No root element");
+        }
+        String name = r.readName();
+        ConfigModel model = document.getModelByElementName(name);
+        if (model == null) {
+            throw new IOException("Unknown root element " + name);
+        }
+        Element root = r.readElement(document, model);
+        if (in.readByte() != END) {
+            throw new IOException("Unexpected content after the root element");
+        }
+        document.root = root.build(document, null);
+    }
+
+    /**
+     * Encodes the elements, see {@link Dom#writeTo(String, Writer)}.
+     */
+    static final class Writer {
+        private final DataOutput out;
+        private final Map<String, Integer> names = new HashMap<String, Integer>();
+
+        private Writer(DataOutput out) {
+            this.out = out;
+        }
+
+        void startElement(String name, Map<String, String> attributes) throws IOException {
+            out.writeByte(ELEMENT);
+            writeName(name);
+            out.writeInt(attributes.size());
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                writeName(attribute.getKey());
+                writeValue(attribute.getValue());
+            }
+        }
+
+        void leaf(String name, String value) throws IOException {
+            out.writeByte(LEAF);
+            writeName(name);
+            writeValue(value);
+        }
+
+        void endElement() throws IOException {
+            out.writeByte(END);
+        }
+
+        private void writeName(String name) throws IOException {
+            Integer index = names.get(name);
+            if (index != null) {
+                out.writeInt(index);
+            } else {
+                // a new name, its index being the number of names already written
+                out.writeInt(-1);
+                out.writeUTF(name);
+                names.put(name, names.size());
+            }
+        }
+
+        private void writeValue(String value) throws IOException {
+            // writeUTF() is limited to 64K bytes
+            byte[] bytes = value.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInput in;
+        private final List<String> names = new ArrayList<String>();
+
+        private Reader(DataInput in) {
+            this.in = in;
+        }
+
+        String readName() throws IOException {
+            int index = in.readInt();
+            if (index == -1) {
+                String name = in.readUTF();
+                names.add(name);
+                return name;
+            }
+            if (index < 0 || index >= names.size()) {
+                throw new IOException("Invalid name index " + index);
+            }
+            return names.get(index);
+        }
+
+        String readValue() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Invalid value length " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, "UTF-8");
+        }
+
+        /**
+         * Decodes an element and its descendants, after its name, resolving their
+         * models as {@link ConfigParser#handleElement} does.
+         */
+        Element readElement(DomDocument document, ConfigModel model) throws IOException {
+            Element element = new Element(model);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = readName();
+                String value = readValue();
+                if (model.attributes.containsKey(name)) {
+                    element.attributes.put(name, value);
+                }
+            }
+
+            int tag;
+            while ((tag = in.readByte()) != END) {
+                String name = readName();
+                ConfigModel.Property a = model.elements.get(name);
+                if (tag == LEAF) {
+                    if (a == null || !a.isLeaf()) {
+                        throw new IOException("Element " + name + " is no longer a leaf of " + model.tagName);
+                    }
+                    element.children.add(new Dom.LeafChild(name, readValue()));
+                } else if (tag == ELEMENT) {
+                    ConfigModel childModel;
+                    if (a == null) {
+                        // global look up
+                        childModel = document.getModelByElementName(name);
+                        if (childModel == null) {
+                            throw new IOException("Unknown element " + name);
+                        }
+                    } else if (a.isLeaf()) {
+                        throw new IOException("Element " + name + " is now a leaf of " + model.tagName);
+                    } else {
+                        childModel = ((ConfigModel.Node) a).model;
+                    }
+                    element.children.add(new ChildElement(name, readElement(document, childModel)));
+                } else {
+                    throw new IOException("Invalid tag " + tag);
+                }
+            }
+            return element;
+        }
+    }
+
+    /**
+     * Decoded element, whose {@link Dom} is built once the whole snapshot is decoded.
+     */
+    private static final class Element {
+        private final ConfigModel model;
+        private final Map<String, String> attributes = new HashMap<String, String>();
+        // Dom.LeafChild or ChildElement
+        private final List<Object> children = new ArrayList<Object>();
+
+        private Element(ConfigModel model) {
+            this.model = model;
+        }
+
+        Dom build(DomDocument document, Dom parent) {
+            final Dom dom = document.make(document.habitat, null, parent, model);
+            dom.fillAttributes(attributes);
+
+            List<Dom.Child> domChildren = new ArrayList<Dom.Child>(children.size());
+            for (Object child : children) {
+                if (child instanceof ChildElement) {
+                    ChildElement childElement = (ChildElement) child;
+                    domChildren.add(new Dom.NodeChild(childElement.name, childElement.element.build(document, dom)));
+                } else {
+                    domChildren.add((Dom.Child) child);
+                }
+            }
+            dom.ensureConstraints(domChildren);
+
+            if (!domChildren.isEmpty()) {
+                dom.setChildren(domChildren);
+            }
+
+            dom.register();
+
+            dom.initializationCompleted();
+
+            return dom;
+        }
+    }
+
+    private static final class ChildElement {
+        private final String name;
+        private final Element element;
+
+        private ChildElement(String name, Element element) {
+            this.name = name;
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.config.test;
+
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.junit.Test;
+import org.jvnet.hk2.config.ConfigParser;
+import org.jvnet.hk2.config.DomDocument;
+import org.jvnet.hk2.config.DomSnapshot;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class DomSnapshotTest {
+
+    private static ServiceLocator createLocator(String name) {
+        ServiceLocator locator = ServiceLocatorFactory.getInstance().create(name);
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        DynamicConfiguration config = dcs.createDynamicConfiguration();
+        new ConfigModule(locator).configure(config);
+        config.commit();
+        return locator;
+    }
+
+    private static String toXml(DomDocument document) throws Exception {
+        StringWriter out = new StringWriter();
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+        document.writeTo(writer);
+        writer.close();
+        return out.toString();
+    }
+
+    private static byte[] snapshot(DomDocument document) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        DomSnapshot.write(document, out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void snapshotPopulatesTheSameDocument() throws Exception {
+        ServiceLocator locator = createLocator("DomSnapshotTest.parsed");
+        DomDocument parsed = new ConfigParser(locator).parse(getClass().getResource("/domain.xml"));
+
+        byte[] snapshot = snapshot(parsed);
+
+        ServiceLocator otherLocator = createLocator("DomSnapshotTest.read");
+        DomDocument read = new DomDocument(otherLocator);
+        DomSnapshot.read(read, new DataInputStream(new ByteArrayInputStream(snapshot)));
+
+        assertEquals(toXml(parsed), toXml(read));
+        assertNotNull(otherLocator.getService(SimpleConnector.class));
+        assertArrayEquals(snapshot, snapshot(read));
+    }
+
+    @Test
+    public void corruptedSnapshotLeavesTheDocumentEmpty() throws Exception {
+        ServiceLocator locator = createLocator("DomSnapshotTest.corrupted");
+        DomDocument parsed = new ConfigParser(locator).parse(getClass().getResource("/domain.xml"));
+        byte[] snapshot = snapshot(parsed);
+
+        ServiceLocator otherLocator = createLocator("DomSnapshotTest.truncated");
+        DomDocument read = new DomDocument(otherLocator);
+        byte[] truncated = new byte[snapshot.length - 1];
+        System.arraycopy(snapshot, 0, truncated, 0, truncated.length);
+        try {
+            DomSnapshot.read(read, new DataInputStream(new ByteArrayInputStream(truncated)));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertNull(read.getRoot());
+        assertNull(otherLocator.getService(SimpleConnector.class));
+    }
+}